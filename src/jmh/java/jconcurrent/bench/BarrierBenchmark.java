@@ -0,0 +1,111 @@
+package jconcurrent.bench;
+
+import jconcurrent.CombiningBarrier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+
+// the latency of one barrier trip as the number of parties
+// grows: the benchmark thread is one party, parties - 1 threads
+// started for the iteration are the others and go round the
+// barrier in a loop.
+
+// (with more parties than cores the spinning of the combining
+// barrier competes with the threads it waits for; compare
+// within the core count of the machine)
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BarrierBenchmark {
+
+    private interface Barrier {
+        void await() throws Exception;
+    }
+
+    @Param({"2", "4", "8", "16", "32", "64", "128"})
+    public int parties;
+
+    @Param({"cyclicBarrier", "phaser", "combiningBarrier"})
+    public String barrier;
+
+    private Barrier b;
+    private Thread[] others;
+
+    // the trips of the benchmark thread; the other threads stop
+    // after trip stopAt, a trip every thread takes part in
+    private long trips;
+    private volatile long stopAt;
+
+    // a new barrier per iteration: the combining barrier binds
+    // a party to each thread that uses it
+    @Setup(Level.Iteration)
+    public void start() {
+        if (barrier.equals("cyclicBarrier")) {
+            CyclicBarrier cb = new CyclicBarrier(parties);
+            b = cb::await;
+        }
+        else if (barrier.equals("phaser")) {
+            Phaser ph = new Phaser(parties);
+            b = ph::arriveAndAwaitAdvance;
+        }
+        else {
+            CombiningBarrier cb = new CombiningBarrier(parties);
+            b = cb::await;
+        }
+        trips = 0;
+        stopAt = Long.MAX_VALUE;
+        others = new Thread[parties - 1];
+        for (int i = 0; i < others.length; ++i) {
+            others[i] = new Thread(() -> {
+                try {
+                    for (long n = 1; ; ++n) {
+                        b.await();
+                        if (n >= stopAt) {
+                            break;
+                        }
+                    }
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            others[i].setDaemon(true);
+            others[i].start();
+        }
+    }
+
+    // a thread that reads stopAt before it is set goes on to
+    // the next trip, and so does one that reads it after
+    @TearDown(Level.Iteration)
+    public void stop() throws Exception {
+        stopAt = trips + 1;
+        b.await();
+        for (Thread t : others) {
+            t.join();
+        }
+    }
+
+    @Benchmark
+    public void trip() throws Exception {
+        b.await();
+        ++trips;
+    }
+}
@@ -0,0 +1,63 @@
+package jconcurrent.bench;
+
+import jconcurrent.ThresholdTuner;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// the pools every strategy runs in, sized by the same
+// parallelism parameter so that the strategies compete on
+// an equal number of threads
+
+// parallel streams and Arrays.parallelSetAll() run in the
+// pool of the thread that starts them; submitting them to
+// forkJoin therefore keeps them off the common pool
+
+@State(Scope.Benchmark)
+public class BenchmarkPools {
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    ForkJoinPool forkJoin;
+    ExecutorService fixed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        forkJoin = new ForkJoinPool(parallelism);
+        fixed = Executors.newFixedThreadPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        forkJoin.shutdown();
+        fixed.shutdown();
+    }
+
+    // the executor split: one chunk per thread, the way a
+    // fixed pool is typically used without work stealing
+    void splitAndWait(int length, ThresholdTuner.Kernel body)
+        throws InterruptedException, ExecutionException {
+        List<Future<?>> futures = new ArrayList<>(parallelism);
+        int chunk = (length + parallelism - 1) / parallelism;
+        for (int start = 0; start < length; start += chunk) {
+            int s = start;
+            int e = Math.min(start + chunk, length);
+            futures.add(fixed.submit(() -> body.apply(s, e)));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+    }
+}
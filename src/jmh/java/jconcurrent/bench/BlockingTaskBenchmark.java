@@ -0,0 +1,89 @@
+package jconcurrent.bench;
+
+import jconcurrent.ExecutorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// the workload of ExecutorBasisTest at scale: tasks tasks,
+// each of them blocked for blockMillis (Thread.sleep standing
+// in for I/O), submitted at once; one operation is the time
+// until all of them are done, so tasks / score is the task
+// throughput.
+
+// a pool of n platform threads needs tasks / n * blockMillis
+// at least; virtual threads are bounded by how fast they can
+// be created and scheduled.
+
+// gradle jmh -PjmhArgs='BlockingTaskBenchmark -p tasks=100000'
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xss256k"})
+@State(Scope.Benchmark)
+public class BlockingTaskBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int tasks;
+
+    @Param({"10"})
+    public int blockMillis;
+
+    // platform-N: a fixed pool of N platform threads
+    @Param({"platform-64", "platform-512", "virtual"})
+    public String executor;
+
+    private ExecutorService pool;
+
+    @Setup(Level.Trial)
+    public void start() {
+        if (executor.equals("virtual")) {
+            pool = ExecutorFactory.newVirtualPerTask("bench");
+        }
+        else {
+            int threads = Integer.parseInt(
+                executor.substring(executor.indexOf('-') + 1));
+            pool = ExecutorFactory.newFixed("bench", threads);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public void blockingTasks() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(tasks);
+        Runnable task = () -> {
+            try {
+                Thread.sleep(blockMillis);
+            }
+            catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            done.countDown();
+        };
+        for (int i = 0; i < tasks; ++i) {
+            pool.execute(task);
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,125 @@
+package jconcurrent.bench;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jconcurrent.ConcurrentCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+// every benchmark thread reads a skewed stream of keys from one
+// cache that holds most of them (a cache in front of a slow
+// store, at its hit rate); ConcurrentCache against Guava's
+// cache, both bounded by size
+
+// like CounterBenchmark, main() runs the benchmark once per
+// thread count:
+// gradle jmh -PjmhMain=jconcurrent.bench.CacheBenchmark
+// (1 2 4 ... 64 by default; -PjmhArgs='1 8 64' overrides them)
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+
+    private static final int KEYS = 1 << 16;
+    private static final int STREAM = 1 << 20;
+
+    @Param({"concurrentCache", "guava"})
+    public String impl;
+
+    private Integer[] stream;
+    private IntFunction<Integer> lookup;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = new Random().nextInt(STREAM);
+    }
+
+    @Setup
+    public void setUp() {
+        // key x^3: a few keys take most of the reads
+        Random random = new Random(42);
+        stream = new Integer[STREAM];
+        for (int i = 0; i < STREAM; ++i) {
+            double x = random.nextDouble();
+            stream[i] = (int)(KEYS * x * x * x);
+        }
+        int maximum = KEYS / 2;
+        switch (impl) {
+            case "concurrentCache": {
+                ConcurrentCache<Integer, Integer> cache =
+                    new ConcurrentCache<>(maximum);
+                for (Integer k : stream) {
+                    cache.get(k, x -> x);
+                }
+                lookup = i -> cache.get(stream[i], x -> x);
+                break;
+            }
+            case "guava": {
+                Cache<Integer, Integer> cache = CacheBuilder.newBuilder()
+                    .maximumSize(maximum).build();
+                for (Integer k : stream) {
+                    if (cache.getIfPresent(k) == null) {
+                        cache.put(k, k);
+                    }
+                }
+                lookup = i -> {
+                    Integer k = stream[i];
+                    Integer v = cache.getIfPresent(k);
+                    if (v == null) {
+                        cache.put(k, k);
+                        v = k;
+                    }
+                    return v;
+                };
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown impl: " + impl);
+        }
+    }
+
+    @Benchmark
+    public Integer get(Cursor cursor) {
+        int i = cursor.next;
+        cursor.next = (i + 1) & (STREAM - 1);
+        return lookup.apply(i);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int[] counts = {1, 2, 4, 8, 16, 32, 64};
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int threads : counts) {
+            Options opts = new OptionsBuilder()
+                .include(CacheBenchmark.class.getName())
+                .threads(threads)
+                .build();
+            new Runner(opts).run();
+        }
+    }
+}
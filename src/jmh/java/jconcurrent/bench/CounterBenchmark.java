@@ -0,0 +1,93 @@
+package jconcurrent.bench;
+
+import jconcurrent.StripedCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// every benchmark thread adds to the same shared counter, the
+// pattern of AtomicBasisTest.testConcurrentModification
+
+// the thread count of a JMH run cannot be a @Param; main()
+// runs the benchmarks once per thread count instead:
+// gradle jmh -PjmhMain=jconcurrent.bench.CounterBenchmark
+// (the counts are the program arguments, 1 2 4 ... 64 by
+// default; -PjmhArgs='1 8 64' overrides them)
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CounterBenchmark {
+
+    private final AtomicInteger atomicInteger = new AtomicInteger();
+    private final AtomicLong atomicLong = new AtomicLong();
+    private final LongAdder longAdder = new LongAdder();
+    private final StripedCounter striped = new StripedCounter();
+
+    @Benchmark
+    public int atomicInteger() {
+        return atomicInteger.getAndAdd(2);
+    }
+
+    @Benchmark
+    public long atomicLong() {
+        return atomicLong.getAndAdd(2);
+    }
+
+    @Benchmark
+    public void longAdder() {
+        longAdder.add(2);
+    }
+
+    @Benchmark
+    public void stripedCounter() {
+        striped.add(2);
+    }
+
+    // how long a read of the total takes while nobody writes
+    @Benchmark
+    public long longAdderSum() {
+        return longAdder.sum();
+    }
+
+    @Benchmark
+    public long stripedCounterSum() {
+        return striped.sum();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int[] counts = {1, 2, 4, 8, 16, 32, 64};
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int threads : counts) {
+            Options opts = new OptionsBuilder()
+                .include(CounterBenchmark.class.getName()
+                    + "\\.(atomicInteger|atomicLong|longAdder|stripedCounter)$")
+                .threads(threads)
+                .build();
+            new Runner(opts).run();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package jconcurrent.bench;
+
+import jconcurrent.EventLoopGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+// an echo server over loopback: every benchmark thread is a
+// client with its own connection, and one operation is a
+// round trip of payload bytes. The server is either an
+// EventLoopGroup of 1 or 4 loops, or a thread per connection
+// (blocking java.net sockets), the model it replaces.
+
+// the thread count is the number of connections; like
+// CounterBenchmark, main() runs the benchmark once per count:
+// gradle jmh -PjmhMain=jconcurrent.bench.EchoBenchmark
+// (1 4 16 64 by default; -PjmhArgs='1 256' overrides them)
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EchoBenchmark {
+
+    @Param({"eventLoop-1", "eventLoop-4", "threadPerConnection"})
+    public String server;
+
+    @Param({"64", "4096"})
+    public int payload;
+
+    private EventLoopGroup group;
+    private ThreadPerConnection blocking;
+    private SocketAddress address;
+
+    @Setup
+    public void start() throws IOException {
+        InetSocketAddress any =
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        if (server.startsWith("eventLoop-")) {
+            int loops = Integer.parseInt(server.substring("eventLoop-".length()));
+            group = new EventLoopGroup("echo", loops, 16 * 1024);
+            address = group.bind(any, (c, data) -> c.write(data));
+        }
+        else if (server.equals("threadPerConnection")) {
+            blocking = new ThreadPerConnection(any);
+            address = blocking.address();
+        }
+        else {
+            throw new IllegalArgumentException("unknown server: " + server);
+        }
+    }
+
+    @TearDown
+    public void stop() throws IOException {
+        if (group != null) {
+            group.close();
+        }
+        if (blocking != null) {
+            blocking.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        SocketChannel channel;
+        ByteBuffer out;
+        ByteBuffer in;
+
+        @Setup
+        public void connect(EchoBenchmark bench) throws IOException {
+            channel = SocketChannel.open(bench.address);
+            channel.socket().setTcpNoDelay(true);
+            out = ByteBuffer.allocateDirect(bench.payload);
+            in = ByteBuffer.allocateDirect(bench.payload);
+        }
+
+        @TearDown
+        public void disconnect() throws IOException {
+            channel.close();
+        }
+    }
+
+    @Benchmark
+    public int roundTrip(Client c) throws IOException {
+        c.out.clear();
+        while (c.out.hasRemaining()) {
+            c.channel.write(c.out);
+        }
+        c.in.clear();
+        while (c.in.hasRemaining()) {
+            if (c.channel.read(c.in) < 0) {
+                throw new IOException("server closed the connection");
+            }
+        }
+        return c.in.position();
+    }
+
+    // the baseline: an accept thread, and a blocking thread per
+    // accepted connection
+    static final class ThreadPerConnection {
+
+        private final ServerSocket socket;
+
+        ThreadPerConnection(InetSocketAddress address) throws IOException {
+            socket = new ServerSocket();
+            socket.bind(address, 1024);
+            Thread acceptor = new Thread(this::accept, "echo-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        SocketAddress address() {
+            return socket.getLocalSocketAddress();
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+
+        private void accept() {
+            try {
+                for (;;) {
+                    Socket s = socket.accept();
+                    Thread t = new Thread(() -> echo(s), "echo-connection");
+                    t.setDaemon(true);
+                    t.start();
+                }
+            }
+            catch (IOException e) {
+                ;
+            }
+        }
+
+        private static void echo(Socket s) {
+            byte[] buf = new byte[16 * 1024];
+            try (Socket socket = s) {
+                socket.setTcpNoDelay(true);
+                int n;
+                while ((n = socket.getInputStream().read(buf)) >= 0) {
+                    socket.getOutputStream().write(buf, 0, n);
+                }
+            }
+            catch (IOException e) {
+                ;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int[] counts = {1, 4, 16, 64};
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int threads : counts) {
+            Options opts = new OptionsBuilder()
+                .include(EchoBenchmark.class.getName())
+                .threads(threads)
+                .build();
+            new Runner(opts).run();
+        }
+    }
+}
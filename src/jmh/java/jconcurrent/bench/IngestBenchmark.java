@@ -0,0 +1,91 @@
+package jconcurrent.bench;
+
+import jconcurrent.ParallelReduce;
+import jconcurrent.TextIngest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// a file of one double per line, read with a BufferedReader
+// and Double.parseDouble() against TextIngest, and the sum of
+// the values, for the cost of the computation next to the
+// cost of the parsing; the file is in the page cache after the
+// first iteration
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"1000000", "10000000"})
+        public int size;
+
+        Path file;
+        double[] nums;
+
+        @Setup
+        public void write() throws IOException {
+            file = Files.createTempFile("ingest", ".txt");
+            Random r = new Random(42);
+            try (BufferedWriter w =
+                     Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+                for (int i = 0; i < size; ++i) {
+                    w.write(Double.toString(r.nextInt(1000000) / 1000.0));
+                    w.newLine();
+                }
+            }
+            nums = TextIngest.readDoubles(file);
+        }
+
+        @TearDown
+        public void delete() throws IOException {
+            Files.delete(file);
+        }
+    }
+
+    @Benchmark
+    public double[] bufferedReader(Data d) throws IOException {
+        double[] nums = new double[d.size];
+        try (BufferedReader r =
+                 Files.newBufferedReader(d.file, StandardCharsets.US_ASCII)) {
+            int i = 0;
+            for (String line; (line = r.readLine()) != null; ) {
+                nums[i++] = Double.parseDouble(line);
+            }
+        }
+        return nums;
+    }
+
+    @Benchmark
+    public double[] ingest(Data d, BenchmarkPools p) {
+        return p.forkJoin.submit(() -> TextIngest.readDoubles(d.file)).join();
+    }
+
+    @Benchmark
+    public double sum(Data d, BenchmarkPools p) {
+        return p.forkJoin.submit(() -> ParallelReduce.sum(d.nums)).join();
+    }
+}
@@ -0,0 +1,90 @@
+package jconcurrent.bench;
+
+import jconcurrent.ElementKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// the ElementKernels leaf loops on one thread, from src into
+// dst: on the scalar loops here, on the Vector API in
+// VectorKernelBenchmark, which runs the same benchmarks in a
+// JVM started with the incubator module. 1024 doubles stay in
+// L1; 4M doubles (32 MB each array) stream from memory.
+
+// gradle jmh -PjmhArgs='KernelBenchmark'
+// (runs both classes)
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KernelBenchmark {
+
+    @Param({"1024", "4194304"})
+    public int size;
+
+    double[] src;
+    double[] dst;
+
+    // the kernels these benchmarks expect
+    boolean vectorized() {
+        return false;
+    }
+
+    @Setup
+    public void fill() {
+        if (ElementKernels.vectorized() != vectorized()) {
+            throw new IllegalStateException(
+                "ElementKernels.vectorized() is " + ElementKernels.vectorized());
+        }
+        Random r = new Random(42);
+        src = new double[size];
+        dst = new double[size];
+        for (int i = 0; i < size; ++i) {
+            src[i] = r.nextDouble() * 200.0;
+        }
+    }
+
+    @Benchmark
+    public double[] sqrt() {
+        ElementKernels.sqrt(src, dst, 0, size);
+        return dst;
+    }
+
+    @Benchmark
+    public double[] abs() {
+        ElementKernels.abs(src, dst, 0, size);
+        return dst;
+    }
+
+    @Benchmark
+    public double[] scale() {
+        ElementKernels.scale(src, dst, 0.5, 0, size);
+        return dst;
+    }
+
+    @Benchmark
+    public double[] multiplyAdd() {
+        ElementKernels.multiplyAdd(src, dst, 2.0, -1.0, 0, size);
+        return dst;
+    }
+
+    @Benchmark
+    public double[] clamp() {
+        ElementKernels.clamp(src, dst, 10.0, 150.0, 0, size);
+        return dst;
+    }
+}
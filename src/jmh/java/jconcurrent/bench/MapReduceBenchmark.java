@@ -0,0 +1,121 @@
+package jconcurrent.bench;
+
+import jconcurrent.MapReduce;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// the bytes per status code (four hot keys) or per user (many
+// keys) of an access log, and the words of the log: MapReduce
+// with its per-leaf tables against the same MapReduce whose
+// mapper merges into one shared ConcurrentHashMap instead of
+// emitting, so that only the reduction differs
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapReduceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"1000000"})
+        public int lines;
+
+        // 1: status, 2: user
+        @Param({"1", "2"})
+        public int keyField;
+
+        String text;
+
+        @Setup
+        public void fill() {
+            Random r = new Random(42);
+            String[] methods = {"GET", "GET", "GET", "POST"};
+            int[] statuses = {200, 200, 200, 304, 404, 500};
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < lines; ++i) {
+                b.append(methods[r.nextInt(methods.length)]).append(' ')
+                    .append(statuses[r.nextInt(statuses.length)]).append(' ')
+                    .append(r.nextInt(100000)).append(' ')
+                    .append(r.nextInt(50000)).append('\n');
+            }
+            text = b.toString();
+        }
+    }
+
+    // the k-th space-separated field, as a number
+    static long field(CharSequence line, int k) {
+        int i = 0;
+        for (int f = 0; f < k; ++f) {
+            while (line.charAt(i) != ' ') {
+                ++i;
+            }
+            ++i;
+        }
+        long v = 0;
+        for (; i < line.length() && line.charAt(i) != ' '; ++i) {
+            v = v * 10 + (line.charAt(i) - '0');
+        }
+        return v;
+    }
+
+    @Benchmark
+    public MapReduce.Groups groupBy(Data d, BenchmarkPools p) {
+        int k = d.keyField;
+        return p.forkJoin.submit(() -> MapReduce.groupBy(d.text,
+            (line, out) -> out.emit(field(line, k), field(line, 3)),
+            Long::sum)).join();
+    }
+
+    @Benchmark
+    public Map<Long, Long> sharedMap(Data d, BenchmarkPools p) {
+        int k = d.keyField;
+        Map<Long, Long> m = new ConcurrentHashMap<>();
+        p.forkJoin.submit(() -> MapReduce.groupBy(d.text,
+            (line, out) -> m.merge(field(line, k), field(line, 3), Long::sum),
+            Long::sum)).join();
+        return m;
+    }
+
+    @Benchmark
+    public Map<String, Long> wordCount(Data d, BenchmarkPools p) {
+        return p.forkJoin.submit(() -> MapReduce.wordCount(d.text)).join();
+    }
+
+    @Benchmark
+    public Map<String, Long> sharedWordCount(Data d, BenchmarkPools p) {
+        Map<String, Long> m = new ConcurrentHashMap<>();
+        p.forkJoin.submit(() -> MapReduce.groupBy(d.text, (line, out) -> {
+            int n = line.length();
+            for (int i = 0; i < n; ) {
+                while (i < n && !Character.isLetterOrDigit(line.charAt(i))) {
+                    ++i;
+                }
+                int s = i;
+                while (i < n && Character.isLetterOrDigit(line.charAt(i))) {
+                    ++i;
+                }
+                if (i > s) {
+                    m.merge(line.subSequence(s, i).toString(), 1L, Long::sum);
+                }
+            }
+        }, Long::sum)).join();
+        return m;
+    }
+}
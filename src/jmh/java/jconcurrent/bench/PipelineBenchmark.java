@@ -0,0 +1,94 @@
+package jconcurrent.bench;
+
+import jconcurrent.ElementKernels;
+import jconcurrent.FusedPipeline;
+import jconcurrent.ParallelReduce;
+import jconcurrent.ParallelTransform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// sqrt, then scale, then clamp, then sum, over an array that
+// does not fit in the caches: one ParallelTransform per step
+// and a ParallelReduce.sum() (four passes over a working copy,
+// plus the copy), the same chain as a FusedPipeline of
+// ElementKernels and of lambdas (one pass), and as a parallel
+// DoubleStream
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"1000000", "20000000"})
+        public int size;
+
+        double[] nums;
+        double[] work;
+
+        @Setup
+        public void fill() {
+            nums = new double[size];
+            work = new double[size];
+            for (int i = 0; i < size; ++i) {
+                nums[i] = (double)(i % 10000);
+            }
+        }
+    }
+
+    @Benchmark
+    public double multiPass(Data d, BenchmarkPools p) {
+        return p.forkJoin.submit(() -> {
+            ParallelTransform.apply(ElementKernels.sqrt(), d.nums, d.work);
+            ParallelTransform.apply(ElementKernels.scale(2.0), d.work);
+            ParallelTransform.apply(ElementKernels.clamp(10, 150), d.work);
+            return ParallelReduce.sum(d.work);
+        }).join();
+    }
+
+    @Benchmark
+    public double fusedKernels(Data d, BenchmarkPools p) {
+        return p.forkJoin.submit(() -> FusedPipeline.of(d.nums)
+            .transform(ElementKernels.sqrt())
+            .transform(ElementKernels.scale(2.0))
+            .transform(ElementKernels.clamp(10, 150))
+            .sum()
+        ).join();
+    }
+
+    @Benchmark
+    public double fusedLambdas(Data d, BenchmarkPools p) {
+        return p.forkJoin.submit(() -> FusedPipeline.of(d.nums)
+            .map(Math::sqrt)
+            .map(x -> x * 2.0)
+            .map(x -> Math.min(Math.max(x, 10), 150))
+            .sum()
+        ).join();
+    }
+
+    @Benchmark
+    public double parallelStream(Data d, BenchmarkPools p) {
+        return p.forkJoin.submit(() -> Arrays.stream(d.nums).parallel()
+            .map(Math::sqrt)
+            .map(x -> x * 2.0)
+            .map(x -> Math.min(Math.max(x, 10), 150))
+            .sum()
+        ).join();
+    }
+}
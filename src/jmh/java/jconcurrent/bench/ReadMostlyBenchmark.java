@@ -0,0 +1,115 @@
+package jconcurrent.bench;
+
+import jconcurrent.ReadMostly;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// every benchmark thread looks up routes in one shared table,
+// and once in a while replaces one; writesPerMille is the share
+// of the operations that are writes
+
+// like CounterBenchmark, main() runs the benchmark once per
+// thread count:
+// gradle jmh -PjmhMain=jconcurrent.bench.ReadMostlyBenchmark
+// (1 2 4 ... 64 by default; -PjmhArgs='1 8 64' overrides them)
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadMostlyBenchmark {
+
+    private static final int ROUTES = 1024;
+
+    // a route is a (next hop, cost) pair, written together
+    static final class RoutingTable {
+
+        final long[] hops = new long[ROUTES];
+        final long[] costs = new long[ROUTES];
+
+        long lookup(int key) {
+            int i = key & (ROUTES - 1);
+            return hops[i] + costs[i];
+        }
+
+        void update(int key, long hop) {
+            int i = key & (ROUTES - 1);
+            hops[i] = hop;
+            costs[i] = -hop;
+        }
+    }
+
+    @Param({"stamped", "readWriteLock", "monitor"})
+    public String impl;
+
+    @Param({"0", "1", "10", "100"})
+    public int writesPerMille;
+
+    private ReadMostly<RoutingTable> table;
+
+    @Setup
+    public void setUp() {
+        RoutingTable t = new RoutingTable();
+        switch (impl) {
+            case "stamped":
+                table = ReadMostly.stamped(t);
+                break;
+            case "readWriteLock":
+                table = ReadMostly.readWriteLock(t, false);
+                break;
+            case "monitor":
+                table = ReadMostly.monitor(t);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown impl: " + impl);
+        }
+    }
+
+    @Benchmark
+    public long access() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int key = random.nextInt();
+        if (random.nextInt(1000) < writesPerMille) {
+            long hop = random.nextLong();
+            table.write(t -> t.update(key, hop));
+            return hop;
+        }
+        // lookup() only reads two array elements at a masked index
+        return table.readOptimistic(t -> t.lookup(key));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int[] counts = {1, 2, 4, 8, 16, 32, 64};
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int threads : counts) {
+            Options opts = new OptionsBuilder()
+                .include(ReadMostlyBenchmark.class.getName())
+                .threads(threads)
+                .build();
+            new Runner(opts).run();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package jconcurrent.bench;
+
+import jconcurrent.ParallelScan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// an in-place running sum (and running max) of a double[], run
+// sequentially, through Arrays.parallelPrefix() and as
+// ParallelScan, with its int-coded operation and with the same
+// operation passed as a lambda
+
+// the data is refilled before each iteration; repeated running
+// sums overflow to infinity after a few dozen invocations, but
+// adding infinities costs the same as adding normal numbers
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"1000000", "10000000"})
+        public int size;
+
+        @Param({"sum", "max"})
+        public String op;
+
+        double[] nums;
+
+        @Setup(Level.Iteration)
+        public void fill() {
+            if (nums == null) {
+                nums = new double[size];
+            }
+            for (int i = 0; i < nums.length; ++i) {
+                nums[i] = (double)(i % 1000);
+            }
+        }
+
+        boolean sum() {
+            return op.equals("sum");
+        }
+    }
+
+    @Benchmark
+    public double[] sequential(Data d) {
+        double[] nums = d.nums;
+        double acc = nums[0];
+        if (d.sum()) {
+            for (int i = 1; i < nums.length; ++i) {
+                acc += nums[i];
+                nums[i] = acc;
+            }
+        }
+        else {
+            for (int i = 1; i < nums.length; ++i) {
+                acc = Math.max(acc, nums[i]);
+                nums[i] = acc;
+            }
+        }
+        return nums;
+    }
+
+    @Benchmark
+    public double[] parallelPrefix(Data d, BenchmarkPools p) {
+        double[] nums = d.nums;
+        if (d.sum()) {
+            p.forkJoin.submit(
+                () -> Arrays.parallelPrefix(nums, Double::sum)).join();
+        }
+        else {
+            p.forkJoin.submit(
+                () -> Arrays.parallelPrefix(nums, Math::max)).join();
+        }
+        return nums;
+    }
+
+    @Benchmark
+    public double[] parallelScan(Data d, BenchmarkPools p) {
+        double[] nums = d.nums;
+        if (d.sum()) {
+            p.forkJoin.submit(() -> ParallelScan.runningSum(nums)).join();
+        }
+        else {
+            p.forkJoin.submit(() -> ParallelScan.runningMax(nums)).join();
+        }
+        return nums;
+    }
+
+    @Benchmark
+    public double[] parallelScanOperator(Data d, BenchmarkPools p) {
+        double[] nums = d.nums;
+        if (d.sum()) {
+            p.forkJoin.submit(
+                () -> ParallelScan.scan(nums, Double::sum)).join();
+        }
+        else {
+            p.forkJoin.submit(
+                () -> ParallelScan.scan(nums, Math::max)).join();
+        }
+        return nums;
+    }
+}
@@ -0,0 +1,135 @@
+package jconcurrent.bench;
+
+import jconcurrent.ParallelSort;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// sorting three days of millisecond timestamps: the
+// Arrays.parallelSort() of a long[] against the radix sort,
+// the sort of (timestamp, record index) pairs as objects
+// against sortByKey(), and the merge of sorted runs (one per
+// log file, say) as a concatenation and a parallelSort()
+// against the k-way merge
+
+// every benchmark sorts a fresh copy of the same data, and the
+// copy is part of what is measured
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+
+    static final class Entry {
+
+        final long key;
+        final int index;
+
+        Entry(long key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"1000000", "10000000"})
+        public int size;
+
+        @Param({"16"})
+        public int runs;
+
+        long[] timestamps;
+        long[][] sortedRuns;
+
+        @Setup
+        public void fill() {
+            Random r = new Random(42);
+            long t0 = 1700000000000L;
+            timestamps = new long[size];
+            for (int i = 0; i < size; ++i) {
+                timestamps[i] = t0 + r.nextInt(3 * 24 * 3600 * 1000);
+            }
+            sortedRuns = new long[runs][];
+            int from = 0;
+            for (int i = 0; i < runs; ++i) {
+                int to = (int)((long)size * (i + 1) / runs);
+                sortedRuns[i] = Arrays.copyOfRange(timestamps, from, to);
+                Arrays.sort(sortedRuns[i]);
+                from = to;
+            }
+        }
+    }
+
+    @Benchmark
+    public long[] parallelSort(Data d, BenchmarkPools p) {
+        long[] data = d.timestamps.clone();
+        p.forkJoin.submit(() -> Arrays.parallelSort(data)).join();
+        return data;
+    }
+
+    @Benchmark
+    public long[] radixSort(Data d, BenchmarkPools p) {
+        long[] data = d.timestamps.clone();
+        p.forkJoin.submit(() -> ParallelSort.radixSort(data)).join();
+        return data;
+    }
+
+    @Benchmark
+    public Entry[] parallelSortEntries(Data d, BenchmarkPools p) {
+        long[] keys = d.timestamps;
+        Entry[] entries = new Entry[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            entries[i] = new Entry(keys[i], i);
+        }
+        p.forkJoin.submit(() -> Arrays.parallelSort(
+            entries, Comparator.comparingLong(e -> e.key))).join();
+        return entries;
+    }
+
+    @Benchmark
+    public int[] sortByKey(Data d, BenchmarkPools p) {
+        long[] keys = d.timestamps.clone();
+        int[] order = new int[keys.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        p.forkJoin.submit(() -> ParallelSort.sortByKey(keys, order)).join();
+        return order;
+    }
+
+    @Benchmark
+    public long[] concatenateAndSort(Data d, BenchmarkPools p) {
+        long[] data = new long[d.size];
+        int at = 0;
+        for (long[] run : d.sortedRuns) {
+            System.arraycopy(run, 0, data, at, run.length);
+            at += run.length;
+        }
+        p.forkJoin.submit(() -> Arrays.parallelSort(data)).join();
+        return data;
+    }
+
+    @Benchmark
+    public long[] merge(Data d, BenchmarkPools p) {
+        long[] data = new long[d.size];
+        p.forkJoin.submit(() -> ParallelSort.merge(d.sortedRuns, data)).join();
+        return data;
+    }
+}
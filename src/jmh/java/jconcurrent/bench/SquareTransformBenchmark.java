@@ -0,0 +1,151 @@
+package jconcurrent.bench;
+
+import jconcurrent.ElementKernels;
+import jconcurrent.ParallelTransform;
+import jconcurrent.ThresholdTuner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+// the in-place sqrt transform of testDemoForkJoinAction, run
+// sequentially, as ExampleSquareTransform with its threshold
+// swept, as ParallelTransform with the sqrt kernel, through
+// Arrays.parallelSetAll() and split across a fixed pool
+
+// the data is refilled before each iteration; repeated square
+// roots drive the values towards 1.0, but the cost of sqrt does
+// not depend on its (normal) input
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SquareTransformBenchmark {
+
+    // ExampleSquareTransform (see ForkJoinFrameworkBasisTest),
+    // which lives in the default package of the test tree, with
+    // the threshold passed in; threshold 1000 is the original
+    static class SquareTransform extends RecursiveAction {
+
+        private final double[] data;
+        private final int start;
+        private final int end;
+        private final int seqThreshold;
+
+        SquareTransform(double[] vals, int s, int e, int t) {
+            data = vals;
+            start = s;
+            end = e;
+            seqThreshold = t;
+        }
+
+        static void leaf(double[] data, int start, int end) {
+            for (int i = start; i < end; ++i) {
+                data[i] = Math.sqrt(data[i]);
+            }
+        }
+
+        public void compute() {
+            if ((end - start) < seqThreshold) {
+                leaf(data, start, end);
+            }
+            else {
+                int mid = (start + end) / 2;
+                invokeAll(
+                    new SquareTransform(data, start, mid, seqThreshold),
+                    new SquareTransform(data, mid, end, seqThreshold)
+                );
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"100000", "1000000", "10000000"})
+        public int size;
+
+        double[] nums;
+
+        @Setup(Level.Iteration)
+        public void fill() {
+            if (nums == null) {
+                nums = new double[size];
+            }
+            for (int i = 0; i < nums.length; ++i) {
+                nums[i] = (double)i;
+            }
+        }
+    }
+
+    // only the benchmarks that take a Split are swept over
+    // thresholds; 0 asks ThresholdTuner for one
+    @State(Scope.Benchmark)
+    public static class Split {
+
+        @Param({"0", "500", "1000", "10000", "100000"})
+        public int threshold;
+    }
+
+    @Benchmark
+    public double[] sequential(Data d) {
+        SquareTransform.leaf(d.nums, 0, d.nums.length);
+        return d.nums;
+    }
+
+    @Benchmark
+    public double[] forkJoin(Data d, BenchmarkPools p, Split s) {
+        double[] nums = d.nums;
+        int t = s.threshold;
+        if (t == 0) {
+            // probed on a scratch array: the transform is in place
+            t = ThresholdTuner.shared().threshold(
+                SquareTransform.class, nums.length, p.parallelism,
+                (start, end) -> SquareTransform.leaf(
+                    new double[end - start], 0, end - start));
+        }
+        p.forkJoin.invoke(new SquareTransform(nums, 0, nums.length, t));
+        return nums;
+    }
+
+    @Benchmark
+    public double[] parallelTransform(Data d, BenchmarkPools p) {
+        p.forkJoin.submit(
+            () -> ParallelTransform.apply(ElementKernels.sqrt(), d.nums)
+        ).join();
+        return d.nums;
+    }
+
+    @Benchmark
+    public double[] parallelSetAll(Data d, BenchmarkPools p) {
+        double[] nums = d.nums;
+        p.forkJoin.submit(
+            () -> Arrays.parallelSetAll(nums, i -> Math.sqrt(nums[i]))
+        ).join();
+        return nums;
+    }
+
+    @Benchmark
+    public double[] fixedThreadPool(Data d, BenchmarkPools p)
+        throws InterruptedException, ExecutionException {
+        double[] nums = d.nums;
+        p.splitAndWait(nums.length,
+            (start, end) -> SquareTransform.leaf(nums, start, end));
+        return nums;
+    }
+}
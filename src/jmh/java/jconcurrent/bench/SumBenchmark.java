@@ -0,0 +1,154 @@
+package jconcurrent.bench;
+
+import jconcurrent.ParallelReduce;
+import jconcurrent.ThresholdTuner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+// the sum of testDemoForkJoinTask, run sequentially, as
+// ExampleSumTask with its threshold swept, as
+// ParallelReduce.sum(), through DoubleStream.parallel() and
+// split across a fixed pool
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SumBenchmark {
+
+    // ExampleSumTask (see ForkJoinFrameworkBasisTest), which
+    // lives in the default package of the test tree, with the
+    // threshold passed in; threshold 500 is the original
+    static class SumTask extends RecursiveTask<Double> {
+
+        private final double[] data;
+        private final int start;
+        private final int end;
+        private final int seqThreshold;
+
+        SumTask(double[] vals, int s, int e, int t) {
+            data = vals;
+            start = s;
+            end = e;
+            seqThreshold = t;
+        }
+
+        static double leaf(double[] data, int start, int end) {
+            double sum = 0;
+            for (int i = start; i < end; ++i) {
+                sum += data[i];
+            }
+            return sum;
+        }
+
+        public Double compute() {
+            if ((end - start) < seqThreshold) {
+                return leaf(data, start, end);
+            }
+            else {
+                int mid = (start + end) / 2;
+                SumTask first =
+                    new SumTask(data, start, mid, seqThreshold);
+                SumTask second =
+                    new SumTask(data, mid, end, seqThreshold);
+                first.fork();
+                second.fork();
+                return first.join() + second.join();
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"100000", "1000000", "10000000"})
+        public int size;
+
+        double[] nums;
+
+        @Setup
+        public void fill() {
+            nums = new double[size];
+            for (int i = 0; i < nums.length; ++i) {
+                nums[i] = (double)
+                    ((i % 2) == 0 ? i : -i);
+            }
+        }
+    }
+
+    // only the benchmarks that take a Split are swept over
+    // thresholds; 0 asks ThresholdTuner for one
+    @State(Scope.Benchmark)
+    public static class Split {
+
+        @Param({"0", "500", "1000", "10000", "100000"})
+        public int threshold;
+    }
+
+    @Benchmark
+    public double sequential(Data d) {
+        return SumTask.leaf(d.nums, 0, d.nums.length);
+    }
+
+    @Benchmark
+    public double forkJoin(Data d, BenchmarkPools p, Split s) {
+        double[] nums = d.nums;
+        int t = s.threshold;
+        if (t == 0) {
+            t = ThresholdTuner.shared().threshold(
+                SumTask.class, nums.length, p.parallelism,
+                (start, end) -> SumTask.leaf(nums, start, end));
+        }
+        return p.forkJoin.invoke(new SumTask(nums, 0, nums.length, t));
+    }
+
+    @Benchmark
+    public double parallelReduce(Data d, BenchmarkPools p) {
+        return p.forkJoin.submit(
+            () -> ParallelReduce.sum(d.nums)
+        ).join();
+    }
+
+    @Benchmark
+    public double parallelStream(Data d, BenchmarkPools p) {
+        return p.forkJoin.submit(
+            () -> Arrays.stream(d.nums).parallel().sum()
+        ).join();
+    }
+
+    @Benchmark
+    public double fixedThreadPool(Data d, BenchmarkPools p)
+        throws InterruptedException, ExecutionException {
+        double[] nums = d.nums;
+        int chunk = (nums.length + p.parallelism - 1) / p.parallelism;
+        List<Future<Double>> futures = new ArrayList<>(p.parallelism);
+        for (int start = 0; start < nums.length; start += chunk) {
+            int s = start;
+            int e = Math.min(start + chunk, nums.length);
+            futures.add(p.fixed.submit(() -> SumTask.leaf(nums, s, e)));
+        }
+        double sum = 0;
+        for (Future<Double> f : futures) {
+            sum += f.get();
+        }
+        return sum;
+    }
+}
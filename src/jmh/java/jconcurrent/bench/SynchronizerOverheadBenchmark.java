@@ -0,0 +1,62 @@
+package jconcurrent.bench;
+
+import jconcurrent.InstrumentedCountDownLatch;
+import jconcurrent.InstrumentedSemaphore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// what the instrumentation costs when nobody waits: an
+// acquire()/release() pair on a semaphore with free permits,
+// and an await() on an open latch, plain against instrumented
+
+// gradle jmh -PjmhArgs='SynchronizerOverheadBenchmark'
+// (add -t 4 to see the StripedCounter spread the updates)
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SynchronizerOverheadBenchmark {
+
+    private final Semaphore semaphore = new Semaphore(1 << 20);
+    private final Semaphore instrumentedSemaphore =
+        new InstrumentedSemaphore("bench", 1 << 20);
+    private final CountDownLatch latch = new CountDownLatch(0);
+    private final CountDownLatch instrumentedLatch =
+        new InstrumentedCountDownLatch("bench", 0);
+
+    @Benchmark
+    public void semaphore() throws InterruptedException {
+        semaphore.acquire();
+        semaphore.release();
+    }
+
+    @Benchmark
+    public void instrumentedSemaphore() throws InterruptedException {
+        instrumentedSemaphore.acquire();
+        instrumentedSemaphore.release();
+    }
+
+    @Benchmark
+    public void latch() throws InterruptedException {
+        latch.await();
+    }
+
+    @Benchmark
+    public void instrumentedLatch() throws InterruptedException {
+        instrumentedLatch.await();
+    }
+}
@@ -0,0 +1,13 @@
+package jconcurrent.bench;
+
+import org.openjdk.jmh.annotations.Fork;
+
+// KernelBenchmark with the kernels on the incubator Vector API
+
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorKernelBenchmark extends KernelBenchmark {
+
+    boolean vectorized() {
+        return true;
+    }
+}
@@ -1,5 +0,0 @@
-/*
- * This Java source file was generated by the Gradle 'init' task.
- */
-public class PlaceHolderLibraryClass {
-}
@@ -0,0 +1,278 @@
+package jconcurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// java reference 9
+// P939/974
+// callable interface:
+// represents a thread that returns a value;
+
+// FutureBasisTest submits a Callable and blocks in fut.get():
+// the calling thread does nothing until the result is there,
+// and if it is a pool thread the pool is one thread short.
+
+// AsyncComposition composes CompletableFutures instead, so that
+// nothing blocks: a fan-out starts the work, and the fan-in is
+// a future that completes once the results are in.
+
+// > every future returned here is completed through the given
+// executor, so the continuations attached to it (thenApply,
+// thenAccept... without Async) run on that executor, never in
+// the thread of a source future or of the timeout scheduler.
+
+// > allOf() and anyOf() take any number of futures (thousands)
+// with one callback per future and one counter; allOf() fails
+// as soon as one future fails, where CompletableFuture.allOf()
+// waits for all of them, and anyOf() completes with the first
+// success, where CompletableFuture.anyOf() completes with the
+// first outcome, failures included.
+
+// > mapAsync() starts at most maxConcurrency calls at a time,
+// and the next one when one completes.
+
+// a timeout completes the returned future with a
+// TimeoutException; the work behind the sources is not
+// cancelled.
+
+public final class AsyncComposition {
+
+    private AsyncComposition() {
+    }
+
+    // the non-blocking counterpart of ExecutorService.submit(),
+    // for a Callable (a checked exception fails the future)
+    public static <T> CompletableFuture<T> supplyAsync(
+        Callable<T> task, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(task.call());
+            }
+            catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    // source, or a TimeoutException after the timeout
+    public static <T> CompletableFuture<T> withTimeout(
+        CompletableFuture<T> source, long timeout, TimeUnit unit,
+        Executor executor) {
+        // the timeout completes first in the scheduler thread;
+        // result is then completed from the executor
+        CompletableFuture<T> first = new CompletableFuture<>();
+        source.whenComplete((v, t) -> {
+            if (t != null) {
+                first.completeExceptionally(t);
+            }
+            else {
+                first.complete(v);
+            }
+        });
+        first.orTimeout(timeout, unit);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        first.whenComplete((v, t) -> relay(result, v, t, executor));
+        return result;
+    }
+
+    // the results in the order of the futures; fails with the
+    // first failure
+    public static <T> CompletableFuture<List<T>> allOf(
+        Collection<? extends CompletableFuture<? extends T>> futures,
+        Executor executor) {
+        int n = futures.size();
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+        if (n == 0) {
+            executor.execute(() -> result.complete(new ArrayList<>()));
+            return result;
+        }
+        Object[] values = new Object[n];
+        AtomicInteger remaining = new AtomicInteger(n);
+        int i = 0;
+        for (CompletableFuture<? extends T> f : futures) {
+            int index = i++;
+            f.whenComplete((v, t) -> {
+                if (t != null) {
+                    relay(result, null, t, executor);
+                }
+                else {
+                    values[index] = v;
+                    // the decrement publishes values[index] to
+                    // the thread that brings remaining to 0
+                    if (remaining.decrementAndGet() == 0) {
+                        relay(result, asList(values), null, executor);
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    public static <T> CompletableFuture<List<T>> allOf(
+        Collection<? extends CompletableFuture<? extends T>> futures,
+        long timeout, TimeUnit unit, Executor executor) {
+        return withTimeout(allOf(futures, executor), timeout, unit, executor);
+    }
+
+    // the first successful result; fails with the last failure
+    // if every future fails
+    public static <T> CompletableFuture<T> anyOf(
+        Collection<? extends CompletableFuture<? extends T>> futures,
+        Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (futures.isEmpty()) {
+            executor.execute(() -> result.completeExceptionally(
+                new IllegalArgumentException("no futures")));
+            return result;
+        }
+        // the first success takes the counter below zero, so that
+        // neither a later success nor the last failure is relayed;
+        // relay() completes result later, on the executor
+        AtomicInteger failures = new AtomicInteger(futures.size());
+        for (CompletableFuture<? extends T> f : futures) {
+            f.whenComplete((v, t) -> {
+                if (t == null) {
+                    if (failures.getAndSet(-1) > 0) {
+                        relay(result, v, null, executor);
+                    }
+                }
+                else if (failures.decrementAndGet() == 0) {
+                    relay(result, null, t, executor);
+                }
+            });
+        }
+        return result;
+    }
+
+    public static <T> CompletableFuture<T> anyOf(
+        Collection<? extends CompletableFuture<? extends T>> futures,
+        long timeout, TimeUnit unit, Executor executor) {
+        return withTimeout(anyOf(futures, executor), timeout, unit, executor);
+    }
+
+    // applies fn to every item, with at most maxConcurrency of
+    // the returned futures incomplete at a time; the results are
+    // in the order of the items. After a failure no new call is
+    // started, and the result fails with it (a null future from
+    // fn is a NullPointerException).
+    public static <T, R> CompletableFuture<List<R>> mapAsync(
+        Collection<? extends T> items,
+        Function<? super T, ? extends CompletableFuture<? extends R>> fn,
+        int maxConcurrency, Executor executor) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException(
+                "maxConcurrency must be positive: " + maxConcurrency);
+        }
+        Mapper<T, R> m = new Mapper<>(
+            new ArrayList<T>(items), fn, executor);
+        if (m.items.isEmpty()) {
+            executor.execute(() -> m.result.complete(new ArrayList<>()));
+            return m.result;
+        }
+        int k = Math.min(maxConcurrency, m.items.size());
+        for (int i = 0; i < k; ++i) {
+            executor.execute(m::startNext);
+        }
+        return m.result;
+    }
+
+    private static final class Mapper<T, R> {
+
+        final List<T> items;
+        final Function<? super T, ? extends CompletableFuture<? extends R>> fn;
+        final Executor executor;
+        final Object[] values;
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining;
+        final CompletableFuture<List<R>> result = new CompletableFuture<>();
+        // set before a failure is relayed, which completes result
+        // only later, from the executor
+        volatile boolean failed;
+
+        Mapper(List<T> items,
+               Function<? super T, ? extends CompletableFuture<? extends R>> fn,
+               Executor executor) {
+            this.items = items;
+            this.fn = fn;
+            this.executor = executor;
+            values = new Object[items.size()];
+            remaining = new AtomicInteger(items.size());
+        }
+
+        void startNext() {
+            if (failed || result.isDone()) {
+                return;
+            }
+            int i = next.getAndIncrement();
+            if (i >= items.size()) {
+                return;
+            }
+            CompletableFuture<? extends R> f;
+            try {
+                f = Objects.requireNonNull(fn.apply(items.get(i)),
+                                           "fn returned null");
+            }
+            catch (Throwable t) {
+                fail(t);
+                return;
+            }
+            // the next call is started from the executor, so that
+            // futures that are already complete do not recurse
+            f.whenCompleteAsync((v, t) -> {
+                if (t != null) {
+                    fail(t);
+                    return;
+                }
+                values[i] = v;
+                if (remaining.decrementAndGet() == 0) {
+                    relay(result, asList(values), null, executor);
+                }
+                else {
+                    startNext();
+                }
+            }, executor);
+        }
+
+        private void fail(Throwable t) {
+            failed = true;
+            relay(result, null, t, executor);
+        }
+    }
+
+    // completes result from the executor, unwrapping the
+    // CompletionException of a dependent stage
+    private static <T> void relay(
+        CompletableFuture<T> result, T value, Throwable failure,
+        Executor executor) {
+        if (result.isDone()) {
+            return;
+        }
+        Throwable cause = failure instanceof CompletionException
+            && failure.getCause() != null ? failure.getCause() : failure;
+        executor.execute(() -> {
+            if (cause != null) {
+                result.completeExceptionally(cause);
+            }
+            else {
+                result.complete(value);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> asList(Object[] values) {
+        return (List<T>)Arrays.asList(values);
+    }
+}
@@ -0,0 +1,237 @@
+package jconcurrent;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.function.DoubleBinaryOperator;
+
+// java reference 9
+// P925/960
+// when a set of two or more threads must wait at a
+// predetermined execution point until all threads
+// in the set have reached that point
+
+// BspIteration runs an iterative computation over a double[]
+// in the bulk-synchronous-parallel style: the array is cut
+// into one contiguous partition per worker, and every
+// superstep each worker computes its partition of the next
+// state from the current one, then waits at the barrier.
+
+// > the state is double-buffered: a superstep reads src and
+// writes dst, and the barrier action swaps the two arrays, so
+// nothing is copied between supersteps. (A Jacobi sweep is
+// exactly this; so is a PageRank iteration.)
+
+// > every worker returns a partial result for its partition
+// (a residual, a norm...) which it stores in its own slot of a
+// padded array. The barrier action runs once per superstep,
+// in the last thread to arrive, after every worker has
+// stored its partial: it folds the slots with the reduction
+// operator and asks the convergence test whether to stop.
+// The reduction allocates nothing (CyclicBarrier itself
+// allocates a small generation object per trip).
+
+// the caller is worker 0; the other workers are threads
+// started for the run. Interrupting the caller while it waits
+// at the barrier ends the run: the workers stop at their next
+// arrival and run() throws the InterruptedException.
+
+public final class BspIteration {
+
+    public interface Kernel {
+
+        // computes dst[start, end) from src for the given
+        // superstep (counted from 0); returns the partial result
+        // of the partition
+        double superstep(double[] src, double[] dst,
+                         int start, int end, int step);
+    }
+
+    public interface Convergence {
+
+        // reduced is the reduction of the partials of the
+        // superstep that has just completed
+        boolean converged(int step, double reduced);
+    }
+
+    // 128 bytes between two partials, as in StripedCounter
+    static final int STRIDE = 16;
+
+    private final int workers;
+
+    private int steps;
+    private double reduced = Double.NaN;
+
+    public BspIteration(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException(
+                "workers must be positive: " + workers);
+        }
+        this.workers = workers;
+    }
+
+    public int workers() {
+        return workers;
+    }
+
+    // the number of supersteps run by the last run
+    public int steps() {
+        return steps;
+    }
+
+    // the last reduced value of the last run (NaN before any)
+    public double reduced() {
+        return reduced;
+    }
+
+    // runs supersteps from state until the convergence test is
+    // met or maxSteps have run; scratch must have the length of
+    // state. Returns the array holding the final state, i.e.
+    // state after an even number of supersteps, scratch
+    // otherwise.
+    public double[] run(double[] state, double[] scratch, Kernel kernel,
+                        DoubleBinaryOperator reduction, double identity,
+                        Convergence convergence, int maxSteps)
+        throws InterruptedException, ExecutionException {
+        if (state.length != scratch.length) {
+            throw new IllegalArgumentException(
+                "state and scratch lengths differ: "
+                + state.length + " != " + scratch.length);
+        }
+        if (state == scratch) {
+            throw new IllegalArgumentException(
+                "state and scratch must be distinct arrays");
+        }
+        if (maxSteps < 0) {
+            throw new IllegalArgumentException(
+                "negative maxSteps: " + maxSteps);
+        }
+        steps = 0;
+        reduced = Double.NaN;
+        if (maxSteps == 0) {
+            return state;
+        }
+
+        Run r = new Run(state, scratch, kernel, reduction, identity,
+                        convergence, maxSteps);
+        Thread[] threads = new Thread[workers - 1];
+        for (int w = 1; w < workers; ++w) {
+            final int id = w;
+            threads[w - 1] = new Thread(() -> r.work(id), "bsp-worker-" + w);
+            threads[w - 1].start();
+        }
+        r.work(0);
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        steps = r.step;
+        reduced = r.reduced;
+        if (r.failure instanceof InterruptedException) {
+            throw (InterruptedException)r.failure;
+        }
+        if (r.failure != null) {
+            throw new ExecutionException(r.failure);
+        }
+        return r.src;
+    }
+
+    private final class Run implements Runnable {
+
+        final Kernel kernel;
+        final DoubleBinaryOperator reduction;
+        final double identity;
+        final Convergence convergence;
+        final int maxSteps;
+        final int length;
+
+        final double[] partials = new double[workers * STRIDE];
+        final CyclicBarrier barrier;
+
+        // written by the barrier action only; the barrier makes
+        // them visible to every worker of the next superstep
+        double[] src;
+        double[] dst;
+        int step;
+        double reduced = Double.NaN;
+        boolean done;
+
+        // the first failure, set under the lock of the run
+        Throwable failure;
+
+        Run(double[] state, double[] scratch, Kernel kernel,
+            DoubleBinaryOperator reduction, double identity,
+            Convergence convergence, int maxSteps) {
+            src = state;
+            dst = scratch;
+            length = state.length;
+            this.kernel = kernel;
+            this.reduction = reduction;
+            this.identity = identity;
+            this.convergence = convergence;
+            this.maxSteps = maxSteps;
+            barrier = new CyclicBarrier(workers, this);
+        }
+
+        void work(int w) {
+            int start = (int)((long)length * w / workers);
+            int end = (int)((long)length * (w + 1) / workers);
+            try {
+                for (;;) {
+                    double partial;
+                    try {
+                        partial = kernel.superstep(src, dst, start, end, step);
+                    }
+                    catch (Throwable t) {
+                        fail(t);
+                        // still arrives, so the others are released
+                        partial = identity;
+                    }
+                    partials[w * STRIDE] = partial;
+                    barrier.await();
+                    if (done) {
+                        return;
+                    }
+                }
+            }
+            catch (InterruptedException | BrokenBarrierException e) {
+                // the barrier stays broken: a worker still in its
+                // superstep gets a BrokenBarrierException when it
+                // arrives, and ends too
+                fail(e);
+            }
+        }
+
+        synchronized void fail(Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+        }
+
+        // the barrier action
+        public void run() {
+            try {
+                double acc = identity;
+                for (int w = 0; w < workers; ++w) {
+                    acc = reduction.applyAsDouble(acc, partials[w * STRIDE]);
+                }
+                reduced = acc;
+                double[] t = src;
+                src = dst;
+                dst = t;
+                ++step;
+                done = step >= maxSteps
+                    || failed()
+                    || convergence.converged(step - 1, acc);
+            }
+            catch (Throwable t) {
+                fail(t);
+                done = true;
+            }
+        }
+
+        synchronized boolean failed() {
+            return failure != null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package jconcurrent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Exchanger;
+
+// java reference 9
+// P927/962
+// for example one thread might prepare a buffer for
+// receiving information over a network connection.
+// Another thread might fill that buffer with the information
+// from the connection. The two threads work together so
+// that each time a new buffer is needed, an exchange is made.
+
+// BufferExchangePipeline is that pattern with two direct
+// ByteBuffers allocated once: a filler thread reads from a
+// channel (a file, a socket...) into one buffer while the
+// caller drains the other, and at every exchange the two
+// threads swap them. The channel reads straight into native
+// memory and the drain sees the bytes where they were read,
+// so no byte is copied and no exchange allocates.
+
+// the filler hands over a buffer once it is full, or at the
+// end of the stream; a buffer with nothing remaining marks
+// the end. The source must therefore be a blocking channel.
+
+// if the drain throws or the caller is interrupted, the filler
+// is interrupted and joined; an interruptible channel
+// (FileChannel, SocketChannel) is closed by the interrupt, while
+// a read that ignores interrupts delays run() until it returns.
+// Whatever the source throws is rethrown by run().
+
+// a pipeline can be run many times, but by one caller at a time.
+
+public final class BufferExchangePipeline {
+
+    // consumes [position, limit) of a filled buffer; the buffer
+    // is reused once drain() returns and must not be retained
+    public interface Drain {
+        void drain(ByteBuffer filled) throws IOException;
+    }
+
+    private final ByteBuffer first;
+    private final ByteBuffer second;
+    private final Exchanger<ByteBuffer> exchanger = new Exchanger<>();
+
+    private long swaps;
+
+    public BufferExchangePipeline(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                "bufferSize must be positive: " + bufferSize);
+        }
+        first = ByteBuffer.allocateDirect(bufferSize);
+        second = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    // the number of buffers handed from the filler to the drain
+    // by the last run, the end-of-stream marker included
+    public long swaps() {
+        return swaps;
+    }
+
+    // returns the number of bytes drained
+    public long run(ReadableByteChannel source, Drain drain)
+        throws IOException, InterruptedException {
+        Filler filler = new Filler(source);
+        Thread fillerThread = new Thread(filler, "buffer-filler");
+        fillerThread.start();
+
+        long bytes = 0;
+        long n = 0;
+        ByteBuffer empty = second;
+        boolean ended = false;
+        try {
+            for (;;) {
+                ByteBuffer filled = exchanger.exchange(empty);
+                ++n;
+                if (!filled.hasRemaining()) {
+                    break;
+                }
+                bytes += filled.remaining();
+                drain.drain(filled);
+                empty = filled;
+            }
+            ended = true;
+        }
+        finally {
+            swaps = n;
+            if (!ended) {
+                // the filler must not be left on the exchanger,
+                // where it would pair with the next run
+                stop(fillerThread);
+            }
+        }
+        fillerThread.join();
+        Throwable failure = filler.failure;
+        if (failure instanceof IOException) {
+            throw (IOException)failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException)failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error)failure;
+        }
+        return bytes;
+    }
+
+    // interrupts t until it ends: a read that swallows the
+    // interrupt would otherwise leave it waiting for the end
+    // marker to be taken. Keeps the interrupt status of the caller
+    private static void stop(Thread t) {
+        boolean interrupted = false;
+        while (t.isAlive()) {
+            t.interrupt();
+            try {
+                t.join(10);
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Filler implements Runnable {
+
+        private final ReadableByteChannel source;
+        // whatever the source threw
+        private Throwable failure;
+
+        Filler(ReadableByteChannel source) {
+            this.source = source;
+        }
+
+        public void run() {
+            ByteBuffer buf = first;
+            try {
+                boolean eof = false;
+                while (!eof) {
+                    buf.clear();
+                    while (buf.hasRemaining()) {
+                        if (source.read(buf) < 0) {
+                            eof = true;
+                            break;
+                        }
+                    }
+                    buf.flip();
+                    if (buf.hasRemaining()) {
+                        buf = exchanger.exchange(buf);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // the run has failed; nobody is waiting
+                return;
+            }
+            catch (Throwable t) {
+                failure = t;
+            }
+            // the end marker: an empty buffer (failure is
+            // published to the caller by the exchange)
+            try {
+                buf.clear().flip();
+                exchanger.exchange(buf);
+            }
+            catch (InterruptedException e) {
+                ;
+            }
+        }
+    }
+}
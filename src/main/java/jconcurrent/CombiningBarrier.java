@@ -0,0 +1,268 @@
+package jconcurrent;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// java reference 9
+// P925/960
+// CyclicBarrier enables you to define a synchronisation object
+// that suspends until the specified number of threads has
+// reached the barrier point.
+
+// CyclicBarrier takes a ReentrantLock in every await() and
+// parks every waiter on one condition: with 64 or 128 threads
+// the arrivals are serialised on that lock.
+
+// CombiningBarrier is a combining tree with the await() and
+// barrier action contract of CyclicBarrier:
+
+// > the parties are the leaves of a tree of nodes with up to
+// RADIX children each. A thread arrives by decrementing the
+// count of its node; all but the last one stop there, the last
+// one resets the count and arrives at the parent node. The
+// thread that is last at the root runs the barrier action and
+// releases everyone by advancing the generation. At most RADIX
+// threads ever contend on a count.
+
+// > waiting threads spin on the generation, a field that is
+// written once per trip, so they spin in their own cache; after
+// SPINS reads they park. A thread that was last at some nodes
+// wakes the threads that stopped there, from the top down, so
+// the unparks are spread over the tree instead of being done
+// by one thread.
+
+// > a thread gets its party (its leaf) on its first await()
+// and keeps it: the barrier is meant for a fixed set of
+// threads, like the workers of a BSP computation; a thread
+// beyond the first parties gets an IllegalStateException.
+
+// as with CyclicBarrier, a barrier action that throws and an
+// interrupted waiter break the barrier: the waiting threads get
+// a BrokenBarrierException, and reset() must be called (with no
+// thread waiting) before the barrier is used again. await()
+// returns 0 in the thread that ran the barrier action and 1 in
+// the others (not the exact arrival order of CyclicBarrier).
+// There is no timed await().
+
+public final class CombiningBarrier {
+
+    static final int RADIX = 4;
+
+    // 128 bytes between two counts
+    private static final int STRIDE = 32;
+
+    private static final int SPINS =
+        Runtime.getRuntime().availableProcessors() > 1 ? 1 << 10 : 0;
+
+    private final int parties;
+    private final Runnable action;
+
+    // the nodes, level by level from the leaves up; the root is
+    // the last one
+    private final int[] levelStart;
+    private final int[] expected;
+    private final AtomicIntegerArray counts;
+
+    // the threads that stopped at a node and parked, by child
+    private final AtomicReferenceArray<Thread> parked;
+
+    private final AtomicInteger nextParty = new AtomicInteger();
+    private final ThreadLocal<int[]> party =
+        ThreadLocal.withInitial(() -> new int[] {-1});
+
+    private volatile int generation;
+    private volatile boolean broken;
+
+    public CombiningBarrier(int parties) {
+        this(parties, null);
+    }
+
+    public CombiningBarrier(int parties, Runnable action) {
+        if (parties < 1) {
+            throw new IllegalArgumentException(
+                "parties must be positive: " + parties);
+        }
+        this.parties = parties;
+        this.action = action;
+
+        int levels = 0;
+        int nodes = 0;
+        for (int width = parties; ; width = (width + RADIX - 1) / RADIX) {
+            nodes += (width + RADIX - 1) / RADIX;
+            ++levels;
+            if (width <= RADIX) {
+                break;
+            }
+        }
+        levelStart = new int[levels + 1];
+        expected = new int[nodes];
+        int width = parties;
+        int node = 0;
+        for (int l = 0; l < levels; ++l) {
+            levelStart[l] = node;
+            for (int n = 0; n * RADIX < width; ++n) {
+                expected[node++] = Math.min(RADIX, width - n * RADIX);
+            }
+            width = (width + RADIX - 1) / RADIX;
+        }
+        levelStart[levels] = node;
+        counts = new AtomicIntegerArray(nodes * STRIDE);
+        parked = new AtomicReferenceArray<>(nodes * RADIX);
+        resetCounts();
+    }
+
+    public int getParties() {
+        return parties;
+    }
+
+    public boolean isBroken() {
+        return broken;
+    }
+
+    // the depth of the tree
+    int levels() {
+        return levelStart.length - 1;
+    }
+
+    public int await() throws InterruptedException, BrokenBarrierException {
+        if (broken) {
+            throw new BrokenBarrierException();
+        }
+        if (Thread.interrupted()) {
+            breakBarrier();
+            throw new InterruptedException();
+        }
+        int[] p = party.get();
+        if (p[0] < 0) {
+            p[0] = nextParty.getAndIncrement();
+            if (p[0] >= parties) {
+                throw new IllegalStateException(
+                    "more threads than parties: " + parties);
+            }
+        }
+        int gen = generation;
+
+        // climb while last at the node
+        int index = p[0];
+        int won = 0;
+        int levels = levels();
+        int node;
+        int child;
+        for (;;) {
+            node = levelStart[won] + index / RADIX;
+            child = index % RADIX;
+            if (counts.decrementAndGet(node * STRIDE) != 0) {
+                break;
+            }
+            counts.set(node * STRIDE, expected[node]);
+            ++won;
+            if (won == levels) {
+                break;
+            }
+            index /= RADIX;
+        }
+
+        if (won == levels) {
+            // last at the root
+            Throwable failure = null;
+            if (action != null) {
+                try {
+                    action.run();
+                }
+                catch (Throwable t) {
+                    failure = t;
+                    broken = true;
+                }
+            }
+            generation = gen + 1;
+            wake(p[0], won);
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException)failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error)failure;
+            }
+            return 0;
+        }
+
+        waitFor(gen, node * RADIX + child);
+        wake(p[0], won);
+        if (broken) {
+            throw new BrokenBarrierException();
+        }
+        return 1;
+    }
+
+    // breaks the barrier for the threads waiting now, then makes
+    // it usable again; must not race with await()
+    public void reset() {
+        breakBarrier();
+        resetCounts();
+        broken = false;
+    }
+
+    private void waitFor(int gen, int slot) throws InterruptedException {
+        for (int i = 0; i < SPINS; ++i) {
+            if (generation != gen) {
+                return;
+            }
+        }
+        Thread me = Thread.currentThread();
+        // the waker clears the slot after advancing the
+        // generation: either it sees this thread or this thread
+        // sees the new generation. The slot is set again before
+        // every park: the late waker of the previous trip may
+        // have cleared it (and only unparked this thread early)
+        for (;;) {
+            parked.set(slot, me);
+            if (generation != gen) {
+                break;
+            }
+            LockSupport.park(this);
+            if (Thread.interrupted() && generation == gen) {
+                parked.compareAndSet(slot, me, null);
+                breakBarrier();
+                throw new InterruptedException();
+            }
+        }
+        parked.compareAndSet(slot, me, null);
+    }
+
+    private void breakBarrier() {
+        broken = true;
+        ++generation;
+        for (int i = 0; i < parked.length(); ++i) {
+            Thread t = parked.getAndSet(i, null);
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    // unparks the threads parked at the nodes party was last at,
+    // the highest node first
+    private void wake(int party, int won) {
+        for (int l = won - 1; l >= 0; --l) {
+            int index = party;
+            for (int k = 0; k < l; ++k) {
+                index /= RADIX;
+            }
+            int node = levelStart[l] + index / RADIX;
+            for (int c = 0; c < RADIX; ++c) {
+                Thread t = parked.getAndSet(node * RADIX + c, null);
+                if (t != null) {
+                    LockSupport.unpark(t);
+                }
+            }
+        }
+    }
+
+    private void resetCounts() {
+        for (int i = 0; i < expected.length; ++i) {
+            counts.set(i * STRIDE, expected[i]);
+        }
+    }
+}
@@ -0,0 +1,672 @@
+package jconcurrent;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// java reference 9
+// P945/980
+// ConcurrencyBasisTest: read-only accesses to a database might
+// be handled differently from those that require read/write
+// capabilities.
+
+// ConcurrentCache is a bounded cache to put in front of a slow
+// store. A cache that keeps its entries in access order (LRU)
+// must relink an entry on every read, so its reads take a lock
+// (Guava's cache locks one segment of the table); here a read is
+// a ConcurrentHashMap.get() plus one slot in a buffer:
+
+// > the read path takes no lock. The read is recorded in a
+// read buffer, a few small ring buffers striped by the thread's
+// probe (StripedCounter); a thread that finds its buffer full or
+// contended drops the record, which only costs the policy some
+// accuracy.
+
+// > the policy (access order, popularity, eviction, expiry)
+// is updated in batches, under one eviction lock that is only
+// ever tried: when a read buffer is full, and after a write. The
+// writes are queued (never dropped) and replayed in the batch.
+
+// > the policy is W-TinyLFU: new entries go to a small LRU
+// window (1% of the cache); an entry that leaves the window
+// competes with the victim of the main LRU, and whichever was
+// used less often according to a FrequencySketch is evicted.
+// One-hit wonders (a scan) do not push out the hot entries, and
+// a burst of new hot keys still gets in through the window. The
+// main space is a segmented LRU: a probation segment, and a
+// protected one (80%) for the entries used again since.
+
+// > with expireAfterWrite, an entry older than the duration is
+// not returned any more, and removed in the next batch.
+
+// the size may exceed the maximum by the writes not replayed
+// yet; size() is the size of the map.
+
+public final class ConcurrentCache<K, V> {
+
+    // the read records per stripe; a power of two
+    private static final int BUFFER_SIZE = 16;
+
+    // the queue a node is in
+    private static final int NONE = 0;
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+
+    static final class Node<K, V> {
+
+        final K key;
+        volatile V value;
+        volatile long writeTime;
+
+        // set under the node's monitor once the entry is being
+        // removed from the map; the node is never reused
+        volatile boolean retired;
+
+        // guarded by the eviction lock
+        int queue = NONE;
+        Node<K, V> prev;
+        Node<K, V> next;
+        Node<K, V> prevWrite;
+        Node<K, V> nextWrite;
+
+        Node(K key, V value, long writeTime) {
+            this.key = key;
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+    private final long maximumSize;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long expireNanos;
+    private final LongSupplier ticker;
+
+    private final ReadBuffer<Node<K, V>> readBuffer = new ReadBuffer<>();
+    private final ConcurrentLinkedQueue<Runnable> writeBuffer =
+        new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // guarded by the eviction lock
+    private final FrequencySketch sketch;
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedSegment = new AccessOrder<>();
+    private final WriteOrder<K, V> writeOrder = new WriteOrder<>();
+    private long windowSize;
+    private long protectedSize;
+    private long size;
+
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ConcurrentCache(long maximumSize) {
+        this(maximumSize, 0L, TimeUnit.NANOSECONDS, System::nanoTime);
+    }
+
+    public ConcurrentCache(long maximumSize, long expireAfterWrite,
+                           TimeUnit unit) {
+        this(maximumSize, expireAfterWrite, unit, System::nanoTime);
+    }
+
+    // expireAfterWrite 0: entries never expire; ticker: a clock
+    // in nanoseconds (tests move it by hand)
+    ConcurrentCache(long maximumSize, long expireAfterWrite,
+                    TimeUnit unit, LongSupplier ticker) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException(
+                "maximumSize must be positive: " + maximumSize);
+        }
+        if (expireAfterWrite < 0) {
+            throw new IllegalArgumentException(
+                "expireAfterWrite must not be negative: " + expireAfterWrite);
+        }
+        this.maximumSize = maximumSize;
+        windowMaximum = Math.max(1L, maximumSize / 100);
+        protectedMaximum = (maximumSize - windowMaximum) * 8 / 10;
+        expireNanos = unit.toNanos(expireAfterWrite);
+        this.ticker = ticker;
+        map = new ConcurrentHashMap<>(
+            (int)Math.min(maximumSize, 1 << 16));
+        sketch = new FrequencySketch(maximumSize);
+    }
+
+    public long maximumSize() {
+        return maximumSize;
+    }
+
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        V value = node.value;
+        if (expired(node, now())) {
+            misses.increment();
+            afterRead(node);
+            return null;
+        }
+        hits.increment();
+        afterRead(node);
+        return value;
+    }
+
+    // the cached value, or the one loader computes (at most one
+    // call at a time per key; the other callers for that key
+    // wait for it). A null from the loader is not cached.
+    // loader runs inside ConcurrentHashMap.compute(), with the
+    // key's bin locked: it must be short and must not use this
+    // cache. A loader that reads or writes another key of the
+    // cache may block on a bin locked by a loader waiting for
+    // its own (a deadlock), or fail with IllegalStateException
+    // ("Recursive update") if that key shares its bin; the
+    // writers of keys in the same bin wait for it as well.
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Objects.requireNonNull(loader);
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        Load load = new Load(loader, now());
+        map.compute(key, load);
+        if (load.task != null) {
+            afterWrite(load.task);
+        }
+        return load.value;
+    }
+
+    // the previous value, if any
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        long now = now();
+        for (;;) {
+            Node<K, V> node = map.get(key);
+            if (node == null) {
+                Node<K, V> added = new Node<>(key, value, now);
+                node = map.putIfAbsent(key, added);
+                if (node == null) {
+                    afterWrite(() -> onAdd(added));
+                    return null;
+                }
+            }
+            V old;
+            boolean wasExpired;
+            synchronized (node) {
+                if (node.retired) {
+                    // leaving the map: wait for it to be gone
+                    Thread.yield();
+                    continue;
+                }
+                old = node.value;
+                wasExpired = expired(node, now);
+                node.value = value;
+                node.writeTime = now;
+            }
+            Node<K, V> updated = node;
+            afterWrite(() -> onUpdate(updated));
+            return wasExpired ? null : old;
+        }
+    }
+
+    public V remove(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null || !retire(node)) {
+            return null;
+        }
+        afterWrite(() -> onRemove(node));
+        return expired(node, now()) ? null : node.value;
+    }
+
+    public void clear() {
+        for (K key : map.keySet()) {
+            remove(key);
+        }
+    }
+
+    // the entries in the map, including the expired ones and
+    // the ones about to be evicted
+    public long size() {
+        return map.mappingCount();
+    }
+
+    // replays the pending reads and writes and evicts now
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    // evicted for the size or expired
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    // the clock is only read when entries expire (a call to
+    // System.nanoTime() may cost more than the whole read)
+    private long now() {
+        return expireNanos > 0 ? ticker.getAsLong() : 0L;
+    }
+
+    // the node's value is not returned any more
+    private boolean expired(Node<K, V> node, long now) {
+        return expireNanos > 0 && now - node.writeTime >= expireNanos;
+    }
+
+    // the map side of a removal; false if another thread got
+    // there first
+    private boolean retire(Node<K, V> node) {
+        synchronized (node) {
+            if (node.retired) {
+                return false;
+            }
+            node.retired = true;
+        }
+        map.remove(node.key, node);
+        return true;
+    }
+
+    private void afterRead(Node<K, V> node) {
+        if (readBuffer.offer(node) == ReadBuffer.FULL) {
+            tryMaintenance();
+        }
+    }
+
+    private void afterWrite(Runnable task) {
+        writeBuffer.offer(task);
+        tryMaintenance();
+    }
+
+    // a task queued while another thread held the lock is picked
+    // up by that thread when it checks the queue after unlocking
+    private void tryMaintenance() {
+        do {
+            if (!evictionLock.tryLock()) {
+                return;
+            }
+            try {
+                maintenance();
+            }
+            finally {
+                evictionLock.unlock();
+            }
+        } while (!writeBuffer.isEmpty());
+    }
+
+    // under the eviction lock from here on
+
+    private void maintenance() {
+        readBuffer.drain(this::onAccess);
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null) {
+            task.run();
+        }
+        if (expireNanos > 0) {
+            expire();
+        }
+        evict();
+    }
+
+    private void onAdd(Node<K, V> node) {
+        if (node.retired || node.queue != NONE) {
+            return;
+        }
+        sketch.increment(node.key);
+        node.queue = WINDOW;
+        window.addLast(node);
+        ++windowSize;
+        ++size;
+        if (expireNanos > 0) {
+            writeOrder.addLast(node);
+        }
+    }
+
+    private void onUpdate(Node<K, V> node) {
+        if (node.queue == NONE) {
+            return;
+        }
+        if (expireNanos > 0) {
+            writeOrder.moveToLast(node);
+        }
+        onAccess(node);
+    }
+
+    private void onRemove(Node<K, V> node) {
+        if (node.queue == NONE) {
+            return;
+        }
+        switch (node.queue) {
+            case WINDOW:
+                window.unlink(node);
+                --windowSize;
+                break;
+            case PROBATION:
+                probation.unlink(node);
+                break;
+            default:
+                protectedSegment.unlink(node);
+                --protectedSize;
+                break;
+        }
+        if (expireNanos > 0) {
+            writeOrder.unlink(node);
+        }
+        node.queue = NONE;
+        --size;
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (node.queue == NONE) {
+            // removed, or its add is not replayed yet
+            return;
+        }
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                // used again: promoted to the protected segment,
+                // which demotes its least recent entries
+                probation.unlink(node);
+                node.queue = PROTECTED;
+                protectedSegment.addLast(node);
+                ++protectedSize;
+                while (protectedSize > protectedMaximum) {
+                    Node<K, V> demoted = protectedSegment.first;
+                    protectedSegment.unlink(demoted);
+                    --protectedSize;
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            default:
+                protectedSegment.moveToLast(node);
+                break;
+        }
+    }
+
+    private void expire() {
+        long now = now();
+        Node<K, V> node;
+        while ((node = writeOrder.first) != null && expired(node, now)) {
+            evictNode(node);
+        }
+    }
+
+    private void evict() {
+        // the window overflows into probation (also while the
+        // cache is not full); the first of the moved entries is
+        // the first candidate
+        Node<K, V> candidate = null;
+        while (windowSize > windowMaximum) {
+            Node<K, V> node = window.first;
+            window.unlink(node);
+            --windowSize;
+            node.queue = PROBATION;
+            probation.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+        // candidates (at the tail of probation) against victims
+        // (at its head), until the cache fits
+        while (size > maximumSize) {
+            Node<K, V> victim = probation.first;
+            if (candidate == null || victim == candidate) {
+                if (victim == null) {
+                    victim = protectedSegment.first != null
+                        ? protectedSegment.first : window.first;
+                }
+                if (victim == candidate) {
+                    candidate = candidate.next;
+                }
+                evictNode(victim);
+            }
+            else if (sketch.frequency(candidate.key)
+                     > sketch.frequency(victim.key)) {
+                evictNode(victim);
+            }
+            else {
+                Node<K, V> next = candidate.next;
+                evictNode(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    private void evictNode(Node<K, V> node) {
+        onRemove(node);
+        // a concurrent remove() has retired the node already
+        retire(node);
+        evictions.incrementAndGet();
+    }
+
+    // the compute() function of get(key, loader): keeps a live
+    // node, reloads an expired one, and records the policy task
+    private final class Load
+        implements BiFunction<K, Node<K, V>, Node<K, V>> {
+
+        final Function<? super K, ? extends V> loader;
+        final long now;
+        V value;
+        Runnable task;
+
+        Load(Function<? super K, ? extends V> loader, long now) {
+            this.loader = loader;
+            this.now = now;
+        }
+
+        public Node<K, V> apply(K key, Node<K, V> node) {
+            if (node != null) {
+                synchronized (node) {
+                    if (!node.retired) {
+                        if (!expired(node, now)) {
+                            // loaded by another caller meanwhile
+                            value = node.value;
+                            return node;
+                        }
+                        value = loader.apply(key);
+                        if (value == null) {
+                            node.retired = true;
+                            task = () -> onRemove(node);
+                            return null;
+                        }
+                        node.value = value;
+                        node.writeTime = now;
+                        task = () -> onUpdate(node);
+                        return node;
+                    }
+                }
+                // retired: replaced by a new node below
+            }
+            value = loader.apply(key);
+            if (value == null) {
+                return null;
+            }
+            Node<K, V> added = new Node<>(key, value, now);
+            task = () -> onAdd(added);
+            return added;
+        }
+    }
+
+    // intrusive lists, in the nodes' links
+
+    static final class AccessOrder<K, V> {
+
+        Node<K, V> first;
+        Node<K, V> last;
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            }
+            else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void unlink(Node<K, V> node) {
+            Node<K, V> p = node.prev;
+            Node<K, V> n = node.next;
+            if (p == null) {
+                first = n;
+            }
+            else {
+                p.next = n;
+            }
+            if (n == null) {
+                last = p;
+            }
+            else {
+                n.prev = p;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != last) {
+                unlink(node);
+                addLast(node);
+            }
+        }
+    }
+
+    static final class WriteOrder<K, V> {
+
+        Node<K, V> first;
+        Node<K, V> last;
+
+        void addLast(Node<K, V> node) {
+            node.prevWrite = last;
+            node.nextWrite = null;
+            if (last == null) {
+                first = node;
+            }
+            else {
+                last.nextWrite = node;
+            }
+            last = node;
+        }
+
+        void unlink(Node<K, V> node) {
+            Node<K, V> p = node.prevWrite;
+            Node<K, V> n = node.nextWrite;
+            if (p == null) {
+                first = n;
+            }
+            else {
+                p.nextWrite = n;
+            }
+            if (n == null) {
+                last = p;
+            }
+            else {
+                n.prevWrite = p;
+            }
+            node.prevWrite = null;
+            node.nextWrite = null;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != last) {
+                unlink(node);
+                addLast(node);
+            }
+        }
+    }
+
+    // lossy multi-producer ring buffers, one per stripe; drained
+    // by the holder of the eviction lock
+    static final class ReadBuffer<E> {
+
+        static final int SUCCESS = 0;
+        static final int FULL = 1;
+        static final int FAILED = 2;
+
+        // the counters of two stripes are not on one cache line
+        private static final int STRIDE = StripedCounter.STRIDE;
+
+        private final int mask;
+        private final AtomicReferenceArray<E> slots;
+        // claimed by the producers
+        private final AtomicLongArray tails;
+        // consumed by the drain
+        private final AtomicLongArray heads;
+
+        ReadBuffer() {
+            int n = Integer.highestOneBit(
+                4 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+            mask = n - 1;
+            slots = new AtomicReferenceArray<>(n * BUFFER_SIZE);
+            tails = new AtomicLongArray(n * STRIDE);
+            heads = new AtomicLongArray(n * STRIDE);
+        }
+
+        int offer(E e) {
+            int stripe = StripedCounter.probe() & mask;
+            int i = stripe * STRIDE;
+            long head = heads.get(i);
+            long tail = tails.get(i);
+            if (tail - head >= BUFFER_SIZE) {
+                return FULL;
+            }
+            if (tails.compareAndSet(i, tail, tail + 1)) {
+                slots.lazySet(stripe * BUFFER_SIZE
+                              + (int)(tail & (BUFFER_SIZE - 1)), e);
+                return SUCCESS;
+            }
+            StripedCounter.advanceProbe();
+            return FAILED;
+        }
+
+        void drain(Consumer<E> consumer) {
+            for (int stripe = 0; stripe <= mask; ++stripe) {
+                int i = stripe * STRIDE;
+                long head = heads.get(i);
+                long tail = tails.get(i);
+                for (; head < tail; ++head) {
+                    int slot = stripe * BUFFER_SIZE
+                        + (int)(head & (BUFFER_SIZE - 1));
+                    E e = slots.get(slot);
+                    if (e == null) {
+                        // claimed but not written yet
+                        break;
+                    }
+                    slots.lazySet(slot, null);
+                    consumer.accept(e);
+                }
+                heads.lazySet(i, head);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package jconcurrent;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// a direct ByteBuffer is expensive to allocate (it is zeroed,
+// and counted against -XX:MaxDirectMemorySize) and is only
+// freed by the garbage collector; a channel given a heap buffer
+// copies it through a temporary direct buffer. I/O code should
+// therefore keep its direct buffers and reuse them.
+
+// DirectBufferPool keeps up to maxIdle released buffers of one
+// size, in a fixed array of slots as ResourcePool does: acquire()
+// takes an idle buffer with one CAS of its slot, release() puts
+// one back with one CAS of an empty slot. A thread starts at the
+// slot picked by its probe (StripedCounter), so threads do not
+// all contend on slot 0. Unlike ResourcePool it never blocks:
+// acquire() allocates a new buffer when none is idle, and
+// release() drops the buffer when every slot is taken.
+
+public final class DirectBufferPool {
+
+    private final int bufferSize;
+    private final AtomicReferenceArray<ByteBuffer> slots;
+    private final AtomicLong allocated = new AtomicLong();
+
+    public DirectBufferPool(int bufferSize, int maxIdle) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                "bufferSize must be positive: " + bufferSize);
+        }
+        if (maxIdle <= 0) {
+            throw new IllegalArgumentException(
+                "maxIdle must be positive: " + maxIdle);
+        }
+        this.bufferSize = bufferSize;
+        slots = new AtomicReferenceArray<>(maxIdle);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    // a cleared buffer of bufferSize bytes
+    public ByteBuffer acquire() {
+        int n = slots.length();
+        int start = Math.floorMod(StripedCounter.probe(), n);
+        for (int i = 0; i < n; ++i) {
+            int slot = start + i < n ? start + i : start + i - n;
+            ByteBuffer b = slots.get(slot);
+            if (b != null && slots.compareAndSet(slot, b, null)) {
+                b.clear();
+                return b;
+            }
+        }
+        allocated.incrementAndGet();
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    // the buffer must come from acquire() and not be used after
+    public void release(ByteBuffer b) {
+        if (b.capacity() != bufferSize || !b.isDirect()) {
+            throw new IllegalArgumentException(
+                "not a buffer of this pool: " + b);
+        }
+        int n = slots.length();
+        int start = Math.floorMod(StripedCounter.probe(), n);
+        for (int i = 0; i < n; ++i) {
+            int slot = start + i < n ? start + i : start + i - n;
+            if (slots.get(slot) == null
+                && slots.compareAndSet(slot, null, b)) {
+                return;
+            }
+        }
+    }
+
+    // the number of idle buffers (a snapshot)
+    public int idle() {
+        int n = 0;
+        for (int i = 0; i < slots.length(); ++i) {
+            if (slots.get(i) != null) {
+                ++n;
+            }
+        }
+        return n;
+    }
+
+    // the buffers allocated since the pool was created
+    public long allocated() {
+        return allocated.get();
+    }
+}
@@ -0,0 +1,199 @@
+package jconcurrent;
+
+// the leaf loops of element-wise transforms such as
+// ExampleSquareTransform (see ForkJoinFrameworkBasisTest),
+// written so that HotSpot can make the most of them:
+
+// > one simple counted loop per kernel, int index, no calls
+// other than intrinsics (Math.sqrt, Math.abs, Math.fma,
+// Math.min/max), no early exits; this is the shape that C2
+// unrolls and that its superword pass turns into SIMD
+// instructions
+
+// > the range is checked once, up front, against both arrays,
+// which lets C2 drop the per-element bounds checks
+
+// > src and dst are separate parameters; passing the same
+// array transforms it in place
+
+// > with the incubator Vector API (a JVM started with
+// --add-modules jdk.incubator.vector) the kernels run on
+// VectorKernels instead, with the CPU's widest vectors whatever
+// superword makes of the loop; the choice is made once, when
+// the class is initialized, and the JIT folds it away. Without
+// the module the scalar loops below are the fallback. Both
+// give the same results, bit for bit.
+
+// the loops are not unrolled by hand: C2 already unrolls them
+// and a hand-unrolled body gets in the way of superword.
+
+public final class ElementKernels {
+
+    // an element-wise transform of src[start, end) into
+    // dst[start, end); dst may be src
+    public interface Transform {
+        void apply(double[] src, double[] dst, int start, int end);
+    }
+
+    // true when the kernels run on the Vector API
+    private static final boolean VECTORIZED = detectVectorApi();
+
+    private static final Transform SQRT = ElementKernels::sqrt;
+    private static final Transform ABS = ElementKernels::abs;
+
+    private ElementKernels() {
+    }
+
+    public static boolean vectorized() {
+        return VECTORIZED;
+    }
+
+    public static Transform sqrt() {
+        return SQRT;
+    }
+
+    public static Transform abs() {
+        return ABS;
+    }
+
+    public static Transform scale(double factor) {
+        return (src, dst, start, end) ->
+            scale(src, dst, factor, start, end);
+    }
+
+    public static Transform multiplyAdd(double a, double b) {
+        return (src, dst, start, end) ->
+            multiplyAdd(src, dst, a, b, start, end);
+    }
+
+    public static Transform clamp(double lo, double hi) {
+        if (!(lo <= hi)) {
+            throw new IllegalArgumentException(
+                "bad bounds: [" + lo + ", " + hi + "]");
+        }
+        return (src, dst, start, end) ->
+            clamp(src, dst, lo, hi, start, end);
+    }
+
+    public static void sqrt(double[] src, double[] dst, int start, int end) {
+        checkRange(src, dst, start, end);
+        if (VECTORIZED) {
+            VectorKernels.sqrt(src, dst, start, end);
+        }
+        else {
+            Scalar.sqrt(src, dst, start, end);
+        }
+    }
+
+    public static void abs(double[] src, double[] dst, int start, int end) {
+        checkRange(src, dst, start, end);
+        if (VECTORIZED) {
+            VectorKernels.abs(src, dst, start, end);
+        }
+        else {
+            Scalar.abs(src, dst, start, end);
+        }
+    }
+
+    public static void scale(
+        double[] src, double[] dst, double factor, int start, int end) {
+        checkRange(src, dst, start, end);
+        if (VECTORIZED) {
+            VectorKernels.scale(src, dst, factor, start, end);
+        }
+        else {
+            Scalar.scale(src, dst, factor, start, end);
+        }
+    }
+
+    // a * x + b, rounded once
+    public static void multiplyAdd(
+        double[] src, double[] dst, double a, double b, int start, int end) {
+        checkRange(src, dst, start, end);
+        if (VECTORIZED) {
+            VectorKernels.multiplyAdd(src, dst, a, b, start, end);
+        }
+        else {
+            Scalar.multiplyAdd(src, dst, a, b, start, end);
+        }
+    }
+
+    // NaN stays NaN
+    public static void clamp(
+        double[] src, double[] dst, double lo, double hi, int start, int end) {
+        checkRange(src, dst, start, end);
+        if (VECTORIZED) {
+            VectorKernels.clamp(src, dst, lo, hi, start, end);
+        }
+        else {
+            Scalar.clamp(src, dst, lo, hi, start, end);
+        }
+    }
+
+    static void checkRange(double[] src, double[] dst, int start, int end) {
+        if (start < 0 || start > end
+            || end > src.length || end > dst.length) {
+            throw new ArrayIndexOutOfBoundsException(
+                "bad range: [" + start + ", " + end + ")");
+        }
+    }
+
+    // VectorKernels is only touched when the module is there, so
+    // that it is never loaded without it
+    private static boolean detectVectorApi() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector")
+            .isPresent()) {
+            return false;
+        }
+        try {
+            return VectorKernels.usable();
+        }
+        catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    // the scalar loops; the ranges are checked by the caller
+    static final class Scalar {
+
+        private Scalar() {
+        }
+
+        static void sqrt(double[] src, double[] dst, int start, int end) {
+            for (int i = start; i < end; ++i) {
+                dst[i] = Math.sqrt(src[i]);
+            }
+        }
+
+        static void abs(double[] src, double[] dst, int start, int end) {
+            for (int i = start; i < end; ++i) {
+                dst[i] = Math.abs(src[i]);
+            }
+        }
+
+        static void scale(
+            double[] src, double[] dst, double factor, int start, int end) {
+            for (int i = start; i < end; ++i) {
+                dst[i] = src[i] * factor;
+            }
+        }
+
+        // Math.fma is an intrinsic that superword vectorizes on
+        // CPUs with FMA instructions (x86-64 since Haswell,
+        // AArch64); elsewhere it falls back to a much slower
+        // software path
+        static void multiplyAdd(
+            double[] src, double[] dst, double a, double b, int start, int end) {
+            for (int i = start; i < end; ++i) {
+                dst[i] = Math.fma(a, src[i], b);
+            }
+        }
+
+        static void clamp(
+            double[] src, double[] dst, double lo, double hi, int start, int end) {
+            for (int i = start; i < end; ++i) {
+                dst[i] = Math.min(Math.max(src[i], lo), hi);
+            }
+        }
+    }
+}
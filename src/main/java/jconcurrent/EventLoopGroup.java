@@ -0,0 +1,674 @@
+package jconcurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// source
+// java reference 9th
+// P234/269
+// single threaded systems uses an approach called an
+// event loop with polling
+// in this model, a single thread of control runs in an
+// infinite loop, polling a single event queue to decide
+// what to do next
+// in general, in a single-threaded environment when a
+// thread blocks ... the entire program stops running
+
+// EventLoopGroup is that model made to scale: N event loops,
+// each of them one thread polling a java.nio Selector, and
+// nothing in a loop ever blocks. A server with a thread per
+// connection needs as many threads (stacks, context switches)
+// as connections; here N threads serve any number of them.
+
+// > a connection belongs to one loop for its lifetime: its
+// reads, writes and Handler callbacks all run in that loop's
+// thread, so a handler needs no locking for the state of its
+// connection. bind() spreads the accepted connections over the
+// loops round-robin; so does connect().
+
+// > reads go into one direct buffer per loop, which onRead()
+// sees in place (no copy, nothing allocated per read). A write
+// goes straight to the socket; only what the socket does not
+// take is copied into pooled direct buffers (DirectBufferPool)
+// and written when the socket is writable again.
+
+// > execute() submits a task into a loop; it is how any other
+// thread talks to a connection (Connection.write() and close()
+// do it for the caller). The selector is woken up at most once
+// per loop iteration however many tasks are submitted.
+
+// a handler must not block: while it does, every connection of
+// its loop waits.
+
+// what fails outside of a connection (a task, an accept, the
+// selector) or in onClose() is reported to the uncaught exception
+// handler of the loop's thread: the one given to the constructor,
+// else the default one (Thread.setDefaultUncaughtExceptionHandler);
+// the loop goes on.
+
+public final class EventLoopGroup implements AutoCloseable {
+
+    // the callbacks of a connection, all run in its loop
+    public interface Handler {
+
+        default void onOpen(Connection c) throws IOException {
+        }
+
+        // data: the bytes read, in the loop's read buffer; valid
+        // until onRead() returns, and must not be retained
+        void onRead(Connection c, ByteBuffer data) throws IOException;
+
+        // cause: null for an orderly close (either side, or the
+        // group closing), else what broke the connection
+        default void onClose(Connection c, Throwable cause) {
+        }
+    }
+
+    private static final int BACKLOG = 1024;
+
+    // accepted connections per OP_ACCEPT, so that a connection
+    // storm does not starve the other channels of the loop
+    private static final int ACCEPTS = 64;
+
+    // idle write buffers kept per loop
+    private static final int MAX_IDLE = 64;
+
+    private final EventLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+
+    // bufferSize: the size of the read buffer and of the pooled
+    // write buffers
+    public EventLoopGroup(String name, int loops, int bufferSize)
+        throws IOException {
+        this(name, loops, bufferSize, null);
+    }
+
+    // errors: the uncaught exception handler of the loops' threads
+    // (null: the default one)
+    public EventLoopGroup(String name, int loops, int bufferSize,
+                          Thread.UncaughtExceptionHandler errors)
+        throws IOException {
+        if (loops <= 0) {
+            throw new IllegalArgumentException(
+                "loops must be positive: " + loops);
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                "bufferSize must be positive: " + bufferSize);
+        }
+        ThreadFactory platform = ExecutorFactory.platformThreads(name);
+        ThreadFactory threads = errors == null ? platform : r -> {
+            Thread t = platform.newThread(r);
+            t.setUncaughtExceptionHandler(errors);
+            return t;
+        };
+        this.loops = new EventLoop[loops];
+        try {
+            for (int i = 0; i < loops; ++i) {
+                this.loops[i] = new EventLoop(threads, bufferSize);
+            }
+        }
+        catch (IOException e) {
+            for (EventLoop loop : this.loops) {
+                if (loop != null) {
+                    closeQuietly(loop.selector);
+                }
+            }
+            throw e;
+        }
+        for (EventLoop loop : this.loops) {
+            loop.thread.start();
+        }
+    }
+
+    public int loops() {
+        return loops.length;
+    }
+
+    public EventLoop loop(int i) {
+        return loops[i];
+    }
+
+    // the loops in turn
+    public EventLoop next() {
+        return loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+    }
+
+    // listens on address (port 0: any free port) and returns the
+    // bound address; the handler serves every accepted connection
+    public InetSocketAddress bind(SocketAddress address, Handler handler)
+        throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.configureBlocking(false);
+            server.bind(address, BACKLOG);
+            EventLoop acceptor = next();
+            acceptor.execute(() -> acceptor.listen(server, handler));
+            return (InetSocketAddress)server.getLocalAddress();
+        }
+        catch (IOException | RuntimeException e) {
+            closeQuietly(server);
+            throw e;
+        }
+    }
+
+    // completes once the connection is open (after onOpen())
+    public CompletableFuture<Connection> connect(
+        SocketAddress address, Handler handler) {
+        CompletableFuture<Connection> result = new CompletableFuture<>();
+        EventLoop loop = next();
+        loop.execute(() -> loop.connect(address, handler, result));
+        return result;
+    }
+
+    // closes every channel (the open connections get onClose())
+    // and waits for the loops to end; a task submitted while the
+    // group closes may be dropped
+    public void close() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+        boolean interrupted = false;
+        for (EventLoop loop : loops) {
+            while (loop.thread != Thread.currentThread()
+                   && loop.thread.isAlive()) {
+                try {
+                    loop.thread.join();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public final class EventLoop implements Executor {
+
+        private final Selector selector;
+        private final Thread thread;
+        private final ConcurrentLinkedQueue<Runnable> tasks =
+            new ConcurrentLinkedQueue<>();
+        // set by the first submitter after the loop last woke up
+        private final AtomicBoolean wakeupPending = new AtomicBoolean();
+        private volatile boolean running = true;
+
+        // confined to the loop's thread
+        private final ByteBuffer readBuffer;
+        private int connections;
+
+        // shared with the threads that write from outside
+        private final DirectBufferPool pool;
+
+        EventLoop(ThreadFactory threads, int bufferSize) throws IOException {
+            selector = Selector.open();
+            readBuffer = ByteBuffer.allocateDirect(bufferSize);
+            pool = new DirectBufferPool(bufferSize, MAX_IDLE);
+            thread = threads.newThread(this::run);
+        }
+
+        public boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        public DirectBufferPool pool() {
+            return pool;
+        }
+
+        // the open connections (exact in the loop, a stale
+        // snapshot elsewhere)
+        public int connections() {
+            return connections;
+        }
+
+        // runs the task in the loop's thread, after the tasks
+        // submitted before it
+        public void execute(Runnable task) {
+            if (!running) {
+                throw new RejectedExecutionException("event loop closed");
+            }
+            tasks.offer(task);
+            if (!inLoop() && wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        private void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        private void run() {
+            try {
+                while (running) {
+                    // a task offered after this line wakes the
+                    // select up; one offered before it is seen
+                    // by isEmpty()
+                    wakeupPending.set(false);
+                    if (tasks.isEmpty()) {
+                        selector.select(this::ready);
+                    }
+                    else {
+                        selector.selectNow(this::ready);
+                    }
+                    runTasks();
+                }
+                runTasks();
+            }
+            catch (IOException e) {
+                report(e);
+            }
+            finally {
+                running = false;
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection)key.attachment()).closeNow(null);
+                    }
+                    else {
+                        closeQuietly(key.channel());
+                    }
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                }
+                catch (Throwable t) {
+                    report(t);
+                }
+            }
+        }
+
+        // to the thread's uncaught exception handler, which falls
+        // back to the default one; a handler that throws is ignored
+        private void report(Throwable t) {
+            try {
+                thread.getUncaughtExceptionHandler()
+                    .uncaughtException(thread, t);
+            }
+            catch (Throwable e) {
+                ;
+            }
+        }
+
+        private void ready(SelectionKey key) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                ((Connection)attachment).ready(key);
+            }
+            else {
+                accept((Listener)attachment);
+            }
+        }
+
+        private void listen(ServerSocketChannel server, Handler handler) {
+            try {
+                server.register(selector, SelectionKey.OP_ACCEPT,
+                                new Listener(server, handler));
+            }
+            catch (IOException e) {
+                report(e);
+                closeQuietly(server);
+            }
+        }
+
+        private void accept(Listener listener) {
+            for (int i = 0; i < ACCEPTS; ++i) {
+                SocketChannel channel;
+                try {
+                    channel = listener.server.accept();
+                }
+                catch (IOException e) {
+                    report(e);
+                    return;
+                }
+                if (channel == null) {
+                    return;
+                }
+                EventLoop loop = next();
+                try {
+                    loop.execute(() -> loop.open(channel, listener.handler));
+                }
+                catch (RejectedExecutionException e) {
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void open(SocketChannel channel, Handler handler) {
+            Connection c = new Connection(this, channel, handler);
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                c.key = channel.register(selector, SelectionKey.OP_READ, c);
+            }
+            catch (IOException e) {
+                closeQuietly(channel);
+                return;
+            }
+            c.opened();
+        }
+
+        private void connect(SocketAddress address, Handler handler,
+                             CompletableFuture<Connection> result) {
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection c = new Connection(this, channel, handler);
+                c.connecting = result;
+                if (channel.connect(address)) {
+                    c.key = channel.register(selector, SelectionKey.OP_READ, c);
+                    c.opened();
+                }
+                else {
+                    c.key = channel.register(selector, SelectionKey.OP_CONNECT, c);
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                closeQuietly(channel);
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class Listener {
+
+        final ServerSocketChannel server;
+        final Handler handler;
+
+        Listener(ServerSocketChannel server, Handler handler) {
+            this.server = server;
+            this.handler = handler;
+        }
+    }
+
+    public static final class Connection {
+
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final Handler handler;
+        private SelectionKey key;
+        private CompletableFuture<Connection> connecting;
+
+        // confined to the loop's thread; the buffers are flipped
+        // (ready to be written to the socket)
+        private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+        private boolean opened;
+        private boolean closing;
+        private boolean closed;
+
+        private volatile Object attachment;
+
+        Connection(EventLoop loop, SocketChannel channel, Handler handler) {
+            this.loop = loop;
+            this.channel = channel;
+            this.handler = handler;
+        }
+
+        public EventLoop loop() {
+            return loop;
+        }
+
+        public SocketAddress remoteAddress() {
+            try {
+                return channel.getRemoteAddress();
+            }
+            catch (IOException e) {
+                return null;
+            }
+        }
+
+        // the handler's own state for this connection
+        public Object attachment() {
+            return attachment;
+        }
+
+        public void attach(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        // queues the remaining bytes of src, in order with the
+        // other writes of the calling thread; src is consumed
+        // when write() returns and may be reused. Writes to a
+        // closed connection are dropped.
+        public void write(ByteBuffer src) {
+            if (loop.inLoop()) {
+                writeInLoop(src);
+                return;
+            }
+            // copied now, because the caller may reuse src
+            ArrayDeque<ByteBuffer> copies = new ArrayDeque<>();
+            copy(src, copies);
+            try {
+                loop.execute(() -> {
+                    if (closing || closed) {
+                        release(copies);
+                        return;
+                    }
+                    boolean idle = outbound.isEmpty();
+                    outbound.addAll(copies);
+                    if (idle) {
+                        flush();
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                release(copies);
+                throw e;
+            }
+        }
+
+        // closes once the queued writes are written
+        public void close() {
+            if (loop.inLoop()) {
+                closeInLoop();
+            }
+            else {
+                loop.execute(this::closeInLoop);
+            }
+        }
+
+        private void closeInLoop() {
+            closing = true;
+            if (outbound.isEmpty()) {
+                closeNow(null);
+            }
+        }
+
+        private void writeInLoop(ByteBuffer src) {
+            if (closing || closed) {
+                src.position(src.limit());
+                return;
+            }
+            if (outbound.isEmpty()) {
+                try {
+                    channel.write(src);
+                }
+                catch (IOException e) {
+                    closeNow(e);
+                    return;
+                }
+                if (!src.hasRemaining()) {
+                    return;
+                }
+                interest(SelectionKey.OP_WRITE, true);
+            }
+            copy(src, outbound);
+        }
+
+        private void copy(ByteBuffer src, ArrayDeque<ByteBuffer> into) {
+            while (src.hasRemaining()) {
+                ByteBuffer b = loop.pool.acquire();
+                int n = Math.min(b.remaining(), src.remaining());
+                int limit = src.limit();
+                src.limit(src.position() + n);
+                b.put(src);
+                src.limit(limit);
+                b.flip();
+                into.add(b);
+            }
+        }
+
+        private void release(ArrayDeque<ByteBuffer> buffers) {
+            ByteBuffer b;
+            while ((b = buffers.poll()) != null) {
+                loop.pool.release(b);
+            }
+        }
+
+        private void flush() {
+            ByteBuffer b;
+            try {
+                while ((b = outbound.peek()) != null) {
+                    channel.write(b);
+                    if (b.hasRemaining()) {
+                        // the socket buffer is full
+                        interest(SelectionKey.OP_WRITE, true);
+                        return;
+                    }
+                    loop.pool.release(outbound.poll());
+                }
+            }
+            catch (IOException e) {
+                closeNow(e);
+                return;
+            }
+            interest(SelectionKey.OP_WRITE, false);
+            if (closing) {
+                closeNow(null);
+            }
+        }
+
+        private void interest(int op, boolean on) {
+            int ops = key.interestOps();
+            int updated = on ? ops | op : ops & ~op;
+            if (updated != ops) {
+                key.interestOps(updated);
+            }
+        }
+
+        private void opened() {
+            opened = true;
+            ++loop.connections;
+            try {
+                handler.onOpen(this);
+            }
+            catch (Throwable t) {
+                closeNow(t);
+            }
+            if (connecting != null) {
+                if (closed) {
+                    connecting.completeExceptionally(
+                        new IOException("closed in onOpen()"));
+                }
+                else {
+                    connecting.complete(this);
+                }
+                connecting = null;
+            }
+        }
+
+        private void ready(SelectionKey key) {
+            try {
+                int ops = key.readyOps();
+                if ((ops & SelectionKey.OP_CONNECT) != 0) {
+                    channel.finishConnect();
+                    key.interestOps(SelectionKey.OP_READ);
+                    opened();
+                }
+                if ((ops & SelectionKey.OP_WRITE) != 0 && !closed) {
+                    flush();
+                }
+                if ((ops & SelectionKey.OP_READ) != 0 && !closed) {
+                    read();
+                }
+            }
+            catch (CancelledKeyException e) {
+                closeNow(null);
+            }
+            catch (Throwable t) {
+                closeNow(t);
+            }
+        }
+
+        private void read() throws IOException {
+            ByteBuffer data = loop.readBuffer;
+            data.clear();
+            int n = channel.read(data);
+            if (n < 0) {
+                // the peer closed: no half-closed connections
+                closeNow(null);
+                return;
+            }
+            if (n > 0) {
+                data.flip();
+                handler.onRead(this, data);
+            }
+        }
+
+        private void closeNow(Throwable cause) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            release(outbound);
+            if (connecting != null) {
+                connecting.completeExceptionally(
+                    cause != null ? cause : new IOException("closed"));
+                connecting = null;
+            }
+            if (!opened) {
+                return;
+            }
+            --loop.connections;
+            try {
+                handler.onClose(this, cause);
+            }
+            catch (Throwable t) {
+                loop.report(t);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) {
+            return;
+        }
+        try {
+            c.close();
+        }
+        catch (IOException e) {
+            ;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package jconcurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// java reference 9
+// P937/972
+// A thread pool provides a set of threads that is used
+// to execute .... in stead of each task using its own
+// thread. This reduces the overhead associated with
+// creating many separate threads.
+
+// that holds for platform threads, which are expensive to
+// create and to keep: a pool of them is sized around the CPU.
+// A task that mostly blocks (Thread.sleep in ExecutorBasisTest,
+// I/O in a fan-out service) holds its pool thread while it
+// waits, so the pool size, not the CPU, caps the throughput.
+
+// a virtual thread (Java 21) is cheap enough to create one per
+// task: while it blocks it releases its carrier (a platform
+// thread of a small ForkJoinPool), and a million of them can
+// wait at the same time.
+
+// ExecutorFactory creates executors of either kind with named
+// threads, so that a service can switch between them with a
+// configuration value and compare them (BlockingTaskBenchmark).
+
+// (a virtual thread that blocks while holding a monitor pins
+// its carrier until Java 24; prefer java.util.concurrent locks
+// around blocking calls made from virtual threads)
+
+public final class ExecutorFactory {
+
+    public enum Mode {
+        // a fixed pool of platform threads
+        FIXED,
+        // platform threads created on demand and kept for 60s
+        CACHED,
+        // a new virtual thread per task
+        VIRTUAL
+    }
+
+    private ExecutorFactory() {
+    }
+
+    // threads is the pool size in FIXED mode and is ignored in
+    // the other modes
+    public static ExecutorService newExecutor(
+        Mode mode, String name, int threads) {
+        switch (mode) {
+            case FIXED:
+                return newFixed(name, threads);
+            case CACHED:
+                return Executors.newCachedThreadPool(platformThreads(name));
+            case VIRTUAL:
+                return newVirtualPerTask(name);
+            default:
+                throw new IllegalArgumentException("unknown mode: " + mode);
+        }
+    }
+
+    public static ExecutorService newFixed(String name, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                "threads must be positive: " + threads);
+        }
+        return Executors.newFixedThreadPool(threads, platformThreads(name));
+    }
+
+    // unbounded: every task submitted runs at once; bound the
+    // concurrency with a Semaphore (or ResourcePool) in front
+    // of the resource the tasks block on, not with the executor
+    public static ExecutorService newVirtualPerTask(String name) {
+        return Executors.newThreadPerTaskExecutor(virtualThreads(name));
+    }
+
+    // name-0, name-1, ...
+    public static ThreadFactory platformThreads(String name) {
+        AtomicInteger next = new AtomicInteger();
+        return r -> new Thread(r, name + "-" + next.getAndIncrement());
+    }
+
+    public static ThreadFactory virtualThreads(String name) {
+        return Thread.ofVirtual().name(name + "-", 0).factory();
+    }
+}
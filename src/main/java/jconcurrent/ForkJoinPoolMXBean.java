@@ -0,0 +1,58 @@
+package jconcurrent;
+
+// the metrics of an InstrumentedForkJoinPool, as read through
+// JMX (jconcurrent:type=ForkJoinPool,name=...) or directly.
+
+// the pool figures are those of java.util.concurrent.ForkJoinPool
+// and are estimates; the latencies are in nanoseconds, from the
+// submission of a task to its completion (latency) or to the
+// start of its execution (wait), over the sampled tasks.
+
+public interface ForkJoinPoolMXBean {
+
+    String getName();
+
+    int getParallelism();
+
+    // the worker threads started and not yet terminated
+    int getPoolSize();
+
+    // the workers running or stealing tasks
+    int getActiveThreadCount();
+
+    // the workers not blocked waiting to join a task
+    int getRunningThreadCount();
+
+    // the tasks in the queues of the workers
+    long getQueuedTaskCount();
+
+    // the tasks submitted from outside and not yet taken
+    int getQueuedSubmissionCount();
+
+    // tasks taken from another worker's queue, in total
+    long getStealCount();
+
+    // the tasks submitted through the wrapper and completed
+    long getTasksCompleted();
+
+    long getTasksFailed();
+
+    // 1 in every n submitted tasks is timed
+    int getLatencySampling();
+
+    void setLatencySampling(int n);
+
+    double getLatencyMeanNanos();
+
+    long getLatencyP50Nanos();
+
+    long getLatencyP99Nanos();
+
+    long getLatencyMaxNanos();
+
+    long getWaitP50Nanos();
+
+    long getWaitP99Nanos();
+
+    void resetLatencies();
+}
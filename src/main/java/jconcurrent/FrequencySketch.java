@@ -0,0 +1,109 @@
+package jconcurrent;
+
+// the popularity estimate behind ConcurrentCache's admission:
+// a count-min sketch of 4-bit counters, 16 to a long.
+
+// an element is counted in 4 counters, one in each of 4 rows
+// picked by its hash; its frequency is the smallest of them
+// (collisions only ever add to a counter). A counter stops at
+// 15, which is enough to tell a hot key from a cold one.
+
+// the 4 counters of an element are in one block of 8 longs (a
+// 64-byte cache line), 2 longs per row: counting an element
+// misses the cache once, not 4 times.
+
+// after sampleSize increments every counter is halved, so that
+// the estimate follows a popularity that changes over time (the
+// "aging" of TinyLFU).
+
+// not thread-safe: ConcurrentCache uses it under its eviction
+// lock only.
+
+final class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int blockMask;
+    private final int sampleSize;
+    private int size;
+
+    // maximumSize: the number of elements to tell apart
+    FrequencySketch(long maximumSize) {
+        int n = (int)Math.min(Math.max(maximumSize, 8L), 1L << 30);
+        n = Integer.highestOneBit(n - 1) << 1;
+        table = new long[n];
+        blockMask = (n >>> 3) - 1;
+        sampleSize = (int)Math.min(10L * n, Integer.MAX_VALUE);
+    }
+
+    int frequency(Object e) {
+        int blockHash = spread(e.hashCode());
+        int counterHash = rehash(blockHash);
+        int block = (blockHash & blockMask) << 3;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; ++i) {
+            int h = counterHash >>> (i << 3);
+            int index = (h >>> 1) & 15;
+            int offset = h & 1;
+            long word = table[block + offset + (i << 1)];
+            int count = (int)((word >>> (index << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(Object e) {
+        int blockHash = spread(e.hashCode());
+        int counterHash = rehash(blockHash);
+        int block = (blockHash & blockMask) << 3;
+        boolean added = false;
+        for (int i = 0; i < 4; ++i) {
+            int h = counterHash >>> (i << 3);
+            int index = (h >>> 1) & 15;
+            int offset = h & 1;
+            added |= incrementAt(block + offset + (i << 1), index);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    // the increments since the last halving
+    int sampled() {
+        return size;
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; ++i) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        // every counter lost half, rounded down
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    private static int rehash(int x) {
+        x *= 0x31848bab;
+        x ^= x >>> 14;
+        return x;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,697 @@
+package jconcurrent;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongToDoubleFunction;
+import java.util.function.LongUnaryOperator;
+
+// java reference 9
+// P954/989, P959/993
+// ExampleSquareTransform followed by ExampleSumTask (see
+// ForkJoinFrameworkBasisTest) reads and writes the whole array
+// once per transform, and reads it again for the sum. When the
+// arithmetic is cheap, each of those passes is as slow as
+// memory, so a chain of n steps costs n passes.
+
+// a FusedPipeline is a lazy chain of element-wise steps (map,
+// transform, filter) over a double[] or a long[]; nothing runs
+// until a terminal operation (sum, min, max, count, reduce,
+// writeTo), and then the whole chain runs in a single
+// PrimitiveTask traversal:
+
+// > each leaf walks its range in chunks of CHUNK elements. A
+// chunk is copied from the source into a buffer small enough to
+// stay in L1, every step is applied to the buffer in turn, and
+// the terminal operation folds (or writes out) what is left. So
+// every cache line of the source is fetched from memory once,
+// however long the chain
+
+// > a step runs its own loop over the chunk, so an
+// ElementKernels.Transform keeps the loop shape C2 vectorises; a
+// DoubleUnaryOperator costs a call per element, as in a stream
+
+// > filter compacts the buffer, and the following steps only
+// see what passed
+
+// a pipeline is immutable: each step returns a new one, so a
+// pipeline can be kept and run again, or extended in different
+// ways. The steps must be stateless, and reduce() needs an
+// associative operator and its identity, as with ParallelReduce
+// and streams.
+
+// writeTo() stores the result at the index of each element; a
+// pipeline writes into its own source safely (each chunk is read
+// before it is written), which makes an in-place fused transform.
+// It is not defined for a filtered pipeline.
+
+// like ParallelReduce, each thread reuses the task tree (and its
+// chunk buffers) of its last traversal; the threshold is tuned
+// once per chain of step classes, i.e. once per call site.
+
+public abstract class FusedPipeline {
+
+    // 4 KiB of doubles or longs
+    static final int CHUNK = 512;
+
+    // terminal operations
+    private static final int SUM = 0;
+    private static final int SUM_COMPENSATED = 1;
+    private static final int MIN = 2;
+    private static final int MAX = 3;
+    private static final int COUNT = 4;
+    private static final int REDUCE = 5;
+    private static final int WRITE = 6;
+
+    private static final ThreadLocal<PipelineTask> TASKS =
+        new ThreadLocal<>();
+
+    final double[] doubleSource;
+    final long[] longSource;
+    final Stage[] stages;
+    final boolean filtered;
+    // the tuner key: the source type and the class of every step
+    final Object key;
+
+    FusedPipeline(double[] doubleSource, long[] longSource,
+                  Stage[] stages) {
+        this.doubleSource = doubleSource;
+        this.longSource = longSource;
+        this.stages = stages;
+        boolean f = false;
+        Object[] key = new Object[stages.length + 1];
+        key[0] = doubleSource != null ? double[].class : long[].class;
+        for (int i = 0; i < stages.length; ++i) {
+            f |= stages[i].filters();
+            key[i + 1] = stages[i].key();
+        }
+        this.filtered = f;
+        this.key = Arrays.asList(key);
+    }
+
+    public static Doubles of(double[] data) {
+        return new Doubles(data, null, new Stage[0]);
+    }
+
+    public static Longs of(long[] data) {
+        return new Longs(data, new Stage[0]);
+    }
+
+    // the number of elements that get through the filters
+    public final long count() {
+        PipelineTask t = run(COUNT);
+        long n = t.count;
+        release(t);
+        return n;
+    }
+
+    final int length() {
+        return doubleSource != null ? doubleSource.length : longSource.length;
+    }
+
+    static Stage[] append(Stage[] stages, Stage s) {
+        Stage[] a = Arrays.copyOf(stages, stages.length + 1);
+        a[stages.length] = s;
+        return a;
+    }
+
+    void checkWritable(int length) {
+        if (filtered) {
+            throw new IllegalStateException(
+                "a filtered pipeline has no index to write to");
+        }
+        if (length < length()) {
+            throw new IllegalArgumentException(
+                "destination too small: " + length + " < " + length());
+        }
+    }
+
+    // the cached tree is taken off the thread while it is in use
+    final PipelineTask task() {
+        PipelineTask t = TASKS.get();
+        if (t != null) {
+            TASKS.set(null);
+        }
+        else {
+            t = new PipelineTask();
+        }
+        t.pipeline = this;
+        return t;
+    }
+
+    final PipelineTask run(PipelineTask t, int op) {
+        // the probe only counts, it writes nothing but the buffers
+        t.op = COUNT;
+        int threshold = Math.max(CHUNK,
+            ThresholdTuner.shared().threshold(key, length(), t));
+        t.op = op;
+        t.reset(0, length(), threshold).invoke();
+        return t;
+    }
+
+    final PipelineTask run(int op) {
+        return run(task(), op);
+    }
+
+    static void release(PipelineTask t) {
+        t.pipeline = null;
+        t.doubleDst = null;
+        t.longDst = null;
+        t.doubleOp = null;
+        t.longOp = null;
+        TASKS.set(t);
+    }
+
+    public static final class Doubles extends FusedPipeline {
+
+        Doubles(double[] doubleSource, long[] longSource, Stage[] stages) {
+            super(doubleSource, longSource, stages);
+        }
+
+        public Doubles map(DoubleUnaryOperator f) {
+            return new Doubles(doubleSource, longSource,
+                               append(stages, new DoubleMap(f)));
+        }
+
+        public Doubles transform(ElementKernels.Transform kernel) {
+            return new Doubles(doubleSource, longSource,
+                               append(stages, new DoubleTransform(kernel)));
+        }
+
+        public Doubles filter(DoublePredicate p) {
+            return new Doubles(doubleSource, longSource,
+                               append(stages, new DoubleFilter(p)));
+        }
+
+        public double sum() {
+            return sum(ParallelReduce.Summation.PLAIN);
+        }
+
+        public double sum(ParallelReduce.Summation mode) {
+            boolean compensated = mode == ParallelReduce.Summation.COMPENSATED;
+            PipelineTask t = run(compensated ? SUM_COMPENSATED : SUM);
+            double result = compensated
+                ? t.doubleResult + t.doubleCompensation
+                : t.doubleResult;
+            release(t);
+            return result;
+        }
+
+        public double min() {
+            return extreme(MIN);
+        }
+
+        public double max() {
+            return extreme(MAX);
+        }
+
+        private double extreme(int op) {
+            PipelineTask t = run(op);
+            long n = t.count;
+            double result = t.doubleResult;
+            release(t);
+            if (n == 0) {
+                throw new NoSuchElementException("empty pipeline");
+            }
+            return result;
+        }
+
+        public double reduce(double identity, DoubleBinaryOperator op) {
+            PipelineTask t = task();
+            t.doubleOp = op;
+            run(t, REDUCE);
+            double result = t.count == 0 ? identity : t.doubleResult;
+            release(t);
+            return result;
+        }
+
+        public void writeTo(double[] dst) {
+            checkWritable(dst.length);
+            PipelineTask t = task();
+            t.doubleDst = dst;
+            release(run(t, WRITE));
+        }
+    }
+
+    public static final class Longs extends FusedPipeline {
+
+        Longs(long[] longSource, Stage[] stages) {
+            super(null, longSource, stages);
+        }
+
+        public Longs map(LongUnaryOperator f) {
+            return new Longs(longSource, append(stages, new LongMap(f)));
+        }
+
+        public Longs filter(LongPredicate p) {
+            return new Longs(longSource, append(stages, new LongFilter(p)));
+        }
+
+        public Doubles mapToDouble(LongToDoubleFunction f) {
+            return new Doubles(null, longSource,
+                               append(stages, new LongToDouble(f)));
+        }
+
+        // wraps around like the + operator
+        public long sum() {
+            PipelineTask t = run(SUM);
+            long result = t.longResult;
+            release(t);
+            return result;
+        }
+
+        public long min() {
+            return extreme(MIN);
+        }
+
+        public long max() {
+            return extreme(MAX);
+        }
+
+        private long extreme(int op) {
+            PipelineTask t = run(op);
+            long n = t.count;
+            long result = t.longResult;
+            release(t);
+            if (n == 0) {
+                throw new NoSuchElementException("empty pipeline");
+            }
+            return result;
+        }
+
+        public long reduce(long identity, LongBinaryOperator op) {
+            PipelineTask t = task();
+            t.longOp = op;
+            run(t, REDUCE);
+            long result = t.count == 0 ? identity : t.longResult;
+            release(t);
+            return result;
+        }
+
+        public void writeTo(long[] dst) {
+            checkWritable(dst.length);
+            PipelineTask t = task();
+            t.longDst = dst;
+            release(run(t, WRITE));
+        }
+    }
+
+    // a step over the first n elements of the chunk buffers of a
+    // task; returns how many elements are left
+    abstract static class Stage {
+
+        abstract int apply(PipelineTask t, int n);
+
+        abstract Object key();
+
+        boolean filters() {
+            return false;
+        }
+
+        // whether the step leaves its result in the long buffer
+        boolean longs() {
+            return false;
+        }
+    }
+
+    static final class DoubleMap extends Stage {
+
+        private final DoubleUnaryOperator f;
+
+        DoubleMap(DoubleUnaryOperator f) {
+            this.f = f;
+        }
+
+        int apply(PipelineTask t, int n) {
+            double[] d = t.doubles;
+            for (int i = 0; i < n; ++i) {
+                d[i] = f.applyAsDouble(d[i]);
+            }
+            return n;
+        }
+
+        Object key() {
+            return f.getClass();
+        }
+    }
+
+    static final class DoubleTransform extends Stage {
+
+        private final ElementKernels.Transform kernel;
+
+        DoubleTransform(ElementKernels.Transform kernel) {
+            this.kernel = kernel;
+        }
+
+        int apply(PipelineTask t, int n) {
+            kernel.apply(t.doubles, t.doubles, 0, n);
+            return n;
+        }
+
+        Object key() {
+            return kernel.getClass();
+        }
+    }
+
+    static final class DoubleFilter extends Stage {
+
+        private final DoublePredicate p;
+
+        DoubleFilter(DoublePredicate p) {
+            this.p = p;
+        }
+
+        int apply(PipelineTask t, int n) {
+            double[] d = t.doubles;
+            int j = 0;
+            for (int i = 0; i < n; ++i) {
+                double x = d[i];
+                if (p.test(x)) {
+                    d[j++] = x;
+                }
+            }
+            return j;
+        }
+
+        Object key() {
+            return p.getClass();
+        }
+
+        boolean filters() {
+            return true;
+        }
+    }
+
+    static final class LongMap extends Stage {
+
+        private final LongUnaryOperator f;
+
+        LongMap(LongUnaryOperator f) {
+            this.f = f;
+        }
+
+        int apply(PipelineTask t, int n) {
+            long[] l = t.longs;
+            for (int i = 0; i < n; ++i) {
+                l[i] = f.applyAsLong(l[i]);
+            }
+            return n;
+        }
+
+        Object key() {
+            return f.getClass();
+        }
+
+        boolean longs() {
+            return true;
+        }
+    }
+
+    static final class LongFilter extends Stage {
+
+        private final LongPredicate p;
+
+        LongFilter(LongPredicate p) {
+            this.p = p;
+        }
+
+        int apply(PipelineTask t, int n) {
+            long[] l = t.longs;
+            int j = 0;
+            for (int i = 0; i < n; ++i) {
+                long x = l[i];
+                if (p.test(x)) {
+                    l[j++] = x;
+                }
+            }
+            return j;
+        }
+
+        Object key() {
+            return p.getClass();
+        }
+
+        boolean filters() {
+            return true;
+        }
+
+        boolean longs() {
+            return true;
+        }
+    }
+
+    static final class LongToDouble extends Stage {
+
+        private final LongToDoubleFunction f;
+
+        LongToDouble(LongToDoubleFunction f) {
+            this.f = f;
+        }
+
+        int apply(PipelineTask t, int n) {
+            long[] l = t.longs;
+            double[] d = t.doubles;
+            for (int i = 0; i < n; ++i) {
+                d[i] = f.applyAsDouble(l[i]);
+            }
+            return n;
+        }
+
+        Object key() {
+            return f.getClass();
+        }
+    }
+
+    // the parameters of a traversal are only set on the root;
+    // subtasks read them through root(). The chunk buffers
+    // belong to each task and are kept with the tree
+
+    static final class PipelineTask extends PrimitiveTask<PipelineTask> {
+
+        private FusedPipeline pipeline;
+        private int op;
+        private double[] doubleDst;
+        private long[] longDst;
+        private DoubleBinaryOperator doubleOp;
+        private LongBinaryOperator longOp;
+
+        private long count;
+        private double[] doubles;
+        private long[] longs;
+
+        protected PipelineTask newSubtask() {
+            return new PipelineTask();
+        }
+
+        protected void leaf(int start, int end) {
+            PipelineTask r = root();
+            FusedPipeline p = r.pipeline;
+            Stage[] stages = p.stages;
+            boolean longOutput = stages.length == 0
+                ? p.longSource != null
+                : stages[stages.length - 1].longs();
+            if (doubles == null) {
+                doubles = new double[CHUNK];
+            }
+            if (longs == null && p.longSource != null) {
+                longs = new long[CHUNK];
+            }
+            int op = r.op;
+            count = 0;
+            doubleCompensation = 0;
+            longResult = op == MIN ? Long.MAX_VALUE
+                : op == MAX ? Long.MIN_VALUE : 0;
+            doubleResult = op == MIN ? Double.POSITIVE_INFINITY
+                : op == MAX ? Double.NEGATIVE_INFINITY : 0;
+            for (int c = start; c < end; c += CHUNK) {
+                int n = Math.min(CHUNK, end - c);
+                if (p.doubleSource != null) {
+                    System.arraycopy(p.doubleSource, c, doubles, 0, n);
+                }
+                else {
+                    System.arraycopy(p.longSource, c, longs, 0, n);
+                }
+                for (int s = 0; s < stages.length && n > 0; ++s) {
+                    n = stages[s].apply(this, n);
+                }
+                if (longOutput) {
+                    foldLongs(r, c, n);
+                }
+                else {
+                    foldDoubles(r, c, n);
+                }
+            }
+        }
+
+        // the first element of a reduce starts the fold, so the
+        // identity is not needed by the leaves
+        private void foldDoubles(PipelineTask r, int at, int n) {
+            double[] d = doubles;
+            switch (r.op) {
+                case SUM: {
+                    double s = doubleResult;
+                    for (int i = 0; i < n; ++i) {
+                        s += d[i];
+                    }
+                    doubleResult = s;
+                    break;
+                }
+                case SUM_COMPENSATED: {
+                    double s = doubleResult;
+                    double c = doubleCompensation;
+                    for (int i = 0; i < n; ++i) {
+                        double x = d[i];
+                        double t = s + x;
+                        if (Math.abs(s) >= Math.abs(x)) {
+                            c += (s - t) + x;
+                        }
+                        else {
+                            c += (x - t) + s;
+                        }
+                        s = t;
+                    }
+                    doubleResult = s;
+                    doubleCompensation = c;
+                    break;
+                }
+                case MIN: {
+                    double m = doubleResult;
+                    for (int i = 0; i < n; ++i) {
+                        m = Math.min(m, d[i]);
+                    }
+                    doubleResult = m;
+                    break;
+                }
+                case MAX: {
+                    double m = doubleResult;
+                    for (int i = 0; i < n; ++i) {
+                        m = Math.max(m, d[i]);
+                    }
+                    doubleResult = m;
+                    break;
+                }
+                case REDUCE: {
+                    if (n == 0) {
+                        break;
+                    }
+                    DoubleBinaryOperator f = r.doubleOp;
+                    int i = 0;
+                    double acc = doubleResult;
+                    if (count == 0) {
+                        acc = d[0];
+                        i = 1;
+                    }
+                    for (; i < n; ++i) {
+                        acc = f.applyAsDouble(acc, d[i]);
+                    }
+                    doubleResult = acc;
+                    break;
+                }
+                case WRITE:
+                    System.arraycopy(d, 0, r.doubleDst, at, n);
+                    break;
+                default:
+                    break;
+            }
+            count += n;
+        }
+
+        private void foldLongs(PipelineTask r, int at, int n) {
+            long[] l = longs;
+            switch (r.op) {
+                case SUM: {
+                    long s = longResult;
+                    for (int i = 0; i < n; ++i) {
+                        s += l[i];
+                    }
+                    longResult = s;
+                    break;
+                }
+                case MIN: {
+                    long m = longResult;
+                    for (int i = 0; i < n; ++i) {
+                        m = Math.min(m, l[i]);
+                    }
+                    longResult = m;
+                    break;
+                }
+                case MAX: {
+                    long m = longResult;
+                    for (int i = 0; i < n; ++i) {
+                        m = Math.max(m, l[i]);
+                    }
+                    longResult = m;
+                    break;
+                }
+                case REDUCE: {
+                    if (n == 0) {
+                        break;
+                    }
+                    LongBinaryOperator f = r.longOp;
+                    int i = 0;
+                    long acc = longResult;
+                    if (count == 0) {
+                        acc = l[0];
+                        i = 1;
+                    }
+                    for (; i < n; ++i) {
+                        acc = f.applyAsLong(acc, l[i]);
+                    }
+                    longResult = acc;
+                    break;
+                }
+                case WRITE:
+                    System.arraycopy(l, 0, r.longDst, at, n);
+                    break;
+                default:
+                    break;
+            }
+            count += n;
+        }
+
+        protected void mergeLeft(PipelineTask left) {
+            PipelineTask r = root();
+            switch (r.op) {
+                case SUM:
+                    doubleResult += left.doubleResult;
+                    longResult += left.longResult;
+                    break;
+                case SUM_COMPENSATED:
+                    mergeCompensatedLeft(left);
+                    break;
+                case MIN:
+                    doubleResult = Math.min(left.doubleResult, doubleResult);
+                    longResult = Math.min(left.longResult, longResult);
+                    break;
+                case MAX:
+                    doubleResult = Math.max(left.doubleResult, doubleResult);
+                    longResult = Math.max(left.longResult, longResult);
+                    break;
+                case REDUCE:
+                    if (left.count == 0) {
+                        break;
+                    }
+                    if (count == 0) {
+                        doubleResult = left.doubleResult;
+                        longResult = left.longResult;
+                    }
+                    else if (r.doubleOp != null) {
+                        doubleResult = r.doubleOp.applyAsDouble(
+                            left.doubleResult, doubleResult);
+                    }
+                    else {
+                        longResult = r.longOp.applyAsLong(
+                            left.longResult, longResult);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            count += left.count;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package jconcurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// java reference 9
+// P923/958
+// CountDownLatchBasisTest.testWaitForLatch: the main thread
+// waits in await() until the workers have counted down.
+
+// a CountDownLatch that records its waits (WaitStats); an
+// await() on an open latch is counted as immediate and not
+// timed.
+
+public class InstrumentedCountDownLatch extends CountDownLatch {
+
+    private final WaitStats stats;
+
+    public InstrumentedCountDownLatch(String name, int count) {
+        super(count);
+        stats = new WaitStats(name);
+    }
+
+    public WaitStats stats() {
+        return stats;
+    }
+
+    public void await() throws InterruptedException {
+        if (getCount() == 0) {
+            stats.recordImmediate();
+            return;
+        }
+        long start = stats.begin();
+        try {
+            super.await();
+        }
+        finally {
+            stats.end(start);
+        }
+    }
+
+    public boolean await(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (getCount() == 0) {
+            stats.recordImmediate();
+            return true;
+        }
+        long start = stats.begin();
+        // an interrupt or a failure is an ordinary end
+        boolean timedOut = false;
+        try {
+            timedOut = !super.await(timeout, unit);
+            return !timedOut;
+        }
+        finally {
+            if (timedOut) {
+                stats.endTimedOut(start);
+            }
+            else {
+                stats.end(start);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package jconcurrent;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// java reference 9
+// P925/960
+// CyclicBarrier enables you to define a synchronisation object
+// that suspends until the specified number of threads has
+// reached the barrier point.
+
+// a CyclicBarrier that records its waits (WaitStats). Every
+// await() is timed, the last arrival's included (its time is
+// that of the barrier action): how long the others wait for it
+// is the imbalance between the parties.
+
+public class InstrumentedCyclicBarrier extends CyclicBarrier {
+
+    private final WaitStats stats;
+
+    public InstrumentedCyclicBarrier(String name, int parties) {
+        this(name, parties, null);
+    }
+
+    public InstrumentedCyclicBarrier(String name, int parties,
+                                     Runnable barrierAction) {
+        super(parties, barrierAction);
+        stats = new WaitStats(name);
+    }
+
+    public WaitStats stats() {
+        return stats;
+    }
+
+    public int await() throws InterruptedException, BrokenBarrierException {
+        long start = stats.begin();
+        try {
+            return super.await();
+        }
+        finally {
+            stats.end(start);
+        }
+    }
+
+    public int await(long timeout, TimeUnit unit)
+        throws InterruptedException, BrokenBarrierException, TimeoutException {
+        long start = stats.begin();
+        boolean timedOut = false;
+        try {
+            return super.await(timeout, unit);
+        }
+        catch (TimeoutException e) {
+            timedOut = true;
+            throw e;
+        }
+        finally {
+            if (timedOut) {
+                stats.endTimedOut(start);
+            }
+            else {
+                stats.end(start);
+            }
+        }
+    }
+}
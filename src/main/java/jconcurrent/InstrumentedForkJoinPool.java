@@ -0,0 +1,296 @@
+package jconcurrent;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// java reference 9
+// P952/987
+// level of parallelism is only a target,
+// not a guarantee
+
+// InstrumentedForkJoinPool wraps a ForkJoinPool and makes what
+// the pool actually does visible:
+
+// > the figures the pool keeps itself (steals, queued tasks and
+// submissions, active and running workers) are read when they
+// are asked for, so they cost nothing in between;
+
+// > the tasks submitted through the wrapper are counted and a
+// sample of them (1 in getLatencySampling(), every task by
+// default) is timed from submission to start (wait) and to
+// completion (latency), into two LogHistograms. An untimed
+// task costs two counter increments; a timed one three calls
+// to System.nanoTime() on top. The subtasks a task forks are
+// part of its latency and are not timed on their own.
+
+// the metrics are pulled, through the ForkJoinPoolMXBean
+// getters or through JMX once registerMBean() has been called.
+
+// close() unregisters the MBean and shuts down a pool that the
+// wrapper created; a pool passed in (e.g. the common pool) is
+// left running. A failure to unregister is thrown to the caller.
+
+public final class InstrumentedForkJoinPool
+    implements Executor, ForkJoinPoolMXBean, AutoCloseable {
+
+    private final String name;
+    private final ForkJoinPool pool;
+    private final boolean owned;
+
+    private final StripedCounter completed = new StripedCounter();
+    private final StripedCounter failed = new StripedCounter();
+    private final LogHistogram latency = new LogHistogram();
+    private final LogHistogram wait = new LogHistogram();
+    private volatile int sampling = 1;
+
+    private ObjectName registered;
+
+    public InstrumentedForkJoinPool(String name, int parallelism) {
+        this(name, new ForkJoinPool(parallelism), true);
+    }
+
+    public InstrumentedForkJoinPool(String name, ForkJoinPool pool) {
+        this(name, pool, false);
+    }
+
+    private InstrumentedForkJoinPool(
+        String name, ForkJoinPool pool, boolean owned) {
+        this.name = name;
+        this.pool = pool;
+        this.owned = owned;
+    }
+
+    public ForkJoinPool pool() {
+        return pool;
+    }
+
+    public void execute(Runnable task) {
+        pool.execute(new Timed<Void>(task, null));
+    }
+
+    public <T> ForkJoinTask<T> submit(Callable<T> task) {
+        return pool.submit((Callable<T>)new Timed<T>(null, task));
+    }
+
+    // runs task and waits for it; the latency is measured from
+    // the caller, so there is no wait time
+    public <T> T invoke(ForkJoinTask<T> task) {
+        boolean timed = sample();
+        long start = timed ? System.nanoTime() : 0L;
+        try {
+            T result = pool.invoke(task);
+            completed.increment();
+            return result;
+        }
+        catch (RuntimeException | Error e) {
+            failed.increment();
+            throw e;
+        }
+        finally {
+            if (timed) {
+                latency.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    // registers this wrapper with the platform MBean server as
+    // jconcurrent:type=ForkJoinPool,name=<name>
+    public synchronized ObjectName registerMBean() throws JMException {
+        if (registered == null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(
+                "jconcurrent:type=ForkJoinPool,name=" + ObjectName.quote(name));
+            server.registerMBean(this, on);
+            registered = on;
+        }
+        return registered;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (registered != null) {
+            ManagementFactory.getPlatformMBeanServer()
+                .unregisterMBean(registered);
+            registered = null;
+        }
+    }
+
+    // the pool is shut down even if unregistering fails
+    public void close() throws JMException {
+        try {
+            unregisterMBean();
+        }
+        finally {
+            if (owned) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getPoolSize() {
+        return pool.getPoolSize();
+    }
+
+    public int getActiveThreadCount() {
+        return pool.getActiveThreadCount();
+    }
+
+    public int getRunningThreadCount() {
+        return pool.getRunningThreadCount();
+    }
+
+    public long getQueuedTaskCount() {
+        return pool.getQueuedTaskCount();
+    }
+
+    public int getQueuedSubmissionCount() {
+        return pool.getQueuedSubmissionCount();
+    }
+
+    public long getStealCount() {
+        return pool.getStealCount();
+    }
+
+    public long getTasksCompleted() {
+        return completed.sum();
+    }
+
+    public long getTasksFailed() {
+        return failed.sum();
+    }
+
+    public int getLatencySampling() {
+        return sampling;
+    }
+
+    public void setLatencySampling(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException(
+                "sampling must be positive: " + n);
+        }
+        sampling = n;
+    }
+
+    public double getLatencyMeanNanos() {
+        return latency.mean();
+    }
+
+    public long getLatencyP50Nanos() {
+        return latency.percentile(50);
+    }
+
+    public long getLatencyP99Nanos() {
+        return latency.percentile(99);
+    }
+
+    public long getLatencyMaxNanos() {
+        return latency.max();
+    }
+
+    public long getWaitP50Nanos() {
+        return wait.percentile(50);
+    }
+
+    public long getWaitP99Nanos() {
+        return wait.percentile(99);
+    }
+
+    public void resetLatencies() {
+        latency.reset();
+        wait.reset();
+    }
+
+    // the histograms themselves, for finer percentiles
+    public LogHistogram latency() {
+        return latency;
+    }
+
+    public LogHistogram waitTime() {
+        return wait;
+    }
+
+    public String toString() {
+        return name + " " + pool
+            + " completed=" + getTasksCompleted()
+            + " latency[" + latency + "]";
+    }
+
+    private boolean sample() {
+        int n = sampling;
+        return n == 1 || ThreadLocalRandom.current().nextInt(n) == 0;
+    }
+
+    // a Callable, or a Runnable when callable is null
+    private final class Timed<T> implements Callable<T>, Runnable {
+
+        private final Runnable runnable;
+        private final Callable<T> callable;
+        private final long submitted;
+
+        Timed(Runnable runnable, Callable<T> callable) {
+            this.runnable = runnable;
+            this.callable = callable;
+            submitted = sample() ? System.nanoTime() : 0L;
+        }
+
+        public void run() {
+            try {
+                call();
+            }
+            catch (RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                // a Runnable does not throw checked exceptions
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public T call() throws Exception {
+            if (submitted != 0L) {
+                wait.record(System.nanoTime() - submitted);
+            }
+            try {
+                T result;
+                if (callable != null) {
+                    result = callable.call();
+                }
+                else {
+                    runnable.run();
+                    result = null;
+                }
+                completed.increment();
+                return result;
+            }
+            catch (Exception | Error e) {
+                failed.increment();
+                throw e;
+            }
+            finally {
+                if (submitted != 0L) {
+                    latency.record(System.nanoTime() - submitted);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package jconcurrent;
+
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// java reference 9
+// P930/965
+// Phaser works a bit like a CyclicBarrier, except that
+// it supports multiple phases.
+
+// a Phaser that records its waits (WaitStats). Every
+// arriveAndAwaitAdvance() is timed, like
+// InstrumentedCyclicBarrier.await(); an awaitAdvance() for a
+// phase that is already over is counted as immediate. A
+// subclass may still override onAdvance().
+
+public class InstrumentedPhaser extends Phaser {
+
+    private final WaitStats stats;
+
+    public InstrumentedPhaser(String name) {
+        this(name, 0);
+    }
+
+    public InstrumentedPhaser(String name, int parties) {
+        super(parties);
+        stats = new WaitStats(name);
+    }
+
+    public WaitStats stats() {
+        return stats;
+    }
+
+    public int arriveAndAwaitAdvance() {
+        long start = stats.begin();
+        try {
+            return super.arriveAndAwaitAdvance();
+        }
+        finally {
+            stats.end(start);
+        }
+    }
+
+    public int awaitAdvance(int phase) {
+        if (getPhase() != phase) {
+            stats.recordImmediate();
+            return super.awaitAdvance(phase);
+        }
+        long start = stats.begin();
+        try {
+            return super.awaitAdvance(phase);
+        }
+        finally {
+            stats.end(start);
+        }
+    }
+
+    public int awaitAdvanceInterruptibly(int phase)
+        throws InterruptedException {
+        if (getPhase() != phase) {
+            stats.recordImmediate();
+            return super.awaitAdvanceInterruptibly(phase);
+        }
+        long start = stats.begin();
+        try {
+            return super.awaitAdvanceInterruptibly(phase);
+        }
+        finally {
+            stats.end(start);
+        }
+    }
+
+    public int awaitAdvanceInterruptibly(int phase, long timeout,
+                                         TimeUnit unit)
+        throws InterruptedException, TimeoutException {
+        if (getPhase() != phase) {
+            stats.recordImmediate();
+            return super.awaitAdvanceInterruptibly(phase, timeout, unit);
+        }
+        long start = stats.begin();
+        boolean timedOut = false;
+        try {
+            return super.awaitAdvanceInterruptibly(phase, timeout, unit);
+        }
+        catch (TimeoutException e) {
+            timedOut = true;
+            throw e;
+        }
+        finally {
+            if (timedOut) {
+                stats.endTimedOut(start);
+            }
+            else {
+                stats.end(start);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package jconcurrent;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// java reference 9
+// P918/953
+// Otherwise the thread will be blocked...
+
+// a Semaphore that records its waits (WaitStats); it is a
+// Semaphore, so it replaces one where it is declared.
+
+// an acquire first tries to take the permits without blocking
+// and is counted as immediate when that works; only otherwise
+// is it timed. On a fair semaphore the first try is only made
+// when no thread is queued, so that it does not barge.
+
+// tryAcquire() without a timeout never blocks and is not
+// recorded.
+
+public class InstrumentedSemaphore extends Semaphore {
+
+    private final WaitStats stats;
+
+    public InstrumentedSemaphore(String name, int permits) {
+        this(name, permits, false);
+    }
+
+    public InstrumentedSemaphore(String name, int permits, boolean fair) {
+        super(permits, fair);
+        stats = new WaitStats(name);
+    }
+
+    public WaitStats stats() {
+        return stats;
+    }
+
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    public void acquire(int permits) throws InterruptedException {
+        if (tryNow(permits)) {
+            return;
+        }
+        long start = stats.begin();
+        try {
+            super.acquire(permits);
+        }
+        finally {
+            stats.end(start);
+        }
+    }
+
+    public void acquireUninterruptibly() {
+        acquireUninterruptibly(1);
+    }
+
+    public void acquireUninterruptibly(int permits) {
+        if (tryNow(permits)) {
+            return;
+        }
+        long start = stats.begin();
+        try {
+            super.acquireUninterruptibly(permits);
+        }
+        finally {
+            stats.end(start);
+        }
+    }
+
+    public boolean tryAcquire(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        return tryAcquire(1, timeout, unit);
+    }
+
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (tryNow(permits)) {
+            return true;
+        }
+        long start = stats.begin();
+        // an interrupt or a failure is an ordinary end
+        boolean timedOut = false;
+        try {
+            timedOut = !super.tryAcquire(permits, timeout, unit);
+            return !timedOut;
+        }
+        finally {
+            if (timedOut) {
+                stats.endTimedOut(start);
+            }
+            else {
+                stats.end(start);
+            }
+        }
+    }
+
+    private boolean tryNow(int permits) {
+        if (isFair() && hasQueuedThreads()) {
+            return false;
+        }
+        if (super.tryAcquire(permits)) {
+            stats.recordImmediate();
+            return true;
+        }
+        return false;
+    }
+}
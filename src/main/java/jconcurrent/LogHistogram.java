@@ -0,0 +1,138 @@
+package jconcurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// a histogram of non-negative long values (latencies in
+// nanoseconds), in the style of HdrHistogram: the buckets are
+// logarithmic, each power of two being cut into SUB linear
+// sub-buckets, so a recorded value is known to within 1/SUB
+// (12.5%) whatever its magnitude, with 488 buckets covering
+// the whole range of long.
+
+// record() is lock-free and allocation-free: it increments one
+// bucket, adds to a StripedCounter and raises the maximum only
+// when it grows. The readers add up the buckets while the
+// writers go on, so a percentile is that of a recent, not an
+// atomic, view of the histogram.
+
+public final class LogHistogram {
+
+    static final int SUB_BITS = 3;
+    static final int SUB = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final StripedCounter sum = new StripedCounter();
+    private final AtomicLong max = new AtomicLong();
+
+    // negative values are recorded as 0
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        sum.add(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    // NaN when empty
+    public double mean() {
+        long n = count();
+        return n == 0 ? Double.NaN : (double)sum() / n;
+    }
+
+    // the upper bound of the bucket holding the value at the
+    // given percentile (0 to 100), never more than max(); 0
+    // when empty
+    public long percentile(double p) {
+        if (!(p >= 0.0 && p <= 100.0)) {
+            throw new IllegalArgumentException("percentile out of range: " + p);
+        }
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(p / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts.set(i, 0L);
+        }
+        sum.reset();
+        max.set(0L);
+    }
+
+    public String toString() {
+        return "count=" + count()
+            + " mean=" + mean()
+            + " p50=" + percentile(50)
+            + " p99=" + percentile(99)
+            + " max=" + max();
+    }
+
+    // values below SUB have a bucket each; above, a value with
+    // its highest bit at e goes to sub-bucket (its next SUB_BITS
+    // bits) of the group of e
+    static int bucket(long value) {
+        if (value < SUB) {
+            return (int)value;
+        }
+        int e = 63 - Long.numberOfLeadingZeros(value);
+        int top = (int)(value >>> (e - SUB_BITS));
+        return (e - SUB_BITS + 1) * SUB + (top - SUB);
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int shift = bucket / SUB - 1;
+        long top = SUB + bucket % SUB;
+        return top << shift;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int shift = bucket / SUB - 1;
+        long top = SUB + bucket % SUB;
+        // for the last bucket the shift gives Long.MIN_VALUE,
+        // and - 1 wraps around to Long.MAX_VALUE
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,713 @@
+package jconcurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongBinaryOperator;
+
+// ExampleConcurrentTask (see ForkJoinFrameworkBasisTest) applies
+// one UnaryOperator<String> to one input string. MapReduce applies
+// a map function to every line of a large text, a CharSequence or
+// a file, and reduces what it emits by key:
+
+// > the text is cut into fixed blocks, one per PrimitiveTask leaf;
+// a block owns the lines that start in it (see TextIngest), and a
+// leaf reads it through a reused char[] window, grown for a line
+// longer than the window
+
+// > a leaf emits into its own open-addressing table of long keys
+// and long values: no boxing, no entry objects, nothing shared
+
+// > the tables are merged up the task tree as the subtasks are
+// joined, the smaller into the larger. With one shared
+// ConcurrentHashMap.merge() per line instead, every worker updates
+// the same few hot bins (the handful of status codes, the common
+// words) and spends its time on failed CAS and bin locks
+
+// wordCount() is the same over the words of every line, with a
+// table that keeps one copy of every distinct word of its leaf
+// and compares words by content, not by hash alone.
+
+// a file is read from its mappings (segments of SEGMENT_BYTES,
+// like MappedDoubles) one byte per char: ASCII lines read as
+// expected. wordCount(Path) decodes the UTF-8 sequences as it
+// scans, so that a file and the same text as a String are split
+// into the same words.
+
+// a new task tree is used per call, as the tables it builds are
+// handed out (compare ParallelReduce, which keeps one per thread).
+
+public final class MapReduce {
+
+    // 1 GiB
+    static final long SEGMENT_BYTES = 1L << 30;
+
+    static final int MIN_BLOCK_CHARS = 1 << 16;
+
+    static final int WINDOW_CHARS = 1 << 16;
+
+    static final int MAX_LINE_CHARS = 1 << 24;
+
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    public interface Emitter {
+        void emit(long key, long value);
+    }
+
+    // line has no line separator ("\n" or "\r\n"), and is only
+    // valid during the call
+    public interface Mapper {
+        void map(CharSequence line, Emitter out);
+    }
+
+    public interface KeyValueConsumer {
+        void accept(long key, long value);
+    }
+
+    private MapReduce() {
+    }
+
+    // combine is applied in the order of the lines:
+    // combine(earlier, later)
+    public static Groups groupBy(
+        CharSequence text, Mapper mapper, LongBinaryOperator combine) {
+        return run(new TextSource(text), mapper, combine).groups;
+    }
+
+    public static Groups groupBy(
+        Path file, Mapper mapper, LongBinaryOperator combine)
+        throws IOException {
+        return groupBy(file, mapper, combine, SEGMENT_BYTES);
+    }
+
+    // words are runs of letters and digits (code points for which
+    // Character.isLetterOrDigit() holds), counted as they are
+    // (case-sensitive)
+    public static Map<String, Long> wordCount(CharSequence text) {
+        return run(new TextSource(text), null, null).words.toMap(false);
+    }
+
+    public static Map<String, Long> wordCount(Path file) throws IOException {
+        return wordCount(file, SEGMENT_BYTES);
+    }
+
+    static Groups groupBy(
+        Path file, Mapper mapper, LongBinaryOperator combine,
+        long segmentBytes) throws IOException {
+        try (FileSource source = new FileSource(file, segmentBytes)) {
+            return run(source, mapper, combine).groups;
+        }
+    }
+
+    static Map<String, Long> wordCount(Path file, long segmentBytes)
+        throws IOException {
+        try (FileSource source = new FileSource(file, segmentBytes)) {
+            return run(source, null, null).words.toMap(true);
+        }
+    }
+
+    private static MapTask run(
+        Source source, Mapper mapper, LongBinaryOperator combine) {
+        MapTask t = new MapTask();
+        t.source = source;
+        t.mapper = mapper;
+        t.combine = combine;
+        t.length = source.length();
+        int leaves = ThresholdTuner.currentParallelism()
+            * ThresholdTuner.LEAVES_PER_THREAD;
+        t.blockSize =
+            Math.max(MIN_BLOCK_CHARS, (t.length + leaves - 1) / leaves);
+        int blocks = (int)((t.length + t.blockSize - 1) / t.blockSize);
+        t.reset(0, blocks, 1).invoke();
+        return t;
+    }
+
+    static int spread(long h) {
+        return (int)(((h ^ (h >>> 32)) * 0x9e3779b97f4a7c15L) >>> 32);
+    }
+
+    // the emitted keys and their combined values
+    public static final class Groups {
+
+        private static final int MIN_CAPACITY = 16;
+
+        // 0 marks an empty slot; the key 0 is kept aside
+        private long[] keys = new long[MIN_CAPACITY];
+        private long[] values = new long[MIN_CAPACITY];
+        private int size;
+        private boolean hasZero;
+        private long zeroValue;
+
+        Groups() {
+        }
+
+        public int size() {
+            return size + (hasZero ? 1 : 0);
+        }
+
+        public boolean containsKey(long key) {
+            return key == 0 ? hasZero : keys[slot(key)] == key;
+        }
+
+        public long get(long key, long missing) {
+            if (key == 0) {
+                return hasZero ? zeroValue : missing;
+            }
+            int s = slot(key);
+            return keys[s] == key ? values[s] : missing;
+        }
+
+        // in no particular order
+        public void forEach(KeyValueConsumer action) {
+            if (hasZero) {
+                action.accept(0, zeroValue);
+            }
+            for (int i = 0; i < keys.length; ++i) {
+                if (keys[i] != 0) {
+                    action.accept(keys[i], values[i]);
+                }
+            }
+        }
+
+        public long[] keys() {
+            long[] k = new long[size()];
+            int n = 0;
+            if (hasZero) {
+                k[n++] = 0;
+            }
+            for (long key : keys) {
+                if (key != 0) {
+                    k[n++] = key;
+                }
+            }
+            return k;
+        }
+
+        // the slot of key, or the empty slot it would take
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int s = spread(key) & mask;
+            while (keys[s] != 0 && keys[s] != key) {
+                s = (s + 1) & mask;
+            }
+            return s;
+        }
+
+        // value comes from a line before the ones this table has
+        // seen if before, after them otherwise
+        void merge(
+            long key, long value, LongBinaryOperator op, boolean before) {
+            if (key == 0) {
+                if (!hasZero) {
+                    hasZero = true;
+                    zeroValue = value;
+                }
+                else {
+                    zeroValue = before
+                        ? op.applyAsLong(value, zeroValue)
+                        : op.applyAsLong(zeroValue, value);
+                }
+                return;
+            }
+            int s = slot(key);
+            if (keys[s] == key) {
+                values[s] = before
+                    ? op.applyAsLong(value, values[s])
+                    : op.applyAsLong(values[s], value);
+                return;
+            }
+            keys[s] = key;
+            values[s] = value;
+            if (++size * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] k = keys;
+            long[] v = values;
+            keys = new long[capacity];
+            values = new long[capacity];
+            for (int i = 0; i < k.length; ++i) {
+                if (k[i] != 0) {
+                    int s = slot(k[i]);
+                    keys[s] = k[i];
+                    values[s] = v[i];
+                }
+            }
+        }
+
+        // the tables of two adjacent parts of the text; the
+        // smaller one is added to the larger one, which is returned
+        static Groups join(Groups left, Groups right, LongBinaryOperator op) {
+            if (left.size() >= right.size()) {
+                left.addAll(right, false, op);
+                return left;
+            }
+            right.addAll(left, true, op);
+            return right;
+        }
+
+        private void addAll(
+            Groups other, boolean before, LongBinaryOperator op) {
+            int capacity = keys.length;
+            while ((size + other.size) * 2 > capacity) {
+                capacity *= 2;
+            }
+            if (capacity > keys.length) {
+                resize(capacity);
+            }
+            if (other.hasZero) {
+                merge(0, other.zeroValue, op, before);
+            }
+            long[] k = other.keys;
+            long[] v = other.values;
+            for (int i = 0; i < k.length; ++i) {
+                if (k[i] != 0) {
+                    merge(k[i], v[i], op, before);
+                }
+            }
+        }
+    }
+
+    // the distinct words of a part of the text, each one copied
+    // once into chars, and their counts
+    static final class Words {
+
+        private static final int MIN_CAPACITY = 64;
+
+        private long[] hashes = new long[MIN_CAPACITY];
+        private long[] counts = new long[MIN_CAPACITY];
+        private int[] starts = new int[MIN_CAPACITY];
+        // 0 marks an empty slot
+        private int[] lengths = new int[MIN_CAPACITY];
+        private char[] chars = new char[1024];
+        private int used;
+        private int size;
+
+        void add(char[] w, int from, int length, long hash, long count) {
+            int mask = lengths.length - 1;
+            int s = spread(hash) & mask;
+            for (int l; (l = lengths[s]) != 0; s = (s + 1) & mask) {
+                if (hashes[s] == hash && l == length
+                    && Arrays.equals(chars, starts[s], starts[s] + l,
+                                     w, from, from + length)) {
+                    counts[s] += count;
+                    return;
+                }
+            }
+            if (used + length > chars.length) {
+                chars = Arrays.copyOf(
+                    chars, Math.max(chars.length * 2, used + length));
+            }
+            System.arraycopy(w, from, chars, used, length);
+            hashes[s] = hash;
+            counts[s] = count;
+            starts[s] = used;
+            lengths[s] = length;
+            used += length;
+            if (++size * 2 > lengths.length) {
+                resize(lengths.length * 2);
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] h = hashes;
+            long[] c = counts;
+            int[] st = starts;
+            int[] len = lengths;
+            hashes = new long[capacity];
+            counts = new long[capacity];
+            starts = new int[capacity];
+            lengths = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < len.length; ++i) {
+                if (len[i] != 0) {
+                    int s = spread(h[i]) & mask;
+                    while (lengths[s] != 0) {
+                        s = (s + 1) & mask;
+                    }
+                    hashes[s] = h[i];
+                    counts[s] = c[i];
+                    starts[s] = st[i];
+                    lengths[s] = len[i];
+                }
+            }
+        }
+
+        static Words join(Words a, Words b) {
+            if (a.size < b.size) {
+                Words t = a;
+                a = b;
+                b = t;
+            }
+            for (int i = 0; i < b.lengths.length; ++i) {
+                if (b.lengths[i] != 0) {
+                    a.add(b.chars, b.starts[i], b.lengths[i],
+                          b.hashes[i], b.counts[i]);
+                }
+            }
+            return a;
+        }
+
+        // bytes: the chars are the bytes of UTF-8 text
+        Map<String, Long> toMap(boolean bytes) {
+            Map<String, Long> m = new HashMap<>(size * 2);
+            for (int i = 0; i < lengths.length; ++i) {
+                int l = lengths[i];
+                if (l == 0) {
+                    continue;
+                }
+                String word;
+                if (bytes) {
+                    byte[] b = new byte[l];
+                    for (int j = 0; j < l; ++j) {
+                        b[j] = (byte)chars[starts[i] + j];
+                    }
+                    word = new String(b, StandardCharsets.UTF_8);
+                }
+                else {
+                    word = new String(chars, starts[i], l);
+                }
+                // malformed UTF-8 may decode two words alike
+                m.merge(word, counts[i], Long::sum);
+            }
+            return m;
+        }
+    }
+
+    abstract static class Source {
+
+        // whether the chars are the bytes of a file
+        final boolean bytes;
+
+        Source(boolean bytes) {
+            this.bytes = bytes;
+        }
+
+        abstract long length();
+
+        // [from, from + n) into dst[0, n); scratch is as long as
+        // dst, for a source that needs to stage the copy
+        abstract void read(long from, char[] dst, int n, byte[] scratch);
+    }
+
+    static final class TextSource extends Source {
+
+        private final CharSequence text;
+
+        TextSource(CharSequence text) {
+            super(false);
+            this.text = text;
+        }
+
+        long length() {
+            return text.length();
+        }
+
+        void read(long from, char[] dst, int n, byte[] scratch) {
+            int s = (int)from;
+            if (text instanceof String) {
+                ((String)text).getChars(s, s + n, dst, 0);
+            }
+            else if (text instanceof StringBuilder) {
+                ((StringBuilder)text).getChars(s, s + n, dst, 0);
+            }
+            else {
+                for (int i = 0; i < n; ++i) {
+                    dst[i] = text.charAt(s + i);
+                }
+            }
+        }
+    }
+
+    static final class FileSource extends Source implements Closeable {
+
+        private final FileChannel channel;
+        private final MappedByteBuffer[] maps;
+        private final long segmentBytes;
+        private final long size;
+
+        FileSource(Path file, long segmentBytes) throws IOException {
+            super(true);
+            if (segmentBytes <= 0 || segmentBytes > SEGMENT_BYTES) {
+                throw new IllegalArgumentException(
+                    "bad segment size: " + segmentBytes);
+            }
+            this.segmentBytes = segmentBytes;
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                size = channel.size();
+                int n = (int)((size + segmentBytes - 1) / segmentBytes);
+                maps = new MappedByteBuffer[n];
+                for (int i = 0; i < n; ++i) {
+                    long start = i * segmentBytes;
+                    maps[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(segmentBytes, size - start));
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        long length() {
+            return size;
+        }
+
+        void read(long from, char[] dst, int n, byte[] scratch) {
+            for (int at = 0; at < n; ) {
+                int segment = (int)(from / segmentBytes);
+                int offset = (int)(from - segment * segmentBytes);
+                int k = Math.min(n - at, maps[segment].limit() - offset);
+                maps[segment].get(offset, scratch, at, k);
+                at += k;
+                from += k;
+            }
+            for (int i = 0; i < n; ++i) {
+                dst[i] = (char)(scratch[i] & 0xff);
+            }
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // one block of the text per leaf; the parameters are only set
+    // on the root. Every leaf fills a table of its own, and the
+    // tables are joined in mergeLeft()
+    static final class MapTask extends PrimitiveTask<MapTask>
+        implements Emitter {
+
+        private Source source;
+        private Mapper mapper;
+        private LongBinaryOperator combine;
+        private long length;
+        private long blockSize;
+
+        private Groups groups;
+        private Words words;
+
+        private char[] window;
+        private byte[] scratch;
+        private final Line line = new Line();
+
+        protected MapTask newSubtask() {
+            return new MapTask();
+        }
+
+        protected void leaf(int start, int end) {
+            MapTask r = root();
+            if (r.mapper != null) {
+                groups = new Groups();
+            }
+            else {
+                words = new Words();
+            }
+            if (start == end) {
+                return;
+            }
+            if (window == null) {
+                window = new char[WINDOW_CHARS];
+                scratch = new byte[WINDOW_CHARS];
+            }
+            for (int b = start; b < end; ++b) {
+                long lo = b * r.blockSize;
+                block(r, lo, Math.min(r.length, lo + r.blockSize));
+            }
+        }
+
+        // the lines that start in [lo, hi)
+        private void block(MapTask r, long lo, long hi) {
+            Source source = r.source;
+            long p = lo > 0 ? nextLine(r, lo - 1, hi) : 0;
+            while (p < hi) {
+                char[] w = window;
+                int n = (int)Math.min(w.length, r.length - p);
+                source.read(p, w, n, scratch);
+                int i = 0;
+                while (p + i < hi) {
+                    int j = i;
+                    while (j < n && w[j] != '\n') {
+                        ++j;
+                    }
+                    if (j == n && p + n < r.length) {
+                        // cut by the end of the window
+                        break;
+                    }
+                    int e = j > i && w[j - 1] == '\r' ? j - 1 : j;
+                    if (r.mapper != null) {
+                        line.set(w, i, e - i);
+                        r.mapper.map(line, this);
+                    }
+                    else {
+                        countWords(w, i, e, source.bytes);
+                    }
+                    i = j + 1;
+                }
+                if (i == 0) {
+                    growWindow(p);
+                }
+                p += i;
+            }
+        }
+
+        // the position after the first line break at or after
+        // from, or a position past hi if there is none before it
+        private long nextLine(MapTask r, long from, long hi) {
+            char[] w = window;
+            for (long q = from; q < hi; ) {
+                int n = (int)Math.min(w.length, r.length - q);
+                r.source.read(q, w, n, scratch);
+                for (int i = 0; i < n; ++i) {
+                    if (w[i] == '\n') {
+                        return q + i + 1;
+                    }
+                }
+                q += n;
+            }
+            return hi;
+        }
+
+        private void growWindow(long at) {
+            if (window.length >= MAX_LINE_CHARS) {
+                throw new IllegalArgumentException(
+                    "line longer than " + MAX_LINE_CHARS + " chars at " + at);
+            }
+            window = new char[window.length * 2];
+            scratch = new byte[window.length];
+        }
+
+        private void countWords(char[] w, int from, int to, boolean bytes) {
+            int i = from;
+            while (i < to) {
+                int k = wordChar(w, i, to, bytes);
+                if (k == 0) {
+                    ++i;
+                    continue;
+                }
+                int s = i;
+                long h = FNV_BASIS;
+                do {
+                    for (int e = i + k; i < e; ++i) {
+                        h = (h ^ w[i]) * FNV_PRIME;
+                    }
+                } while (i < to && (k = wordChar(w, i, to, bytes)) != 0);
+                words.add(w, s, i - s, h, 1);
+            }
+        }
+
+        // the number of chars of the letter or digit at w[i], or 0:
+        // a code point is made of a surrogate pair in a text, and of
+        // a UTF-8 sequence when the chars are the bytes of a file
+        static int wordChar(char[] w, int i, int to, boolean bytes) {
+            char c = w[i];
+            if (c < 0x80) {
+                return (c >= '0' && c <= '9')
+                    || ((c | 0x20) >= 'a' && (c | 0x20) <= 'z') ? 1 : 0;
+            }
+            if (!bytes) {
+                if (Character.isHighSurrogate(c) && i + 1 < to
+                    && Character.isLowSurrogate(w[i + 1])) {
+                    return Character.isLetterOrDigit(
+                        Character.toCodePoint(c, w[i + 1])) ? 2 : 0;
+                }
+                return Character.isLetterOrDigit(c) ? 1 : 0;
+            }
+            int n;
+            int cp;
+            int min;
+            if (c >= 0xc2 && c <= 0xdf) {
+                n = 2;
+                cp = c & 0x1f;
+                min = 0x80;
+            }
+            else if (c >= 0xe0 && c <= 0xef) {
+                n = 3;
+                cp = c & 0x0f;
+                min = 0x800;
+            }
+            else if (c >= 0xf0 && c <= 0xf4) {
+                n = 4;
+                cp = c & 0x07;
+                min = 0x10000;
+            }
+            else {
+                // a continuation byte, or not UTF-8
+                return 0;
+            }
+            if (i + n > to) {
+                return 0;
+            }
+            for (int k = 1; k < n; ++k) {
+                char d = w[i + k];
+                if ((d & 0xc0) != 0x80) {
+                    return 0;
+                }
+                cp = cp << 6 | (d & 0x3f);
+            }
+            // overlong encodings are not letters
+            return cp >= min && cp <= Character.MAX_CODE_POINT
+                && Character.isLetterOrDigit(cp) ? n : 0;
+        }
+
+        public void emit(long key, long value) {
+            groups.merge(key, value, root().combine, false);
+        }
+
+        protected void mergeLeft(MapTask left) {
+            if (groups != null) {
+                groups = Groups.join(left.groups, groups, root().combine);
+                left.groups = null;
+            }
+            else {
+                words = Words.join(left.words, words);
+                left.words = null;
+            }
+        }
+    }
+
+    // a line of the window, passed to the mapper
+    static final class Line implements CharSequence {
+
+        private char[] chars;
+        private int from;
+        private int length;
+
+        void set(char[] chars, int from, int length) {
+            this.chars = chars;
+            this.from = from;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(
+                    "index " + index + ", length " + length);
+            }
+            return chars[from + index];
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        public String toString() {
+            return new String(chars, from, length);
+        }
+    }
+}
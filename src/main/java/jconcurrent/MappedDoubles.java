@@ -0,0 +1,172 @@
+package jconcurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.function.DoubleUnaryOperator;
+
+// a file of raw doubles, memory-mapped so that ParallelBuffers
+// can reduce and transform it in place.
+
+// a single mapping cannot exceed 2 GiB, so a larger file is
+// mapped as consecutive segments of SEGMENT_BYTES (a multiple
+// of the page size, therefore every segment starts on a page);
+// the segments are processed one after another, each of them
+// by all the workers of the pool.
+
+// closing the file closes the channel; the mappings stay valid
+// until the segments are garbage collected.
+
+public final class MappedDoubles implements Closeable {
+
+    // 1 GiB
+    static final long SEGMENT_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] mappings;
+    private final DoubleBuffer[] segments;
+    private final long length;
+
+    private MappedDoubles(
+        FileChannel channel, boolean writable, ByteOrder order,
+        long segmentBytes) throws IOException {
+        long size = channel.size();
+        if (size % Double.BYTES != 0) {
+            throw new IOException(
+                "file size is not a multiple of 8: " + size);
+        }
+        this.channel = channel;
+        length = size / Double.BYTES;
+        int n = (int)((size + segmentBytes - 1) / segmentBytes);
+        mappings = new MappedByteBuffer[n];
+        segments = new DoubleBuffer[n];
+        FileChannel.MapMode mode = writable
+            ? FileChannel.MapMode.READ_WRITE
+            : FileChannel.MapMode.READ_ONLY;
+        for (int i = 0; i < n; ++i) {
+            long offset = i * segmentBytes;
+            mappings[i] = channel.map(
+                mode, offset, Math.min(segmentBytes, size - offset));
+            segments[i] = mappings[i].order(order).asDoubleBuffer();
+        }
+    }
+
+    // doubles in the native byte order of the platform
+    public static MappedDoubles open(Path file, boolean writable)
+        throws IOException {
+        return open(file, writable, ByteOrder.nativeOrder());
+    }
+
+    public static MappedDoubles open(
+        Path file, boolean writable, ByteOrder order) throws IOException {
+        return open(file, writable, order, SEGMENT_BYTES);
+    }
+
+    static MappedDoubles open(
+        Path file, boolean writable, ByteOrder order, long segmentBytes)
+        throws IOException {
+        if (segmentBytes <= 0 || segmentBytes % 4096 != 0) {
+            throw new IllegalArgumentException(
+                "segment size must be a multiple of 4096: " + segmentBytes);
+        }
+        FileChannel channel = writable
+            ? FileChannel.open(file,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)
+            : FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MappedDoubles(channel, writable, order, segmentBytes);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // the number of doubles in the file
+    public long length() {
+        return length;
+    }
+
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    // a view of one segment with its own position and limit
+    public DoubleBuffer segment(int i) {
+        return segments[i].duplicate();
+    }
+
+    public double sum() {
+        return sum(ParallelReduce.Summation.PLAIN);
+    }
+
+    // in compensated mode the totals of the segments are added
+    // up with compensation as well
+    public double sum(ParallelReduce.Summation mode) {
+        double s = 0;
+        double c = 0;
+        for (DoubleBuffer segment : segments) {
+            double x = ParallelBuffers.sum(segment.duplicate(), mode);
+            double t = s + x;
+            if (mode == ParallelReduce.Summation.COMPENSATED) {
+                if (Math.abs(s) >= Math.abs(x)) {
+                    c += (s - t) + x;
+                }
+                else {
+                    c += (x - t) + s;
+                }
+            }
+            s = t;
+        }
+        return s + c;
+    }
+
+    public double min() {
+        requireNonEmpty();
+        double m = Double.POSITIVE_INFINITY;
+        for (DoubleBuffer segment : segments) {
+            m = Math.min(m, ParallelBuffers.min(segment.duplicate()));
+        }
+        return m;
+    }
+
+    public double max() {
+        requireNonEmpty();
+        double m = Double.NEGATIVE_INFINITY;
+        for (DoubleBuffer segment : segments) {
+            m = Math.max(m, ParallelBuffers.max(segment.duplicate()));
+        }
+        return m;
+    }
+
+    // in place; the file must have been opened writable
+    public void transform(DoubleUnaryOperator f) {
+        for (DoubleBuffer segment : segments) {
+            ParallelBuffers.transform(segment.duplicate(), f);
+        }
+    }
+
+    // writes the changes made through a writable mapping back
+    // to the file
+    public void force() {
+        for (MappedByteBuffer m : mappings) {
+            m.force();
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void requireNonEmpty() {
+        if (length == 0) {
+            throw new NoSuchElementException("empty file");
+        }
+    }
+}
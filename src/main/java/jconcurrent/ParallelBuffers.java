@@ -0,0 +1,247 @@
+package jconcurrent;
+
+import java.nio.DoubleBuffer;
+import java.util.NoSuchElementException;
+import java.util.function.DoubleUnaryOperator;
+
+// ParallelReduce and ParallelTransform for data that does not
+// live on the heap: a DoubleBuffer viewing a direct or a
+// memory-mapped ByteBuffer (see MappedDoubles). Nothing is
+// copied onto the heap; the leaves read and write the buffer
+// with absolute get()/put(), which do not touch its position,
+// so the tasks can share one buffer.
+
+// the elements are [position, limit) of the buffer.
+
+// the splits are made on multiples of PAGE_DOUBLES, counted
+// from index 0 of the buffer; for a buffer that starts on a
+// page (e.g. a mapping of a file from a page-aligned offset)
+// every leaf therefore covers whole pages, and no two workers
+// fault in or write back the same page.
+
+// for the best throughput the buffer should be in native byte
+// order; any other order costs a byte swap per element.
+
+public final class ParallelBuffers {
+
+    // 4 KiB pages
+    static final int PAGE_DOUBLES = 4096 / Double.BYTES;
+
+    private static final int SUM = 0;
+    private static final int MIN = 1;
+    private static final int MAX = 2;
+    private static final int SUM_COMPENSATED = 3;
+    private static final int TRANSFORM = 4;
+
+    private static final String[] KEYS =
+        {"buffer.sum", "buffer.min", "buffer.max",
+            "buffer.sumCompensated"};
+
+    private static final ThreadLocal<BufferTask> TASKS =
+        new ThreadLocal<>();
+
+    private ParallelBuffers() {
+    }
+
+    public static double sum(DoubleBuffer data) {
+        return sum(data, ParallelReduce.Summation.PLAIN);
+    }
+
+    public static double sum(
+        DoubleBuffer data, ParallelReduce.Summation mode) {
+        boolean compensated = mode == ParallelReduce.Summation.COMPENSATED;
+        BufferTask t = invoke(
+            data, null, compensated ? SUM_COMPENSATED : SUM, null);
+        double result = compensated
+            ? t.doubleResult + t.doubleCompensation
+            : t.doubleResult;
+        release(t);
+        return result;
+    }
+
+    public static double min(DoubleBuffer data) {
+        requireNonEmpty(data);
+        BufferTask t = invoke(data, null, MIN, null);
+        double result = t.doubleResult;
+        release(t);
+        return result;
+    }
+
+    public static double max(DoubleBuffer data) {
+        requireNonEmpty(data);
+        BufferTask t = invoke(data, null, MAX, null);
+        double result = t.doubleResult;
+        release(t);
+        return result;
+    }
+
+    // in place
+    public static void transform(DoubleBuffer data, DoubleUnaryOperator f) {
+        transform(data, data, f);
+    }
+
+    // dst[i] = f(src[i]) for i in [src.position(), src.limit());
+    // dst must be writable, with a limit of at least src.limit()
+    public static void transform(
+        DoubleBuffer src, DoubleBuffer dst, DoubleUnaryOperator f) {
+        if (dst.isReadOnly()) {
+            throw new IllegalArgumentException("read-only destination");
+        }
+        if (dst.limit() < src.limit()) {
+            throw new IllegalArgumentException(
+                "destination too small: " + dst.limit()
+                + " < " + src.limit());
+        }
+        release(invoke(src, dst, TRANSFORM, f));
+    }
+
+    private static void requireNonEmpty(DoubleBuffer data) {
+        if (!data.hasRemaining()) {
+            throw new NoSuchElementException("empty buffer");
+        }
+    }
+
+    private static BufferTask invoke(
+        DoubleBuffer src, DoubleBuffer dst, int op, DoubleUnaryOperator f) {
+        BufferTask t = TASKS.get();
+        if (t != null) {
+            TASKS.set(null);
+        }
+        else {
+            t = new BufferTask();
+        }
+        t.src = src;
+        t.dst = dst;
+        t.op = op;
+        t.f = f;
+        int threshold = Math.max(PAGE_DOUBLES,
+            op == TRANSFORM
+                ? transformThreshold(f, src.remaining())
+                : ThresholdTuner.shared().threshold(
+                    KEYS[op], src.remaining(), t));
+        t.reset(src.position(), src.limit(), threshold).invoke();
+        return t;
+    }
+
+    // the transform may be in place, so it is calibrated on a
+    // scratch buffer rather than on the data
+    private static int transformThreshold(DoubleUnaryOperator f, int length) {
+        ThresholdTuner tuner = ThresholdTuner.shared();
+        Object key = f.getClass();
+        double cost = tuner.nanosPerElement(key);
+        if (Double.isNaN(cost)) {
+            DoubleBuffer scratch = DoubleBuffer.allocate(
+                Math.min(length, ThresholdTuner.SAMPLE_SIZE));
+            return tuner.threshold(key, length, (s, e) -> {
+                for (int i = s; i < e; ++i) {
+                    scratch.put(i, f.applyAsDouble(scratch.get(i)));
+                }
+            });
+        }
+        return tuner.threshold(
+            cost, length, ThresholdTuner.currentParallelism());
+    }
+
+    private static void release(BufferTask t) {
+        t.src = null;
+        t.dst = null;
+        t.f = null;
+        TASKS.set(t);
+    }
+
+    static final class BufferTask extends PrimitiveTask<BufferTask> {
+
+        private DoubleBuffer src;
+        private DoubleBuffer dst;
+        private int op;
+        private DoubleUnaryOperator f;
+
+        protected BufferTask newSubtask() {
+            return new BufferTask();
+        }
+
+        // rounded down to a page; the threshold is at least one
+        // page, so a range that is split spans more than a page
+        protected int split(int start, int end) {
+            int mid = (start + end) >>> 1;
+            int page = mid - mid % PAGE_DOUBLES;
+            return page > start ? page : mid;
+        }
+
+        protected void leaf(int start, int end) {
+            BufferTask r = root();
+            DoubleBuffer src = r.src;
+            switch (r.op) {
+                case MIN: {
+                    double m = src.get(start);
+                    for (int i = start + 1; i < end; ++i) {
+                        m = Math.min(m, src.get(i));
+                    }
+                    doubleResult = m;
+                    break;
+                }
+                case MAX: {
+                    double m = src.get(start);
+                    for (int i = start + 1; i < end; ++i) {
+                        m = Math.max(m, src.get(i));
+                    }
+                    doubleResult = m;
+                    break;
+                }
+                case SUM_COMPENSATED: {
+                    double s = 0;
+                    double c = 0;
+                    for (int i = start; i < end; ++i) {
+                        double x = src.get(i);
+                        double t = s + x;
+                        if (Math.abs(s) >= Math.abs(x)) {
+                            c += (s - t) + x;
+                        }
+                        else {
+                            c += (x - t) + s;
+                        }
+                        s = t;
+                    }
+                    doubleResult = s;
+                    doubleCompensation = c;
+                    break;
+                }
+                case TRANSFORM: {
+                    DoubleBuffer dst = r.dst;
+                    DoubleUnaryOperator f = r.f;
+                    for (int i = start; i < end; ++i) {
+                        dst.put(i, f.applyAsDouble(src.get(i)));
+                    }
+                    break;
+                }
+                default: {
+                    double s = 0;
+                    for (int i = start; i < end; ++i) {
+                        s += src.get(i);
+                    }
+                    doubleResult = s;
+                }
+            }
+        }
+
+        protected void mergeLeft(BufferTask left) {
+            switch (root().op) {
+                case MIN:
+                    doubleResult =
+                        Math.min(left.doubleResult, doubleResult);
+                    break;
+                case MAX:
+                    doubleResult =
+                        Math.max(left.doubleResult, doubleResult);
+                    break;
+                case SUM_COMPENSATED:
+                    mergeCompensatedLeft(left);
+                    break;
+                case TRANSFORM:
+                    break;
+                default:
+                    doubleResult += left.doubleResult;
+            }
+        }
+    }
+}
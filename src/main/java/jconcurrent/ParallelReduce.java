@@ -0,0 +1,458 @@
+package jconcurrent;
+
+import java.util.NoSuchElementException;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+
+// java reference 9
+// P959/993
+
+// a reusable version of ExampleSumTask (see
+// ForkJoinFrameworkBasisTest): divide-and-conquer reductions
+// over primitive arrays, run in the common pool.
+
+// the reductions are PrimitiveTasks, so the partial results
+// are never boxed. Each thread keeps the task tree of its
+// last reduction of each element type and reuses it, so in
+// the steady state a reduction allocates nothing. A thread
+// that starts a reduction while its cached tree is in use
+// (e.g. a worker that runs another reduction while helping
+// to join) simply builds a new one.
+
+// sums over int[] are accumulated as long, therefore they
+// do not overflow unless the sum itself exceeds the range
+// of long; sums over long[] wrap around like the + operator.
+
+// compensated summation follows Neumaier's variant of the
+// Kahan algorithm: each partial sum carries the low-order
+// bits lost by rounding, and the two halves are combined
+// with the same error-free addition, so the result does not
+// depend on how the array has been split.
+
+// the split threshold of each reduction is calibrated once
+// by ThresholdTuner and then scaled to the array length and
+// the parallelism of the pool.
+
+public final class ParallelReduce {
+
+    public enum Summation {
+        PLAIN,
+        COMPENSATED
+    }
+
+    private static final int SUM = 0;
+    private static final int MIN = 1;
+    private static final int MAX = 2;
+    private static final int COUNT = 3;
+    private static final int SUM_COMPENSATED = 4;
+
+    // tuner keys of the operations without a predicate; the
+    // counts are keyed by the class of their predicate, i.e.
+    // one entry per call site
+    private static final String[] INT_KEYS =
+        {"int.sum", "int.min", "int.max"};
+    private static final String[] LONG_KEYS =
+        {"long.sum", "long.min", "long.max"};
+    private static final String[] DOUBLE_KEYS =
+        {"double.sum", "double.min", "double.max", null,
+            "double.sumCompensated"};
+
+    private static final ThreadLocal<IntTask> INT_TASKS =
+        new ThreadLocal<>();
+    private static final ThreadLocal<LongTask> LONG_TASKS =
+        new ThreadLocal<>();
+    private static final ThreadLocal<DoubleTask> DOUBLE_TASKS =
+        new ThreadLocal<>();
+
+    private ParallelReduce() {
+    }
+
+    public static long sum(int[] data) {
+        return reduce(data, SUM, null);
+    }
+
+    public static long sum(long[] data) {
+        return reduce(data, SUM, null);
+    }
+
+    public static double sum(double[] data) {
+        return sum(data, Summation.PLAIN);
+    }
+
+    public static double sum(double[] data, Summation mode) {
+        DoubleTask t = invoke(data,
+            mode == Summation.COMPENSATED ? SUM_COMPENSATED : SUM,
+            null);
+        double result = mode == Summation.COMPENSATED
+            ? t.doubleResult + t.doubleCompensation
+            : t.doubleResult;
+        release(t);
+        return result;
+    }
+
+    public static int min(int[] data) {
+        requireNonEmpty(data.length);
+        return (int)reduce(data, MIN, null);
+    }
+
+    public static long min(long[] data) {
+        requireNonEmpty(data.length);
+        return reduce(data, MIN, null);
+    }
+
+    public static double min(double[] data) {
+        requireNonEmpty(data.length);
+        return reduce(data, MIN);
+    }
+
+    public static int max(int[] data) {
+        requireNonEmpty(data.length);
+        return (int)reduce(data, MAX, null);
+    }
+
+    public static long max(long[] data) {
+        requireNonEmpty(data.length);
+        return reduce(data, MAX, null);
+    }
+
+    public static double max(double[] data) {
+        requireNonEmpty(data.length);
+        return reduce(data, MAX);
+    }
+
+    public static long count(int[] data, IntPredicate p) {
+        return reduce(data, COUNT, p);
+    }
+
+    public static long count(long[] data, LongPredicate p) {
+        return reduce(data, COUNT, p);
+    }
+
+    public static long count(double[] data, DoublePredicate p) {
+        DoubleTask t = invoke(data, COUNT, p);
+        long result = t.longResult;
+        release(t);
+        return result;
+    }
+
+    // the mean of an empty array is NaN (0 / 0)
+    public static double mean(int[] data) {
+        return (double)sum(data) / data.length;
+    }
+
+    public static double mean(long[] data) {
+        return (double)sum(data) / data.length;
+    }
+
+    public static double mean(double[] data) {
+        return mean(data, Summation.PLAIN);
+    }
+
+    public static double mean(double[] data, Summation mode) {
+        return sum(data, mode) / data.length;
+    }
+
+    private static void requireNonEmpty(int length) {
+        if (length == 0) {
+            throw new NoSuchElementException("empty array");
+        }
+    }
+
+    // the cached tree is taken off the thread while it is in use
+    private static <T> T take(ThreadLocal<T> cache) {
+        T t = cache.get();
+        if (t != null) {
+            cache.set(null);
+        }
+        return t;
+    }
+
+    private static long reduce(int[] data, int op, IntPredicate p) {
+        IntTask t = take(INT_TASKS);
+        if (t == null) {
+            t = new IntTask();
+        }
+        t.data = data;
+        t.op = op;
+        t.pred = p;
+        Object key = op == COUNT ? p.getClass() : INT_KEYS[op];
+        int threshold = ThresholdTuner.shared().threshold(
+            key, data.length, t);
+        t.reset(0, data.length, threshold).invoke();
+
+        long result = t.longResult;
+        t.data = null;
+        t.pred = null;
+        INT_TASKS.set(t);
+        return result;
+    }
+
+    private static long reduce(long[] data, int op, LongPredicate p) {
+        LongTask t = take(LONG_TASKS);
+        if (t == null) {
+            t = new LongTask();
+        }
+        t.data = data;
+        t.op = op;
+        t.pred = p;
+        Object key = op == COUNT ? p.getClass() : LONG_KEYS[op];
+        int threshold = ThresholdTuner.shared().threshold(
+            key, data.length, t);
+        t.reset(0, data.length, threshold).invoke();
+
+        long result = t.longResult;
+        t.data = null;
+        t.pred = null;
+        LONG_TASKS.set(t);
+        return result;
+    }
+
+    private static double reduce(double[] data, int op) {
+        DoubleTask t = invoke(data, op, null);
+        double result = t.doubleResult;
+        release(t);
+        return result;
+    }
+
+    private static DoubleTask invoke(
+        double[] data, int op, DoublePredicate p) {
+        DoubleTask t = take(DOUBLE_TASKS);
+        if (t == null) {
+            t = new DoubleTask();
+        }
+        t.data = data;
+        t.op = op;
+        t.pred = p;
+        Object key = op == COUNT ? p.getClass() : DOUBLE_KEYS[op];
+        int threshold = ThresholdTuner.shared().threshold(
+            key, data.length, t);
+        t.reset(0, data.length, threshold).invoke();
+        return t;
+    }
+
+    private static void release(DoubleTask t) {
+        t.data = null;
+        t.pred = null;
+        DOUBLE_TASKS.set(t);
+    }
+
+    // the parameters below are only set on the root of a tree;
+    // subtasks read them through root()
+
+    static final class IntTask extends PrimitiveTask<IntTask> {
+
+        private int[] data;
+        private int op;
+        private IntPredicate pred;
+
+        protected IntTask newSubtask() {
+            return new IntTask();
+        }
+
+        // one loop per operation, so that each loop body stays
+        // small enough for the JIT to unroll
+        protected void leaf(int start, int end) {
+            IntTask r = root();
+            int[] data = r.data;
+            switch (r.op) {
+                case MIN: {
+                    int m = data[start];
+                    for (int i = start + 1; i < end; ++i) {
+                        m = Math.min(m, data[i]);
+                    }
+                    longResult = m;
+                    break;
+                }
+                case MAX: {
+                    int m = data[start];
+                    for (int i = start + 1; i < end; ++i) {
+                        m = Math.max(m, data[i]);
+                    }
+                    longResult = m;
+                    break;
+                }
+                case COUNT: {
+                    IntPredicate pred = r.pred;
+                    long n = 0;
+                    for (int i = start; i < end; ++i) {
+                        if (pred.test(data[i])) {
+                            ++n;
+                        }
+                    }
+                    longResult = n;
+                    break;
+                }
+                default: {
+                    long s = 0;
+                    for (int i = start; i < end; ++i) {
+                        s += data[i];
+                    }
+                    longResult = s;
+                }
+            }
+        }
+
+        protected void mergeLeft(IntTask left) {
+            longResult = merge(root().op, left.longResult, longResult);
+        }
+    }
+
+    static final class LongTask extends PrimitiveTask<LongTask> {
+
+        private long[] data;
+        private int op;
+        private LongPredicate pred;
+
+        protected LongTask newSubtask() {
+            return new LongTask();
+        }
+
+        protected void leaf(int start, int end) {
+            LongTask r = root();
+            long[] data = r.data;
+            switch (r.op) {
+                case MIN: {
+                    long m = data[start];
+                    for (int i = start + 1; i < end; ++i) {
+                        m = Math.min(m, data[i]);
+                    }
+                    longResult = m;
+                    break;
+                }
+                case MAX: {
+                    long m = data[start];
+                    for (int i = start + 1; i < end; ++i) {
+                        m = Math.max(m, data[i]);
+                    }
+                    longResult = m;
+                    break;
+                }
+                case COUNT: {
+                    LongPredicate pred = r.pred;
+                    long n = 0;
+                    for (int i = start; i < end; ++i) {
+                        if (pred.test(data[i])) {
+                            ++n;
+                        }
+                    }
+                    longResult = n;
+                    break;
+                }
+                default: {
+                    long s = 0;
+                    for (int i = start; i < end; ++i) {
+                        s += data[i];
+                    }
+                    longResult = s;
+                }
+            }
+        }
+
+        protected void mergeLeft(LongTask left) {
+            longResult = merge(root().op, left.longResult, longResult);
+        }
+    }
+
+    private static long merge(int op, long a, long b) {
+        switch (op) {
+            case MIN:
+                return Math.min(a, b);
+            case MAX:
+                return Math.max(a, b);
+            default:
+                return a + b;
+        }
+    }
+
+    static final class DoubleTask extends PrimitiveTask<DoubleTask> {
+
+        private double[] data;
+        private int op;
+        private DoublePredicate pred;
+
+        protected DoubleTask newSubtask() {
+            return new DoubleTask();
+        }
+
+        protected void leaf(int start, int end) {
+            DoubleTask r = root();
+            double[] data = r.data;
+            switch (r.op) {
+                case MIN: {
+                    double m = data[start];
+                    for (int i = start + 1; i < end; ++i) {
+                        m = Math.min(m, data[i]);
+                    }
+                    doubleResult = m;
+                    break;
+                }
+                case MAX: {
+                    double m = data[start];
+                    for (int i = start + 1; i < end; ++i) {
+                        m = Math.max(m, data[i]);
+                    }
+                    doubleResult = m;
+                    break;
+                }
+                case COUNT: {
+                    DoublePredicate pred = r.pred;
+                    long n = 0;
+                    for (int i = start; i < end; ++i) {
+                        if (pred.test(data[i])) {
+                            ++n;
+                        }
+                    }
+                    longResult = n;
+                    break;
+                }
+                case SUM_COMPENSATED: {
+                    double s = 0;
+                    double c = 0;
+                    for (int i = start; i < end; ++i) {
+                        double x = data[i];
+                        double t = s + x;
+                        if (Math.abs(s) >= Math.abs(x)) {
+                            c += (s - t) + x;
+                        }
+                        else {
+                            c += (x - t) + s;
+                        }
+                        s = t;
+                    }
+                    doubleResult = s;
+                    doubleCompensation = c;
+                    break;
+                }
+                default: {
+                    double s = 0;
+                    for (int i = start; i < end; ++i) {
+                        s += data[i];
+                    }
+                    doubleResult = s;
+                }
+            }
+        }
+
+        protected void mergeLeft(DoubleTask left) {
+            switch (root().op) {
+                case MIN:
+                    doubleResult =
+                        Math.min(left.doubleResult, doubleResult);
+                    break;
+                case MAX:
+                    doubleResult =
+                        Math.max(left.doubleResult, doubleResult);
+                    break;
+                case COUNT:
+                    longResult += left.longResult;
+                    break;
+                case SUM_COMPENSATED:
+                    mergeCompensatedLeft(left);
+                    break;
+                default:
+                    doubleResult += left.doubleResult;
+            }
+        }
+    }
+}
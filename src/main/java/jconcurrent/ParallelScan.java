@@ -0,0 +1,756 @@
+package jconcurrent;
+
+import java.nio.DoubleBuffer;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+// java reference 9
+// P959/993
+// ExampleSumTask (see ForkJoinFrameworkBasisTest) only yields
+// the total; a scan (prefix sum) keeps every partial result:
+// data[i] becomes data[0] op data[1] op ... op data[i].
+
+// the scan is done in place, in two passes over fixed blocks,
+// each pass a PrimitiveTask with one block per leaf:
+
+// > up-sweep: every block is reduced to its total, except the
+// first, which is scanned straight away (it needs no offset),
+// and the last, whose total nobody needs
+
+// > the block totals are scanned sequentially; there are only
+// a few per worker (see ThresholdTuner), so this is cheap
+
+// > down-sweep: every block but the first is scanned starting
+// from the total of the blocks to its left
+
+// the array is read twice and written once. runningSum() and
+// runningMax() do not go through an operator, so their leaves
+// run a loop the JIT can unroll; Arrays.parallelPrefix always
+// calls its operator, and has no segmented variant nor one for
+// buffers.
+
+// the operator must be associative; the blocks are combined
+// from left to right, so it need not be commutative. A double
+// sum is rounded differently from a sequential loop, in the
+// same way as ParallelReduce.sum(). int and long sums wrap
+// around like the + operator.
+
+// a segmented scan restarts at each of segmentStarts, which
+// must be ascending indices into the array (repeats are
+// allowed, index 0 is implied): data[i] becomes the scan of
+// data[s..i], s being the last start at or before i. The block
+// totals then carry a flag telling whether the block contains a
+// start, in which case the total only covers the part of the
+// block from its last start and the carry from the left stops
+// there.
+
+// like ParallelReduce, each thread reuses the blocks and the
+// task tree of its last scan of each element type. The block
+// size is the threshold ThresholdTuner picks for a reduction
+// with the same operator.
+
+public final class ParallelScan {
+
+    private static final int SUM = 0;
+    private static final int MAX = 1;
+    private static final int OPERATOR = 2;
+
+    private static final String[] INT_KEYS = {"int.scanSum", "int.scanMax"};
+    private static final String[] LONG_KEYS = {"long.scanSum", "long.scanMax"};
+    private static final String[] DOUBLE_KEYS =
+        {"double.scanSum", "double.scanMax"};
+    private static final String[] BUFFER_KEYS =
+        {"buffer.scanSum", "buffer.scanMax"};
+
+    private static final ThreadLocal<IntScan> INT_SCANS =
+        new ThreadLocal<>();
+    private static final ThreadLocal<LongScan> LONG_SCANS =
+        new ThreadLocal<>();
+    private static final ThreadLocal<DoubleScan> DOUBLE_SCANS =
+        new ThreadLocal<>();
+    private static final ThreadLocal<BufferScan> BUFFER_SCANS =
+        new ThreadLocal<>();
+
+    private ParallelScan() {
+    }
+
+    public static void scan(int[] data, IntBinaryOperator op) {
+        scan(data, null, OPERATOR, op);
+    }
+
+    public static void scan(
+        int[] data, int[] segmentStarts, IntBinaryOperator op) {
+        scan(data, checkStarts(segmentStarts, data.length), OPERATOR, op);
+    }
+
+    public static void runningSum(int[] data) {
+        scan(data, null, SUM, null);
+    }
+
+    public static void runningSum(int[] data, int[] segmentStarts) {
+        scan(data, checkStarts(segmentStarts, data.length), SUM, null);
+    }
+
+    public static void runningMax(int[] data) {
+        scan(data, null, MAX, null);
+    }
+
+    public static void runningMax(int[] data, int[] segmentStarts) {
+        scan(data, checkStarts(segmentStarts, data.length), MAX, null);
+    }
+
+    public static void scan(long[] data, LongBinaryOperator op) {
+        scan(data, null, OPERATOR, op);
+    }
+
+    public static void scan(
+        long[] data, int[] segmentStarts, LongBinaryOperator op) {
+        scan(data, checkStarts(segmentStarts, data.length), OPERATOR, op);
+    }
+
+    public static void runningSum(long[] data) {
+        scan(data, null, SUM, null);
+    }
+
+    public static void runningSum(long[] data, int[] segmentStarts) {
+        scan(data, checkStarts(segmentStarts, data.length), SUM, null);
+    }
+
+    public static void runningMax(long[] data) {
+        scan(data, null, MAX, null);
+    }
+
+    public static void runningMax(long[] data, int[] segmentStarts) {
+        scan(data, checkStarts(segmentStarts, data.length), MAX, null);
+    }
+
+    public static void scan(double[] data, DoubleBinaryOperator op) {
+        scan(data, null, OPERATOR, op);
+    }
+
+    public static void scan(
+        double[] data, int[] segmentStarts, DoubleBinaryOperator op) {
+        scan(data, checkStarts(segmentStarts, data.length), OPERATOR, op);
+    }
+
+    public static void runningSum(double[] data) {
+        scan(data, null, SUM, null);
+    }
+
+    public static void runningSum(double[] data, int[] segmentStarts) {
+        scan(data, checkStarts(segmentStarts, data.length), SUM, null);
+    }
+
+    // Math.max: a NaN is carried to the end of its segment
+    public static void runningMax(double[] data) {
+        scan(data, null, MAX, null);
+    }
+
+    public static void runningMax(double[] data, int[] segmentStarts) {
+        scan(data, checkStarts(segmentStarts, data.length), MAX, null);
+    }
+
+    // over [position, limit) of a writable buffer, like
+    // ParallelBuffers; the blocks are whole pages
+    public static void scan(DoubleBuffer data, DoubleBinaryOperator op) {
+        scan(data, OPERATOR, op);
+    }
+
+    public static void runningSum(DoubleBuffer data) {
+        scan(data, SUM, null);
+    }
+
+    public static void runningMax(DoubleBuffer data) {
+        scan(data, MAX, null);
+    }
+
+    private static int[] checkStarts(int[] starts, int length) {
+        int prev = 0;
+        for (int s : starts) {
+            if (s < prev || s >= length) {
+                throw new IllegalArgumentException(
+                    "segment starts must be ascending and in [0, "
+                    + length + "): " + s);
+            }
+            prev = s;
+        }
+        return starts;
+    }
+
+    // the cached scan is taken off the thread while it is in use
+    private static <T> T take(ThreadLocal<T> cache) {
+        T t = cache.get();
+        if (t != null) {
+            cache.set(null);
+        }
+        return t;
+    }
+
+    private static void scan(
+        int[] data, int[] starts, int op, IntBinaryOperator f) {
+        IntScan s = take(INT_SCANS);
+        if (s == null) {
+            s = new IntScan();
+        }
+        s.data = data;
+        s.f = f;
+        s.run(op, op == OPERATOR ? f.getClass() : INT_KEYS[op],
+              0, data.length, starts);
+        s.data = null;
+        s.f = null;
+        INT_SCANS.set(s);
+    }
+
+    private static void scan(
+        long[] data, int[] starts, int op, LongBinaryOperator f) {
+        LongScan s = take(LONG_SCANS);
+        if (s == null) {
+            s = new LongScan();
+        }
+        s.data = data;
+        s.f = f;
+        s.run(op, op == OPERATOR ? f.getClass() : LONG_KEYS[op],
+              0, data.length, starts);
+        s.data = null;
+        s.f = null;
+        LONG_SCANS.set(s);
+    }
+
+    private static void scan(
+        double[] data, int[] starts, int op, DoubleBinaryOperator f) {
+        DoubleScan s = take(DOUBLE_SCANS);
+        if (s == null) {
+            s = new DoubleScan();
+        }
+        s.data = data;
+        s.f = f;
+        s.run(op, op == OPERATOR ? f.getClass() : DOUBLE_KEYS[op],
+              0, data.length, starts);
+        s.data = null;
+        s.f = null;
+        DOUBLE_SCANS.set(s);
+    }
+
+    private static void scan(DoubleBuffer data, int op, DoubleBinaryOperator f) {
+        if (data.isReadOnly()) {
+            throw new IllegalArgumentException("read-only buffer");
+        }
+        BufferScan s = take(BUFFER_SCANS);
+        if (s == null) {
+            s = new BufferScan();
+        }
+        s.data = data;
+        s.f = f;
+        s.run(op, op == OPERATOR ? f.getClass() : BUFFER_KEYS[op],
+              data.position(), data.remaining(), null);
+        s.data = null;
+        s.f = null;
+        BUFFER_SCANS.set(s);
+    }
+
+    // the blocks of one scan and the logic that does not depend
+    // on the element type; the subclasses hold the data, the
+    // block totals and the leaf loops. A block total is only
+    // written by the leaf of its block, or by the sequential
+    // pass between the two invocations.
+
+    // the indices passed to the leaf loops are absolute (they
+    // include base); segmentStarts are relative to base
+
+    abstract static class Scan implements ThresholdTuner.Kernel {
+
+        int op;
+        private int base;
+        private int length;
+        private int blockSize;
+        private int blocks;
+        private int[] starts;
+        // whether each block contains a segment start
+        private boolean[] restarts = new boolean[1];
+        private final ScanTask task = new ScanTask(this);
+
+        // the total of [lo, hi) into block b
+        abstract void reduce(int b, int lo, int hi);
+
+        // scans [lo, hi) in place, starting from the total of
+        // block carry, or from nothing if carry < 0
+        abstract void scan(int lo, int hi, int carry);
+
+        // total of block b = total of block b - 1 op total of b
+        abstract void carry(int b);
+
+        // makes room for the totals of n blocks
+        abstract void grow(int n);
+
+        // the block size for a given threshold
+        int blockSize(int threshold) {
+            return threshold;
+        }
+
+        // the tuner probe: a reduction over the sample, relative
+        // to base; it only writes the total of block 0
+        public final void apply(int start, int end) {
+            reduce(0, base + start, base + end);
+        }
+
+        final void run(int op, Object key, int base, int length, int[] starts) {
+            if (length == 0) {
+                return;
+            }
+            this.op = op;
+            this.base = base;
+            this.length = length;
+            this.starts = starts;
+            blockSize = Math.min(length, blockSize(
+                ThresholdTuner.shared().threshold(key, length, this)));
+            blocks = (int)(((long)length + blockSize - 1) / blockSize);
+            try {
+                if (blocks == 1) {
+                    up(0);
+                    return;
+                }
+                grow(blocks);
+                if (restarts.length < blocks) {
+                    restarts = new boolean[blocks];
+                }
+                task.up = true;
+                task.reset(0, blocks, 1).invoke();
+                for (int b = 1; b < blocks - 1; ++b) {
+                    if (starts == null || !restarts[b]) {
+                        carry(b);
+                    }
+                }
+                task.up = false;
+                task.reset(1, blocks, 1).invoke();
+            }
+            finally {
+                this.starts = null;
+            }
+        }
+
+        final void up(int b) {
+            int lo = base + b * blockSize;
+            int hi = lo + Math.min(blockSize, base + length - lo);
+            if (b == 0) {
+                scanSegments(lo, hi, -1);
+                reduce(0, hi - 1, hi);
+                return;
+            }
+            if (b == blocks - 1) {
+                return;
+            }
+            int from = lo;
+            if (starts != null) {
+                int k = firstStart(hi - base) - 1;
+                restarts[b] = k >= 0 && starts[k] >= lo - base;
+                if (restarts[b]) {
+                    from = base + starts[k];
+                }
+            }
+            reduce(b, from, hi);
+        }
+
+        final void down(int b) {
+            int lo = base + b * blockSize;
+            int hi = lo + Math.min(blockSize, base + length - lo);
+            scanSegments(lo, hi, b - 1);
+        }
+
+        // only the piece before the first start of the block
+        // carries the total from the left
+        private void scanSegments(int lo, int hi, int carry) {
+            if (starts == null) {
+                scan(lo, hi, carry);
+                return;
+            }
+            int p = lo;
+            for (int k = firstStart(lo - base);
+                 k < starts.length && starts[k] < hi - base; ++k) {
+                int q = base + starts[k];
+                if (q > p) {
+                    scan(p, q, carry);
+                }
+                p = q;
+                carry = -1;
+            }
+            if (p < hi) {
+                scan(p, hi, carry);
+            }
+        }
+
+        // the index of the first start >= i
+        private int firstStart(int i) {
+            int lo = 0;
+            int hi = starts.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (starts[mid] < i) {
+                    lo = mid + 1;
+                }
+                else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    // one block per leaf; the blocks are written in place, so
+    // there is nothing to merge
+    static final class ScanTask extends PrimitiveTask<ScanTask> {
+
+        private final Scan scan;
+        private boolean up;
+
+        ScanTask(Scan scan) {
+            this.scan = scan;
+        }
+
+        protected ScanTask newSubtask() {
+            return new ScanTask(null);
+        }
+
+        protected void leaf(int start, int end) {
+            ScanTask r = root();
+            for (int b = start; b < end; ++b) {
+                if (r.up) {
+                    r.scan.up(b);
+                }
+                else {
+                    r.scan.down(b);
+                }
+            }
+        }
+
+        protected void mergeLeft(ScanTask left) {
+        }
+    }
+
+    // one loop per operation, as in ParallelReduce
+
+    static final class IntScan extends Scan {
+
+        private int[] data;
+        private IntBinaryOperator f;
+        private int[] totals = new int[1];
+
+        void grow(int n) {
+            if (totals.length < n) {
+                totals = new int[n];
+            }
+        }
+
+        private int combine(int a, int b) {
+            switch (op) {
+                case SUM:
+                    return a + b;
+                case MAX:
+                    return Math.max(a, b);
+                default:
+                    return f.applyAsInt(a, b);
+            }
+        }
+
+        void carry(int b) {
+            totals[b] = combine(totals[b - 1], totals[b]);
+        }
+
+        void reduce(int b, int lo, int hi) {
+            int[] a = data;
+            int acc = a[lo];
+            switch (op) {
+                case SUM:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc += a[i];
+                    }
+                    break;
+                case MAX:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = Math.max(acc, a[i]);
+                    }
+                    break;
+                default: {
+                    IntBinaryOperator f = this.f;
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = f.applyAsInt(acc, a[i]);
+                    }
+                }
+            }
+            totals[b] = acc;
+        }
+
+        void scan(int lo, int hi, int carry) {
+            int[] a = data;
+            int acc = carry < 0 ? a[lo] : combine(totals[carry], a[lo]);
+            a[lo] = acc;
+            switch (op) {
+                case SUM:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc += a[i];
+                        a[i] = acc;
+                    }
+                    break;
+                case MAX:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = Math.max(acc, a[i]);
+                        a[i] = acc;
+                    }
+                    break;
+                default: {
+                    IntBinaryOperator f = this.f;
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = f.applyAsInt(acc, a[i]);
+                        a[i] = acc;
+                    }
+                }
+            }
+        }
+    }
+
+    static final class LongScan extends Scan {
+
+        private long[] data;
+        private LongBinaryOperator f;
+        private long[] totals = new long[1];
+
+        void grow(int n) {
+            if (totals.length < n) {
+                totals = new long[n];
+            }
+        }
+
+        private long combine(long a, long b) {
+            switch (op) {
+                case SUM:
+                    return a + b;
+                case MAX:
+                    return Math.max(a, b);
+                default:
+                    return f.applyAsLong(a, b);
+            }
+        }
+
+        void carry(int b) {
+            totals[b] = combine(totals[b - 1], totals[b]);
+        }
+
+        void reduce(int b, int lo, int hi) {
+            long[] a = data;
+            long acc = a[lo];
+            switch (op) {
+                case SUM:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc += a[i];
+                    }
+                    break;
+                case MAX:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = Math.max(acc, a[i]);
+                    }
+                    break;
+                default: {
+                    LongBinaryOperator f = this.f;
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = f.applyAsLong(acc, a[i]);
+                    }
+                }
+            }
+            totals[b] = acc;
+        }
+
+        void scan(int lo, int hi, int carry) {
+            long[] a = data;
+            long acc = carry < 0 ? a[lo] : combine(totals[carry], a[lo]);
+            a[lo] = acc;
+            switch (op) {
+                case SUM:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc += a[i];
+                        a[i] = acc;
+                    }
+                    break;
+                case MAX:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = Math.max(acc, a[i]);
+                        a[i] = acc;
+                    }
+                    break;
+                default: {
+                    LongBinaryOperator f = this.f;
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = f.applyAsLong(acc, a[i]);
+                        a[i] = acc;
+                    }
+                }
+            }
+        }
+    }
+
+    static final class DoubleScan extends Scan {
+
+        private double[] data;
+        private DoubleBinaryOperator f;
+        private double[] totals = new double[1];
+
+        void grow(int n) {
+            if (totals.length < n) {
+                totals = new double[n];
+            }
+        }
+
+        private double combine(double a, double b) {
+            switch (op) {
+                case SUM:
+                    return a + b;
+                case MAX:
+                    return Math.max(a, b);
+                default:
+                    return f.applyAsDouble(a, b);
+            }
+        }
+
+        void carry(int b) {
+            totals[b] = combine(totals[b - 1], totals[b]);
+        }
+
+        void reduce(int b, int lo, int hi) {
+            double[] a = data;
+            double acc = a[lo];
+            switch (op) {
+                case SUM:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc += a[i];
+                    }
+                    break;
+                case MAX:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = Math.max(acc, a[i]);
+                    }
+                    break;
+                default: {
+                    DoubleBinaryOperator f = this.f;
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = f.applyAsDouble(acc, a[i]);
+                    }
+                }
+            }
+            totals[b] = acc;
+        }
+
+        void scan(int lo, int hi, int carry) {
+            double[] a = data;
+            double acc = carry < 0 ? a[lo] : combine(totals[carry], a[lo]);
+            a[lo] = acc;
+            switch (op) {
+                case SUM:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc += a[i];
+                        a[i] = acc;
+                    }
+                    break;
+                case MAX:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = Math.max(acc, a[i]);
+                        a[i] = acc;
+                    }
+                    break;
+                default: {
+                    DoubleBinaryOperator f = this.f;
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = f.applyAsDouble(acc, a[i]);
+                        a[i] = acc;
+                    }
+                }
+            }
+        }
+    }
+
+    // absolute get()/put(), so the position of the buffer is
+    // left alone
+    static final class BufferScan extends Scan {
+
+        private DoubleBuffer data;
+        private DoubleBinaryOperator f;
+        private double[] totals = new double[1];
+
+        void grow(int n) {
+            if (totals.length < n) {
+                totals = new double[n];
+            }
+        }
+
+        // rounded up to whole pages
+        int blockSize(int threshold) {
+            int page = ParallelBuffers.PAGE_DOUBLES;
+            return (int)Math.min(Integer.MAX_VALUE,
+                ((long)threshold + page - 1) / page * page);
+        }
+
+        private double combine(double a, double b) {
+            switch (op) {
+                case SUM:
+                    return a + b;
+                case MAX:
+                    return Math.max(a, b);
+                default:
+                    return f.applyAsDouble(a, b);
+            }
+        }
+
+        void carry(int b) {
+            totals[b] = combine(totals[b - 1], totals[b]);
+        }
+
+        void reduce(int b, int lo, int hi) {
+            DoubleBuffer a = data;
+            double acc = a.get(lo);
+            switch (op) {
+                case SUM:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc += a.get(i);
+                    }
+                    break;
+                case MAX:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = Math.max(acc, a.get(i));
+                    }
+                    break;
+                default: {
+                    DoubleBinaryOperator f = this.f;
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = f.applyAsDouble(acc, a.get(i));
+                    }
+                }
+            }
+            totals[b] = acc;
+        }
+
+        void scan(int lo, int hi, int carry) {
+            DoubleBuffer a = data;
+            double acc = carry < 0 ? a.get(lo) : combine(totals[carry], a.get(lo));
+            a.put(lo, acc);
+            switch (op) {
+                case SUM:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc += a.get(i);
+                        a.put(i, acc);
+                    }
+                    break;
+                case MAX:
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = Math.max(acc, a.get(i));
+                        a.put(i, acc);
+                    }
+                    break;
+                default: {
+                    DoubleBinaryOperator f = this.f;
+                    for (int i = lo + 1; i < hi; ++i) {
+                        acc = f.applyAsDouble(acc, a.get(i));
+                        a.put(i, acc);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,733 @@
+package jconcurrent;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+// java reference 9
+// P954/989
+// ExampleSquareTransform (see ForkJoinFrameworkBasisTest)
+// splits its range in two and hands both halves to
+// invokeAll(); the sorts below are built the same way.
+
+// > radixSort: an LSD radix sort, one byte per pass. Each pass
+// is two PrimitiveTasks over fixed blocks: the first counts the
+// digits of each block, the offsets of every (digit, block) are
+// then laid out sequentially, and the second moves each block
+// to its offsets. The moves keep the order of each block, so
+// every pass is stable. A pass in which all the keys have the
+// same digit is skipped, which is what happens to the high
+// bytes of timestamps that span a few days. The sort needs a
+// scratch array as long as the data (and, for doubles, a long
+// key array as well).
+
+// > sortByKey: a stable merge sort of long keys that moves a
+// payload held in a second array (the index of a record, say,
+// to sort any number of parallel arrays). Both halves are
+// sorted with invokeAll(), then merged by a task that splits
+// the larger run at its middle key and the other run by binary
+// search, so that the merge is parallel as well. The scratch
+// arrays start as copies of the data and the two swap roles at
+// each level, so nothing is copied back.
+
+// > merge: a k-way merge of sorted runs. The key range is cut
+// at splitters sampled from the runs; each leaf finds its part
+// of every run by binary search and merges them with a heap.
+// The runs must be sorted, otherwise the result is not.
+
+// doubles are sorted like Arrays.sort(double[]): -0.0 before
+// 0.0 and NaNs last (every NaN comes out as Double.NaN).
+
+// below SEQUENTIAL_THRESHOLD elements the sorts are left to
+// Arrays.sort(); above, the ranges are split down to a few per
+// worker, but never below SEQUENTIAL_THRESHOLD.
+
+public final class ParallelSort {
+
+    static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+    private static final int INSERTION_THRESHOLD = 32;
+
+    private static final int RADIX = 256;
+
+    // the phases of a RadixTask
+    private static final int ENCODE = 0;
+    private static final int COUNT = 1;
+    private static final int SCATTER = 2;
+    private static final int DECODE = 3;
+    private static final int COPY = 4;
+
+    private ParallelSort() {
+    }
+
+    public static void radixSort(int[] data) {
+        if (data.length <= SEQUENTIAL_THRESHOLD) {
+            Arrays.sort(data);
+            return;
+        }
+        RadixTask t = new RadixTask(data.length);
+        t.ints = data;
+        t.intSrc = data;
+        t.intDst = new int[data.length];
+        t.sort(Integer.SIZE / 8);
+        if (t.intSrc != data) {
+            t.run(COPY);
+        }
+    }
+
+    public static void radixSort(long[] data) {
+        if (data.length <= SEQUENTIAL_THRESHOLD) {
+            Arrays.sort(data);
+            return;
+        }
+        RadixTask t = new RadixTask(data.length);
+        t.longs = data;
+        t.longSrc = data;
+        t.longDst = new long[data.length];
+        t.sort(Long.SIZE / 8);
+        if (t.longSrc != data) {
+            t.run(COPY);
+        }
+    }
+
+    public static void radixSort(double[] data) {
+        if (data.length <= SEQUENTIAL_THRESHOLD) {
+            Arrays.sort(data);
+            return;
+        }
+        RadixTask t = new RadixTask(data.length);
+        t.doubles = data;
+        t.longSrc = new long[data.length];
+        t.longDst = new long[data.length];
+        t.run(ENCODE);
+        t.sort(Long.SIZE / 8);
+        t.run(DECODE);
+    }
+
+    // a long that orders like the double: the negatives have
+    // all but their sign bit flipped. The mapping is its own
+    // inverse
+    static long encode(double d) {
+        long b = Double.doubleToLongBits(d);
+        return b ^ ((b >> 63) & Long.MAX_VALUE);
+    }
+
+    static double decode(long key) {
+        return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+    }
+
+    public static void sortByKey(long[] keys, long[] values) {
+        checkLengths(keys.length, values.length);
+        if (keys.length <= INSERTION_THRESHOLD) {
+            new Pairs(keys, null, values, null, 0)
+                .insertionSort(0, 0, keys.length);
+            return;
+        }
+        Pairs p = new Pairs(keys, keys.clone(), values, values.clone(),
+                            threshold(keys.length));
+        new SortTask(p, 0, keys.length, 0).invoke();
+    }
+
+    public static void sortByKey(long[] keys, int[] values) {
+        checkLengths(keys.length, values.length);
+        if (keys.length <= INSERTION_THRESHOLD) {
+            new Pairs(keys, null, values, null, 0)
+                .insertionSort(0, 0, keys.length);
+            return;
+        }
+        Pairs p = new Pairs(keys, keys.clone(), values, values.clone(),
+                            threshold(keys.length));
+        new SortTask(p, 0, keys.length, 0).invoke();
+    }
+
+    public static long[] merge(long[]... runs) {
+        long total = 0;
+        for (long[] r : runs) {
+            total += r.length;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many elements: " + total);
+        }
+        long[] dst = new long[(int)total];
+        merge(runs, dst);
+        return dst;
+    }
+
+    // into [0, total length of the runs) of dst
+    public static void merge(long[][] runs, long[] dst) {
+        long total = 0;
+        for (long[] r : runs) {
+            total += r.length;
+        }
+        if (total > dst.length) {
+            throw new IllegalArgumentException(
+                "destination too small: " + dst.length + " < " + total);
+        }
+        if (total == 0) {
+            return;
+        }
+        int n = (int)total;
+        int leaves = (int)Math.min(
+            (long)ThresholdTuner.currentParallelism()
+                * ThresholdTuner.LEAVES_PER_THREAD,
+            ((long)n + SEQUENTIAL_THRESHOLD - 1) / SEQUENTIAL_THRESHOLD);
+        MergeRunsTask t = new MergeRunsTask();
+        t.runs = runs;
+        t.dst = dst;
+        t.splitters = splitters(runs, leaves);
+        t.reset(0, leaves, 1).invoke();
+    }
+
+    private static void checkLengths(int keys, int values) {
+        if (keys != values) {
+            throw new IllegalArgumentException(
+                "length mismatch: " + keys + " != " + values);
+        }
+    }
+
+    private static int threshold(int length) {
+        int leaves = ThresholdTuner.currentParallelism()
+            * ThresholdTuner.LEAVES_PER_THREAD;
+        return Math.max(SEQUENTIAL_THRESHOLD, length / leaves);
+    }
+
+    // leaves - 1 keys, evenly spaced in a sample of every run
+    private static long[] splitters(long[][] runs, int leaves) {
+        int count = 0;
+        for (long[] r : runs) {
+            if (r.length > 0) {
+                count += leaves;
+            }
+        }
+        long[] sample = new long[count];
+        int i = 0;
+        for (long[] r : runs) {
+            if (r.length > 0) {
+                for (int j = 0; j < leaves; ++j) {
+                    sample[i++] = r[(int)((long)j * r.length / leaves)];
+                }
+            }
+        }
+        Arrays.sort(sample);
+        long[] splitters = new long[leaves - 1];
+        for (int j = 0; j < splitters.length; ++j) {
+            splitters[j] = sample[(int)((long)(j + 1) * count / leaves)];
+        }
+        return splitters;
+    }
+
+    // the first index in [lo, hi) whose key is >= key, or hi
+    static int lowerBound(long[] a, int lo, int hi, long key) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // the first index in [lo, hi) whose key is > key, or hi
+    static int upperBound(long[] a, int lo, int hi, long key) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= key) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // the block size is chosen so that there are a few blocks
+    // per worker, but no more: every block has a count for each
+    // digit, and the offsets are laid out sequentially
+
+    static final class RadixTask extends PrimitiveTask<RadixTask> {
+
+        private int n;
+        private int blockSize;
+        private int blocks;
+        private int phase;
+        private int shift;
+        private int[] counts;
+
+        // the data, and the source and the destination of the
+        // current pass (the data and the scratch array, in
+        // turn); doubles are sorted as longs
+        private int[] ints;
+        private int[] intSrc;
+        private int[] intDst;
+        private long[] longs;
+        private long[] longSrc;
+        private long[] longDst;
+        private double[] doubles;
+
+        RadixTask() {
+        }
+
+        RadixTask(int n) {
+            this.n = n;
+            blocks = (int)Math.min(
+                (long)ThresholdTuner.currentParallelism()
+                    * ThresholdTuner.LEAVES_PER_THREAD,
+                ((long)n + SEQUENTIAL_THRESHOLD - 1) / SEQUENTIAL_THRESHOLD);
+            blockSize = (int)(((long)n + blocks - 1) / blocks);
+            blocks = (int)(((long)n + blockSize - 1) / blockSize);
+            counts = new int[blocks * RADIX];
+        }
+
+        protected RadixTask newSubtask() {
+            return new RadixTask();
+        }
+
+        void run(int phase) {
+            this.phase = phase;
+            reset(0, blocks, 1).invoke();
+        }
+
+        void sort(int passes) {
+            for (int p = 0; p < passes; ++p) {
+                shift = p * 8;
+                run(COUNT);
+                if (offsets()) {
+                    run(SCATTER);
+                    int[] i = intSrc;
+                    intSrc = intDst;
+                    intDst = i;
+                    long[] l = longSrc;
+                    longSrc = longDst;
+                    longDst = l;
+                }
+            }
+        }
+
+        // turns the counts into the offset each block moves its
+        // first key of each digit to; false if all the keys
+        // have the same digit, i.e. the pass can be skipped
+        private boolean offsets() {
+            int[] c = counts;
+            int total = 0;
+            for (int d = 0; d < RADIX; ++d) {
+                int start = total;
+                for (int b = 0; b < blocks; ++b) {
+                    int k = b * RADIX + d;
+                    int count = c[k];
+                    c[k] = total;
+                    total += count;
+                }
+                if (total - start == n) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        protected void leaf(int start, int end) {
+            RadixTask r = root();
+            for (int b = start; b < end; ++b) {
+                int lo = b * r.blockSize;
+                int hi = lo + Math.min(r.blockSize, r.n - lo);
+                switch (r.phase) {
+                    case ENCODE:
+                        encode(r, lo, hi);
+                        break;
+                    case COUNT:
+                        count(r, b * RADIX, lo, hi);
+                        break;
+                    case SCATTER:
+                        scatter(r, b * RADIX, lo, hi);
+                        break;
+                    case DECODE:
+                        decode(r, lo, hi);
+                        break;
+                    default:
+                        if (r.ints != null) {
+                            System.arraycopy(r.intSrc, lo, r.ints, lo, hi - lo);
+                        }
+                        else {
+                            System.arraycopy(r.longSrc, lo, r.longs, lo, hi - lo);
+                        }
+                }
+            }
+        }
+
+        private static void encode(RadixTask r, int lo, int hi) {
+            double[] src = r.doubles;
+            long[] dst = r.longSrc;
+            for (int i = lo; i < hi; ++i) {
+                dst[i] = ParallelSort.encode(src[i]);
+            }
+        }
+
+        private static void decode(RadixTask r, int lo, int hi) {
+            long[] src = r.longSrc;
+            double[] dst = r.doubles;
+            for (int i = lo; i < hi; ++i) {
+                dst[i] = ParallelSort.decode(src[i]);
+            }
+        }
+
+        // the sign bit is flipped so that the digits of the
+        // negatives come first
+        private static void count(RadixTask r, int base, int lo, int hi) {
+            int[] c = r.counts;
+            Arrays.fill(c, base, base + RADIX, 0);
+            int shift = r.shift;
+            if (r.intSrc != null) {
+                int[] src = r.intSrc;
+                for (int i = lo; i < hi; ++i) {
+                    ++c[base + (((src[i] ^ Integer.MIN_VALUE) >>> shift) & 0xff)];
+                }
+            }
+            else {
+                long[] src = r.longSrc;
+                for (int i = lo; i < hi; ++i) {
+                    ++c[base + (int)(((src[i] ^ Long.MIN_VALUE) >>> shift) & 0xff)];
+                }
+            }
+        }
+
+        private static void scatter(RadixTask r, int base, int lo, int hi) {
+            int[] c = r.counts;
+            int shift = r.shift;
+            if (r.intSrc != null) {
+                int[] src = r.intSrc;
+                int[] dst = r.intDst;
+                for (int i = lo; i < hi; ++i) {
+                    int x = src[i];
+                    dst[c[base + (((x ^ Integer.MIN_VALUE) >>> shift) & 0xff)]++] = x;
+                }
+            }
+            else {
+                long[] src = r.longSrc;
+                long[] dst = r.longDst;
+                for (int i = lo; i < hi; ++i) {
+                    long x = src[i];
+                    dst[c[base + (int)(((x ^ Long.MIN_VALUE) >>> shift) & 0xff)]++] = x;
+                }
+            }
+        }
+
+        protected void mergeLeft(RadixTask left) {
+        }
+    }
+
+    // the arrays of a sortByKey(): keys[0] and values[0] are
+    // the data, keys[1] and values[1] the scratch copies. Either
+    // longValues or intValues is null
+    static final class Pairs {
+
+        final long[][] keys;
+        final long[][] longValues;
+        final int[][] intValues;
+        final int threshold;
+
+        Pairs(long[] keys, long[] keyScratch,
+              long[] values, long[] valueScratch, int threshold) {
+            this.keys = new long[][] {keys, keyScratch};
+            this.longValues = new long[][] {values, valueScratch};
+            this.intValues = null;
+            this.threshold = threshold;
+        }
+
+        Pairs(long[] keys, long[] keyScratch,
+              int[] values, int[] valueScratch, int threshold) {
+            this.keys = new long[][] {keys, keyScratch};
+            this.longValues = null;
+            this.intValues = new int[][] {values, valueScratch};
+            this.threshold = threshold;
+        }
+
+        // sorts [lo, hi) into array to; on entry both arrays
+        // hold the same elements in [lo, hi)
+        void sort(int to, int lo, int hi) {
+            if (hi - lo <= INSERTION_THRESHOLD) {
+                insertionSort(to, lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            sort(to ^ 1, lo, mid);
+            sort(to ^ 1, mid, hi);
+            merge(to ^ 1, lo, mid, mid, hi, to, lo);
+        }
+
+        void insertionSort(int to, int lo, int hi) {
+            long[] k = keys[to];
+            if (longValues != null) {
+                long[] v = longValues[to];
+                for (int i = lo + 1; i < hi; ++i) {
+                    long key = k[i];
+                    long value = v[i];
+                    int j = i - 1;
+                    for (; j >= lo && k[j] > key; --j) {
+                        k[j + 1] = k[j];
+                        v[j + 1] = v[j];
+                    }
+                    k[j + 1] = key;
+                    v[j + 1] = value;
+                }
+            }
+            else {
+                int[] v = intValues[to];
+                for (int i = lo + 1; i < hi; ++i) {
+                    long key = k[i];
+                    int value = v[i];
+                    int j = i - 1;
+                    for (; j >= lo && k[j] > key; --j) {
+                        k[j + 1] = k[j];
+                        v[j + 1] = v[j];
+                    }
+                    k[j + 1] = key;
+                    v[j + 1] = value;
+                }
+            }
+        }
+
+        // merges [a, aEnd) and [b, bEnd) of array from into array
+        // to at out; on equal keys the first run goes first
+        void merge(int from, int a, int aEnd, int b, int bEnd,
+                   int to, int out) {
+            long[] ks = keys[from];
+            long[] kd = keys[to];
+            if (a < aEnd && b < bEnd && ks[aEnd - 1] <= ks[b]) {
+                // already in order, which the sequential sort
+                // meets on the adjacent halves of sorted data
+                copy(from, a, aEnd, to, out);
+                copy(from, b, bEnd, to, out + (aEnd - a));
+                return;
+            }
+            if (longValues != null) {
+                long[] vs = longValues[from];
+                long[] vd = longValues[to];
+                while (a < aEnd && b < bEnd) {
+                    if (ks[b] < ks[a]) {
+                        kd[out] = ks[b];
+                        vd[out++] = vs[b++];
+                    }
+                    else {
+                        kd[out] = ks[a];
+                        vd[out++] = vs[a++];
+                    }
+                }
+            }
+            else {
+                int[] vs = intValues[from];
+                int[] vd = intValues[to];
+                while (a < aEnd && b < bEnd) {
+                    if (ks[b] < ks[a]) {
+                        kd[out] = ks[b];
+                        vd[out++] = vs[b++];
+                    }
+                    else {
+                        kd[out] = ks[a];
+                        vd[out++] = vs[a++];
+                    }
+                }
+            }
+            copy(from, a, aEnd, to, out);
+            copy(from, b, bEnd, to, out + (aEnd - a));
+        }
+
+        private void copy(int from, int lo, int hi, int to, int out) {
+            System.arraycopy(keys[from], lo, keys[to], out, hi - lo);
+            if (longValues != null) {
+                System.arraycopy(
+                    longValues[from], lo, longValues[to], out, hi - lo);
+            }
+            else {
+                System.arraycopy(
+                    intValues[from], lo, intValues[to], out, hi - lo);
+            }
+        }
+    }
+
+    // sorts [lo, hi) of the pairs into array to
+    static final class SortTask extends RecursiveAction {
+
+        private final Pairs p;
+        private final int lo;
+        private final int hi;
+        private final int to;
+
+        SortTask(Pairs p, int lo, int hi, int to) {
+            this.p = p;
+            this.lo = lo;
+            this.hi = hi;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (hi - lo <= p.threshold) {
+                p.sort(to, lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new SortTask(p, lo, mid, to ^ 1),
+                      new SortTask(p, mid, hi, to ^ 1));
+            new MergeTask(p, to ^ 1, lo, mid, mid, hi, to, lo).invoke();
+        }
+    }
+
+    static final class MergeTask extends RecursiveAction {
+
+        private final Pairs p;
+        private final int from;
+        private final int a;
+        private final int aEnd;
+        private final int b;
+        private final int bEnd;
+        private final int to;
+        private final int out;
+
+        MergeTask(Pairs p, int from, int a, int aEnd, int b, int bEnd,
+                  int to, int out) {
+            this.p = p;
+            this.from = from;
+            this.a = a;
+            this.aEnd = aEnd;
+            this.b = b;
+            this.bEnd = bEnd;
+            this.to = to;
+            this.out = out;
+        }
+
+        // the key a run is split at goes to the second half, and
+        // the keys of the other run that are equal to it go to
+        // the side that keeps the first run first
+        protected void compute() {
+            int n = (aEnd - a) + (bEnd - b);
+            if (n <= p.threshold) {
+                p.merge(from, a, aEnd, b, bEnd, to, out);
+                return;
+            }
+            long[] k = p.keys[from];
+            int am;
+            int bm;
+            if (aEnd - a >= bEnd - b) {
+                am = (a + aEnd) >>> 1;
+                bm = lowerBound(k, b, bEnd, k[am]);
+            }
+            else {
+                bm = (b + bEnd) >>> 1;
+                am = upperBound(k, a, aEnd, k[bm]);
+            }
+            invokeAll(
+                new MergeTask(p, from, a, am, b, bm, to, out),
+                new MergeTask(p, from, am, aEnd, bm, bEnd, to,
+                              out + (am - a) + (bm - b)));
+        }
+    }
+
+    // leaf j merges the keys in [splitters[j - 1], splitters[j])
+    // of every run, and writes them after all the smaller keys
+    static final class MergeRunsTask extends PrimitiveTask<MergeRunsTask> {
+
+        private long[][] runs;
+        private long[] dst;
+        private long[] splitters;
+
+        protected MergeRunsTask newSubtask() {
+            return new MergeRunsTask();
+        }
+
+        protected void leaf(int start, int end) {
+            MergeRunsTask r = root();
+            int k = r.runs.length;
+            int[] pos = new int[k];
+            int[] ends = new int[k];
+            int[] heap = new int[k];
+            long[] heads = new long[k];
+            for (int j = start; j < end; ++j) {
+                long out = 0;
+                for (int i = 0; i < k; ++i) {
+                    long[] run = r.runs[i];
+                    pos[i] = j == 0
+                        ? 0
+                        : lowerBound(run, 0, run.length, r.splitters[j - 1]);
+                    ends[i] = j == r.splitters.length
+                        ? run.length
+                        : lowerBound(run, 0, run.length, r.splitters[j]);
+                    out += pos[i];
+                }
+                mergeRuns(r.runs, pos, ends, heap, heads, r.dst, (int)out);
+            }
+        }
+
+        protected void mergeLeft(MergeRunsTask left) {
+        }
+
+        // a binary min-heap of the runs that are not exhausted,
+        // ordered by their next key, which is kept next to the
+        // run in heads
+        private static void mergeRuns(long[][] runs, int[] pos, int[] ends,
+                                      int[] heap, long[] heads,
+                                      long[] dst, int out) {
+            int size = 0;
+            for (int i = 0; i < runs.length; ++i) {
+                if (pos[i] < ends[i]) {
+                    heap[size] = i;
+                    heads[size++] = runs[i][pos[i]];
+                }
+            }
+            for (int i = size / 2 - 1; i >= 0; --i) {
+                siftDown(heap, heads, size, i);
+            }
+            while (size > 1) {
+                int r = heap[0];
+                long[] run = runs[r];
+                int p = pos[r];
+                int end = ends[r];
+                // the smallest run stays on top while its keys
+                // are not greater than those of both children
+                long bound = heads[1];
+                if (size > 2 && heads[2] < bound) {
+                    bound = heads[2];
+                }
+                do {
+                    dst[out++] = run[p++];
+                } while (p < end && run[p] <= bound);
+                pos[r] = p;
+                if (p == end) {
+                    --size;
+                    heap[0] = heap[size];
+                    heads[0] = heads[size];
+                }
+                else {
+                    heads[0] = run[p];
+                }
+                siftDown(heap, heads, size, 0);
+            }
+            if (size == 1) {
+                int r = heap[0];
+                System.arraycopy(runs[r], pos[r], dst, out, ends[r] - pos[r]);
+            }
+        }
+
+        private static void siftDown(int[] heap, long[] heads, int size, int i) {
+            int r = heap[i];
+            long key = heads[i];
+            for (;;) {
+                int c = 2 * i + 1;
+                if (c >= size) {
+                    break;
+                }
+                if (c + 1 < size && heads[c + 1] < heads[c]) {
+                    ++c;
+                }
+                if (key <= heads[c]) {
+                    break;
+                }
+                heap[i] = heap[c];
+                heads[i] = heads[c];
+                i = c;
+            }
+            heap[i] = r;
+            heads[i] = key;
+        }
+    }
+}
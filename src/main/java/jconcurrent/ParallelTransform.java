@@ -0,0 +1,85 @@
+package jconcurrent;
+
+// java reference 9
+// P954/989
+// ExampleSquareTransform (see ForkJoinFrameworkBasisTest)
+// with the leaf loop taken out: any ElementKernels.Transform
+// can be run over an array in the common pool.
+
+// like ParallelReduce, the transforms are PrimitiveTasks and
+// each thread reuses the task tree of its last transform.
+// The threshold of each kernel (keyed by its class) is
+// calibrated once by ThresholdTuner, on a scratch array since
+// the kernel may be applied in place.
+
+public final class ParallelTransform {
+
+    private static final ThreadLocal<TransformTask> TASKS =
+        new ThreadLocal<>();
+
+    private ParallelTransform() {
+    }
+
+    // in place
+    public static void apply(ElementKernels.Transform kernel, double[] data) {
+        apply(kernel, data, data);
+    }
+
+    public static void apply(
+        ElementKernels.Transform kernel, double[] src, double[] dst) {
+        if (dst.length != src.length) {
+            throw new IllegalArgumentException(
+                "length mismatch: " + src.length + " != " + dst.length);
+        }
+        TransformTask t = TASKS.get();
+        if (t != null) {
+            TASKS.set(null);
+        }
+        else {
+            t = new TransformTask();
+        }
+        t.kernel = kernel;
+        t.src = src;
+        t.dst = dst;
+        t.reset(0, src.length, threshold(kernel, src.length)).invoke();
+
+        t.kernel = null;
+        t.src = null;
+        t.dst = null;
+        TASKS.set(t);
+    }
+
+    private static int threshold(ElementKernels.Transform kernel, int length) {
+        ThresholdTuner tuner = ThresholdTuner.shared();
+        Object key = kernel.getClass();
+        double cost = tuner.nanosPerElement(key);
+        if (Double.isNaN(cost)) {
+            double[] scratch = new double[
+                Math.min(length, ThresholdTuner.SAMPLE_SIZE)];
+            return tuner.threshold(key, length,
+                (s, e) -> kernel.apply(scratch, scratch, s, e));
+        }
+        // already calibrated: no probe (and no scratch) needed
+        return Math.max(1, tuner.threshold(
+            cost, length, ThresholdTuner.currentParallelism()));
+    }
+
+    static final class TransformTask extends PrimitiveTask<TransformTask> {
+
+        private ElementKernels.Transform kernel;
+        private double[] src;
+        private double[] dst;
+
+        protected TransformTask newSubtask() {
+            return new TransformTask();
+        }
+
+        protected void leaf(int start, int end) {
+            TransformTask r = root();
+            r.kernel.apply(r.src, r.dst, start, end);
+        }
+
+        protected void mergeLeft(TransformTask left) {
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package jconcurrent;
+
+import java.util.concurrent.RecursiveAction;
+
+// java reference 9
+// P959/993
+// ExampleSumTask (see ForkJoinFrameworkBasisTest) returns a
+// Double from compute(), so every leaf and every join boxes
+// its result, and every split allocates two new tasks.
+
+// PrimitiveTask is a divide-and-conquer base class that does
+// neither:
+
+// > the results are kept in the long/double slots of the task
+// instead of being returned from compute()
+
+// > a task does not split into two new tasks; it forks its
+// left half, carries on with the right half in place, and so
+// on down to the threshold. Only the left halves are ever
+// forked (and they are the biggest pieces, which is what a
+// thief should steal).
+
+// > the forked subtasks are remembered by their parent and
+// reinitialised on the next invocation, so a task tree that is
+// invoked again over a range of the same length allocates
+// nothing.
+
+// the subtasks are merged in reverse order: each one covers
+// the range immediately to the left of what the parent has
+// accumulated so far, so mergeLeft() only has to be
+// associative, not commutative.
+
+// subtasks reach per-invocation parameters (the array, the
+// operator...) through root(), so clearing them on the root
+// is enough to stop a retained tree from holding on to them.
+
+// a task tree must not be invoked again before the previous
+// invocation has completed; see ParallelReduce for a way to
+// keep one tree per thread. A tree whose invocation threw may
+// still have running subtasks and should be dropped.
+
+public abstract class PrimitiveTask<T extends PrimitiveTask<T>>
+    extends RecursiveAction implements ThresholdTuner.Kernel {
+
+    // enough for any int range halved down to one element
+    private static final int MAX_SUBTASKS = 32;
+
+    protected long longResult;
+    protected double doubleResult;
+    protected double doubleCompensation;
+
+    private int start;
+    private int end;
+    private int threshold;
+    private T root;
+    private PrimitiveTask<?>[] subtasks;
+
+    // a new task is its own root until it is forked as a subtask
+    @SuppressWarnings("unchecked")
+    protected PrimitiveTask() {
+        root = (T)this;
+    }
+
+    // an empty task of the same kind; called once per subtask
+    // slot, the instance is reused afterwards
+    protected abstract T newSubtask();
+
+    // the sequential strategy: computes [start, end) into the
+    // result slots of this task, overwriting them
+    protected abstract void leaf(int start, int end);
+
+    // combines the results of left, the range immediately to
+    // the left of this one, into this task
+    protected abstract void mergeLeft(T left);
+
+    // where [start, end) is split; must return a point strictly
+    // inside the range. Subclasses override it to line splits up
+    // with pages or cache lines
+    protected int split(int start, int end) {
+        return (start + end) >>> 1;
+    }
+
+    // prepares the task to be invoked again over [start, end)
+    @SuppressWarnings("unchecked")
+    public final T reset(int start, int end, int threshold) {
+        if (start > end || threshold < 1) {
+            throw new IllegalArgumentException(
+                "bad range or threshold: [" + start + ", " + end + "), "
+                + threshold);
+        }
+        reinitialize();
+        this.start = start;
+        this.end = end;
+        this.threshold = threshold;
+        root = (T)this;
+        return root;
+    }
+
+    protected final T root() {
+        return root;
+    }
+
+    public final int start() {
+        return start;
+    }
+
+    public final int end() {
+        return end;
+    }
+
+    // lets a task be its own ThresholdTuner probe, as long as
+    // leaf() has no side effects besides the result slots
+    public final void apply(int start, int end) {
+        leaf(start, end);
+    }
+
+    // for compensated sums kept in doubleResult and
+    // doubleCompensation: adds left to this task with Neumaier's
+    // error-free addition, so the rounding error of the merge is
+    // carried along as well
+    protected final void mergeCompensatedLeft(PrimitiveTask<?> left) {
+        double s = left.doubleResult;
+        double x = doubleResult;
+        double t = s + x;
+        double c = left.doubleCompensation + doubleCompensation;
+        if (Math.abs(s) >= Math.abs(x)) {
+            c += (s - t) + x;
+        }
+        else {
+            c += (x - t) + s;
+        }
+        doubleResult = t;
+        doubleCompensation = c;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final void compute() {
+        int s = start;
+        int e = end;
+        int n = 0;
+        while (e - s > threshold) {
+            int mid = split(s, e);
+            PrimitiveTask<T> sub = subtask(n++);
+            sub.reinitialize();
+            sub.start = s;
+            sub.end = mid;
+            sub.threshold = threshold;
+            sub.root = root;
+            sub.fork();
+            s = mid;
+        }
+        leaf(s, e);
+        while (n > 0) {
+            T sub = (T)subtasks[--n];
+            sub.join();
+            mergeLeft(sub);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private PrimitiveTask<T> subtask(int i) {
+        if (subtasks == null) {
+            subtasks = new PrimitiveTask<?>[MAX_SUBTASKS];
+        }
+        PrimitiveTask<?> sub = subtasks[i];
+        if (sub == null) {
+            sub = newSubtask();
+            subtasks[i] = sub;
+        }
+        return (PrimitiveTask<T>)sub;
+    }
+}
@@ -0,0 +1,208 @@
+package jconcurrent;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// java reference 9
+// P945/980
+// ConcurrencyBasisTest: read-only accesses to a database might
+// be handled differently from those that require read/write
+// capabilities.
+
+// ReadMostly guards a mutable state object (a configuration, a
+// routing table) that is read far more often than it is
+// written. read() runs a function of the state; write() runs a
+// mutation of it, excluding every other access. There are three
+// implementations, so that they can be compared on a workload
+// (ReadMostlyBenchmark):
+
+// > stamped(): a StampedLock. read() and readLong() take its
+// read lock. readOptimistic() first runs without any lock (an
+// optimistic read) and only checks afterwards that no write has
+// started in the meantime; it retries under the read lock if
+// one has. Readers write nothing shared, so they do not contend
+// with each other at all.
+
+// an optimistic reader sees the state in the middle of a write,
+// and nothing is checked until it returns. It must only copy
+// primitive fields (or array elements at an index it bounds
+// itself) into locals and compute from those: no side effects,
+// no loops over the state, no calls into it (a HashMap or a
+// TreeMap seen mid-write can loop forever, and the check is
+// then never reached). Whatever it throws from a torn view,
+// errors included, is ignored and the read is retried. Other
+// readers go through read().
+
+// > readWriteLock(): a ReentrantReadWriteLock; readers exclude
+// writers only, but every read updates the lock's reader count.
+
+// > monitor(): synchronized; every access excludes every other.
+
+// none of them is reentrant from a reader to a writer: a
+// write() from inside read() deadlocks (StampedLock, read-write
+// lock) or is allowed (monitor).
+
+public interface ReadMostly<S> {
+
+    <R> R read(Function<? super S, ? extends R> reader);
+
+    // read() without boxing a primitive result
+    long readLong(ToLongFunction<? super S> reader);
+
+    // readLong() for a reader that only copies primitive fields
+    // into locals (see above); optimistic where the lock allows it
+    default long readOptimistic(ToLongFunction<? super S> reader) {
+        return readLong(reader);
+    }
+
+    void write(Consumer<? super S> writer);
+
+    static <S> ReadMostly<S> stamped(S state) {
+        return new Stamped<>(state);
+    }
+
+    static <S> ReadMostly<S> readWriteLock(S state, boolean fair) {
+        return new ReadWrite<>(state, fair);
+    }
+
+    static <S> ReadMostly<S> monitor(S state) {
+        return new Monitor<>(state);
+    }
+
+    final class Stamped<S> implements ReadMostly<S> {
+
+        private final S state;
+        private final StampedLock lock = new StampedLock();
+        private final StripedCounter fallbacks = new StripedCounter();
+
+        Stamped(S state) {
+            this.state = state;
+        }
+
+        // the optimistic reads that had to be retried under the
+        // read lock
+        public long fallbacks() {
+            return fallbacks.sum();
+        }
+
+        public <R> R read(Function<? super S, ? extends R> reader) {
+            long stamp = lock.readLock();
+            try {
+                return reader.apply(state);
+            }
+            finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        public long readLong(ToLongFunction<? super S> reader) {
+            long stamp = lock.readLock();
+            try {
+                return reader.applyAsLong(state);
+            }
+            finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        public long readOptimistic(ToLongFunction<? super S> reader) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0L) {
+                try {
+                    long r = reader.applyAsLong(state);
+                    if (lock.validate(stamp)) {
+                        return r;
+                    }
+                }
+                catch (Throwable t) {
+                    if (lock.validate(stamp)) {
+                        throw t;
+                    }
+                }
+            }
+            fallbacks.increment();
+            stamp = lock.readLock();
+            try {
+                return reader.applyAsLong(state);
+            }
+            finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        public void write(Consumer<? super S> writer) {
+            long stamp = lock.writeLock();
+            try {
+                writer.accept(state);
+            }
+            finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    final class ReadWrite<S> implements ReadMostly<S> {
+
+        private final S state;
+        private final ReentrantReadWriteLock lock;
+
+        ReadWrite(S state, boolean fair) {
+            this.state = state;
+            lock = new ReentrantReadWriteLock(fair);
+        }
+
+        public <R> R read(Function<? super S, ? extends R> reader) {
+            lock.readLock().lock();
+            try {
+                return reader.apply(state);
+            }
+            finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public long readLong(ToLongFunction<? super S> reader) {
+            lock.readLock().lock();
+            try {
+                return reader.applyAsLong(state);
+            }
+            finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public void write(Consumer<? super S> writer) {
+            lock.writeLock().lock();
+            try {
+                writer.accept(state);
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    final class Monitor<S> implements ReadMostly<S> {
+
+        private final S state;
+
+        Monitor(S state) {
+            this.state = state;
+        }
+
+        public synchronized <R> R read(Function<? super S, ? extends R> reader) {
+            return reader.apply(state);
+        }
+
+        public synchronized long readLong(ToLongFunction<? super S> reader) {
+            return reader.applyAsLong(state);
+        }
+
+        public synchronized void write(Consumer<? super S> writer) {
+            writer.accept(state);
+        }
+    }
+}
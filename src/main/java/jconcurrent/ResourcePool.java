@@ -0,0 +1,209 @@
+package jconcurrent;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// java reference 9
+// P918/953
+// a semaphore counts permits for a shared resource; a pool of
+// resources (connections, buffers) is usually a Semaphore in
+// front of a queue of idle objects, i.e. two synchronisation
+// points per borrow, and an AQS queue behind the semaphore.
+
+// ResourcePool is a bulkhead that keeps the permits and the
+// objects in one structure: a fixed array of slots, each of
+// them holding an idle resource or null. The idle resources
+// are the permits.
+
+// > tryAcquire() claims a resource with one CAS of its slot
+// (non-null -> null), release() puts it back with one CAS of
+// an empty slot (null -> resource). A thread starts looking at
+// the slot picked by its id, so it tends to get back the
+// resource it released last, and threads spread over the
+// array instead of all contending on slot 0.
+
+// > only a borrower that finds no idle resource takes the
+// slow path: it registers as a waiter and parks until a
+// release unparks it (or the timeout expires). Waiting is not
+// fair: a thread arriving on the fast path may take a
+// resource before a waiter that has just been woken up.
+
+// > the slow path is instrumented: the number of threads
+// waiting now, how many borrows had to wait and how many
+// gave up on a timeout.
+
+public final class ResourcePool<R> {
+
+    private final AtomicReferenceArray<R> slots;
+    private final int capacity;
+
+    private final ConcurrentLinkedQueue<Thread> waiting =
+        new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public ResourcePool(Collection<? extends R> resources) {
+        capacity = resources.size();
+        if (capacity == 0) {
+            throw new IllegalArgumentException("no resources");
+        }
+        slots = new AtomicReferenceArray<>(capacity);
+        int i = 0;
+        for (R r : resources) {
+            if (r == null) {
+                throw new NullPointerException("null resource");
+            }
+            slots.set(i++, r);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // the number of idle resources (a snapshot)
+    public int idle() {
+        int n = 0;
+        for (int i = 0; i < capacity; ++i) {
+            if (slots.get(i) != null) {
+                ++n;
+            }
+        }
+        return n;
+    }
+
+    // the number of threads blocked in acquire() right now
+    public int waiters() {
+        return waiters.get();
+    }
+
+    // how many acquisitions have had to wait so far
+    public long waits() {
+        return waits.get();
+    }
+
+    // how many timed acquisitions have given up so far
+    public long timeouts() {
+        return timeouts.get();
+    }
+
+    // null if no resource is idle
+    public R tryAcquire() {
+        int start = hint();
+        for (int k = 0; k < capacity; ++k) {
+            int i = start + k;
+            if (i >= capacity) {
+                i -= capacity;
+            }
+            R r = slots.get(i);
+            if (r != null && slots.compareAndSet(i, r, null)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    public R acquire() throws InterruptedException {
+        R r = tryAcquire();
+        return r != null ? r : await(false, 0L);
+    }
+
+    // null if no resource became idle within the timeout
+    public R acquire(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        R r = tryAcquire();
+        return r != null ? r : await(true, unit.toNanos(timeout));
+    }
+
+    // r must have been acquired from this pool
+    public void release(R r) {
+        if (r == null) {
+            throw new NullPointerException();
+        }
+        int start = hint();
+        for (int k = 0;; ++k) {
+            if (k == capacity) {
+                // other threads may have moved the empty slots
+                // around behind this scan; only a pool that is
+                // full without r means r was not acquired from it
+                if (idle() == capacity) {
+                    throw new IllegalStateException(
+                        "released more resources than the pool holds");
+                }
+                k = -1;
+                continue;
+            }
+            int i = start + k;
+            if (i >= capacity) {
+                i -= capacity;
+            }
+            if (slots.get(i) == null && slots.compareAndSet(i, null, r)) {
+                break;
+            }
+        }
+        // the resource is published before waiters is read, and a
+        // waiter registers before it looks for a resource, so
+        // either this release sees the waiter or the waiter sees
+        // the resource
+        if (waiters.get() > 0) {
+            signalNext();
+        }
+    }
+
+    private R await(boolean timed, long nanos) throws InterruptedException {
+        Thread me = Thread.currentThread();
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        waits.incrementAndGet();
+        waiters.incrementAndGet();
+        waiting.add(me);
+        try {
+            for (;;) {
+                R r = tryAcquire();
+                if (r != null) {
+                    return r;
+                }
+                if (timed) {
+                    nanos = deadline - System.nanoTime();
+                    if (nanos <= 0L) {
+                        timeouts.incrementAndGet();
+                        return null;
+                    }
+                    LockSupport.parkNanos(this, nanos);
+                }
+                else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        finally {
+            waiting.remove(me);
+            waiters.decrementAndGet();
+            // a release may have woken this thread while it was
+            // leaving (timed out, interrupted, or already holding
+            // another resource); pass the wake-up on
+            if (waiters.get() > 0 && idle() > 0) {
+                signalNext();
+            }
+        }
+    }
+
+    private void signalNext() {
+        Thread next = waiting.peek();
+        if (next != null) {
+            LockSupport.unpark(next);
+        }
+    }
+
+    private int hint() {
+        return (int)(Thread.currentThread().threadId() % capacity);
+    }
+}
@@ -0,0 +1,77 @@
+package jconcurrent;
+
+import java.util.function.IntConsumer;
+
+// SpscRingBuffer for int values, stored unboxed. There is no
+// null to signal an empty ring, so the consumer side is drain()
+// only; drain(dst, off, 1) polls a single value.
+
+public final class SpscIntRingBuffer extends SpscSequence {
+
+    private final int[] slots;
+
+    public SpscIntRingBuffer(int capacity) {
+        super(capacity);
+        slots = new int[capacity];
+    }
+
+    // producer only
+    public boolean offer(int v) {
+        long t = tail();
+        if (claim(t, 1) == 0) {
+            return false;
+        }
+        slots[(int)t & mask] = v;
+        publishTail(t + 1);
+        return true;
+    }
+
+    // producer only; returns how many of src[off, off + len)
+    // have been enqueued
+    public int offer(int[] src, int off, int len) {
+        long t = tail();
+        int n = claim(t, len);
+        for (int i = 0; i < n; ++i) {
+            slots[(int)(t + i) & mask] = src[off + i];
+        }
+        if (n > 0) {
+            publishTail(t + n);
+        }
+        return n;
+    }
+
+    // consumer only; moves at most len values into dst[off, ...)
+    // and returns how many it has moved
+    public int drain(int[] dst, int off, int len) {
+        long h = head();
+        int n = available(h, len);
+        for (int k = 0; k < n; ++k) {
+            dst[off + k] = slots[(int)(h + k) & mask];
+        }
+        if (n > 0) {
+            publishHead(h + n);
+        }
+        return n;
+    }
+
+    // consumer only; hands at most limit values to c and returns
+    // how many it has handed over
+    public int drain(IntConsumer c, int limit) {
+        long h = head();
+        int n = available(h, limit);
+        int k = 0;
+        try {
+            while (k < n) {
+                c.accept(slots[(int)(h + k++) & mask]);
+            }
+        }
+        finally {
+            // if c throws, the values handed over so far are
+            // consumed, the rest stay in the ring
+            if (k > 0) {
+                publishHead(h + k);
+            }
+        }
+        return n;
+    }
+}
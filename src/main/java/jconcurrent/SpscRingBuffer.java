@@ -0,0 +1,104 @@
+package jconcurrent;
+
+import java.util.function.Consumer;
+
+// java reference 9
+// P251/286
+// the single-slot Q of SimpleMultithreadingTest hands over one
+// value per pair of monitor handoffs (synchronized + wait() /
+// notify()), which costs a context switch per item.
+
+// SpscRingBuffer is a bounded lock-free queue for exactly one
+// producer thread and one consumer thread. Neither side ever
+// blocks or takes a lock: offer() returns false when the ring
+// is full and poll() returns null when it is empty, and the
+// caller decides whether to spin, yield or park.
+
+// the batch methods publish their whole batch with a single
+// ordered store of the index, so moving n items costs one
+// cross-core cache-line transfer instead of n.
+
+// the primitive variants are SpscIntRingBuffer and
+// SpscLongRingBuffer.
+
+public final class SpscRingBuffer<E> extends SpscSequence {
+
+    private final Object[] slots;
+
+    public SpscRingBuffer(int capacity) {
+        super(capacity);
+        slots = new Object[capacity];
+    }
+
+    // producer only
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long t = tail();
+        if (claim(t, 1) == 0) {
+            return false;
+        }
+        slots[(int)t & mask] = e;
+        publishTail(t + 1);
+        return true;
+    }
+
+    // producer only; returns how many of src[off, off + len)
+    // have been enqueued
+    public int offer(E[] src, int off, int len) {
+        long t = tail();
+        int n = claim(t, len);
+        for (int i = 0; i < n; ++i) {
+            E e = src[off + i];
+            if (e == null) {
+                throw new NullPointerException();
+            }
+            slots[(int)(t + i) & mask] = e;
+        }
+        if (n > 0) {
+            publishTail(t + n);
+        }
+        return n;
+    }
+
+    // consumer only
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head();
+        if (available(h, 1) == 0) {
+            return null;
+        }
+        int i = (int)h & mask;
+        E e = (E)slots[i];
+        slots[i] = null;
+        publishHead(h + 1);
+        return e;
+    }
+
+    // consumer only; hands at most limit items to c and returns
+    // how many it has handed over
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> c, int limit) {
+        long h = head();
+        int n = available(h, limit);
+        int k = 0;
+        try {
+            while (k < n) {
+                int i = (int)(h + k) & mask;
+                E e = (E)slots[i];
+                slots[i] = null;
+                ++k;
+                c.accept(e);
+            }
+        }
+        finally {
+            // if c throws, the items handed over so far are
+            // consumed, the rest stay in the ring
+            if (k > 0) {
+                publishHead(h + k);
+            }
+        }
+        return n;
+    }
+}
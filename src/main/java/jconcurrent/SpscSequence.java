@@ -0,0 +1,121 @@
+package jconcurrent;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// the head (consumer) and tail (producer) indices shared by the
+// single-producer/single-consumer ring buffers.
+
+// each index sits on its own cache line together with the
+// copy of the other index that its owner caches, so that the
+// producer and the consumer never write to the same line
+// (false sharing). The padding relies on the JVM laying out
+// the fields of a superclass before those of a subclass.
+
+// the indices only grow; the slot of index i is i & mask.
+// A side publishes its index with lazySet (an ordered store):
+// the slot writes before it become visible before the new
+// index, without the cost of a full volatile-write fence.
+
+abstract class SpscPad0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class SpscHead extends SpscPad0 {
+
+    private static final AtomicLongFieldUpdater<SpscHead> HEAD =
+        AtomicLongFieldUpdater.newUpdater(SpscHead.class, "head");
+
+    // written by the consumer only
+    private volatile long head;
+
+    // the consumer's last view of tail
+    long tailCache;
+
+    final long head() {
+        return head;
+    }
+
+    final void publishHead(long h) {
+        HEAD.lazySet(this, h);
+    }
+}
+
+abstract class SpscPad1 extends SpscHead {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class SpscTail extends SpscPad1 {
+
+    private static final AtomicLongFieldUpdater<SpscTail> TAIL =
+        AtomicLongFieldUpdater.newUpdater(SpscTail.class, "tail");
+
+    // written by the producer only
+    private volatile long tail;
+
+    // the producer's last view of head
+    long headCache;
+
+    final long tail() {
+        return tail;
+    }
+
+    final void publishTail(long t) {
+        TAIL.lazySet(this, t);
+    }
+}
+
+abstract class SpscPad2 extends SpscTail {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
+
+abstract class SpscSequence extends SpscPad2 {
+
+    final int capacity;
+    final int mask;
+
+    SpscSequence(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(
+                "capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        mask = capacity - 1;
+    }
+
+    public final int capacity() {
+        return capacity;
+    }
+
+    // exact only when called from the producer or the consumer
+    // while the other side is idle
+    public final int size() {
+        // read head first: tail can only have grown since
+        long h = head();
+        return (int)(tail() - h);
+    }
+
+    public final boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // producer side: the number of free slots, at most wanted;
+    // head is re-read only when the cached view is not enough
+    final int claim(long t, int wanted) {
+        int free = capacity - (int)(t - headCache);
+        if (free < wanted) {
+            headCache = head();
+            free = capacity - (int)(t - headCache);
+        }
+        return Math.min(free, wanted);
+    }
+
+    // consumer side: the number of filled slots, at most wanted
+    final int available(long h, int wanted) {
+        int filled = (int)(tailCache - h);
+        if (filled < wanted) {
+            tailCache = tail();
+            filled = (int)(tailCache - h);
+        }
+        return Math.min(filled, wanted);
+    }
+}
@@ -0,0 +1,356 @@
+package jconcurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// java reference 9
+// P930/965
+// Phaser works a bit like a CyclicBarrier, except that
+// it supports multiple phases.
+
+// StagedPipeline runs a sequence of batches through a sequence
+// of stages. Each stage is a pool of worker threads, and every
+// phase of the phaser moves every batch one stage further: in
+// phase p, stage s works on batch p - s, so all the stages are
+// busy at once, each of them on a different batch.
+
+// > a stage cuts a batch into chunks; the workers of the stage
+// claim the chunks one by one from a shared cursor, so the
+// number of workers can change between two claims.
+
+// > stage s works on batch b only after every worker of stage
+// s - 1 has finished batch b (the phase in between), and before
+// stage s - 1 starts batch b + 2. Two buffers per stage,
+// indexed by batch & 1, are therefore enough to hand the
+// output of a stage to the next one.
+
+// > a flat phaser with hundreds of parties makes all of them
+// arrive on the same state word. Here the phasers are tiered:
+// the root has one child per stage, and each of these has
+// leaves of at most LEAF_PARTIES workers. A worker arrives on
+// its leaf; only the last arrival of a leaf goes up one level.
+
+// > resize() only records how many workers a stage should
+// gain or lose; the workers of the stage apply it at the end of
+// their current phase. A worker that is told to retire
+// deregisters; a worker that is told to grow the stage
+// registers the new workers on its own leaf while there is
+// room, then on new leaves, before it arrives itself. (Phaser
+// makes a registration wait for the next phase when every
+// party of the phaser has already arrived; a worker that has
+// not arrived yet never hits that case.) An empty leaf
+// deregisters from its parent by itself.
+
+// chunks() is called from the phaser's onAdvance(), i.e. by the
+// last thread to arrive while all the others wait, so it must
+// be cheap.
+
+public final class StagedPipeline {
+
+    static final int LEAF_PARTIES = 16;
+
+    public interface Stage {
+
+        // the number of chunks batch is cut into for this stage
+        int chunks(long batch);
+
+        void process(long batch, int chunk);
+    }
+
+    private final Stage[] stages;
+    private final int[] targets;
+
+    // guarded by this
+    private Run current;
+
+    // one worker per stage until resized
+    public StagedPipeline(Stage... stages) {
+        if (stages.length == 0) {
+            throw new IllegalArgumentException("no stages");
+        }
+        this.stages = stages.clone();
+        targets = new int[stages.length];
+        Arrays.fill(targets, 1);
+    }
+
+    public int stages() {
+        return stages.length;
+    }
+
+    // the number of workers the stage has (or will start with)
+    public synchronized int workers(int stage) {
+        return current != null ? current.active[stage] : targets[stage];
+    }
+
+    // the number of leaf phasers of the stage in the current run
+    synchronized int leaves(int stage) {
+        return current != null ? current.leavesInUse(stage) : 0;
+    }
+
+    // takes effect at the end of the current phase if the
+    // pipeline is running, otherwise at the next run
+    public synchronized void resize(int stage, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException(
+                "a stage needs at least one worker: " + workers);
+        }
+        targets[stage] = workers;
+        if (current != null) {
+            current.adjust(stage);
+        }
+    }
+
+    // returns once every batch has been through every stage; a
+    // failing stage stops the pipeline and is rethrown as the
+    // cause of an ExecutionException
+    public void run(long batches)
+        throws InterruptedException, ExecutionException {
+        if (batches < 0) {
+            throw new IllegalArgumentException(
+                "negative number of batches: " + batches);
+        }
+        if (batches == 0) {
+            return;
+        }
+        Run r;
+        synchronized (this) {
+            if (current != null) {
+                throw new IllegalStateException("already running");
+            }
+            r = new Run(batches);
+            current = r;
+            r.start();
+        }
+        try {
+            r.await();
+        }
+        finally {
+            synchronized (this) {
+                current = null;
+            }
+        }
+        Throwable failure = r.failure.get();
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+    }
+
+    private final class Run {
+
+        final long batches;
+        final long steps;
+
+        final Phaser root;
+        final Phaser[] stagePhasers;
+        // guarded by the pipeline
+        final List<List<Phaser>> leaves;
+
+        final int[] chunks;
+        final AtomicInteger[] cursors;
+
+        // guarded by the pipeline: the workers once the pending
+        // changes below are applied
+        final int[] active;
+        final AtomicInteger[] spawning;
+        final AtomicInteger[] retiring;
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // the current phase, counted without wrapping around
+        volatile long step;
+
+        Run(long batches) {
+            this.batches = batches;
+            int n = stages.length;
+            steps = batches + n - 1;
+            // the party of the caller holds phase 0 until every
+            // initial worker is registered
+            root = new Phaser(1) {
+                protected boolean onAdvance(int phase, int parties) {
+                    return advance(parties);
+                }
+            };
+            stagePhasers = new Phaser[n];
+            leaves = new ArrayList<>(n);
+            chunks = new int[n];
+            cursors = new AtomicInteger[n];
+            active = new int[n];
+            spawning = new AtomicInteger[n];
+            retiring = new AtomicInteger[n];
+            for (int s = 0; s < n; ++s) {
+                stagePhasers[s] = new Phaser(root);
+                leaves.add(new ArrayList<>());
+                cursors[s] = new AtomicInteger();
+                spawning[s] = new AtomicInteger();
+                retiring[s] = new AtomicInteger();
+            }
+            prepare(0);
+        }
+
+        // called with the pipeline locked
+        void start() {
+            List<Thread> threads = new ArrayList<>();
+            for (int s = 0; s < stages.length; ++s) {
+                active[s] = targets[s];
+                register(s, null, targets[s], threads);
+            }
+            for (Thread t : threads) {
+                t.start();
+            }
+            root.arriveAndDeregister();
+        }
+
+        void await() throws InterruptedException {
+            try {
+                while (!root.isTerminated()) {
+                    root.awaitAdvanceInterruptibly(root.getPhase());
+                }
+            }
+            catch (InterruptedException e) {
+                root.forceTermination();
+                throw e;
+            }
+        }
+
+        // called with the pipeline locked; pending spawns and
+        // retirements cancel each other out first
+        void adjust(int s) {
+            int delta = targets[s] - active[s];
+            active[s] = targets[s];
+            if (delta > 0) {
+                delta -= take(retiring[s], delta);
+                spawning[s].addAndGet(delta);
+            }
+            else if (delta < 0) {
+                delta += take(spawning[s], -delta);
+                retiring[s].addAndGet(-delta);
+            }
+        }
+
+        int leavesInUse(int s) {
+            int n = 0;
+            for (Phaser p : leaves.get(s)) {
+                if (p.getRegisteredParties() > 0) {
+                    ++n;
+                }
+            }
+            return n;
+        }
+
+        // registers n workers of stage s, on leaf while it has
+        // room (if not null), then on new leaves; the threads are
+        // started by the caller once they are all registered
+        private void register(int s, Phaser leaf, int n, List<Thread> out) {
+            while (n > 0) {
+                if (leaf == null) {
+                    leaf = new Phaser(stagePhasers[s]);
+                    synchronized (StagedPipeline.this) {
+                        leaves.get(s).add(leaf);
+                    }
+                }
+                int k;
+                synchronized (leaf) {
+                    k = Math.min(n, LEAF_PARTIES - leaf.getRegisteredParties());
+                    if (k > 0 && leaf.bulkRegister(k) < 0) {
+                        // terminated
+                        return;
+                    }
+                }
+                for (int i = 0; i < k; ++i) {
+                    out.add(new Thread(
+                        new Worker(s, leaf), "pipeline-stage-" + s));
+                }
+                n -= Math.max(k, 0);
+                leaf = null;
+            }
+        }
+
+        private boolean advance(int parties) {
+            try {
+                long next = step + 1;
+                if (next >= steps || parties == 0) {
+                    return true;
+                }
+                prepare(next);
+                step = next;
+                return false;
+            }
+            catch (Throwable t) {
+                failure.compareAndSet(null, t);
+                return true;
+            }
+        }
+
+        private void prepare(long p) {
+            for (int s = 0; s < stages.length; ++s) {
+                long b = p - s;
+                chunks[s] = b >= 0 && b < batches ? stages[s].chunks(b) : 0;
+                cursors[s].set(0);
+            }
+        }
+
+        private final class Worker implements Runnable {
+
+            private final int stage;
+            private final Phaser leaf;
+
+            Worker(int stage, Phaser leaf) {
+                this.stage = stage;
+                this.leaf = leaf;
+            }
+
+            public void run() {
+                Stage work = stages[stage];
+                AtomicInteger cursor = cursors[stage];
+                try {
+                    for (;;) {
+                        long b = step - stage;
+                        if (b >= 0 && b < batches) {
+                            int n = chunks[stage];
+                            int c;
+                            while ((c = cursor.getAndIncrement()) < n
+                                   && !root.isTerminated()) {
+                                work.process(b, c);
+                            }
+                        }
+                        if (take(retiring[stage], 1) == 1) {
+                            leaf.arriveAndDeregister();
+                            return;
+                        }
+                        int n = take(spawning[stage], Integer.MAX_VALUE);
+                        if (n > 0) {
+                            List<Thread> threads = new ArrayList<>(n);
+                            register(stage, leaf, n, threads);
+                            for (Thread t : threads) {
+                                t.start();
+                            }
+                        }
+                        if (leaf.arriveAndAwaitAdvance() < 0) {
+                            return;
+                        }
+                    }
+                }
+                catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                    root.forceTermination();
+                }
+            }
+        }
+    }
+
+    // takes up to max from counter, returns how many were taken
+    private static int take(AtomicInteger counter, int max) {
+        for (;;) {
+            int n = counter.get();
+            int k = Math.min(n, max);
+            if (k == 0 || counter.compareAndSet(n, n - k)) {
+                return k;
+            }
+        }
+    }
+}
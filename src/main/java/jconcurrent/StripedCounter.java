@@ -0,0 +1,140 @@
+package jconcurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// java reference 9
+// P946/981
+// AtomicBasisTest.testConcurrentModification has every thread
+// compare-and-set the same AtomicInteger; with many threads
+// most CASes fail and are retried, and the cache line holding
+// the value bounces between the cores.
+
+// StripedCounter spreads the updates over a fixed number of
+// cells. A thread adds to the cell picked by its probe (a
+// per-thread hash); when its CAS fails, the cell is contended
+// and the thread moves its probe to another cell, so threads
+// that collide drift apart and stay apart.
+
+// the cells are STRIDE longs apart in one AtomicLongArray:
+// two cells are never on the same cache line (nor on the
+// adjacent line that the hardware may prefetch with it).
+
+// sum() adds up the cells without stopping the writers, so
+// it is exact only while no update is in progress.
+// sumThenReset() takes each cell with getAndSet(0), so an
+// update is either in the returned sum or left in the counter,
+// never lost.
+
+public final class StripedCounter {
+
+    // 128 bytes
+    static final int STRIDE = 16;
+
+    // the probe is per thread and shared by all the counters
+    // (and ConcurrentCache's read buffers), like the one
+    // java.util.concurrent.atomic.LongAdder uses
+    private static final ThreadLocal<int[]> PROBE =
+        ThreadLocal.withInitial(() -> new int[] {
+            mix(Thread.currentThread().threadId())
+        });
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    // two stripes per processor, rounded up to a power of two
+    public StripedCounter() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedCounter(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException(
+                "stripes must be positive: " + stripes);
+        }
+        int n = Integer.highestOneBit(stripes);
+        if (n < stripes) {
+            n <<= 1;
+        }
+        cells = new AtomicLongArray(n * STRIDE);
+        mask = n - 1;
+    }
+
+    public int stripes() {
+        return mask + 1;
+    }
+
+    public void add(long x) {
+        int[] probe = PROBE.get();
+        int h = probe[0];
+        for (;;) {
+            int i = (h & mask) * STRIDE;
+            long v = cells.get(i);
+            if (cells.compareAndSet(i, v, v + x)) {
+                return;
+            }
+            h = advanceProbe(probe);
+        }
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void decrement() {
+        add(-1L);
+    }
+
+    public long sum() {
+        long s = 0;
+        for (int i = 0; i <= mask; ++i) {
+            s += cells.get(i * STRIDE);
+        }
+        return s;
+    }
+
+    public long sumThenReset() {
+        long s = 0;
+        for (int i = 0; i <= mask; ++i) {
+            s += cells.getAndSet(i * STRIDE, 0L);
+        }
+        return s;
+    }
+
+    public void reset() {
+        for (int i = 0; i <= mask; ++i) {
+            cells.set(i * STRIDE, 0L);
+        }
+    }
+
+    // the calling thread's probe
+    static int probe() {
+        return PROBE.get()[0];
+    }
+
+    // moves the calling thread's probe after a collision
+    static void advanceProbe() {
+        advanceProbe(PROBE.get());
+    }
+
+    // xorshift: moves to a pseudo-random other cell
+    private static int advanceProbe(int[] probe) {
+        int h = probe[0];
+        h ^= h << 13;
+        h ^= h >>> 17;
+        h ^= h << 5;
+        probe[0] = h;
+        return h;
+    }
+
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    // never 0, which xorshift would keep at 0
+    private static int mix(long id) {
+        long z = (id + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 32)) * 0xD6E8FEB86659FD93L;
+        int h = (int)(z ^ (z >>> 32));
+        return h == 0 ? 1 : h;
+    }
+}
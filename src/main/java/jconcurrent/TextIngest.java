@@ -0,0 +1,492 @@
+package jconcurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// the data of ExampleSumTask (see ForkJoinFrameworkBasisTest)
+// usually starts as text: a file of numbers, one per line or
+// separated by commas. Reading it with a BufferedReader and
+// Double.parseDouble() is sequential, and it allocates a
+// String per line (and a char[] copy of every byte).
+
+// TextIngest reads such a file in parallel, straight from a
+// memory mapping of the file, into a primitive array or an
+// off-heap buffer:
+
+// > the file is mapped as segments of SEGMENT_BYTES, like
+// MappedDoubles; a segment is mapped with the byte before it
+// and MAX_TOKEN_BYTES after it, so that its leaves can tell
+// whether a number starts at their first byte and can finish a
+// number that runs over their last
+
+// > each segment is cut into fixed blocks of bytes, and a block
+// owns the numbers that start in it. A first PrimitiveTask
+// counts the numbers of every block, the counts are turned
+// into offsets, and a second one parses every block into its
+// place. Both passes read the mapping; the second finds the
+// pages in the page cache
+
+// > the numbers are parsed from the bytes without allocating:
+// a double whose significant digits fit in 53 bits and whose
+// power of ten is at most 22 is rounded correctly by a single
+// multiplication or division (Clinger's fast path); anything
+// else (more digits, larger exponents, NaN, Infinity, hex) goes to
+// Double.parseDouble(), which allocates a String
+
+// the separators are commas, semicolons and any byte up to the
+// space (spaces, tabs, CR, LF), in any mix; there is no quoting
+// and no header. A token that does not parse throws a
+// NumberFormatException that gives its offset in the file.
+
+public final class TextIngest {
+
+    // 1 GiB
+    static final long SEGMENT_BYTES = 1L << 30;
+
+    // how far a number may run past the end of its segment
+    static final int MAX_TOKEN_BYTES = 4096;
+
+    static final int MIN_BLOCK_BYTES = 1 << 16;
+
+    static final int WINDOW_BYTES = 1 << 16;
+
+    private static final int COUNT = 0;
+    private static final int PARSE = 1;
+
+    // the digits kept in the long mantissa: 10^18 - 1 cannot
+    // overflow it
+    private static final int MAX_DIGITS = 18;
+
+    // 10^0 .. 10^22 are exact doubles
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        double p = 1;
+        for (int i = 0; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = p;
+            p *= 10;
+        }
+    }
+
+    private TextIngest() {
+    }
+
+    public static double[] readDoubles(Path file) throws IOException {
+        return readDoubles(file, SEGMENT_BYTES);
+    }
+
+    public static long[] readLongs(Path file) throws IOException {
+        return readLongs(file, SEGMENT_BYTES);
+    }
+
+    // into [position, position + n) of dst, n being the number
+    // of values in the file; the position is then advanced by n
+    public static int readDoubles(Path file, DoubleBuffer dst)
+        throws IOException {
+        checkWritable(dst.isReadOnly());
+        try (Ingest in = new Ingest(file, SEGMENT_BYTES)) {
+            int n = in.fit(dst.remaining());
+            in.task.doubleBuffer = dst;
+            in.parse(dst.position());
+            dst.position(dst.position() + n);
+            return n;
+        }
+    }
+
+    public static int readLongs(Path file, LongBuffer dst) throws IOException {
+        checkWritable(dst.isReadOnly());
+        try (Ingest in = new Ingest(file, SEGMENT_BYTES)) {
+            int n = in.fit(dst.remaining());
+            in.task.longBuffer = dst;
+            in.parse(dst.position());
+            dst.position(dst.position() + n);
+            return n;
+        }
+    }
+
+    static double[] readDoubles(Path file, long segmentBytes)
+        throws IOException {
+        try (Ingest in = new Ingest(file, segmentBytes)) {
+            double[] dst = new double[in.fit(Integer.MAX_VALUE)];
+            in.task.doubles = dst;
+            in.parse(0);
+            return dst;
+        }
+    }
+
+    static long[] readLongs(Path file, long segmentBytes) throws IOException {
+        try (Ingest in = new Ingest(file, segmentBytes)) {
+            long[] dst = new long[in.fit(Integer.MAX_VALUE)];
+            in.task.longs = dst;
+            in.parse(0);
+            return dst;
+        }
+    }
+
+    private static void checkWritable(boolean readOnly) {
+        if (readOnly) {
+            throw new IllegalArgumentException("read-only destination");
+        }
+    }
+
+    static boolean isSeparator(byte b) {
+        return (b & 0xff) <= ' ' || b == ',' || b == ';';
+    }
+
+    // the mappings of a file and the number of values in each
+    // block, counted when the file is opened
+    static final class Ingest implements Closeable {
+
+        private final FileChannel channel;
+        private final MappedByteBuffer[] maps;
+        private final long[] mapOffsets;
+        private final int[] bases;
+        private final int[] lengths;
+        private final int[][] counts;
+        // the index of the first value of each segment
+        private final long[] firsts;
+        private final long size;
+        private long count;
+        final IngestTask task = new IngestTask();
+
+        Ingest(Path file, long segmentBytes) throws IOException {
+            if (segmentBytes <= 0 || segmentBytes > SEGMENT_BYTES) {
+                throw new IllegalArgumentException(
+                    "bad segment size: " + segmentBytes);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                size = channel.size();
+                int n = (int)((size + segmentBytes - 1) / segmentBytes);
+                maps = new MappedByteBuffer[n];
+                mapOffsets = new long[n];
+                bases = new int[n];
+                lengths = new int[n];
+                counts = new int[n][];
+                firsts = new long[n];
+                for (int i = 0; i < n; ++i) {
+                    long start = i * segmentBytes;
+                    long end = Math.min(size, start + segmentBytes);
+                    long from = i == 0 ? 0 : start - 1;
+                    long to = Math.min(size, end + MAX_TOKEN_BYTES);
+                    maps[i] = channel.map(
+                        FileChannel.MapMode.READ_ONLY, from, to - from);
+                    mapOffsets[i] = from;
+                    bases[i] = (int)(start - from);
+                    lengths[i] = (int)(end - start);
+                }
+                for (int i = 0; i < n; ++i) {
+                    firsts[i] = count;
+                    count += countSegment(i);
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        // the number of values, which must fit in room
+        int fit(int room) {
+            if (count > room) {
+                throw new IllegalArgumentException(
+                    "destination too small: " + room + " < " + count);
+            }
+            return (int)count;
+        }
+
+        private void prepare(int i) {
+            IngestTask t = task;
+            t.buf = maps[i];
+            t.mapOffset = mapOffsets[i];
+            t.atEnd = mapOffsets[i] + maps[i].limit() == size;
+            t.base = bases[i];
+            t.length = lengths[i];
+            int leaves = ThresholdTuner.currentParallelism()
+                * ThresholdTuner.LEAVES_PER_THREAD;
+            t.blockSize = Math.max(MIN_BLOCK_BYTES,
+                (int)(((long)t.length + leaves - 1) / leaves));
+            t.blocks = (int)(((long)t.length + t.blockSize - 1) / t.blockSize);
+        }
+
+        // the counts of the blocks become their offsets
+        private long countSegment(int i) {
+            prepare(i);
+            IngestTask t = task;
+            int[] c = new int[t.blocks];
+            t.counts = c;
+            t.phase = COUNT;
+            t.reset(0, t.blocks, 1).invoke();
+            counts[i] = c;
+            long total = 0;
+            for (int b = 0; b < c.length; ++b) {
+                int k = c[b];
+                c[b] = (int)total;
+                total += k;
+            }
+            return total;
+        }
+
+        // from index at of the destination set on the task
+        void parse(int at) {
+            for (int i = 0; i < maps.length; ++i) {
+                prepare(i);
+                IngestTask t = task;
+                t.counts = counts[i];
+                t.first = at + (int)firsts[i];
+                t.phase = PARSE;
+                t.reset(0, t.blocks, 1).invoke();
+            }
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // one block per leaf; the parameters are only set on the
+    // root, subtasks read them through root(). Exactly one of the
+    // destinations is set in the parse pass
+    static final class IngestTask extends PrimitiveTask<IngestTask> {
+
+        private ByteBuffer buf;
+        private long mapOffset;
+        private boolean atEnd;
+        private int base;
+        private int length;
+        private int blockSize;
+        private int blocks;
+        private int phase;
+        private int[] counts;
+        private int first;
+
+        double[] doubles;
+        long[] longs;
+        DoubleBuffer doubleBuffer;
+        LongBuffer longBuffer;
+
+        protected IngestTask newSubtask() {
+            return new IngestTask();
+        }
+
+        // a copy of part of a block: array accesses are much
+        // cheaper than the checked get() of a mapped buffer
+        private byte[] window;
+
+        protected void leaf(int start, int end) {
+            IngestTask r = root();
+            if (window == null) {
+                window = new byte[WINDOW_BYTES + MAX_TOKEN_BYTES];
+            }
+            for (int b = start; b < end; ++b) {
+                int lo = r.base + b * r.blockSize;
+                int hi = lo + Math.min(r.blockSize, r.base + r.length - lo);
+                if (r.phase == COUNT) {
+                    r.counts[b] = scan(r, lo, hi, -1);
+                }
+                else {
+                    scan(r, lo, hi, r.first + r.counts[b]);
+                }
+            }
+        }
+
+        // the values that start in [lo, hi) of the mapping; they
+        // are parsed into out, out + 1... unless out < 0
+        private int scan(IngestTask r, int lo, int hi, int out) {
+            ByteBuffer buf = r.buf;
+            int limit = buf.limit();
+            byte[] w = window;
+            // the tail of a value that started before the block
+            boolean tail = lo > 0 && !isSeparator(buf.get(lo - 1));
+            int n = 0;
+            int p = lo;
+            while (p < hi) {
+                // the values that start in [p, owned) of the
+                // mapping, copied with the bytes they may run over
+                int owned = Math.min(hi, p + WINDOW_BYTES);
+                int to = Math.min(limit, owned + MAX_TOKEN_BYTES);
+                buf.get(p, w, 0, to - p);
+                int e = owned - p;
+                int m = to - p;
+                int i = 0;
+                if (tail) {
+                    while (i < m && !isSeparator(w[i])) {
+                        ++i;
+                    }
+                    tail = false;
+                }
+                for (;;) {
+                    while (i < e && isSeparator(w[i])) {
+                        ++i;
+                    }
+                    if (i >= e) {
+                        break;
+                    }
+                    int j = i + 1;
+                    while (j < m && !isSeparator(w[j])) {
+                        ++j;
+                    }
+                    if (j == m && (to < limit || !r.atEnd)) {
+                        throw new NumberFormatException(
+                            "value longer than " + MAX_TOKEN_BYTES
+                            + " bytes at byte " + (r.mapOffset + p + i));
+                    }
+                    if (out >= 0) {
+                        store(r, out + n, w, i, j, r.mapOffset + p);
+                    }
+                    ++n;
+                    i = j;
+                }
+                p += i;
+            }
+            return n;
+        }
+
+        private static void store(
+            IngestTask r, int at, byte[] w, int i, int j, long offset) {
+            if (r.doubles != null) {
+                r.doubles[at] = parseDouble(w, i, j, offset);
+            }
+            else if (r.longs != null) {
+                r.longs[at] = parseLong(w, i, j, offset);
+            }
+            else if (r.doubleBuffer != null) {
+                r.doubleBuffer.put(at, parseDouble(w, i, j, offset));
+            }
+            else {
+                r.longBuffer.put(at, parseLong(w, i, j, offset));
+            }
+        }
+
+        protected void mergeLeft(IngestTask left) {
+        }
+    }
+
+    // [p, q) of b, whose first byte is at offset in the file
+    static double parseDouble(byte[] b, int p, int q, long offset) {
+        int i = p;
+        boolean negative = false;
+        byte c = b[i];
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            ++i;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        boolean exact = true;
+        for (; i < q && (c = b[i]) >= '0' && c <= '9'; ++i) {
+            any = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    ++digits;
+                }
+            }
+            else {
+                ++exponent;
+                exact &= c == '0';
+            }
+        }
+        if (i < q && b[i] == '.') {
+            for (++i; i < q && (c = b[i]) >= '0' && c <= '9'; ++i) {
+                any = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        ++digits;
+                    }
+                    --exponent;
+                }
+                else {
+                    exact &= c == '0';
+                }
+            }
+        }
+        if (any && i < q && ((c = b[i]) == 'e' || c == 'E')) {
+            ++i;
+            boolean negativeExponent = false;
+            if (i < q && ((c = b[i]) == '-' || c == '+')) {
+                negativeExponent = c == '-';
+                ++i;
+            }
+            int e = 0;
+            boolean expDigits = false;
+            for (; i < q && (c = b[i]) >= '0' && c <= '9'; ++i) {
+                expDigits = true;
+                // far beyond any double, and no overflow
+                e = Math.min(e * 10 + (c - '0'), 100000);
+            }
+            any = expDigits;
+            exponent += negativeExponent ? -e : e;
+        }
+        if (any && i == q && exact && mantissa < (1L << 53)
+            && exponent >= -22 && exponent <= 22) {
+            double v = exponent < 0
+                ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -v : v;
+        }
+        String s = token(b, p, q);
+        try {
+            return Double.parseDouble(s);
+        }
+        catch (NumberFormatException e) {
+            throw new NumberFormatException(
+                "not a number at byte " + (offset + p) + ": " + s);
+        }
+    }
+
+    static long parseLong(byte[] b, int p, int q, long offset) {
+        int i = p;
+        boolean negative = false;
+        byte c = b[i];
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            ++i;
+        }
+        if (i == q) {
+            throw notALong(b, p, q, offset);
+        }
+        // accumulated as a negative number, whose range is the
+        // larger one
+        long v = 0;
+        for (; i < q; ++i) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9 || v < Long.MIN_VALUE / 10) {
+                throw notALong(b, p, q, offset);
+            }
+            v *= 10;
+            if (v < Long.MIN_VALUE + d) {
+                throw notALong(b, p, q, offset);
+            }
+            v -= d;
+        }
+        if (negative) {
+            return v;
+        }
+        if (v == Long.MIN_VALUE) {
+            throw notALong(b, p, q, offset);
+        }
+        return -v;
+    }
+
+    private static NumberFormatException notALong(
+        byte[] b, int p, int q, long offset) {
+        return new NumberFormatException(
+            "not a long at byte " + (offset + p) + ": " + token(b, p, q));
+    }
+
+    private static String token(byte[] b, int p, int q) {
+        return new String(b, p, q - p, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,133 @@
+package jconcurrent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// java reference 9
+// P952/987
+// one of the keys to best employing the divide-and-conquer
+// strategy is correctly selecting the threshold at which
+// sequential processing (rather than further division) is
+// used. Typically an optimal threshold is obtained through
+// profiling the executing characteristics.
+
+// the tuner does that profiling at runtime: the first time a
+// kernel (keyed by the caller) is seen, a sample of its leaf
+// loop is timed and the per-element cost is cached. Each
+// call then derives the threshold from that cost, the length
+// of the array and the parallelism of the pool:
+
+// > a leaf should run for about targetLeafNanos, long enough
+// to amortise the cost of forking and joining a task
+
+// > there should be at least LEAVES_PER_THREAD leaves per
+// worker, so that work stealing can even out the load
+
+// the smaller of the two wins. A cheap kernel on a large
+// array is capped by the second rule; an expensive kernel
+// is split down to a few elements per leaf.
+
+public final class ThresholdTuner {
+
+    // a sequential leaf over [start, end)
+    // the probe passed to threshold() is run several times on
+    // [0, sampleSize), so it must not have side effects that
+    // matter (e.g. it reads the data, or works on a scratch copy)
+    public interface Kernel {
+        void apply(int start, int end);
+    }
+
+    static final long DEFAULT_TARGET_LEAF_NANOS = 50000L;
+    static final int LEAVES_PER_THREAD = 8;
+    static final int MIN_THRESHOLD = 16;
+    static final int SAMPLE_SIZE = 1 << 14;
+    static final int SAMPLE_ROUNDS = 5;
+
+    private static final ThresholdTuner SHARED =
+        new ThresholdTuner(DEFAULT_TARGET_LEAF_NANOS);
+
+    private final ConcurrentHashMap<Object, Double> costs =
+        new ConcurrentHashMap<>();
+    private final long targetLeafNanos;
+
+    public ThresholdTuner(long targetLeafNanos) {
+        if (targetLeafNanos <= 0) {
+            throw new IllegalArgumentException(
+                "targetLeafNanos must be positive");
+        }
+        this.targetLeafNanos = targetLeafNanos;
+    }
+
+    public static ThresholdTuner shared() {
+        return SHARED;
+    }
+
+    // the parallelism of the pool a task invoked from the
+    // calling thread will run in
+    public static int currentParallelism() {
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        return pool != null
+            ? pool.getParallelism()
+            : ForkJoinPool.getCommonPoolParallelism();
+    }
+
+    public int threshold(Object key, int length, Kernel probe) {
+        return threshold(key, length, currentParallelism(), probe);
+    }
+
+    public int threshold(
+        Object key, int length, int parallelism, Kernel probe) {
+        if (length <= MIN_THRESHOLD) {
+            return Math.max(length, 1);
+        }
+        Double cost = costs.get(key);
+        if (cost == null) {
+            // two threads may both measure the same kernel; the
+            // first measurement to be published is kept
+            cost = measure(probe, Math.min(length, SAMPLE_SIZE));
+            Double prev = costs.putIfAbsent(key, cost);
+            if (prev != null) {
+                cost = prev;
+            }
+        }
+        return threshold(cost, length, parallelism);
+    }
+
+    // NaN if the kernel has not been calibrated yet
+    public double nanosPerElement(Object key) {
+        Double cost = costs.get(key);
+        return cost == null ? Double.NaN : cost;
+    }
+
+    // drops the cached cost, e.g. after the kernel has been
+    // measured before the JIT compiled it
+    public void forget(Object key) {
+        costs.remove(key);
+    }
+
+    public void reset() {
+        costs.clear();
+    }
+
+    int threshold(double nanosPerElement, int length, int parallelism) {
+        long byCost = (long)(
+            targetLeafNanos / Math.max(nanosPerElement, 1e-3));
+        long leaves = (long)Math.max(parallelism, 1) * LEAVES_PER_THREAD;
+        long byBalance = (length + leaves - 1) / leaves;
+        long t = Math.min(byCost, byBalance);
+        return (int)Math.min(Math.max(t, MIN_THRESHOLD), length);
+    }
+
+    // the fastest round is taken: slower rounds are the ones
+    // disturbed by the interpreter, GC or other threads
+    static double measure(Kernel probe, int sampleSize) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < SAMPLE_ROUNDS; ++r) {
+            long t0 = System.nanoTime();
+            probe.apply(0, sampleSize);
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        return (double)Math.max(best, 1L) / sampleSize;
+    }
+}
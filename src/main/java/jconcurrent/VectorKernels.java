@@ -0,0 +1,98 @@
+package jconcurrent;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// the leaf loops of ElementKernels on the incubator Vector API:
+// one vector of the preferred species (the widest the CPU has)
+// per iteration, then a scalar tail. Every lane operation is
+// the correctly rounded one (sqrt, fma), so the results are
+// those of the scalar loops, bit for bit.
+
+// only loaded by ElementKernels once it has seen that the
+// jdk.incubator.vector module is there; the ranges are checked
+// by ElementKernels.
+
+final class VectorKernels {
+
+    private static final VectorSpecies<Double> SPECIES =
+        DoubleVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    // without at least two lanes there is nothing to gain, and
+    // the API would fall back to its (slow) Java implementation
+    static boolean usable() {
+        return SPECIES.length() >= 2;
+    }
+
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    static void sqrt(double[] src, double[] dst, int start, int end) {
+        int i = start;
+        int upper = start + SPECIES.loopBound(end - start);
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, src, i)
+                .lanewise(VectorOperators.SQRT)
+                .intoArray(dst, i);
+        }
+        for (; i < end; ++i) {
+            dst[i] = Math.sqrt(src[i]);
+        }
+    }
+
+    static void abs(double[] src, double[] dst, int start, int end) {
+        int i = start;
+        int upper = start + SPECIES.loopBound(end - start);
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, src, i).abs().intoArray(dst, i);
+        }
+        for (; i < end; ++i) {
+            dst[i] = Math.abs(src[i]);
+        }
+    }
+
+    static void scale(
+        double[] src, double[] dst, double factor, int start, int end) {
+        int i = start;
+        int upper = start + SPECIES.loopBound(end - start);
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, src, i).mul(factor)
+                .intoArray(dst, i);
+        }
+        for (; i < end; ++i) {
+            dst[i] = src[i] * factor;
+        }
+    }
+
+    static void multiplyAdd(
+        double[] src, double[] dst, double a, double b, int start, int end) {
+        int i = start;
+        int upper = start + SPECIES.loopBound(end - start);
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, src, i).fma(a, b)
+                .intoArray(dst, i);
+        }
+        for (; i < end; ++i) {
+            dst[i] = Math.fma(a, src[i], b);
+        }
+    }
+
+    // max then min, as Math.max/min: NaN stays NaN
+    static void clamp(
+        double[] src, double[] dst, double lo, double hi, int start, int end) {
+        int i = start;
+        int upper = start + SPECIES.loopBound(end - start);
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, src, i).max(lo).min(hi)
+                .intoArray(dst, i);
+        }
+        for (; i < end; ++i) {
+            dst[i] = Math.min(Math.max(src[i], lo), hi);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package jconcurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// java reference 9
+// P918/953 - P930/965
+// SemaphoreBasisTest, CountDownLatchBasisTest, CyclicBarrierBasisTest
+// and PhaserBasisTest block threads on a synchroniser, and
+// nothing tells how long they stay blocked.
+
+// WaitStats is what the Instrumented* synchronisers record: a
+// LogHistogram of the time spent blocked (nanoseconds), the
+// number of threads blocked now, the calls that did not have to
+// block, and the timed waits that gave up.
+
+// only a call that blocks, or may block, is timed: a permit
+// that is free, or a latch that is open, costs one
+// StripedCounter increment and no System.nanoTime().
+
+public final class WaitStats {
+
+    private final String name;
+    private final LogHistogram waitTime = new LogHistogram();
+    private final StripedCounter immediate = new StripedCounter();
+    private final StripedCounter timeouts = new StripedCounter();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    WaitStats(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // the time of every wait, in nanoseconds
+    public LogHistogram waitTime() {
+        return waitTime;
+    }
+
+    public long waits() {
+        return waitTime.count();
+    }
+
+    // the threads blocked now
+    public int waiters() {
+        return waiters.get();
+    }
+
+    // the calls that returned without blocking
+    public long immediate() {
+        return immediate.sum();
+    }
+
+    public long timeouts() {
+        return timeouts.sum();
+    }
+
+    public void reset() {
+        waitTime.reset();
+        immediate.reset();
+        timeouts.reset();
+    }
+
+    public String toString() {
+        return name
+            + ": waits=" + waits()
+            + " immediate=" + immediate()
+            + " timeouts=" + timeouts()
+            + " waiters=" + waiters()
+            + " p50=" + waitTime.percentile(50)
+            + " p99=" + waitTime.percentile(99)
+            + " max=" + waitTime.max();
+    }
+
+    void recordImmediate() {
+        immediate.increment();
+    }
+
+    // a thread is about to block; returns the start time
+    long begin() {
+        waiters.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    void end(long start) {
+        waitTime.record(System.nanoTime() - start);
+        waiters.decrementAndGet();
+    }
+
+    void endTimedOut(long start) {
+        end(start);
+        timeouts.increment();
+    }
+}
@@ -0,0 +1,226 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncCompositionTest extends TestCase {
+
+    private ExecutorService workers;
+    private ExecutorService continuations;
+
+    protected void setUp() {
+        workers = ExecutorFactory.newFixed("worker", 4);
+        continuations = ExecutorFactory.newFixed("continuation", 2);
+    }
+
+    protected void tearDown() {
+        workers.shutdown();
+        continuations.shutdown();
+    }
+
+    private static Throwable failure(CompletableFuture<?> f)
+        throws InterruptedException {
+        try {
+            f.get(10, TimeUnit.SECONDS);
+            fail("expected a failure");
+            return null;
+        }
+        catch (ExecutionException e) {
+            return e.getCause();
+        }
+        catch (TimeoutException e) {
+            fail("not completed");
+            return null;
+        }
+    }
+
+    public void testAllOfKeepsOrder() throws Exception {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i) {
+            futures.add(new CompletableFuture<>());
+        }
+        CompletableFuture<String> where = AsyncComposition
+            .allOf(futures, continuations)
+            .thenApply(list -> {
+                for (int i = 0; i < list.size(); ++i) {
+                    assertEquals(i, (int)list.get(i));
+                }
+                return Thread.currentThread().getName();
+            });
+        // completed in reverse order, from the worker pool
+        for (int i = futures.size() - 1; i >= 0; --i) {
+            final int k = i;
+            workers.execute(() -> futures.get(k).complete(k));
+        }
+        assertTrue(where.get(10, TimeUnit.SECONDS).startsWith("continuation-"));
+    }
+
+    public void testAllOfFailsFast() throws Exception {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            futures.add(new CompletableFuture<>());
+        }
+        CompletableFuture<List<Integer>> all =
+            AsyncComposition.allOf(futures, continuations);
+        futures.get(3).completeExceptionally(new IOException("down"));
+        assertEquals("down", failure(all).getMessage());
+    }
+
+    public void testAllOfTimeout() throws Exception {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        futures.add(CompletableFuture.completedFuture(1));
+        futures.add(new CompletableFuture<>());
+        CompletableFuture<String> where = AsyncComposition
+            .allOf(futures, 20, TimeUnit.MILLISECONDS, continuations)
+            .handle((list, t) -> {
+                assertTrue(t instanceof TimeoutException);
+                return Thread.currentThread().getName();
+            });
+        assertTrue(where.get(10, TimeUnit.SECONDS).startsWith("continuation-"));
+    }
+
+    public void testEmpty() throws Exception {
+        assertTrue(AsyncComposition.allOf(
+            Collections.<CompletableFuture<Integer>>emptyList(), continuations)
+            .get().isEmpty());
+        assertTrue(failure(AsyncComposition.anyOf(
+            Collections.<CompletableFuture<Integer>>emptyList(), continuations))
+            instanceof IllegalArgumentException);
+    }
+
+    public void testAnyOfFirstSuccess() throws Exception {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            futures.add(new CompletableFuture<>());
+        }
+        CompletableFuture<String> any =
+            AsyncComposition.anyOf(futures, continuations);
+        futures.get(0).completeExceptionally(new IOException("first"));
+        assertFalse(any.isDone());
+        futures.get(2).complete("third");
+        futures.get(1).complete("second");
+        assertEquals("third", any.get(10, TimeUnit.SECONDS));
+
+        List<CompletableFuture<String>> failing = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            failing.add(new CompletableFuture<>());
+        }
+        CompletableFuture<String> none =
+            AsyncComposition.anyOf(failing, continuations);
+        for (int i = 0; i < 3; ++i) {
+            failing.get(i).completeExceptionally(new IOException("f" + i));
+        }
+        assertEquals("f2", failure(none).getMessage());
+    }
+
+    public void testAnyOfTimeout() throws Exception {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        futures.add(new CompletableFuture<>());
+        assertTrue(failure(AsyncComposition.anyOf(
+            futures, 20, TimeUnit.MILLISECONDS, continuations))
+            instanceof TimeoutException);
+    }
+
+    public void testMapAsyncBoundsConcurrency() throws Exception {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            items.add(i);
+        }
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CompletableFuture<List<Integer>> squares = AsyncComposition.mapAsync(
+            items,
+            x -> AsyncComposition.supplyAsync(() -> {
+                peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(1);
+                inFlight.decrementAndGet();
+                return x * x;
+            }, workers),
+            3, continuations);
+        List<Integer> result = squares.get(30, TimeUnit.SECONDS);
+        assertEquals(200, result.size());
+        for (int i = 0; i < 200; ++i) {
+            assertEquals(i * i, (int)result.get(i));
+        }
+        assertTrue("peak " + peak.get(), peak.get() <= 3);
+    }
+
+    public void testMapAsyncStopsAfterFailure() throws Exception {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            items.add(i);
+        }
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<List<Integer>> result = AsyncComposition.mapAsync(
+            items,
+            x -> {
+                started.incrementAndGet();
+                return x == 5
+                    ? AsyncComposition.supplyAsync(() -> {
+                        throw new IOException("item 5");
+                    }, workers)
+                    : CompletableFuture.completedFuture(x);
+            },
+            1, continuations);
+        assertEquals("item 5", failure(result).getMessage());
+        continuations.shutdown();
+        continuations.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(6, started.get());
+    }
+
+    // the failure reaches the result from the executor; the
+    // completions queued before it must not start new calls
+    public void testMapAsyncStartsNothingAfterFailure() throws Exception {
+        Queue<Runnable> queue = new ArrayDeque<>();
+        Executor manual = queue::add;
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            items.add(i);
+            futures.add(new CompletableFuture<>());
+        }
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<List<Integer>> result = AsyncComposition.mapAsync(
+            items,
+            x -> {
+                started.incrementAndGet();
+                return futures.get(x);
+            },
+            4, manual);
+        for (Runnable r; (r = queue.poll()) != null; ) {
+            r.run();
+        }
+        assertEquals(4, started.get());
+
+        futures.get(0).completeExceptionally(new IOException("item 0"));
+        futures.get(1).complete(1);
+        futures.get(2).complete(2);
+        for (Runnable r; (r = queue.poll()) != null; ) {
+            r.run();
+        }
+        assertEquals(4, started.get());
+        assertEquals("item 0", failure(result).getMessage());
+    }
+
+    public void testMapAsyncNullFutureFails() throws Exception {
+        CompletableFuture<List<Integer>> result = AsyncComposition.mapAsync(
+            Arrays.asList(1, 2, 3),
+            x -> x == 2 ? null : CompletableFuture.completedFuture(x),
+            1, continuations);
+        assertTrue(failure(result) instanceof NullPointerException);
+    }
+}
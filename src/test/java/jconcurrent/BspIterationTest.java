@@ -0,0 +1,184 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class BspIterationTest extends TestCase {
+
+    // one Jacobi sweep of the 1-D Laplace equation with fixed
+    // ends; returns the largest change in [start, end)
+    private static double jacobi(double[] src, double[] dst,
+                                 int start, int end) {
+        double change = 0;
+        for (int i = start; i < end; ++i) {
+            if (i == 0 || i == src.length - 1) {
+                dst[i] = src[i];
+            }
+            else {
+                dst[i] = 0.5 * (src[i - 1] + src[i + 1]);
+                change = Math.max(change, Math.abs(dst[i] - src[i]));
+            }
+        }
+        return change;
+    }
+
+    private static double[] boundary(int n) {
+        double[] u = new double[n];
+        u[n - 1] = 1.0;
+        return u;
+    }
+
+    public void testJacobiConvergesToSequentialResult() throws Exception {
+        int n = 40;
+        BspIteration bsp = new BspIteration(4);
+        double[] state = boundary(n);
+        double[] result = bsp.run(
+            state, new double[n],
+            (src, dst, start, end, step) -> jacobi(src, dst, start, end),
+            Math::max, 0.0,
+            (step, change) -> change < 1e-12,
+            1000000);
+        assertTrue(bsp.steps() > 1);
+        assertTrue(bsp.reduced() < 1e-12);
+
+        // the same number of sweeps on one thread
+        double[] a = boundary(n);
+        double[] b = new double[n];
+        for (int k = 0; k < bsp.steps(); ++k) {
+            jacobi(a, b, 0, n);
+            double[] t = a;
+            a = b;
+            b = t;
+        }
+        assertTrue(Arrays.equals(a, result));
+        assertSame(bsp.steps() % 2 == 0 ? state : result, result);
+
+        // the solution is a straight line
+        for (int i = 0; i < n; ++i) {
+            assertEquals((double)i / (n - 1), result[i], 1e-9);
+        }
+    }
+
+    public void testSumReductionAndMaxSteps() throws Exception {
+        // every superstep adds 1 to every element; the partials
+        // are partition sums
+        int n = 1001;
+        BspIteration bsp = new BspIteration(7);
+        double[] result = bsp.run(
+            new double[n], new double[n],
+            (src, dst, start, end, step) -> {
+                double s = 0;
+                for (int i = start; i < end; ++i) {
+                    dst[i] = src[i] + 1;
+                    s += dst[i];
+                }
+                return s;
+            },
+            Double::sum, 0.0,
+            (step, sum) -> false,
+            25);
+        assertEquals(25, bsp.steps());
+        assertEquals(25.0 * n, bsp.reduced(), 0.0);
+        for (double x : result) {
+            assertEquals(25.0, x, 0.0);
+        }
+    }
+
+    public void testSupersteps() throws Exception {
+        final int[] seen = new int[1];
+        BspIteration bsp = new BspIteration(3);
+        bsp.run(new double[9], new double[9],
+                (src, dst, start, end, step) -> step,
+                Math::max, -1.0,
+                (step, last) -> {
+                    assertEquals((double)step, last, 0.0);
+                    seen[0] = step;
+                    return step == 4;
+                },
+                100);
+        assertEquals(4, seen[0]);
+        assertEquals(5, bsp.steps());
+    }
+
+    public void testMoreWorkersThanElements() throws Exception {
+        BspIteration bsp = new BspIteration(8);
+        double[] result = bsp.run(
+            new double[] {1, 2, 3}, new double[3],
+            (src, dst, start, end, step) -> {
+                for (int i = start; i < end; ++i) {
+                    dst[i] = 2 * src[i];
+                }
+                return end - start;
+            },
+            Double::sum, 0.0,
+            (step, count) -> false,
+            3);
+        assertTrue(Arrays.equals(new double[] {8, 16, 24}, result));
+        assertEquals(3.0, bsp.reduced(), 0.0);
+    }
+
+    public void testFailureIsRethrown() throws Exception {
+        BspIteration bsp = new BspIteration(4);
+        try {
+            bsp.run(new double[100], new double[100],
+                    (src, dst, start, end, step) -> {
+                        if (step == 3 && start == 0) {
+                            throw new IllegalStateException("diverged");
+                        }
+                        return 0;
+                    },
+                    Math::max, 0.0,
+                    (step, change) -> false,
+                    1000);
+            fail("expected ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertEquals("diverged", e.getCause().getMessage());
+        }
+        assertEquals(4, bsp.steps());
+    }
+
+    // the caller is interrupted while another worker is still in
+    // its superstep: that worker must not wait forever
+    public void testInterruptedCallerEndsTheRun() throws Exception {
+        BspIteration bsp = new BspIteration(2);
+        CountDownLatch busy = new CountDownLatch(1);
+        AtomicReference<Throwable> outcome = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                bsp.run(new double[100], new double[100],
+                        (src, dst, start, end, step) -> {
+                            if (start > 0 && step == 1) {
+                                busy.countDown();
+                                try {
+                                    Thread.sleep(200);
+                                }
+                                catch (InterruptedException e) {
+                                    ;
+                                }
+                            }
+                            return 0;
+                        },
+                        Math::max, 0.0,
+                        (step, change) -> false,
+                        1000);
+            }
+            catch (Throwable t) {
+                outcome.set(t);
+            }
+        });
+        caller.start();
+        assertTrue(busy.await(10, TimeUnit.SECONDS));
+        caller.interrupt();
+        caller.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse("run() did not return", caller.isAlive());
+        assertTrue(String.valueOf(outcome.get()),
+                   outcome.get() instanceof InterruptedException);
+        assertEquals(1, bsp.steps());
+    }
+}
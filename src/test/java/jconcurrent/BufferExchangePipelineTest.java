@@ -0,0 +1,225 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+public class BufferExchangePipelineTest extends TestCase {
+
+    private static byte[] pattern(int n) {
+        byte[] bytes = new byte[n];
+        for (int i = 0; i < n; ++i) {
+            bytes[i] = (byte)(i * 31 + (i >>> 8));
+        }
+        return bytes;
+    }
+
+    // checks every byte against pattern() and records the buffers
+    private static final class Checker
+        implements BufferExchangePipeline.Drain {
+
+        final Map<ByteBuffer, Boolean> seen = new IdentityHashMap<>();
+        final byte[] expected;
+        int offset;
+
+        Checker(byte[] expected) {
+            this.expected = expected;
+        }
+
+        public void drain(ByteBuffer filled) {
+            seen.put(filled, Boolean.TRUE);
+            assertTrue(filled.isDirect());
+            while (filled.hasRemaining()) {
+                assertEquals(expected[offset++], filled.get());
+            }
+        }
+    }
+
+    public void testFileSource() throws Exception {
+        byte[] bytes = pattern(1000003);
+        Path file = Files.createTempFile("pipeline", ".bin");
+        try {
+            Files.write(file, bytes);
+            BufferExchangePipeline pipeline =
+                new BufferExchangePipeline(4096);
+            for (int round = 0; round < 2; ++round) {
+                Checker checker = new Checker(bytes);
+                try (FileChannel channel =
+                         FileChannel.open(file, StandardOpenOption.READ)) {
+                    assertEquals(bytes.length,
+                                 pipeline.run(channel, checker));
+                }
+                assertEquals(bytes.length, checker.offset);
+                // the same two buffers, swapped back and forth
+                assertEquals(2, checker.seen.size());
+                // 244 full buffers, a partial one and the end marker
+                assertEquals(246L, pipeline.swaps());
+            }
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testEmptySource() throws Exception {
+        Path file = Files.createTempFile("pipeline", ".bin");
+        try {
+            BufferExchangePipeline pipeline =
+                new BufferExchangePipeline(64);
+            Checker checker = new Checker(new byte[0]);
+            try (FileChannel channel =
+                     FileChannel.open(file, StandardOpenOption.READ)) {
+                assertEquals(0L, pipeline.run(channel, checker));
+            }
+            assertEquals(1L, pipeline.swaps());
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testLoopbackSocketSource() throws Exception {
+        final byte[] bytes = pattern(777777);
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0));
+            Thread sender = new Thread(() -> {
+                try (SocketChannel out = SocketChannel.open(
+                         server.getLocalAddress())) {
+                    // small writes, so that reads come back short
+                    for (int i = 0; i < bytes.length; i += 1000) {
+                        out.write(ByteBuffer.wrap(
+                            bytes, i, Math.min(1000, bytes.length - i)));
+                    }
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            sender.start();
+            try (SocketChannel in = server.accept()) {
+                Checker checker = new Checker(bytes);
+                BufferExchangePipeline pipeline =
+                    new BufferExchangePipeline(1 << 16);
+                assertEquals(bytes.length, pipeline.run(in, checker));
+                assertEquals(bytes.length, checker.offset);
+            }
+            sender.join();
+        }
+    }
+
+    public void testDrainFailureStopsFiller() throws Exception {
+        // an endless source: only the failing drain can stop it
+        BufferExchangePipeline pipeline = new BufferExchangePipeline(128);
+        try {
+            pipeline.run(
+                Channels.newChannel(new java.io.InputStream() {
+                    public int read() {
+                        return 7;
+                    }
+                }),
+                filled -> {
+                    throw new IOException("drain failed");
+                });
+            fail("expected IOException");
+        }
+        catch (IOException e) {
+            assertEquals("drain failed", e.getMessage());
+        }
+        assertEquals(1L, pipeline.swaps());
+    }
+
+    public void testSourceFailureIsRethrown() throws Exception {
+        BufferExchangePipeline pipeline = new BufferExchangePipeline(128);
+        try {
+            pipeline.run(
+                Channels.newChannel(new java.io.InputStream() {
+                    public int read() throws IOException {
+                        throw new IOException("read failed");
+                    }
+                }),
+                filled -> fail("nothing to drain"));
+            fail("expected IOException");
+        }
+        catch (IOException e) {
+            assertEquals("read failed", e.getMessage());
+        }
+    }
+
+    public void testUncheckedSourceFailureIsRethrown() throws Exception {
+        BufferExchangePipeline pipeline = new BufferExchangePipeline(128);
+        try {
+            pipeline.run(
+                Channels.newChannel(new java.io.InputStream() {
+                    public int read() {
+                        throw new IllegalStateException("read failed");
+                    }
+                }),
+                filled -> fail("nothing to drain"));
+            fail("expected IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            assertEquals("read failed", e.getMessage());
+        }
+    }
+
+    public void testInterruptedCallerStopsFiller() throws Exception {
+        BufferExchangePipeline pipeline = new BufferExchangePipeline(128);
+        CountDownLatch reading = new CountDownLatch(1);
+        Throwable[] thrown = new Throwable[1];
+        // the filler blocks in a read that swallows the interrupt
+        Thread caller = new Thread(() -> {
+            try {
+                pipeline.run(
+                    Channels.newChannel(new java.io.InputStream() {
+                        public int read() throws IOException {
+                            reading.countDown();
+                            try {
+                                Thread.sleep(60000);
+                            }
+                            catch (InterruptedException e) {
+                                throw new InterruptedIOException();
+                            }
+                            return 0;
+                        }
+                    }),
+                    filled -> fail("nothing to drain"));
+            }
+            catch (Throwable t) {
+                thrown[0] = t;
+            }
+        });
+        caller.start();
+        reading.await();
+        caller.interrupt();
+        caller.join(10000);
+        assertFalse(caller.isAlive());
+        assertTrue(String.valueOf(thrown[0]),
+            thrown[0] instanceof InterruptedException);
+
+        // no filler is left behind
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            assertFalse(t.getName().equals("buffer-filler"));
+        }
+        Checker checker = new Checker(pattern(1000));
+        assertEquals(1000L, pipeline.run(
+            Channels.newChannel(
+                new java.io.ByteArrayInputStream(pattern(1000))),
+            checker));
+        assertEquals(1000, checker.offset);
+    }
+}
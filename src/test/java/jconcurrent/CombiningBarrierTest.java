@@ -0,0 +1,159 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CombiningBarrierTest extends TestCase {
+
+    // every thread adds to arrived before each await; the
+    // barrier action checks that all of them have, and every
+    // thread checks that the action of its trip has run
+    private static void trips(int parties, final int rounds)
+        throws InterruptedException {
+        final AtomicInteger arrived = new AtomicInteger();
+        final int[] trips = new int[1];
+        final AtomicReference<String> error = new AtomicReference<>();
+        final CombiningBarrier barrier = new CombiningBarrier(parties, () -> {
+            if (arrived.getAndSet(0) != parties) {
+                error.compareAndSet(null, "action ran early");
+            }
+            ++trips[0];
+        });
+        final AtomicInteger zeros = new AtomicInteger();
+        Thread[] threads = new Thread[parties];
+        for (int i = 0; i < parties; ++i) {
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int r = 0; r < rounds; ++r) {
+                        arrived.incrementAndGet();
+                        if (barrier.await() == 0) {
+                            zeros.incrementAndGet();
+                        }
+                        if (trips[0] < r + 1) {
+                            error.compareAndSet(null, "released early");
+                        }
+                    }
+                }
+                catch (InterruptedException | BrokenBarrierException e) {
+                    error.compareAndSet(null, e.toString());
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(error.get(), error.get());
+        assertEquals(rounds, trips[0]);
+        // one thread per trip ran the action
+        assertEquals(rounds, zeros.get());
+    }
+
+    public void testTrips() throws InterruptedException {
+        for (int parties : new int[] {1, 2, 3, 4, 5, 16, 17, 64}) {
+            trips(parties, 2000);
+        }
+    }
+
+    public void testTreeShape() {
+        assertEquals(1, new CombiningBarrier(1).levels());
+        assertEquals(1, new CombiningBarrier(4).levels());
+        assertEquals(2, new CombiningBarrier(5).levels());
+        assertEquals(2, new CombiningBarrier(16).levels());
+        assertEquals(3, new CombiningBarrier(17).levels());
+        assertEquals(4, new CombiningBarrier(128).levels());
+    }
+
+    public void testTooManyThreads() throws Exception {
+        final CombiningBarrier barrier = new CombiningBarrier(1);
+        barrier.await();
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            try {
+                barrier.await();
+            }
+            catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        other.start();
+        other.join();
+        assertTrue(thrown.get() instanceof IllegalStateException);
+    }
+
+    public void testFailingActionBreaksBarrier() throws Exception {
+        final CombiningBarrier barrier = new CombiningBarrier(2, () -> {
+            throw new IllegalStateException("action failed");
+        });
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            try {
+                barrier.await();
+            }
+            catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        other.start();
+        Throwable mine = null;
+        try {
+            barrier.await();
+        }
+        catch (Throwable t) {
+            mine = t;
+        }
+        other.join();
+        // one of the two ran the action, the other one was broken
+        Throwable action = mine instanceof IllegalStateException
+            ? mine : thrown.get();
+        Throwable broken = action == mine ? thrown.get() : mine;
+        assertEquals("action failed", action.getMessage());
+        assertTrue(broken instanceof BrokenBarrierException);
+        assertTrue(barrier.isBroken());
+
+        try {
+            barrier.await();
+            fail("expected BrokenBarrierException");
+        }
+        catch (BrokenBarrierException e) {
+            ;
+        }
+        barrier.reset();
+        assertFalse(barrier.isBroken());
+    }
+
+    public void testInterruptBreaksBarrier() throws Exception {
+        final CombiningBarrier barrier = new CombiningBarrier(3);
+        final AtomicReference<Throwable> first = new AtomicReference<>();
+        final AtomicReference<Throwable> second = new AtomicReference<>();
+        Thread a = new Thread(() -> {
+            try {
+                barrier.await();
+            }
+            catch (Throwable t) {
+                first.set(t);
+            }
+        });
+        Thread b = new Thread(() -> {
+            try {
+                barrier.await();
+            }
+            catch (Throwable t) {
+                second.set(t);
+            }
+        });
+        a.start();
+        b.start();
+        // let both of them park
+        Thread.sleep(100);
+        a.interrupt();
+        a.join();
+        b.join();
+        assertTrue(first.get() instanceof InterruptedException);
+        assertTrue(second.get() instanceof BrokenBarrierException);
+        assertTrue(barrier.isBroken());
+    }
+}
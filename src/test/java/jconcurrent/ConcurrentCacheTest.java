@@ -0,0 +1,167 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConcurrentCacheTest extends TestCase {
+
+    public void testGetPutRemove() {
+        ConcurrentCache<String, Integer> cache = new ConcurrentCache<>(10);
+        assertNull(cache.get("a"));
+        assertNull(cache.put("a", 1));
+        assertEquals(1, (int)cache.put("a", 2));
+        assertEquals(2, (int)cache.get("a"));
+        assertEquals(1L, cache.size());
+        assertEquals(2, (int)cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertNull(cache.get("a"));
+        assertEquals(0L, cache.size());
+        assertEquals(1L, cache.hitCount());
+        assertEquals(2L, cache.missCount());
+
+        for (int i = 0; i < 5; ++i) {
+            cache.put("k" + i, i);
+        }
+        cache.clear();
+        cache.cleanUp();
+        assertEquals(0L, cache.size());
+
+        try {
+            new ConcurrentCache<String, Integer>(0);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+    }
+
+    public void testLoader() throws InterruptedException {
+        ConcurrentCache<Integer, String> cache = new ConcurrentCache<>(100);
+        AtomicInteger loads = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50; ++i) {
+                    assertEquals("v" + i, cache.get(i, k -> {
+                        loads.incrementAndGet();
+                        return "v" + k;
+                    }));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        // once per key
+        assertEquals(50, loads.get());
+
+        assertNull(cache.get(1000, k -> null));
+        assertNull(cache.get(1000));
+    }
+
+    public void testSizeBoundKeepsFrequentKeys() {
+        ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<>(100);
+        // 10 hot keys, used over and over
+        for (int round = 0; round < 20; ++round) {
+            for (int k = 0; k < 10; ++k) {
+                cache.get(k, x -> x);
+            }
+            cache.cleanUp();
+        }
+        // a scan of one-hit wonders, 10 times the cache
+        for (int k = 1000; k < 2000; ++k) {
+            cache.put(k, k);
+        }
+        cache.cleanUp();
+        assertTrue("size " + cache.size(), cache.size() <= 100);
+        assertTrue(cache.evictionCount() >= 910L);
+        for (int k = 0; k < 10; ++k) {
+            assertEquals(k, (int)cache.get(k));
+        }
+    }
+
+    public void testExpireAfterWrite() {
+        AtomicLong now = new AtomicLong();
+        ConcurrentCache<String, String> cache = new ConcurrentCache<>(
+            100, 10, TimeUnit.SECONDS, now::get);
+        cache.put("a", "1");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        // an expired entry is no previous value
+        assertNull(cache.put("a", "3"));
+        assertEquals("3", cache.get("a"));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        cache.cleanUp();
+        assertNull(cache.get("b"));
+        assertEquals(1L, cache.size());
+        assertEquals(1L, cache.evictionCount());
+
+        // an expired entry is loaded again
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals("4", cache.get("a", k -> "4"));
+    }
+
+    public void testConcurrentAccess() throws InterruptedException {
+        ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<>(200);
+        Thread[] threads = new Thread[4];
+        AtomicInteger wrong = new AtomicInteger();
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 100000; ++i) {
+                    int k = random.nextInt(1000);
+                    int op = random.nextInt(10);
+                    Integer v;
+                    if (op == 0) {
+                        cache.put(k, -k);
+                    }
+                    else if (op == 1) {
+                        cache.remove(k);
+                    }
+                    else if ((v = cache.get(k, x -> -x)) != -k) {
+                        wrong.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        cache.cleanUp();
+        assertEquals(0, wrong.get());
+        assertTrue("size " + cache.size(), cache.size() <= 200);
+    }
+
+    public void testFrequencySketch() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 20; ++i) {
+            sketch.increment("hot");
+        }
+        sketch.increment("cold");
+        // counters saturate at 15
+        assertEquals(15, sketch.frequency("hot"));
+        assertTrue(sketch.frequency("cold") >= 1);
+        assertTrue(sketch.frequency("cold") < 15);
+
+        // 640 increments halve every counter
+        for (int i = 0; sketch.sampled() > 0 && i < 10000; ++i) {
+            sketch.increment(i);
+            if (sketch.frequency("hot") < 15) {
+                break;
+            }
+        }
+        assertEquals(7, sketch.frequency("hot"));
+    }
+}
@@ -0,0 +1,288 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class EventLoopGroupTest extends TestCase {
+
+    private static final EventLoopGroup.Handler ECHO = (c, data) -> c.write(data);
+
+    private EventLoopGroup group;
+
+    protected void setUp() throws IOException {
+        group = new EventLoopGroup("loop", 2, 4096);
+    }
+
+    protected void tearDown() {
+        group.close();
+    }
+
+    private static InetSocketAddress loopback(int port) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    private static void readFully(SocketChannel ch, ByteBuffer into)
+        throws IOException {
+        while (into.hasRemaining()) {
+            if (ch.read(into) < 0) {
+                throw new IOException("eof");
+            }
+        }
+    }
+
+    public void testEcho() throws Exception {
+        InetSocketAddress server = group.bind(loopback(0), ECHO);
+        List<Thread> clients = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 8; ++t) {
+            final int id = t;
+            Thread client = new Thread(() -> {
+                try (SocketChannel ch = SocketChannel.open(server)) {
+                    for (int i = 0; i < 100; ++i) {
+                        byte[] msg = ("client " + id + " message " + i)
+                            .getBytes(StandardCharsets.US_ASCII);
+                        ch.write(ByteBuffer.wrap(msg));
+                        ByteBuffer back = ByteBuffer.allocate(msg.length);
+                        readFully(ch, back);
+                        assertEquals(new String(msg, StandardCharsets.US_ASCII),
+                                     new String(back.array(),
+                                                StandardCharsets.US_ASCII));
+                    }
+                }
+                catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+        for (Thread t : clients) {
+            t.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    public void testLargeWriteIsQueued() throws Exception {
+        final int size = 4 << 20;
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; ++i) {
+            payload.put((byte)i);
+        }
+        payload.flip();
+        // more than the socket takes at once: the rest goes to
+        // the pooled buffers, then close() waits for them
+        InetSocketAddress server = group.bind(loopback(0), new EventLoopGroup.Handler() {
+            public void onOpen(EventLoopGroup.Connection c) {
+                c.write(payload.duplicate());
+                c.close();
+            }
+
+            public void onRead(EventLoopGroup.Connection c, ByteBuffer data) {
+            }
+        });
+        try (SocketChannel ch = SocketChannel.open(server)) {
+            ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+            long received = 0;
+            int n;
+            while ((n = ch.read(in)) >= 0) {
+                in.flip();
+                while (in.hasRemaining()) {
+                    assertEquals((byte)received, in.get());
+                    ++received;
+                }
+                in.clear();
+            }
+            assertEquals(size, received);
+        }
+    }
+
+    public void testTasksRunInOrderInTheLoop() throws Exception {
+        EventLoopGroup.EventLoop loop = group.loop(1);
+        assertFalse(loop.inLoop());
+        List<Integer> order = new ArrayList<>();
+        AtomicReference<String> where = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 1000; ++i) {
+            final int k = i;
+            loop.execute(() -> order.add(k));
+        }
+        loop.execute(() -> {
+            where.set(Thread.currentThread().getName() + " " + loop.inLoop());
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("loop-1 true", where.get());
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(i, (int)order.get(i));
+        }
+    }
+
+    public void testConnectAndWriteFromOutside() throws Exception {
+        CountDownLatch serverClosed = new CountDownLatch(1);
+        InetSocketAddress server = group.bind(loopback(0), new EventLoopGroup.Handler() {
+            public void onRead(EventLoopGroup.Connection c, ByteBuffer data) {
+                c.write(data);
+            }
+
+            public void onClose(EventLoopGroup.Connection c, Throwable cause) {
+                serverClosed.countDown();
+            }
+        });
+        StringBuilder echoed = new StringBuilder();
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch clientClosed = new CountDownLatch(1);
+        EventLoopGroup.Connection c = group.connect(server, new EventLoopGroup.Handler() {
+            public void onRead(EventLoopGroup.Connection c, ByteBuffer data) {
+                echoed.append(StandardCharsets.US_ASCII.decode(data));
+                if (echoed.length() == 10) {
+                    received.countDown();
+                }
+            }
+
+            public void onClose(EventLoopGroup.Connection c, Throwable cause) {
+                clientClosed.countDown();
+            }
+        }).get(10, TimeUnit.SECONDS);
+
+        ByteBuffer msg = ByteBuffer.wrap("hello".getBytes(StandardCharsets.US_ASCII));
+        c.write(msg);
+        assertFalse(msg.hasRemaining());
+        c.write(ByteBuffer.wrap("world".getBytes(StandardCharsets.US_ASCII)));
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        // the latch publishes what the loop appended
+        assertEquals("helloworld", echoed.toString());
+
+        c.close();
+        assertTrue(clientClosed.await(10, TimeUnit.SECONDS));
+        assertTrue(serverClosed.await(10, TimeUnit.SECONDS));
+    }
+
+    public void testConnectFailure() throws Exception {
+        InetSocketAddress server = group.bind(loopback(0), ECHO);
+        group.close();
+        group = new EventLoopGroup("loop", 1, 4096);
+        try {
+            group.connect(server, ECHO).get(10, TimeUnit.SECONDS);
+            fail("expected a refused connection");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(0, group.loop(0).connections());
+    }
+
+    public void testCloseClosesConnections() throws Exception {
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        InetSocketAddress server = group.bind(loopback(0), new EventLoopGroup.Handler() {
+            public void onOpen(EventLoopGroup.Connection c) {
+                opened.countDown();
+            }
+
+            public void onRead(EventLoopGroup.Connection c, ByteBuffer data) {
+            }
+
+            public void onClose(EventLoopGroup.Connection c, Throwable cause) {
+                closed.countDown();
+            }
+        });
+        try (SocketChannel ch = SocketChannel.open(server)) {
+            assertTrue(opened.await(10, TimeUnit.SECONDS));
+            group.close();
+            assertTrue(closed.await(10, TimeUnit.SECONDS));
+            // the server side is gone
+            assertEquals(-1, ch.read(ByteBuffer.allocate(1)));
+        }
+        try {
+            group.next().execute(() -> { });
+            fail("expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException e) {
+            ;
+        }
+    }
+
+    public void testFailuresGoToTheUncaughtExceptionHandler()
+        throws Exception {
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch reported = new CountDownLatch(2);
+        Thread.UncaughtExceptionHandler handler = (t, e) -> {
+            threads.add(t);
+            errors.add(e);
+            reported.countDown();
+        };
+        try (EventLoopGroup g = new EventLoopGroup("errors", 1, 4096, handler)) {
+            g.next().execute(() -> {
+                throw new IllegalStateException("task");
+            });
+            EventLoopGroup.Handler failingClose = new EventLoopGroup.Handler() {
+                public void onRead(EventLoopGroup.Connection c,
+                                   ByteBuffer data) {
+                    c.close();
+                }
+
+                public void onClose(EventLoopGroup.Connection c,
+                                    Throwable cause) {
+                    throw new IllegalStateException("onClose");
+                }
+            };
+            InetSocketAddress server = g.bind(loopback(0), failingClose);
+            try (SocketChannel ch = SocketChannel.open(server)) {
+                ch.write(ByteBuffer.wrap(new byte[] {1}));
+                assertTrue(reported.await(10, TimeUnit.SECONDS));
+            }
+            assertEquals("task", errors.get(0).getMessage());
+            assertEquals("onClose", errors.get(1).getMessage());
+            // reported from the loop's thread
+            assertSame(threads.get(0), threads.get(1));
+            assertTrue(threads.get(0).getName().startsWith("errors-"));
+
+            // the loop goes on
+            CountDownLatch ran = new CountDownLatch(1);
+            g.next().execute(ran::countDown);
+            assertTrue(ran.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    public void testBufferPool() {
+        DirectBufferPool pool = new DirectBufferPool(1024, 2);
+        ByteBuffer a = pool.acquire();
+        ByteBuffer b = pool.acquire();
+        ByteBuffer c = pool.acquire();
+        assertTrue(a.isDirect());
+        assertEquals(1024, a.capacity());
+        assertEquals(3L, pool.allocated());
+        pool.release(a);
+        pool.release(b);
+        // no room left: dropped
+        pool.release(c);
+        assertEquals(2, pool.idle());
+        a.position(10);
+        ByteBuffer again = pool.acquire();
+        assertTrue(again == a || again == b);
+        assertEquals(0, again.position());
+        assertEquals(3L, pool.allocated());
+        try {
+            pool.release(ByteBuffer.allocate(1024));
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutorFactoryTest extends TestCase {
+
+    // runs n tasks that sleep for 10ms; returns the largest
+    // number of them seen sleeping at the same time
+    private static int run(ExecutorService executor, int n)
+        throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(n);
+        for (int i = 0; i < n; ++i) {
+            executor.execute(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                }
+                catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        return peak.get();
+    }
+
+    public void testFixedPoolCapsConcurrency() throws Exception {
+        ExecutorService pool = ExecutorFactory.newExecutor(
+            ExecutorFactory.Mode.FIXED, "fixed", 4);
+        assertTrue(run(pool, 100) <= 4);
+    }
+
+    public void testVirtualThreadPerTask() throws Exception {
+        ExecutorService pool = ExecutorFactory.newExecutor(
+            ExecutorFactory.Mode.VIRTUAL, "virtual", 0);
+        Future<Thread> f = pool.submit(Thread::currentThread);
+        Thread t = f.get();
+        assertTrue(t.isVirtual());
+        assertEquals("virtual-0", t.getName());
+
+        // 10000 tasks of 10ms do not wait for each other
+        long start = System.nanoTime();
+        int peak = run(pool, 10000);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("peak " + peak, peak > 100);
+        assertTrue("took " + millis + "ms", millis < 20000);
+    }
+
+    public void testPlatformThreadNames() throws Exception {
+        ExecutorService pool = ExecutorFactory.newExecutor(
+            ExecutorFactory.Mode.CACHED, "cached", 0);
+        Thread t = pool.submit(Thread::currentThread).get();
+        assertFalse(t.isVirtual());
+        assertEquals("cached-0", t.getName());
+        pool.shutdown();
+
+        try {
+            ExecutorFactory.newFixed("fixed", 0);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+    }
+}
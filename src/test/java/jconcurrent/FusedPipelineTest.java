@@ -0,0 +1,154 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+public class FusedPipelineTest extends TestCase {
+
+    // long enough to be split into several leaves, and not a
+    // multiple of the chunk size
+    private static final int N = (1 << 20) + 77;
+
+    private static double[] randomDoubles(long seed) {
+        Random r = new Random(seed);
+        double[] data = new double[N];
+        for (int i = 0; i < N; ++i) {
+            data[i] = r.nextInt(20001) - 10000;
+        }
+        return data;
+    }
+
+    public void testMapFilterSum() {
+        double[] data = randomDoubles(1);
+        FusedPipeline.Doubles p = FusedPipeline.of(data)
+            .map(x -> x * 2)
+            .filter(x -> x > 0)
+            .map(x -> x + 1);
+
+        // integers: every sum is exact
+        assertEquals(
+            Arrays.stream(data).map(x -> x * 2).filter(x -> x > 0)
+                .map(x -> x + 1).sum(),
+            p.sum());
+        assertEquals(
+            Arrays.stream(data).filter(x -> x > 0).count(), p.count());
+        assertEquals(3.0, p.min());
+        assertEquals(20001.0, p.max());
+        assertEquals(p.sum(), p.sum(ParallelReduce.Summation.COMPENSATED));
+    }
+
+    public void testKernelsAreFused() {
+        double[] data = randomDoubles(2);
+        double[] expected = data.clone();
+        ElementKernels.abs(expected, expected, 0, N);
+        ElementKernels.sqrt(expected, expected, 0, N);
+        ElementKernels.clamp(expected, expected, 10, 50, 0, N);
+        FusedPipeline.Doubles p = FusedPipeline.of(data)
+            .transform(ElementKernels.abs())
+            .transform(ElementKernels.sqrt())
+            .transform(ElementKernels.clamp(10, 50));
+
+        assertEquals(ParallelReduce.max(expected), p.max());
+        assertEquals(ParallelReduce.min(expected), p.min());
+
+        // in place: the source is overwritten chunk by chunk
+        p.writeTo(data);
+        assertTrue(Arrays.equals(expected, data));
+    }
+
+    // not commutative: the leaves must be combined in order
+    public void testReduceKeepsOrder() {
+        long[] data = new long[N];
+        for (int i = 0; i < N; ++i) {
+            data[i] = i % 7 == 0 ? 0 : i;
+        }
+        long last = FusedPipeline.of(data)
+            .filter(x -> x % 3 != 0)
+            .reduce(-1, (a, b) -> b);
+        long expected = N - 1;
+        while (expected % 7 == 0 || expected % 3 == 0) {
+            --expected;
+        }
+        assertEquals(expected, last);
+
+        assertEquals(-1L, FusedPipeline.of(data)
+            .filter(x -> x < 0)
+            .reduce(-1, (a, b) -> b));
+        assertEquals(42.0, FusedPipeline.of(new double[0])
+            .reduce(42.0, Double::sum));
+    }
+
+    public void testLongs() {
+        long[] data = new long[N];
+        for (int i = 0; i < N; ++i) {
+            data[i] = i - N / 2;
+        }
+        FusedPipeline.Longs p = FusedPipeline.of(data)
+            .map(x -> x * 3)
+            .filter(x -> (x & 1) == 0);
+        assertEquals(
+            Arrays.stream(data).map(x -> x * 3).filter(x -> (x & 1) == 0)
+                .sum(),
+            p.sum());
+        assertEquals(
+            Arrays.stream(data).map(x -> x * 3).filter(x -> (x & 1) == 0)
+                .max().getAsLong(),
+            p.max());
+        assertEquals(-3L * (N / 2), p.min());
+
+        assertEquals(
+            Arrays.stream(data).mapToDouble(x -> x * 0.5).sum(),
+            FusedPipeline.of(data).mapToDouble(x -> x * 0.5).sum());
+
+        long[] dst = new long[N];
+        FusedPipeline.of(data).map(x -> -x).writeTo(dst);
+        assertEquals((long)(N / 2), dst[0]);
+        assertEquals(-(long)(N - 1 - N / 2), dst[N - 1]);
+    }
+
+    public void testPipelinesAreImmutable() {
+        double[] data = {1, 2, 3, 4};
+        FusedPipeline.Doubles base = FusedPipeline.of(data);
+        FusedPipeline.Doubles evens = base.filter(x -> x % 2 == 0);
+        FusedPipeline.Doubles doubled = base.map(x -> x * 2);
+        assertEquals(10.0, base.sum());
+        assertEquals(6.0, evens.sum());
+        assertEquals(20.0, doubled.sum());
+        assertEquals(2L, evens.count());
+
+        // lazy: the source is read by each terminal operation
+        data[0] = 11;
+        assertEquals(20.0, base.sum());
+    }
+
+    public void testEmpty() {
+        FusedPipeline.Doubles none = FusedPipeline.of(randomDoubles(3))
+            .filter(x -> false);
+        assertEquals(0L, none.count());
+        assertEquals(0.0, none.sum());
+        try {
+            none.min();
+            fail("expected NoSuchElementException");
+        }
+        catch (NoSuchElementException e) {
+            ;
+        }
+        try {
+            none.writeTo(new double[N]);
+            fail("expected IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            ;
+        }
+        try {
+            FusedPipeline.of(new double[10]).writeTo(new double[9]);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+    }
+}
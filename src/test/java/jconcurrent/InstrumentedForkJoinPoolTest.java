@@ -0,0 +1,132 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class InstrumentedForkJoinPoolTest extends TestCase {
+
+    private static final class Fib extends RecursiveTask<Long> {
+
+        private final int n;
+
+        Fib(int n) {
+            this.n = n;
+        }
+
+        protected Long compute() {
+            if (n < 2) {
+                return (long)n;
+            }
+            Fib left = new Fib(n - 1);
+            left.fork();
+            return new Fib(n - 2).compute() + left.join();
+        }
+    }
+
+    public void testCountsAndLatencies() throws Exception {
+        try (InstrumentedForkJoinPool pool =
+                 new InstrumentedForkJoinPool("test", 4)) {
+            assertEquals(4, pool.getParallelism());
+            assertEquals(6765L, (long)pool.invoke(new Fib(20)));
+
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[100];
+            for (int i = 0; i < tasks.length; ++i) {
+                tasks[i] = pool.submit(() -> {
+                    Thread.sleep(1);
+                    return 1;
+                });
+            }
+            for (ForkJoinTask<?> t : tasks) {
+                t.join();
+            }
+            assertEquals(101L, pool.getTasksCompleted());
+            assertEquals(0L, pool.getTasksFailed());
+            assertEquals(101L, pool.latency().count());
+            assertEquals(100L, pool.waitTime().count());
+            // every task slept for 1ms
+            assertTrue(pool.getLatencyP50Nanos() >= 1000000L);
+            assertTrue(pool.getLatencyMaxNanos()
+                       >= pool.getLatencyP99Nanos());
+            assertTrue(pool.getStealCount() >= 0L);
+            assertTrue(pool.getPoolSize() <= 4);
+
+            pool.resetLatencies();
+            assertEquals(0L, pool.latency().count());
+        }
+    }
+
+    public void testFailuresAndSampling() throws Exception {
+        try (InstrumentedForkJoinPool pool =
+                 new InstrumentedForkJoinPool("sampled", 2)) {
+            pool.setLatencySampling(1000000);
+            ForkJoinTask<Integer> bad = pool.submit(() -> {
+                throw new IllegalStateException("bad task");
+            });
+            try {
+                bad.get();
+                fail("expected ExecutionException");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            for (int i = 0; i < 1000; ++i) {
+                pool.execute(() -> { });
+            }
+            pool.pool().awaitQuiescence(10, TimeUnit.SECONDS);
+            assertEquals(1L, pool.getTasksFailed());
+            assertEquals(1000L, pool.getTasksCompleted());
+            // hardly any of them timed
+            assertTrue(pool.latency().count() < 10);
+
+            try {
+                pool.setLatencySampling(0);
+                fail("expected IllegalArgumentException");
+            }
+            catch (IllegalArgumentException e) {
+                ;
+            }
+        }
+    }
+
+    public void testMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name;
+        try (InstrumentedForkJoinPool pool =
+                 new InstrumentedForkJoinPool("jmx", 2)) {
+            name = pool.registerMBean();
+            assertEquals(name, pool.registerMBean());
+            pool.invoke(new Fib(10));
+            assertEquals(2, server.getAttribute(name, "Parallelism"));
+            assertEquals(1L, server.getAttribute(name, "TasksCompleted"));
+            assertEquals("jmx", server.getAttribute(name, "Name"));
+            server.invoke(name, "resetLatencies", null, null);
+            assertEquals(0L, pool.latency().count());
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    // unregistered behind the wrapper's back: close() says so, and
+    // still shuts the pool down
+    public void testCloseFailure() throws Exception {
+        InstrumentedForkJoinPool pool =
+            new InstrumentedForkJoinPool("gone", 1);
+        ObjectName name = pool.registerMBean();
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        try {
+            pool.close();
+            fail("expected InstanceNotFoundException");
+        }
+        catch (InstanceNotFoundException e) {
+            ;
+        }
+        assertTrue(pool.pool().isShutdown());
+    }
+}
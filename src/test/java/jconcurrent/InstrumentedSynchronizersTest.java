@@ -0,0 +1,189 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class InstrumentedSynchronizersTest extends TestCase {
+
+    // waits until n threads are blocked on the synchroniser
+    private static void awaitWaiters(WaitStats stats, int n)
+        throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (stats.waiters() < n) {
+            assertTrue("waiters " + stats.waiters(),
+                       System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    public void testSemaphore() throws Exception {
+        Semaphore s = new InstrumentedSemaphore("pool", 1);
+        WaitStats stats = ((InstrumentedSemaphore)s).stats();
+        s.acquire();
+        assertEquals(1L, stats.immediate());
+        assertEquals(0L, stats.waits());
+
+        Thread waiter = new Thread(() -> {
+            s.acquireUninterruptibly();
+            s.release();
+        });
+        waiter.start();
+        awaitWaiters(stats, 1);
+        Thread.sleep(20);
+        s.release();
+        waiter.join();
+        assertEquals(0, stats.waiters());
+        assertEquals(1L, stats.waits());
+        assertTrue(stats.waitTime().max() >= TimeUnit.MILLISECONDS.toNanos(20));
+
+        s.acquire();
+        assertFalse(s.tryAcquire(10, TimeUnit.MILLISECONDS));
+        assertEquals(1L, stats.timeouts());
+        assertEquals(2L, stats.waits());
+        s.release();
+        assertTrue(s.tryAcquire(10, TimeUnit.MILLISECONDS));
+        assertEquals(3L, stats.immediate());
+        assertTrue(stats.toString().startsWith("pool: waits=2"));
+
+        stats.reset();
+        assertEquals(0L, stats.waits());
+        assertEquals(0L, stats.immediate());
+    }
+
+    public void testFairSemaphoreDoesNotBarge() throws Exception {
+        InstrumentedSemaphore s = new InstrumentedSemaphore("fair", 0, true);
+        Thread first = new Thread(() -> s.acquireUninterruptibly());
+        first.start();
+        awaitWaiters(s.stats(), 1);
+        s.release();
+        first.join();
+        assertEquals(0L, s.stats().immediate());
+        assertEquals(1L, s.stats().waits());
+    }
+
+    // an interrupted timed wait ends, it does not time out
+    public void testInterruptedTimedWaits() throws Exception {
+        InstrumentedSemaphore s = new InstrumentedSemaphore("interrupted", 0);
+        Thread.currentThread().interrupt();
+        try {
+            s.tryAcquire(10, TimeUnit.SECONDS);
+            fail("expected InterruptedException");
+        }
+        catch (InterruptedException e) {
+            ;
+        }
+        assertEquals(1L, s.stats().waits());
+        assertEquals(0L, s.stats().timeouts());
+        assertEquals(0, s.stats().waiters());
+
+        InstrumentedCountDownLatch latch =
+            new InstrumentedCountDownLatch("interrupted", 1);
+        Thread.currentThread().interrupt();
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+            fail("expected InterruptedException");
+        }
+        catch (InterruptedException e) {
+            ;
+        }
+        assertEquals(1L, latch.stats().waits());
+        assertEquals(0L, latch.stats().timeouts());
+        assertEquals(0, latch.stats().waiters());
+    }
+
+    public void testCountDownLatch() throws Exception {
+        CountDownLatch latch = new InstrumentedCountDownLatch("startup", 2);
+        WaitStats stats = ((InstrumentedCountDownLatch)latch).stats();
+        assertFalse(latch.await(5, TimeUnit.MILLISECONDS));
+        assertEquals(1L, stats.timeouts());
+
+        Thread[] waiters = new Thread[3];
+        for (int i = 0; i < waiters.length; ++i) {
+            waiters[i] = new Thread(() -> {
+                try {
+                    latch.await();
+                }
+                catch (InterruptedException e) {
+                    ;
+                }
+            });
+            waiters[i].start();
+        }
+        awaitWaiters(stats, 3);
+        latch.countDown();
+        latch.countDown();
+        for (Thread t : waiters) {
+            t.join();
+        }
+        assertEquals(4L, stats.waits());
+        assertEquals(0, stats.waiters());
+
+        latch.await();
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals(2L, stats.immediate());
+    }
+
+    public void testCyclicBarrier() throws Exception {
+        CyclicBarrier barrier = new InstrumentedCyclicBarrier("step", 2);
+        WaitStats stats = ((InstrumentedCyclicBarrier)barrier).stats();
+        Thread other = new Thread(() -> {
+            try {
+                barrier.await();
+            }
+            catch (Exception e) {
+                ;
+            }
+        });
+        other.start();
+        awaitWaiters(stats, 1);
+        barrier.await();
+        other.join();
+        assertEquals(2L, stats.waits());
+
+        try {
+            barrier.await(5, TimeUnit.MILLISECONDS);
+            fail("expected TimeoutException");
+        }
+        catch (TimeoutException e) {
+            ;
+        }
+        assertEquals(1L, stats.timeouts());
+        assertEquals(0, stats.waiters());
+    }
+
+    public void testPhaser() throws Exception {
+        Phaser phaser = new InstrumentedPhaser("phases", 2);
+        WaitStats stats = ((InstrumentedPhaser)phaser).stats();
+        Thread other = new Thread(() -> {
+            for (int i = 0; i < 3; ++i) {
+                phaser.arriveAndAwaitAdvance();
+            }
+            phaser.arriveAndDeregister();
+        });
+        other.start();
+        for (int i = 0; i < 3; ++i) {
+            phaser.arriveAndAwaitAdvance();
+        }
+        other.join();
+        assertEquals(6L, stats.waits());
+
+        // phase 0 is over
+        assertEquals(3, phaser.awaitAdvance(0));
+        assertEquals(1L, stats.immediate());
+        try {
+            phaser.awaitAdvanceInterruptibly(3, 5, TimeUnit.MILLISECONDS);
+            fail("expected TimeoutException");
+        }
+        catch (TimeoutException e) {
+            ;
+        }
+        assertEquals(1L, stats.timeouts());
+        assertEquals(7L, stats.waits());
+    }
+}
@@ -0,0 +1,76 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+public class LogHistogramTest extends TestCase {
+
+    public void testBuckets() {
+        assertEquals(0, LogHistogram.bucket(0));
+        assertEquals(7, LogHistogram.bucket(7));
+        assertEquals(8, LogHistogram.bucket(8));
+        assertEquals(15, LogHistogram.bucket(15));
+        assertEquals(16, LogHistogram.bucket(16));
+        assertEquals(16, LogHistogram.bucket(17));
+        assertEquals(LogHistogram.BUCKETS - 1,
+                     LogHistogram.bucket(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE,
+                     LogHistogram.upperBound(LogHistogram.BUCKETS - 1));
+
+        // the buckets are contiguous, and every value falls in
+        // its bucket with at most 1/8 of error
+        for (int i = 1; i < LogHistogram.BUCKETS; ++i) {
+            assertEquals(LogHistogram.upperBound(i - 1) + 1,
+                         LogHistogram.lowerBound(i));
+        }
+        for (long v = 1; v > 0 && v < Long.MAX_VALUE / 3; v = v * 3 + 1) {
+            int b = LogHistogram.bucket(v);
+            assertTrue(LogHistogram.lowerBound(b) <= v);
+            assertTrue(v <= LogHistogram.upperBound(b));
+            assertTrue(LogHistogram.upperBound(b) - LogHistogram.lowerBound(b)
+                       <= v / 8);
+        }
+    }
+
+    public void testPercentiles() {
+        LogHistogram h = new LogHistogram();
+        assertEquals(0, h.percentile(50));
+        assertTrue(Double.isNaN(h.mean()));
+
+        for (int i = 1; i <= 1000; ++i) {
+            h.record(i * 1000L);
+        }
+        h.record(-5);
+        assertEquals(1001L, h.count());
+        assertEquals(500500000L, h.sum());
+        assertEquals(1000000L, h.max());
+        assertEquals(0L, h.percentile(0));
+        long p50 = h.percentile(50);
+        assertTrue(p50 >= 500000L && p50 <= 500000L * 9 / 8);
+        long p99 = h.percentile(99);
+        assertTrue(p99 >= 990000L && p99 <= 1000000L);
+        assertEquals(1000000L, h.percentile(100));
+
+        h.reset();
+        assertEquals(0L, h.count());
+        assertEquals(0L, h.max());
+    }
+
+    public void testConcurrentRecording() throws InterruptedException {
+        final LogHistogram h = new LogHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100000; ++i) {
+                    h.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(400000L, h.count());
+        assertEquals(4L * 99999 * 100000 / 2, h.sum());
+        assertEquals(99999L, h.max());
+    }
+}
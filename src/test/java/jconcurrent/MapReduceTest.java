@@ -0,0 +1,195 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.LongBinaryOperator;
+
+public class MapReduceTest extends TestCase {
+
+    // "<user> <status> <bytes>" lines; long enough for several
+    // blocks
+    private static String log(int lines, long seed) {
+        Random r = new Random(seed);
+        int[] statuses = {200, 301, 404, 500};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; ++i) {
+            text.append(r.nextInt(5000)).append(' ')
+                .append(statuses[r.nextInt(statuses.length)]).append(' ')
+                .append(r.nextInt(100000))
+                .append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        return text.toString();
+    }
+
+    private static long field(CharSequence line, int k) {
+        int i = 0;
+        for (int f = 0; f < k; ++f) {
+            while (line.charAt(i) != ' ') {
+                ++i;
+            }
+            ++i;
+        }
+        long v = 0;
+        for (; i < line.length() && line.charAt(i) != ' '; ++i) {
+            v = v * 10 + (line.charAt(i) - '0');
+        }
+        return v;
+    }
+
+    private static Map<Long, Long> expected(
+        String text, int keyField, LongBinaryOperator op) {
+        Map<Long, Long> m = new HashMap<>();
+        for (String line : text.split("\r?\n")) {
+            long v = field(line, 2);
+            m.merge(field(line, keyField), v, op::applyAsLong);
+        }
+        return m;
+    }
+
+    private static void assertGroups(
+        Map<Long, Long> expected, MapReduce.Groups groups) {
+        assertEquals(expected.size(), groups.size());
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            assertEquals(e.getValue().longValue(),
+                groups.get(e.getKey(), -1));
+        }
+    }
+
+    public void testGroupBy() {
+        String text = log(200000, 1);
+        MapReduce.Mapper byStatus =
+            (line, out) -> out.emit(field(line, 1), field(line, 2));
+        assertGroups(expected(text, 1, Long::sum),
+            MapReduce.groupBy(text, byStatus, Long::sum));
+
+        // many keys, and the tables are resized
+        MapReduce.Mapper byUser =
+            (line, out) -> out.emit(field(line, 0), field(line, 2));
+        assertGroups(expected(text, 0, Math::max),
+            MapReduce.groupBy(new StringBuilder(text), byUser, Math::max));
+
+        // not commutative: the last value of every key, in the
+        // order of the lines
+        assertGroups(expected(text, 0, (a, b) -> b),
+            MapReduce.groupBy(text, byUser, (a, b) -> b));
+    }
+
+    public void testKeysAndLines() {
+        MapReduce.Groups g = MapReduce.groupBy(
+            "\n0\n\n7\r\n0\n-3\n7", (line, out) -> {
+                if (line.length() > 0) {
+                    out.emit(Long.parseLong(line.toString()), 1);
+                }
+            }, Long::sum);
+        assertEquals(3, g.size());
+        assertTrue(g.containsKey(0));
+        assertEquals(2L, g.get(0, -1));
+        assertEquals(2L, g.get(7, -1));
+        assertEquals(1L, g.get(-3, -1));
+        assertFalse(g.containsKey(5));
+        long[] keys = g.keys();
+        Arrays.sort(keys);
+        assertTrue(Arrays.equals(new long[] {-3, 0, 7}, keys));
+        long[] total = new long[1];
+        g.forEach((k, v) -> total[0] += v);
+        assertEquals(5L, total[0]);
+
+        // a line longer than the window
+        StringBuilder text = new StringBuilder("1\n");
+        for (int i = 0; i < 3 * MapReduce.WINDOW_CHARS; ++i) {
+            text.append('x');
+        }
+        text.append("\n2\n");
+        g = MapReduce.groupBy(text, (line, out) -> out.emit(line.length(), 1),
+            Long::sum);
+        assertEquals(2L, g.get(1, -1));
+        assertEquals(1L, g.get(3 * MapReduce.WINDOW_CHARS, -1));
+
+        assertEquals(0, MapReduce.groupBy("", (line, out) -> {
+            out.emit(1, 1);
+        }, Long::sum).size());
+    }
+
+    public void testWordCount() {
+        Random r = new Random(2);
+        String[] vocabulary = new String[3000];
+        for (int i = 0; i < vocabulary.length; ++i) {
+            vocabulary[i] = "w" + Integer.toString(i, 36);
+        }
+        Map<String, Long> expected = new HashMap<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300000; ++i) {
+            // skewed: a few very common words
+            String w = vocabulary[r.nextInt(4) == 0
+                ? r.nextInt(vocabulary.length) : r.nextInt(8)];
+            expected.merge(w, 1L, Long::sum);
+            text.append(w)
+                .append(i % 11 == 0 ? ".\n" : i % 5 == 0 ? ", " : " ");
+        }
+        assertEquals(expected, MapReduce.wordCount(text));
+        assertEquals(expected, MapReduce.wordCount(text.toString()));
+
+        Map<String, Long> m = MapReduce.wordCount("Don't stop, don't!");
+        assertEquals(2L, m.get("t").longValue());
+        assertEquals(1L, m.get("Don").longValue());
+        assertEquals(1L, m.get("don").longValue());
+        assertTrue(MapReduce.wordCount(" ,.\n").isEmpty());
+    }
+
+    public void testFile() throws IOException {
+        String text = log(50000, 3) + "na\u00efve caf\u00e9, caf\u00e9\n";
+        Path file = Files.createTempFile("mapreduce", ".txt");
+        try {
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+
+            MapReduce.Mapper byStatus = (line, out) -> {
+                if (Character.isDigit(line.charAt(0))) {
+                    out.emit(field(line, 1), field(line, 2));
+                }
+            };
+            // small segments: lines across the mappings
+            assertGroups(expected(log(50000, 3), 1, Long::sum),
+                MapReduce.groupBy(file, byStatus, Long::sum, 1000));
+
+            Map<String, Long> words = MapReduce.wordCount(file, 777);
+            assertEquals(MapReduce.wordCount(text), words);
+            assertEquals(2L, words.get("caf\u00e9").longValue());
+            assertEquals(1L, words.get("na\u00efve").longValue());
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    // non-ASCII separators and letters split a file as they split
+    // the same text
+    public void testFileWordsMatchText() throws IOException {
+        String text = "caf\u00e9\u2014bar\u00a0baz qu\u00e9\n"
+            // a letter outside the BMP, a CJK word, a symbol
+            + "\ud835\udc00b \u65e5\u672c\u8a9e\u00a9x\n";
+        Path file = Files.createTempFile("mapreduce", ".txt");
+        try {
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+            Map<String, Long> words = MapReduce.wordCount(file);
+            assertEquals(MapReduce.wordCount(text), words);
+            assertEquals(7, words.size());
+            assertTrue(words.containsKey("caf\u00e9"));
+            assertTrue(words.containsKey("bar"));
+            assertTrue(words.containsKey("baz"));
+            assertTrue(words.containsKey("\ud835\udc00b"));
+            assertTrue(words.containsKey("\u65e5\u672c\u8a9e"));
+            assertTrue(words.containsKey("x"));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ParallelBuffersTest extends TestCase {
+
+    private static DoubleBuffer direct(int n) {
+        return ByteBuffer.allocateDirect(n * Double.BYTES)
+            .order(ByteOrder.nativeOrder())
+            .asDoubleBuffer();
+    }
+
+    public void testDirectBuffer() {
+        DoubleBuffer nums = direct(1000000);
+        for (int i = 0; i < nums.capacity(); ++i) {
+            nums.put(i, (double)((i % 2) == 0 ? i : -i));
+        }
+
+        assertEquals(-500000.0, ParallelBuffers.sum(nums));
+        assertEquals(-500000.0, ParallelBuffers.sum(
+            nums, ParallelReduce.Summation.COMPENSATED));
+        assertEquals(-999999.0, ParallelBuffers.min(nums));
+        assertEquals(999998.0, ParallelBuffers.max(nums));
+
+        ParallelBuffers.transform(nums, Math::abs);
+        ParallelBuffers.transform(nums, Math::sqrt);
+        assertEquals(3.0, nums.get(9));
+        assertEquals(0, nums.position());
+    }
+
+    public void testPositionAndLimit() {
+        DoubleBuffer nums = direct(10000);
+        for (int i = 0; i < nums.capacity(); ++i) {
+            nums.put(i, 1.0);
+        }
+        nums.position(1000).limit(3000);
+
+        assertEquals(2000.0, ParallelBuffers.sum(nums));
+
+        DoubleBuffer dst = direct(nums.capacity());
+        ParallelBuffers.transform(nums, dst, x -> x * 2);
+        assertEquals(0.0, dst.get(999));
+        assertEquals(2.0, dst.get(1000));
+        assertEquals(2.0, dst.get(2999));
+        assertEquals(0.0, dst.get(3000));
+
+        // room past the limit does not count
+        dst.limit(2999);
+        try {
+            ParallelBuffers.transform(nums, dst, x -> x * 2);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("destination too small: 2999 < 3000", e.getMessage());
+        }
+    }
+
+    public void testPageAlignedSplits() {
+        ParallelBuffers.BufferTask t = new ParallelBuffers.BufferTask();
+        int page = ParallelBuffers.PAGE_DOUBLES;
+
+        assertEquals(4 * page, t.split(0, 9 * page + 7));
+        assertEquals(2 * page, t.split(page + 5, 3 * page + 5));
+        // less than two pages: no page boundary strictly inside
+        assertEquals(page / 2 + 5, t.split(5, page + 5));
+    }
+
+    public void testMappedFile() throws IOException {
+        Path file = Files.createTempFile("mapped", ".bin");
+        try {
+            int n = 100000;
+            ByteBuffer bytes = ByteBuffer.allocate(n * Double.BYTES)
+                .order(ByteOrder.nativeOrder());
+            for (int i = 0; i < n; ++i) {
+                bytes.putDouble((double)i);
+            }
+            bytes.flip();
+            try (FileChannel ch = FileChannel.open(
+                file, StandardOpenOption.WRITE)) {
+                while (bytes.hasRemaining()) {
+                    ch.write(bytes);
+                }
+            }
+
+            // small segments, so that the file spans several
+            try (MappedDoubles m = MappedDoubles.open(
+                file, true, ByteOrder.nativeOrder(), 64 * 4096)) {
+                assertEquals((long)n, m.length());
+                assertEquals(4, m.segmentCount());
+                assertEquals(99999.0 * 100000.0 / 2, m.sum());
+                assertEquals(0.0, m.min());
+                assertEquals(99999.0, m.max());
+
+                m.transform(Math::sqrt);
+                m.force();
+            }
+
+            try (MappedDoubles m = MappedDoubles.open(file, false)) {
+                assertEquals(1, m.segmentCount());
+                assertEquals(3.0, m.segment(0).get(9));
+                assertEquals(300.0, m.segment(0).get(90000));
+                try {
+                    m.transform(Math::sqrt);
+                    fail("expected IllegalArgumentException");
+                }
+                catch (IllegalArgumentException e) {
+                    ;
+                }
+            }
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+}
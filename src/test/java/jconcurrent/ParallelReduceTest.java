@@ -0,0 +1,100 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+public class ParallelReduceTest extends TestCase {
+
+    public void testIntReductions() {
+        int[] nums = new int[100000];
+        for (int i = 0; i < nums.length; ++i) {
+            nums[i] = (i % 2) == 0 ? i : -i;
+        }
+
+        assertEquals(-50000L, ParallelReduce.sum(nums));
+        assertEquals(-99999, ParallelReduce.min(nums));
+        assertEquals(99998, ParallelReduce.max(nums));
+        assertEquals(50000L, ParallelReduce.count(nums, x -> x >= 0));
+        assertEquals(-0.5, ParallelReduce.mean(nums), 1e-12);
+    }
+
+    public void testIntSumDoesNotOverflow() {
+        int[] nums = new int[10000];
+        Arrays.fill(nums, Integer.MAX_VALUE);
+
+        assertEquals(10000L * Integer.MAX_VALUE, ParallelReduce.sum(nums));
+    }
+
+    public void testLongReductions() {
+        long[] nums = new long[100000];
+        for (int i = 0; i < nums.length; ++i) {
+            nums[i] = (long)i * 1000000L;
+        }
+
+        assertEquals(99999L * 100000L / 2 * 1000000L,
+            ParallelReduce.sum(nums));
+        assertEquals(0L, ParallelReduce.min(nums));
+        assertEquals(99999000000L, ParallelReduce.max(nums));
+        assertEquals(10L, ParallelReduce.count(nums, x -> x < 10000000L));
+    }
+
+    public void testDoubleReductions() {
+        // same input as ForkJoinFrameworkBasisTest.testDemoForkJoinTask
+        double[] nums = new double[10000000];
+        for (int i = 0; i < nums.length; ++i) {
+            nums[i] = (double)
+                ((i % 2) == 0 ? i : -i);
+        }
+
+        assertEquals(-5000000.0, ParallelReduce.sum(nums));
+        assertEquals(-9999999.0, ParallelReduce.min(nums));
+        assertEquals(9999998.0, ParallelReduce.max(nums));
+        assertEquals(5000000L, ParallelReduce.count(nums, x -> x < 0));
+        assertEquals(-0.5, ParallelReduce.mean(nums), 1e-12);
+    }
+
+    public void testCompensatedSum() {
+        // 0.1 is not representable; the plain sum drifts while
+        // the compensated one stays within one ulp
+        double[] nums = new double[10000000];
+        Arrays.fill(nums, 0.1);
+
+        double expected = 1000000.0;
+        double plain = ParallelReduce.sum(nums);
+        double compensated = ParallelReduce.sum(
+            nums, ParallelReduce.Summation.COMPENSATED);
+
+        assertEquals(expected, compensated, Math.ulp(expected));
+        assertTrue(
+            Math.abs(compensated - expected) <= Math.abs(plain - expected));
+    }
+
+    public void testCompensatedSumAcrossSplits() {
+        // the large terms cancel in different leaves (the tuner
+        // always splits into several leaves per thread); the plain
+        // sum loses every unit that was added next to them
+        double[] nums = new double[1 << 20];
+        Arrays.fill(nums, 1.0);
+        nums[0] = 1e100;
+        nums[nums.length - 1] = -1e100;
+
+        assertEquals(nums.length - 2.0, ParallelReduce.sum(
+            nums, ParallelReduce.Summation.COMPENSATED));
+    }
+
+    public void testEmptyArrays() {
+        assertEquals(0L, ParallelReduce.sum(new int[0]));
+        assertEquals(0.0, ParallelReduce.sum(new double[0]));
+        assertTrue(Double.isNaN(ParallelReduce.mean(new long[0])));
+
+        try {
+            ParallelReduce.min(new double[0]);
+            fail("expected NoSuchElementException");
+        }
+        catch (NoSuchElementException e) {
+            ;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ParallelScanTest extends TestCase {
+
+    // long enough to be split into several blocks
+    private static final int N = 1 << 20;
+
+    private static long[] randomLongs(int n, long seed) {
+        Random r = new Random(seed);
+        long[] data = new long[n];
+        for (int i = 0; i < n; ++i) {
+            data[i] = r.nextInt(2001) - 1000;
+        }
+        return data;
+    }
+
+    // small integers, so that every partial sum is exact
+    private static double[] toDoubles(long[] data) {
+        double[] d = new double[data.length];
+        for (int i = 0; i < data.length; ++i) {
+            d[i] = (double)data[i];
+        }
+        return d;
+    }
+
+    private static int[] randomStarts(int n, int count, long seed) {
+        Random r = new Random(seed);
+        int[] starts = new int[count];
+        for (int i = 0; i < count; ++i) {
+            starts[i] = r.nextInt(n);
+        }
+        Arrays.sort(starts);
+        return starts;
+    }
+
+    // the sequential reference: max when max, else sum
+    private static long[] expected(long[] data, int[] starts, boolean max) {
+        long[] out = data.clone();
+        int k = 0;
+        for (int i = 0; i < out.length; ++i) {
+            boolean restart = i == 0;
+            while (starts != null && k < starts.length && starts[k] == i) {
+                restart = true;
+                ++k;
+            }
+            if (!restart) {
+                out[i] = max
+                    ? Math.max(out[i - 1], out[i])
+                    : out[i - 1] + out[i];
+            }
+        }
+        return out;
+    }
+
+    public void testRunningSum() {
+        long[] data = randomLongs(N, 1);
+        long[] longs = data.clone();
+        double[] doubles = toDoubles(data);
+        int[] ints = new int[N];
+        for (int i = 0; i < N; ++i) {
+            ints[i] = (int)data[i];
+        }
+
+        ParallelScan.runningSum(longs);
+        ParallelScan.runningSum(doubles);
+        ParallelScan.runningSum(ints);
+
+        long[] expected = expected(data, null, false);
+        assertTrue(Arrays.equals(expected, longs));
+        for (int i = 0; i < N; ++i) {
+            assertEquals(expected[i], (long)doubles[i]);
+            assertEquals(expected[i], ints[i]);
+        }
+    }
+
+    public void testRunningMax() {
+        long[] data = randomLongs(N, 2);
+        long[] longs = data.clone();
+        double[] doubles = toDoubles(data);
+
+        ParallelScan.runningMax(longs);
+        ParallelScan.runningMax(doubles);
+
+        long[] expected = expected(data, null, true);
+        assertTrue(Arrays.equals(expected, longs));
+        assertTrue(Arrays.equals(toDoubles(expected), doubles));
+    }
+
+    // associative but not commutative: the last non-zero element
+    public void testOperatorOrder() {
+        long[] data = randomLongs(N, 3);
+        for (int i = 0; i < N; i += 3) {
+            data[i] = 0;
+        }
+        long[] longs = data.clone();
+        ParallelScan.scan(longs, (a, b) -> b != 0 ? b : a);
+
+        long last = 0;
+        for (int i = 0; i < N; ++i) {
+            if (data[i] != 0) {
+                last = data[i];
+            }
+            assertEquals(last, longs[i]);
+        }
+
+        int[] ints = new int[N];
+        Arrays.fill(ints, 1);
+        ParallelScan.scan(ints, (a, b) -> a ^ b);
+        assertEquals(1, ints[0]);
+        assertEquals(0, ints[N - 1]);
+    }
+
+    public void testSegmented() {
+        long[] data = randomLongs(N, 4);
+        // repeats, a start at 0 and one at the last element
+        int[] starts = randomStarts(N, 100, 5);
+        starts[0] = 0;
+        starts[1] = starts[2];
+        starts[starts.length - 1] = N - 1;
+
+        long[] sums = data.clone();
+        ParallelScan.runningSum(sums, starts);
+        assertTrue(Arrays.equals(expected(data, starts, false), sums));
+
+        double[] maxes = toDoubles(data);
+        ParallelScan.runningMax(maxes, starts);
+        assertTrue(Arrays.equals(
+            toDoubles(expected(data, starts, true)), maxes));
+
+        double[] doubles = toDoubles(data);
+        ParallelScan.scan(doubles, starts, (a, b) -> a + b);
+        assertTrue(Arrays.equals(
+            toDoubles(expected(data, starts, false)), doubles));
+
+        // every element its own segment
+        int[] all = new int[1000];
+        for (int i = 0; i < all.length; ++i) {
+            all[i] = i;
+        }
+        int[] ints = new int[all.length];
+        Arrays.fill(ints, 7);
+        ParallelScan.runningSum(ints, all);
+        for (int x : ints) {
+            assertEquals(7, x);
+        }
+    }
+
+    public void testSegmentedSparse() {
+        // a single start in the middle of a block
+        long[] data = new long[N];
+        Arrays.fill(data, 1);
+        int[] starts = {N / 2 + 3};
+        ParallelScan.runningSum(data, starts);
+        assertEquals(N / 2 + 3, data[N / 2 + 2]);
+        assertEquals(1, data[N / 2 + 3]);
+        assertEquals(N / 2 - 3, data[N - 1]);
+    }
+
+    public void testBadStarts() {
+        try {
+            ParallelScan.runningSum(new long[10], new int[] {3, 2});
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+        try {
+            ParallelScan.runningSum(new long[10], new int[] {10});
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+    }
+
+    public void testSmallArrays() {
+        ParallelScan.runningSum(new double[0]);
+        long[] one = {5};
+        ParallelScan.runningSum(one);
+        assertEquals(5, one[0]);
+        long[] few = {1, 2, 3, 4};
+        ParallelScan.runningSum(few, new int[] {2});
+        assertTrue(Arrays.equals(new long[] {1, 3, 3, 7}, few));
+    }
+
+    public void testBuffer() {
+        int n = 300000;
+        DoubleBuffer nums = ByteBuffer.allocateDirect(n * Double.BYTES)
+            .order(ByteOrder.nativeOrder())
+            .asDoubleBuffer();
+        for (int i = 0; i < n; ++i) {
+            nums.put(i, 1.0);
+        }
+        nums.position(1000).limit(n - 1000);
+
+        ParallelScan.runningSum(nums);
+        assertEquals(1000, nums.position());
+        nums.clear();
+        assertEquals(1.0, nums.get(999));
+        assertEquals(1.0, nums.get(1000));
+        assertEquals(2.0, nums.get(1001));
+        assertEquals((double)(n - 2000), nums.get(n - 1001));
+        assertEquals(1.0, nums.get(n - 1000));
+
+        ParallelScan.scan(nums, (a, b) -> Math.max(a, b) + 0.0);
+        assertEquals((double)(n - 2000), nums.get(n - 1));
+    }
+}
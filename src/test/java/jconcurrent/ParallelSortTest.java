@@ -0,0 +1,172 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class ParallelSortTest extends TestCase {
+
+    // long enough to be split into several blocks
+    private static final int N = 1 << 19;
+
+    public void testRadixSortInts() {
+        Random r = new Random(1);
+        int[] data = new int[N];
+        for (int i = 0; i < N; ++i) {
+            data[i] = r.nextInt();
+        }
+        data[7] = Integer.MIN_VALUE;
+        data[8] = Integer.MAX_VALUE;
+        int[] expected = data.clone();
+        Arrays.sort(expected);
+
+        ParallelSort.radixSort(data);
+        assertTrue(Arrays.equals(expected, data));
+    }
+
+    public void testRadixSortLongs() {
+        Random r = new Random(2);
+        long[] data = new long[N];
+        for (int i = 0; i < N; ++i) {
+            data[i] = r.nextLong();
+        }
+        long[] expected = data.clone();
+        Arrays.sort(expected);
+
+        ParallelSort.radixSort(data);
+        assertTrue(Arrays.equals(expected, data));
+    }
+
+    // a few days of millisecond timestamps: most passes skipped
+    public void testRadixSortTimestamps() {
+        Random r = new Random(3);
+        long t0 = 1700000000000L;
+        long[] data = new long[N];
+        for (int i = 0; i < N; ++i) {
+            data[i] = t0 + r.nextInt(3 * 24 * 3600 * 1000);
+        }
+        long[] expected = data.clone();
+        Arrays.sort(expected);
+
+        ParallelSort.radixSort(data);
+        assertTrue(Arrays.equals(expected, data));
+
+        // already sorted, and all equal
+        ParallelSort.radixSort(data);
+        assertTrue(Arrays.equals(expected, data));
+        Arrays.fill(data, t0);
+        ParallelSort.radixSort(data);
+        assertEquals(t0, data[N - 1]);
+    }
+
+    public void testRadixSortDoubles() {
+        Random r = new Random(4);
+        double[] data = new double[N];
+        for (int i = 0; i < N; ++i) {
+            data[i] = r.nextGaussian() * 1e6;
+        }
+        data[0] = Double.NaN;
+        data[1] = -0.0;
+        data[2] = 0.0;
+        data[3] = Double.NEGATIVE_INFINITY;
+        data[4] = Double.POSITIVE_INFINITY;
+        data[5] = -Double.MIN_VALUE;
+        data[6] = Double.longBitsToDouble(0xfff8000000000001L);
+        double[] expected = data.clone();
+        Arrays.sort(expected);
+
+        ParallelSort.radixSort(data);
+        assertTrue(Arrays.equals(expected, data));
+    }
+
+    public void testSmallArrays() {
+        int[] ints = {3, -1, 2};
+        ParallelSort.radixSort(ints);
+        assertTrue(Arrays.equals(new int[] {-1, 2, 3}, ints));
+        ParallelSort.radixSort(new double[0]);
+
+        long[] keys = {3, 1, 2, 1};
+        int[] values = {0, 1, 2, 3};
+        ParallelSort.sortByKey(keys, values);
+        assertTrue(Arrays.equals(new long[] {1, 1, 2, 3}, keys));
+        assertTrue(Arrays.equals(new int[] {1, 3, 2, 0}, values));
+    }
+
+    // few distinct keys, so the stability is put to the test
+    public void testSortByKeyIsStable() {
+        Random r = new Random(5);
+        long[] keys = new long[N];
+        int[] order = new int[N];
+        for (int i = 0; i < N; ++i) {
+            keys[i] = r.nextInt(1000) - 500;
+            order[i] = i;
+        }
+        long[] original = keys.clone();
+        long[] payload = new long[N];
+        for (int i = 0; i < N; ++i) {
+            payload[i] = keys[i] * 3;
+        }
+        long[] sortedKeys = keys.clone();
+
+        ParallelSort.sortByKey(keys, order);
+        for (int i = 0; i < N; ++i) {
+            assertEquals(original[order[i]], keys[i]);
+            if (i > 0) {
+                assertTrue(keys[i - 1] <= keys[i]);
+                if (keys[i - 1] == keys[i]) {
+                    assertTrue(order[i - 1] < order[i]);
+                }
+            }
+        }
+
+        ParallelSort.sortByKey(sortedKeys, payload);
+        assertTrue(Arrays.equals(keys, sortedKeys));
+        for (int i = 0; i < N; ++i) {
+            assertEquals(sortedKeys[i] * 3, payload[i]);
+        }
+    }
+
+    public void testSortByKeyLengthMismatch() {
+        try {
+            ParallelSort.sortByKey(new long[3], new int[2]);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+    }
+
+    public void testMerge() {
+        Random r = new Random(6);
+        long[][] runs = new long[9][];
+        for (int i = 0; i < runs.length; ++i) {
+            // an empty run, a tiny one, and runs of duplicates
+            int n = i == 0 ? 0 : i == 1 ? 1 : r.nextInt(N / 4);
+            runs[i] = new long[n];
+            for (int j = 0; j < n; ++j) {
+                runs[i][j] = i % 3 == 0 ? r.nextInt(10) : r.nextLong();
+            }
+            Arrays.sort(runs[i]);
+        }
+        long[] expected = new long[0];
+        for (long[] run : runs) {
+            int from = expected.length;
+            expected = Arrays.copyOf(expected, from + run.length);
+            System.arraycopy(run, 0, expected, from, run.length);
+        }
+        Arrays.sort(expected);
+
+        assertTrue(Arrays.equals(expected, ParallelSort.merge(runs)));
+        assertEquals(0, ParallelSort.merge().length);
+        assertTrue(Arrays.equals(runs[2], ParallelSort.merge(runs[2])));
+
+        try {
+            ParallelSort.merge(runs, new long[expected.length - 1]);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class ParallelTransformTest extends TestCase {
+
+    private static double[] ramp(int n) {
+        double[] nums = new double[n];
+        for (int i = 0; i < nums.length; ++i) {
+            nums[i] = (double)i;
+        }
+        return nums;
+    }
+
+    public void testSqrtInPlace() {
+        // same as ForkJoinFrameworkBasisTest.testDemoForkJoinAction
+        double[] nums = ramp(10000000);
+
+        ParallelTransform.apply(ElementKernels.sqrt(), nums);
+
+        assertEquals(3.0, nums[9]);
+        assertEquals(3000.0, nums[9000000]);
+    }
+
+    public void testKernelsIntoSeparateArray() {
+        double[] src = ramp(100000);
+        double[] dst = new double[src.length];
+
+        ParallelTransform.apply(ElementKernels.scale(0.5), src, dst);
+        assertEquals(4.5, dst[9]);
+        assertEquals(9.0, src[9]);
+
+        ParallelTransform.apply(
+            ElementKernels.multiplyAdd(2.0, -1.0), src, dst);
+        assertEquals(17.0, dst[9]);
+        assertEquals(-1.0, dst[0]);
+
+        // rounded once: 0.1 * 10 - 1 is not 0
+        double[] one = {10.0};
+        ElementKernels.multiplyAdd(one, one, 0.1, -1.0, 0, 1);
+        assertEquals(Math.fma(0.1, 10.0, -1.0), one[0]);
+        assertTrue(one[0] != 0.0);
+
+        ParallelTransform.apply(
+            ElementKernels.multiplyAdd(-1.0, 0.0), src, dst);
+        ParallelTransform.apply(ElementKernels.abs(), dst, dst);
+        assertEquals(99999.0, dst[99999]);
+
+        ParallelTransform.apply(ElementKernels.clamp(10.0, 20.0), src, dst);
+        assertEquals(10.0, dst[3]);
+        assertEquals(15.0, dst[15]);
+        assertEquals(20.0, dst[99999]);
+    }
+
+    public void testSequentialKernelsOnRange() {
+        double[] nums = {-1.0, -4.0, 9.0, Double.NaN};
+
+        ElementKernels.abs(nums, nums, 0, 2);
+        ElementKernels.sqrt(nums, nums, 1, 3);
+        assertEquals(1.0, nums[0]);
+        assertEquals(2.0, nums[1]);
+        assertEquals(3.0, nums[2]);
+
+        ElementKernels.clamp(nums, nums, 0.0, 1.0, 0, 4);
+        assertTrue(Double.isNaN(nums[3]));
+
+        try {
+            ElementKernels.sqrt(nums, new double[2], 0, 3);
+            fail("expected ArrayIndexOutOfBoundsException");
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            ;
+        }
+    }
+
+    public void testBadArguments() {
+        try {
+            ElementKernels.clamp(1.0, 0.0);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+        try {
+            ParallelTransform.apply(
+                ElementKernels.sqrt(), new double[2], new double[3]);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+    }
+
+    private static void assertSameBits(double[] expected, double[] actual) {
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals("at " + i,
+                Double.doubleToLongBits(expected[i]),
+                Double.doubleToLongBits(actual[i]));
+        }
+    }
+
+    // the vector kernels give the scalar results, tails and
+    // special values included; 'gradle test' runs with the module
+    public void testVectorKernelsMatchScalar() {
+        if (!ElementKernels.vectorized()) {
+            return;
+        }
+        Random r = new Random(5);
+        double[] src = new double[1000];
+        for (int i = 0; i < src.length; ++i) {
+            src[i] = (r.nextDouble() - 0.3) * Math.pow(10, r.nextInt(40) - 20);
+        }
+        double[] special = {
+            Double.NaN, -0.0, 0.0, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MAX_VALUE, 0.1
+        };
+        System.arraycopy(special, 0, src, 10, special.length);
+        // ranges not aligned on the vector length
+        int[][] ranges = {{0, 1000}, {3, 997}, {5, 6}, {7, 7}};
+        for (int[] range : ranges) {
+            int start = range[0];
+            int end = range[1];
+            double[] expected = new double[src.length];
+            double[] actual = new double[src.length];
+
+            ElementKernels.Scalar.sqrt(src, expected, start, end);
+            VectorKernels.sqrt(src, actual, start, end);
+            assertSameBits(expected, actual);
+
+            ElementKernels.Scalar.abs(src, expected, start, end);
+            VectorKernels.abs(src, actual, start, end);
+            assertSameBits(expected, actual);
+
+            ElementKernels.Scalar.scale(src, expected, -3.5, start, end);
+            VectorKernels.scale(src, actual, -3.5, start, end);
+            assertSameBits(expected, actual);
+
+            ElementKernels.Scalar.multiplyAdd(src, expected, 0.1, -1.0,
+                                              start, end);
+            VectorKernels.multiplyAdd(src, actual, 0.1, -1.0, start, end);
+            assertSameBits(expected, actual);
+
+            ElementKernels.Scalar.clamp(src, expected, -0.0, 1.0, start, end);
+            VectorKernels.clamp(src, actual, -0.0, 1.0, start, end);
+            assertSameBits(expected, actual);
+
+            // nothing written outside the range
+            Arrays.fill(actual, 42.0);
+            VectorKernels.sqrt(src, actual, start, end);
+            for (int i = 0; i < src.length; ++i) {
+                if (i < start || i >= end) {
+                    assertEquals(42.0, actual[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PrimitiveTaskTest extends TestCase {
+
+    // records the range it covers in the long/double slots, so
+    // that a merge out of order or of non-adjacent ranges shows
+    static class RangeTask extends PrimitiveTask<RangeTask> {
+
+        final AtomicInteger created;
+        long[] data;
+
+        RangeTask(AtomicInteger created) {
+            this.created = created;
+            created.incrementAndGet();
+        }
+
+        protected RangeTask newSubtask() {
+            return new RangeTask(created);
+        }
+
+        protected void leaf(int start, int end) {
+            long[] data = root().data;
+            long s = 0;
+            for (int i = start; i < end; ++i) {
+                s += data[i];
+            }
+            longResult = s;
+            doubleResult = start;
+            doubleCompensation = end;
+        }
+
+        protected void mergeLeft(RangeTask left) {
+            assertEquals(doubleResult, left.doubleCompensation);
+            longResult += left.longResult;
+            doubleResult = left.doubleResult;
+        }
+    }
+
+    public void testMergesAdjacentRanges() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        long[] nums = new long[1000000];
+        for (int i = 0; i < nums.length; ++i) {
+            nums[i] = i;
+        }
+        RangeTask task = new RangeTask(new AtomicInteger());
+        task.data = nums;
+
+        pool.invoke(task.reset(0, nums.length, 1000));
+
+        assertEquals(999999L * 1000000L / 2, task.longResult);
+        assertEquals(0.0, task.doubleResult);
+        assertEquals((double)nums.length, task.doubleCompensation);
+    }
+
+    public void testSubtasksAreReused() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        long[] nums = new long[100000];
+        AtomicInteger created = new AtomicInteger();
+        RangeTask task = new RangeTask(created);
+        task.data = nums;
+
+        pool.invoke(task.reset(0, nums.length, 100));
+        int afterFirst = created.get();
+        assertTrue(afterFirst > 1);
+
+        for (int i = 0; i < 10; ++i) {
+            pool.invoke(task.reset(0, nums.length, 100));
+        }
+        assertEquals(afterFirst, created.get());
+    }
+
+    public void testLeafOnly() {
+        long[] nums = {1, 2, 3};
+        RangeTask task = new RangeTask(new AtomicInteger());
+        task.data = nums;
+
+        task.reset(0, nums.length, 16).invoke();
+        assertEquals(6L, task.longResult);
+
+        task.reset(1, 1, 16).invoke();
+        assertEquals(0L, task.longResult);
+    }
+
+    public void testBadRange() {
+        RangeTask task = new RangeTask(new AtomicInteger());
+        try {
+            task.reset(2, 1, 16);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReadMostlyTest extends TestCase {
+
+    // a[0] + a[1] == 0 outside of a write
+    private static void checkInvariant(ReadMostly<long[]> rm)
+        throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong reads = new AtomicLong();
+        AtomicLong broken = new AtomicLong();
+        Thread[] readers = new Thread[3];
+        for (int t = 0; t < readers.length; ++t) {
+            readers[t] = new Thread(() -> {
+                while (!stop.get()) {
+                    // throws on a torn view; an optimistic read
+                    // must retry instead of letting it through
+                    long sum = rm.readOptimistic(a -> {
+                        long s = a[0] + a[1];
+                        if (s != 0) {
+                            throw new IllegalStateException("torn: " + s);
+                        }
+                        return s;
+                    });
+                    if (sum != 0) {
+                        broken.incrementAndGet();
+                    }
+                    // read() and readLong() never see a torn view
+                    if (rm.readLong(a -> a[0] + a[1]) != 0) {
+                        broken.incrementAndGet();
+                    }
+                    String text = rm.read(a -> a[0] + "/" + a[1]);
+                    String[] parts = text.split("/");
+                    if (Long.parseLong(parts[0]) + Long.parseLong(parts[1]) != 0) {
+                        broken.incrementAndGet();
+                    }
+                    reads.incrementAndGet();
+                }
+            });
+            readers[t].start();
+        }
+        // bounded in time as well: a writer that yields inside
+        // the write can be starved by the spinning readers
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        long writes = 0;
+        while (writes < 2000 && System.nanoTime() < deadline) {
+            rm.write(a -> {
+                a[0]++;
+                Thread.yield();
+                a[1]--;
+            });
+            ++writes;
+        }
+        stop.set(true);
+        for (Thread t : readers) {
+            t.join();
+        }
+        assertEquals(0L, broken.get());
+        assertTrue(reads.get() > 0);
+        assertTrue(writes > 0);
+        assertEquals(writes, rm.readLong(a -> a[0]));
+    }
+
+    public void testStamped() throws InterruptedException {
+        checkInvariant(ReadMostly.stamped(new long[2]));
+    }
+
+    public void testReadWriteLock() throws InterruptedException {
+        checkInvariant(ReadMostly.readWriteLock(new long[2], false));
+        checkInvariant(ReadMostly.readWriteLock(new long[2], true));
+    }
+
+    public void testMonitor() throws InterruptedException {
+        checkInvariant(ReadMostly.monitor(new long[2]));
+    }
+
+    public void testOptimisticReadWithoutWriter() {
+        ReadMostly.Stamped<int[]> rm =
+            (ReadMostly.Stamped<int[]>)ReadMostly.stamped(new int[] {42});
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(42L, rm.readOptimistic(a -> a[0]));
+        }
+        assertEquals(0L, rm.fallbacks());
+
+        // an exception from a valid read is the reader's own
+        try {
+            rm.readOptimistic(a -> a[1]);
+            fail("expected ArrayIndexOutOfBoundsException");
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            ;
+        }
+        assertEquals(0L, rm.fallbacks());
+
+        // so is an error
+        try {
+            rm.readOptimistic(a -> {
+                throw new StackOverflowError();
+            });
+            fail("expected StackOverflowError");
+        }
+        catch (StackOverflowError e) {
+            ;
+        }
+        assertEquals(0L, rm.fallbacks());
+
+        // but an error from a read that a write overlapped is
+        // retried under the read lock
+        int[] calls = new int[1];
+        long r = rm.readOptimistic(a -> {
+            if (calls[0]++ == 0) {
+                rm.write(b -> b[0] = 7);
+                throw new StackOverflowError();
+            }
+            return a[0];
+        });
+        assertEquals(7L, r);
+        assertEquals(2, calls[0]);
+        assertEquals(1L, rm.fallbacks());
+    }
+}
@@ -0,0 +1,154 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResourcePoolTest extends TestCase {
+
+    public void testAcquireAndRelease() throws InterruptedException {
+        ResourcePool<String> pool =
+            new ResourcePool<>(Arrays.asList("a", "b"));
+        assertEquals(2, pool.capacity());
+        assertEquals(2, pool.idle());
+
+        String first = pool.acquire();
+        String second = pool.tryAcquire();
+        assertNotNull(second);
+        assertFalse(first.equals(second));
+        assertNull(pool.tryAcquire());
+        assertEquals(0, pool.idle());
+
+        pool.release(first);
+        assertEquals(first, pool.tryAcquire());
+        pool.release(first);
+        pool.release(second);
+        assertEquals(2, pool.idle());
+        assertEquals(0L, pool.waits());
+
+        try {
+            pool.release("c");
+            fail("expected IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            ;
+        }
+    }
+
+    public void testTimedAcquire() throws InterruptedException {
+        ResourcePool<String> pool =
+            new ResourcePool<>(Arrays.asList("a"));
+        String a = pool.acquire();
+
+        assertNull(pool.acquire(10, TimeUnit.MILLISECONDS));
+        assertEquals(1L, pool.waits());
+        assertEquals(1L, pool.timeouts());
+        assertEquals(0, pool.waiters());
+
+        pool.release(a);
+        assertEquals("a", pool.acquire(10, TimeUnit.MILLISECONDS));
+    }
+
+    public void testWaiterIsWokenByRelease() throws InterruptedException {
+        ResourcePool<String> pool =
+            new ResourcePool<>(Arrays.asList("a"));
+        String a = pool.acquire();
+        String[] got = {null};
+
+        Thread waiter = new Thread(
+            () -> {
+                try {
+                    got[0] = pool.acquire();
+                }
+                catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        );
+        waiter.start();
+        while (pool.waiters() == 0) {
+            Thread.sleep(1);
+        }
+        pool.release(a);
+        waiter.join();
+
+        assertEquals("a", got[0]);
+        assertEquals(0, pool.waiters());
+    }
+
+    public void testInterruptedWaiter() throws InterruptedException {
+        ResourcePool<String> pool =
+            new ResourcePool<>(Arrays.asList("a"));
+        pool.acquire();
+        boolean[] interrupted = {false};
+
+        Thread waiter = new Thread(
+            () -> {
+                try {
+                    pool.acquire();
+                }
+                catch (InterruptedException e) {
+                    interrupted[0] = true;
+                }
+            }
+        );
+        waiter.start();
+        while (pool.waiters() == 0) {
+            Thread.sleep(1);
+        }
+        waiter.interrupt();
+        waiter.join();
+
+        assertTrue(interrupted[0]);
+        assertEquals(0, pool.waiters());
+    }
+
+    // more threads than resources; a resource is never held by
+    // two threads at once, and every borrow is eventually served
+    public void testBulkhead() throws InterruptedException {
+        List<AtomicBoolean> resources = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            resources.add(new AtomicBoolean());
+        }
+        ResourcePool<AtomicBoolean> pool = new ResourcePool<>(resources);
+        AtomicInteger overlaps = new AtomicInteger();
+        int numThreads = 16;
+        int borrows = 2000;
+        CountDownLatch done = new CountDownLatch(numThreads);
+
+        for (int t = 0; t < numThreads; ++t) {
+            new Thread(
+                () -> {
+                    try {
+                        for (int i = 0; i < borrows; ++i) {
+                            AtomicBoolean r = pool.acquire();
+                            if (!r.compareAndSet(false, true)) {
+                                overlaps.incrementAndGet();
+                            }
+                            if ((i & 63) == 0) {
+                                Thread.yield();
+                            }
+                            r.set(false);
+                            pool.release(r);
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    done.countDown();
+                }
+            ).start();
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        assertEquals(4, pool.idle());
+        assertEquals(0, pool.waiters());
+    }
+}
@@ -0,0 +1,145 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SpscRingBufferTest extends TestCase {
+
+    public void testCapacityMustBePowerOfTwo() {
+        try {
+            new SpscRingBuffer<String>(12);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            ;
+        }
+    }
+
+    public void testOfferPollWrapsAround() {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(4);
+        assertNull(ring.poll());
+
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < 4; ++i) {
+                assertTrue(ring.offer(i));
+            }
+            assertFalse(ring.offer(4));
+            assertEquals(4, ring.size());
+            for (int i = 0; i < 4; ++i) {
+                assertEquals(Integer.valueOf(i), ring.poll());
+            }
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    public void testBatchOfferAndDrain() {
+        SpscRingBuffer<String> ring = new SpscRingBuffer<>(8);
+        String[] batch = {"a", "b", "c", "d", "e", "f", "g", "h", "i"};
+
+        assertEquals(8, ring.offer(batch, 0, batch.length));
+        assertEquals(0, ring.offer(batch, 8, 1));
+
+        List<String> out = new ArrayList<>();
+        assertEquals(3, ring.drain(out::add, 3));
+        assertEquals(3, ring.offer(batch, 6, 3));
+        assertEquals(8, ring.drain(out::add, 100));
+        assertEquals("[a, b, c, d, e, f, g, h, g, h, i]", out.toString());
+    }
+
+    public void testDrainStopsAtThrowingConsumer() {
+        SpscRingBuffer<String> ring = new SpscRingBuffer<>(4);
+        ring.offer("a");
+        ring.offer("b");
+        ring.offer("c");
+        try {
+            ring.drain(s -> {
+                if (s.equals("b")) {
+                    throw new IllegalStateException();
+                }
+            }, 4);
+            fail("expected IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            ;
+        }
+        assertEquals("c", ring.poll());
+    }
+
+    public void testPrimitiveRings() {
+        SpscIntRingBuffer ints = new SpscIntRingBuffer(4);
+        int[] in = {1, 2, 3, 4, 5};
+        int[] out = new int[5];
+        assertEquals(4, ints.offer(in, 0, 5));
+        assertFalse(ints.offer(5));
+        assertEquals(1, ints.drain(out, 0, 1));
+        assertTrue(ints.offer(5));
+        assertEquals(4, ints.drain(out, 1, 5));
+        assertEquals(0, ints.drain(out, 0, 5));
+        assertEquals("[1, 2, 3, 4, 5]", Arrays.toString(out));
+
+        SpscLongRingBuffer longs = new SpscLongRingBuffer(2);
+        long[] sum = {0};
+        longs.offer(1L << 40);
+        longs.offer(1L);
+        assertEquals(2, longs.drain(v -> sum[0] += v, 10));
+        assertEquals((1L << 40) + 1, sum[0]);
+    }
+
+    // one producer and one consumer, with a ring much smaller
+    // than the stream, so both sides wrap and wait many times
+    public void testProducerConsumerInOrder() throws InterruptedException {
+        SpscIntRingBuffer ring = new SpscIntRingBuffer(64);
+        int count = 1000000;
+        long[] received = {0, 0};
+
+        Thread producer = new Thread(
+            () -> {
+                int[] batch = new int[16];
+                int next = 0;
+                while (next < count) {
+                    int n = Math.min(batch.length, count - next);
+                    for (int i = 0; i < n; ++i) {
+                        batch[i] = next + i;
+                    }
+                    int off = 0;
+                    while (off < n) {
+                        int k = ring.offer(batch, off, n - off);
+                        if (k == 0) {
+                            Thread.yield();
+                        }
+                        off += k;
+                    }
+                    next += n;
+                }
+            }
+        );
+        Thread consumer = new Thread(
+            () -> {
+                int[] expected = {0};
+                while (expected[0] < count) {
+                    int k = ring.drain(
+                        v -> {
+                            if (v != expected[0]++) {
+                                received[1]++;
+                            }
+                            received[0] += v;
+                        }, 32);
+                    if (k == 0) {
+                        Thread.yield();
+                    }
+                }
+            }
+        );
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+
+        assertEquals(0L, received[1]);
+        assertEquals((long)count * (count - 1) / 2, received[0]);
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,180 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StagedPipelineTest extends TestCase {
+
+    private static final int CHUNKS = 64;
+    private static final int CHUNK = 100;
+
+    // generate -> square -> sum, each stage double-buffered by
+    // batch parity; done counts the chunks finished per stage
+    // and batch, to check the ordering between stages
+    private static final class Etl {
+
+        final long[][] generated = new long[2][CHUNKS * CHUNK];
+        final long[][] squared = new long[2][CHUNKS * CHUNK];
+        final AtomicLong total = new AtomicLong();
+        final AtomicIntegerArray done;
+        final AtomicLong violations = new AtomicLong();
+
+        Etl(int batches) {
+            done = new AtomicIntegerArray(3 * batches);
+        }
+
+        void check(int stage, long batch) {
+            if (stage > 0 && done.get((stage - 1) * (done.length() / 3)
+                                      + (int)batch) != CHUNKS) {
+                violations.incrementAndGet();
+            }
+        }
+
+        void finish(int stage, long batch) {
+            done.incrementAndGet(stage * (done.length() / 3) + (int)batch);
+        }
+
+        StagedPipeline.Stage stage(final int stage) {
+            return new StagedPipeline.Stage() {
+                public int chunks(long batch) {
+                    return CHUNKS;
+                }
+
+                public void process(long batch, int chunk) {
+                    check(stage, batch);
+                    int p = (int)(batch & 1);
+                    int from = chunk * CHUNK;
+                    int to = from + CHUNK;
+                    if (stage == 0) {
+                        for (int i = from; i < to; ++i) {
+                            generated[p][i] = batch + i;
+                        }
+                    }
+                    else if (stage == 1) {
+                        for (int i = from; i < to; ++i) {
+                            squared[p][i] = generated[p][i] * generated[p][i];
+                        }
+                    }
+                    else {
+                        long s = 0;
+                        for (int i = from; i < to; ++i) {
+                            s += squared[p][i];
+                        }
+                        total.addAndGet(s);
+                    }
+                    finish(stage, batch);
+                }
+            };
+        }
+
+        StagedPipeline pipeline() {
+            return new StagedPipeline(stage(0), stage(1), stage(2));
+        }
+
+        static long expected(int batches) {
+            long s = 0;
+            for (long b = 0; b < batches; ++b) {
+                for (int i = 0; i < CHUNKS * CHUNK; ++i) {
+                    s += (b + i) * (b + i);
+                }
+            }
+            return s;
+        }
+    }
+
+    public void testSingleWorkerPerStage() throws Exception {
+        Etl etl = new Etl(20);
+        StagedPipeline pipeline = etl.pipeline();
+        pipeline.run(20);
+        assertEquals(Etl.expected(20), etl.total.get());
+        assertEquals(0L, etl.violations.get());
+        assertEquals(1, pipeline.workers(0));
+    }
+
+    public void testTieredWorkers() throws Exception {
+        Etl etl = new Etl(50);
+        StagedPipeline pipeline = etl.pipeline();
+        pipeline.resize(0, 3);
+        pipeline.resize(1, 40);
+        pipeline.resize(2, 5);
+        pipeline.run(50);
+        assertEquals(Etl.expected(50), etl.total.get());
+        assertEquals(0L, etl.violations.get());
+        // kept for the next run
+        assertEquals(40, pipeline.workers(1));
+        assertEquals(0, pipeline.leaves(1));
+    }
+
+    public void testResizeWhileRunning() throws Exception {
+        final int batches = 400;
+        final Etl etl = new Etl(batches);
+        final StagedPipeline pipeline = etl.pipeline();
+        Thread controller = new Thread(() -> {
+            // grow stage 1 across several leaves, then shrink it
+            for (int n : new int[] {5, 50, 2, 33, 1}) {
+                pipeline.resize(1, n);
+                try {
+                    Thread.sleep(2);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        controller.start();
+        pipeline.run(batches);
+        controller.join();
+        assertEquals(Etl.expected(batches), etl.total.get());
+        assertEquals(0L, etl.violations.get());
+    }
+
+    public void testLeavesAreBounded() throws Exception {
+        final StagedPipeline[] self = new StagedPipeline[1];
+        final int[] leaves = new int[1];
+        StagedPipeline.Stage stage = new StagedPipeline.Stage() {
+            public int chunks(long batch) {
+                return 1;
+            }
+
+            public void process(long batch, int chunk) {
+                if (batch == 0) {
+                    self[0].resize(0, 100);
+                }
+                else if (batch == 5) {
+                    leaves[0] = self[0].leaves(0);
+                }
+            }
+        };
+        self[0] = new StagedPipeline(stage);
+        self[0].run(10);
+        // 100 workers need 7 leaves of 16
+        assertEquals(7, leaves[0]);
+        assertEquals(100, self[0].workers(0));
+    }
+
+    public void testFailureStopsPipeline() throws Exception {
+        StagedPipeline.Stage failing = new StagedPipeline.Stage() {
+            public int chunks(long batch) {
+                return 4;
+            }
+
+            public void process(long batch, int chunk) {
+                if (batch == 3) {
+                    throw new IllegalStateException("bad batch");
+                }
+            }
+        };
+        StagedPipeline pipeline = new StagedPipeline(failing, failing);
+        pipeline.resize(1, 4);
+        try {
+            pipeline.run(1000);
+            fail("expected ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertEquals("bad batch", e.getCause().getMessage());
+        }
+    }
+}
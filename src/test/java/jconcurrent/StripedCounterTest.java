@@ -0,0 +1,84 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class StripedCounterTest extends TestCase {
+
+    public void testStripesRoundUpToPowerOfTwo() {
+        assertEquals(1, new StripedCounter(1).stripes());
+        assertEquals(8, new StripedCounter(5).stripes());
+        assertEquals(8, new StripedCounter(8).stripes());
+    }
+
+    public void testAddAndReset() {
+        StripedCounter c = new StripedCounter(4);
+        c.add(10);
+        c.increment();
+        c.decrement();
+        c.decrement();
+        assertEquals(9L, c.sum());
+        assertEquals("9", c.toString());
+
+        assertEquals(9L, c.sumThenReset());
+        assertEquals(0L, c.sum());
+
+        c.add(5);
+        c.reset();
+        assertEquals(0L, c.sum());
+    }
+
+    // same workload as AtomicBasisTest.testConcurrentModification
+    // without the sleeps, and many more updates per task
+    public void testConcurrentModification() throws InterruptedException {
+        StripedCounter res = new StripedCounter();
+        int numThreads = 8;
+        int workload = 32;
+
+        ExecutorService pool =
+            Executors.newFixedThreadPool(numThreads);
+        for (int i = 0; i < workload; ++i) {
+            pool.execute(
+                () -> {
+                    for (int k = 0; k < 10000; ++k) {
+                        res.add(2);
+                    }
+                }
+            );
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(2L * 10000 * workload, res.sum());
+    }
+
+    // nothing is lost between concurrent updates and snapshots
+    public void testSumThenResetLosesNothing() throws InterruptedException {
+        StripedCounter c = new StripedCounter(4);
+        int perThread = 200000;
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; ++i) {
+            writers[i] = new Thread(
+                () -> {
+                    for (int k = 0; k < perThread; ++k) {
+                        c.increment();
+                    }
+                }
+            );
+            writers[i].start();
+        }
+        long total = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread t : writers) {
+                running |= t.isAlive();
+            }
+            total += c.sumThenReset();
+        }
+        total += c.sumThenReset();
+        assertEquals((long)perThread * writers.length, total);
+    }
+}
@@ -0,0 +1,221 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+public class TextIngestTest extends TestCase {
+
+    private static final String[] SEPARATORS =
+        {"\n", "\r\n", ",", ", ", ";", "\t"};
+
+    private static Path write(String text) throws IOException {
+        Path file = Files.createTempFile("ingest", ".txt");
+        Files.write(file, text.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    // several blocks, and tokens across every block and segment
+    // boundary
+    public void testDoubles() throws IOException {
+        Random r = new Random(1);
+        int n = 200000;
+        String[] tokens = new String[n];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < n; ++i) {
+            switch (i % 5) {
+                case 0:
+                    tokens[i] = Double.toString(r.nextGaussian() * 1e6);
+                    break;
+                case 1:
+                    tokens[i] = Integer.toString(r.nextInt());
+                    break;
+                case 2:
+                    tokens[i] = String.format(
+                        Locale.ROOT, "%.3f", r.nextDouble() * 100);
+                    break;
+                case 3:
+                    // more than 19 digits, or a large exponent
+                    tokens[i] = r.nextBoolean()
+                        ? "0.12345678901234567890123" + r.nextInt(10)
+                        : (r.nextInt(20) + 1) + "e" + (r.nextInt(600) - 300);
+                    break;
+                default:
+                    tokens[i] =
+                        "+" + r.nextInt(1000) + "." + r.nextInt(100) + "E-3";
+                    break;
+            }
+            text.append(tokens[i])
+                .append(SEPARATORS[i % SEPARATORS.length]);
+        }
+        text.append("   \n");
+        Path file = write(text.toString());
+        try {
+            double[] expected = new double[n];
+            for (int i = 0; i < n; ++i) {
+                expected[i] = Double.parseDouble(tokens[i]);
+            }
+            double[] values = TextIngest.readDoubles(file);
+            assertEquals(n, values.length);
+            for (int i = 0; i < n; ++i) {
+                assertEquals(tokens[i], expected[i], values[i]);
+            }
+
+            // small segments: many mappings
+            values = TextIngest.readDoubles(file, 4099);
+            for (int i = 0; i < n; ++i) {
+                assertEquals(tokens[i], expected[i], values[i]);
+            }
+
+            DoubleBuffer dst = ByteBuffer
+                .allocateDirect((n + 10) * Double.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asDoubleBuffer();
+            dst.position(3);
+            assertEquals(n, TextIngest.readDoubles(file, dst));
+            assertEquals(n + 3, dst.position());
+            assertEquals(expected[0], dst.get(3));
+            assertEquals(expected[n - 1], dst.get(n + 2));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testSpecialDoubles() throws IOException {
+        Path file = write("NaN,-Infinity Infinity\n-0.0\n.5\n5.\n1e22\n"
+            + "4.9e-324\n1.7976931348623157e308\n9007199254740993\n0x1p3\n"
+            // 19 digits: more than a long holds
+            + "9999999999999999999\n0.9999999999999999999\n"
+            + "-12345678901234567890e-5");
+        try {
+            double[] v = TextIngest.readDoubles(file);
+            assertEquals(14, v.length);
+            assertTrue(Double.isNaN(v[0]));
+            assertEquals(Double.NEGATIVE_INFINITY, v[1]);
+            assertEquals(Double.POSITIVE_INFINITY, v[2]);
+            assertEquals(Double.doubleToLongBits(-0.0),
+                Double.doubleToLongBits(v[3]));
+            assertEquals(0.5, v[4]);
+            assertEquals(5.0, v[5]);
+            assertEquals(1e22, v[6]);
+            assertEquals(Double.MIN_VALUE, v[7]);
+            assertEquals(Double.MAX_VALUE, v[8]);
+            // above 2^53: not exact, rounded by Double.parseDouble()
+            assertEquals(9007199254740992.0, v[9]);
+            assertEquals(8.0, v[10]);
+            assertEquals(1.0e19, v[11]);
+            assertEquals(1.0, v[12]);
+            assertEquals(-12345678901234567890e-5, v[13]);
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testLongs() throws IOException {
+        Random r = new Random(2);
+        int n = 100000;
+        long[] expected = new long[n];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < n; ++i) {
+            expected[i] = i == 0 ? Long.MIN_VALUE
+                : i == 1 ? Long.MAX_VALUE
+                : i % 2 == 0 ? r.nextLong() : r.nextInt(1000) - 500;
+            text.append(expected[i])
+                .append(SEPARATORS[i % SEPARATORS.length]);
+        }
+        Path file = write(text.toString());
+        try {
+            long[] values = TextIngest.readLongs(file, 1000);
+            assertEquals(n, values.length);
+            for (int i = 0; i < n; ++i) {
+                assertEquals(expected[i], values[i]);
+            }
+
+            LongBuffer dst = LongBuffer.allocate(n);
+            assertEquals(n, TextIngest.readLongs(file, dst));
+            assertFalse(dst.hasRemaining());
+            assertEquals(expected[n - 1], dst.get(n - 1));
+
+            try {
+                TextIngest.readLongs(file, LongBuffer.allocate(n - 1));
+                fail("expected IllegalArgumentException");
+            }
+            catch (IllegalArgumentException e) {
+                ;
+            }
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testEmpty() throws IOException {
+        Path file = write("");
+        try {
+            assertEquals(0, TextIngest.readDoubles(file).length);
+        }
+        finally {
+            Files.delete(file);
+        }
+        file = write(" \n,\r\n;");
+        try {
+            assertEquals(0, TextIngest.readLongs(file).length);
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testErrors() throws IOException {
+        Path file = write("1\n2\n9223372036854775808\n");
+        try {
+            TextIngest.readLongs(file);
+            fail("expected NumberFormatException");
+        }
+        catch (NumberFormatException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("at byte 4"));
+        }
+        finally {
+            Files.delete(file);
+        }
+        file = write("1.5\n2.5x\n");
+        try {
+            TextIngest.readDoubles(file);
+            fail("expected NumberFormatException");
+        }
+        catch (NumberFormatException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("at byte 4"));
+        }
+        finally {
+            Files.delete(file);
+        }
+
+        // a value longer than the overlap of the mappings
+        StringBuilder text = new StringBuilder("1 ");
+        for (int i = 0; i < 2 * TextIngest.MAX_TOKEN_BYTES; ++i) {
+            text.append('1');
+        }
+        file = write(text.append(" 2").toString());
+        try {
+            TextIngest.readDoubles(file, 1024);
+            fail("expected NumberFormatException");
+        }
+        catch (NumberFormatException e) {
+            ;
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package jconcurrent;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// ExampleSquareTransform (see ForkJoinFrameworkBasisTest) with
+// the threshold passed in instead of hardcoded
+class TunedSquareTransform extends RecursiveAction {
+
+    private double[] data;
+    private int start;
+    private int end;
+    private int seqThreshold;
+
+    TunedSquareTransform(double[] vals, int s, int e, int t) {
+        data = vals;
+        start = s;
+        end = e;
+        seqThreshold = t;
+    }
+
+    static void leaf(double[] data, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            data[i] = Math.sqrt(data[i]);
+        }
+    }
+
+    public void compute() {
+        if ((end - start) <= seqThreshold) {
+            leaf(data, start, end);
+        }
+        else {
+            int mid = (start + end) >>> 1;
+            invokeAll(
+                new TunedSquareTransform(data, start, mid, seqThreshold),
+                new TunedSquareTransform(data, mid, end, seqThreshold)
+            );
+        }
+    }
+}
+
+public class ThresholdTunerTest extends TestCase {
+
+    public void testThresholdFromCost() {
+        ThresholdTuner tuner = new ThresholdTuner(50000L);
+
+        // cheap kernel: capped by the number of leaves per thread
+        int n = 1 << 24;
+        assertEquals(n / (64 * ThresholdTuner.LEAVES_PER_THREAD),
+            tuner.threshold(1.0, n, 64));
+        assertEquals(50000, tuner.threshold(1.0, n, 4));
+
+        // expensive kernel: 500 elements per 50us leaf
+        assertEquals(500, tuner.threshold(100.0, n, 4));
+
+        // never below the minimum, never above the length
+        assertEquals(ThresholdTuner.MIN_THRESHOLD,
+            tuner.threshold(1e6, n, 4));
+        assertEquals(10, tuner.threshold(1.0, 10, 1));
+        assertEquals(ThresholdTuner.MIN_THRESHOLD,
+            tuner.threshold(1.0, 20, 1));
+    }
+
+    public void testCalibrationIsCached() {
+        ThresholdTuner tuner = new ThresholdTuner(50000L);
+        double[] scratch = new double[ThresholdTuner.SAMPLE_SIZE];
+        int[] probes = {0};
+
+        ThresholdTuner.Kernel probe = (s, e) -> {
+            probes[0]++;
+            TunedSquareTransform.leaf(scratch, s, e);
+        };
+
+        assertTrue(Double.isNaN(tuner.nanosPerElement("sqrt")));
+        int t1 = tuner.threshold("sqrt", 1000000, 4, probe);
+        assertEquals(ThresholdTuner.SAMPLE_ROUNDS, probes[0]);
+        assertTrue(tuner.nanosPerElement("sqrt") > 0);
+
+        int t2 = tuner.threshold("sqrt", 1000000, 4, probe);
+        assertEquals(ThresholdTuner.SAMPLE_ROUNDS, probes[0]);
+        assertEquals(t1, t2);
+
+        tuner.forget("sqrt");
+        tuner.threshold("sqrt", 1000000, 4, probe);
+        assertEquals(2 * ThresholdTuner.SAMPLE_ROUNDS, probes[0]);
+    }
+
+    public void testSmallInputsAreNotProbed() {
+        ThresholdTuner tuner = new ThresholdTuner(50000L);
+        assertEquals(8, tuner.threshold("tiny", 8, 4, (s, e) -> fail()));
+        assertEquals(1, tuner.threshold("tiny", 0, 4, (s, e) -> fail()));
+    }
+
+    public void testTunedTransform() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        double[] scratch = new double[ThresholdTuner.SAMPLE_SIZE];
+        double[] nums = new double[1000000];
+        for (int i = 0; i < nums.length; ++i) {
+            nums[i] = (double)i;
+        }
+
+        int t = ThresholdTuner.shared().threshold(
+            TunedSquareTransform.class, nums.length, pool.getParallelism(),
+            (s, e) -> TunedSquareTransform.leaf(scratch, s, e));
+        pool.invoke(new TunedSquareTransform(nums, 0, nums.length, t));
+
+        assertEquals(3.0, nums[9]);
+        assertEquals(999.0, nums[998001]);
+    }
+}